@@ -0,0 +1,183 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Accumulates the device space bounds of everything that has been drawn in
+ * a recording. Boxes are added in user space together with the
+ * transformation that was active, so no shapes have to be created for the
+ * transformed boxes.
+ * <p>Graphics objects that record into their own command sequence, like
+ * the ones created with parallel recording, get child bounds of their own.
+ * The bounds of a recording include those of its children, so each object
+ * can be rewound without losing what the others drew. Children may add
+ * boxes on different threads.</p>
+ */
+final class ContentBounds {
+	private double minX;
+	private double minY;
+	private double maxX;
+	private double maxY;
+	private final List<ContentBounds> children;
+
+	/**
+	 * Initializes empty bounds.
+	 */
+	public ContentBounds() {
+		children = new ArrayList<>();
+		clear();
+	}
+
+	/**
+	 * Creates empty bounds that are included in these bounds.
+	 * @return Child bounds.
+	 */
+	public synchronized ContentBounds createChild() {
+		ContentBounds child = new ContentBounds();
+		children.add(child);
+		return child;
+	}
+
+	/**
+	 * Extends the bounds by a box in user space.
+	 * @param x1 Smallest x coordinate of the box.
+	 * @param y1 Smallest y coordinate of the box.
+	 * @param x2 Largest x coordinate of the box.
+	 * @param y2 Largest y coordinate of the box.
+	 * @param transform Transformation from user space to device space.
+	 */
+	public synchronized void add(double x1, double y1, double x2, double y2, AffineTransform transform) {
+		if ((transform.getType() & ~AffineTransform.TYPE_TRANSLATION) == 0) {
+			double tx = transform.getTranslateX();
+			double ty = transform.getTranslateY();
+			include(x1 + tx, y1 + ty);
+			include(x2 + tx, y2 + ty);
+			return;
+		}
+		double m00 = transform.getScaleX();
+		double m10 = transform.getShearY();
+		double m01 = transform.getShearX();
+		double m11 = transform.getScaleY();
+		double m02 = transform.getTranslateX();
+		double m12 = transform.getTranslateY();
+		include(m00*x1 + m01*y1 + m02, m10*x1 + m11*y1 + m12);
+		include(m00*x2 + m01*y1 + m02, m10*x2 + m11*y1 + m12);
+		include(m00*x1 + m01*y2 + m02, m10*x1 + m11*y2 + m12);
+		include(m00*x2 + m01*y2 + m02, m10*x2 + m11*y2 + m12);
+	}
+
+	private void include(double x, double y) {
+		minX = Math.min(minX, x);
+		minY = Math.min(minY, y);
+		maxX = Math.max(maxX, x);
+		maxY = Math.max(maxY, y);
+	}
+
+	/**
+	 * Returns the accumulated bounds, including the bounds of all children.
+	 * @return A new rectangle containing all boxes, or {@code null} if no box
+	 * has been added.
+	 */
+	public synchronized Rectangle2D get() {
+		Rectangle2D bounds = null;
+		if (minX <= maxX) {
+			bounds = new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
+		}
+		for (ContentBounds child : children) {
+			Rectangle2D childBounds = child.get();
+			if (bounds == null) {
+				bounds = childBounds;
+			} else if (childBounds != null) {
+				bounds.add(childBounds);
+			}
+		}
+		return bounds;
+	}
+
+	/**
+	 * Returns a mark of the current bounds. The bounds can later be restored
+	 * to this mark with {@link #truncate(Mark)}.
+	 * @return Mark of the current bounds.
+	 */
+	public synchronized Mark mark() {
+		return new Mark(this, minX, minY, maxX, maxY, children.size());
+	}
+
+	/**
+	 * Restores the boxes of these bounds to the specified mark and removes
+	 * the children that were created after it. Children created before the
+	 * mark keep all their boxes.
+	 * @param mark Mark returned by {@link #mark()} of these bounds.
+	 * @throws IllegalArgumentException if the mark belongs to other bounds.
+	 */
+	public synchronized void truncate(Mark mark) {
+		if (mark.bounds != this) {
+			throw new IllegalArgumentException("Mark belongs to different bounds.");
+		}
+		minX = mark.minX;
+		minY = mark.minY;
+		maxX = mark.maxX;
+		maxY = mark.maxY;
+		if (mark.childCount < children.size()) {
+			children.subList(mark.childCount, children.size()).clear();
+		}
+	}
+
+	/**
+	 * Removes all boxes and children.
+	 */
+	public synchronized void clear() {
+		minX = Double.POSITIVE_INFINITY;
+		minY = Double.POSITIVE_INFINITY;
+		maxX = Double.NEGATIVE_INFINITY;
+		maxY = Double.NEGATIVE_INFINITY;
+		children.clear();
+	}
+
+	/**
+	 * State of {@code ContentBounds} that can be restored with
+	 * {@link ContentBounds#truncate(Mark)}.
+	 */
+	static final class Mark {
+		private final ContentBounds bounds;
+		private final double minX;
+		private final double minY;
+		private final double maxX;
+		private final double maxY;
+		private final int childCount;
+
+		private Mark(ContentBounds bounds, double minX, double minY, double maxX, double maxY,
+				int childCount) {
+			this.bounds = bounds;
+			this.minX = minX;
+			this.minY = minY;
+			this.maxX = maxX;
+			this.maxY = maxY;
+			this.childCount = childCount;
+		}
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import de.erichseifert.vectorgraphics2d.intermediate.CommandSink;
+import de.erichseifert.vectorgraphics2d.intermediate.MutableCommandSequence;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.Command;
+import de.erichseifert.vectorgraphics2d.util.PageSize;
+
+/**
+ * {@code CommandSink} for processors that cannot write their documents
+ * incrementally. All commands are kept until the sink is closed, then the
+ * document is created and written at once.
+ */
+class DocumentSink implements CommandSink {
+	private final Processor processor;
+	private final PageSize pageSize;
+	private final OutputStream out;
+	private final MutableCommandSequence commands;
+	private boolean closed;
+
+	public DocumentSink(Processor processor, PageSize pageSize, OutputStream out) {
+		this.processor = processor;
+		this.pageSize = pageSize;
+		this.out = out;
+		commands = new MutableCommandSequence();
+	}
+
+	@Override
+	public void add(Command<?> command) {
+		if (closed) {
+			throw new IllegalStateException("Sink has already been closed.");
+		}
+		commands.add(command);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		processor.getDocument(commands, pageSize).writeTo(out);
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Cache of {@code FontMetrics} objects for pairs of font and font render
+ * context. Creating font metrics requires a temporary image and graphics
+ * object, which is expensive for text layout code that measures strings
+ * many times.</p>
+ * <p>The cache holds a limited number of entries and removes the least
+ * recently used entry when it is full. It may be used from multiple threads
+ * concurrently. The numbers of hits and misses can be queried to check how
+ * effective the cache is.</p>
+ */
+public class FontMetricsCache {
+	private final Map<Key, FontMetrics> metrics;
+	private final AtomicLong hitCount;
+	private final AtomicLong missCount;
+
+	/**
+	 * Initializes a new cache that holds at most the specified number of
+	 * entries.
+	 * @param capacity Maximum number of entries.
+	 */
+	public FontMetricsCache(final int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive.");
+		}
+		metrics = new LinkedHashMap<Key, FontMetrics>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, FontMetrics> eldest) {
+				return size() > capacity;
+			}
+		};
+		hitCount = new AtomicLong();
+		missCount = new AtomicLong();
+	}
+
+	/**
+	 * Returns the metrics of the specified font. Metrics that are not cached
+	 * are created for the specified context and added to the cache.
+	 * @param font Font.
+	 * @param fontRenderContext Context in which the font is rendered.
+	 * @return Font metrics.
+	 */
+	public FontMetrics get(Font font, FontRenderContext fontRenderContext) {
+		Key key = new Key(font, fontRenderContext);
+		FontMetrics fontMetrics;
+		synchronized (metrics) {
+			fontMetrics = metrics.get(key);
+		}
+		if (fontMetrics != null) {
+			hitCount.incrementAndGet();
+			return fontMetrics;
+		}
+		missCount.incrementAndGet();
+		fontMetrics = createFontMetrics(font, fontRenderContext);
+		synchronized (metrics) {
+			metrics.put(key, fontMetrics);
+		}
+		return fontMetrics;
+	}
+
+	private static FontMetrics createFontMetrics(Font font, FontRenderContext fontRenderContext) {
+		BufferedImage bi =
+			new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB_PRE);
+		Graphics2D g = bi.createGraphics();
+		// The metrics use the font render context of the graphics object
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+			fontRenderContext.getAntiAliasingHint());
+		g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS,
+			fontRenderContext.getFractionalMetricsHint());
+		g.setTransform(fontRenderContext.getTransform());
+		FontMetrics fontMetrics = g.getFontMetrics(font);
+		g.dispose();
+		return fontMetrics;
+	}
+
+	/**
+	 * Returns the number of requests that were answered from the cache.
+	 * @return Number of hits.
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * Returns the number of requests for which metrics had to be created.
+	 * @return Number of misses.
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * Returns the number of cached entries.
+	 * @return Number of entries.
+	 */
+	public int size() {
+		synchronized (metrics) {
+			return metrics.size();
+		}
+	}
+
+	/**
+	 * Removes all entries from the cache and resets the counters.
+	 */
+	public void clear() {
+		synchronized (metrics) {
+			metrics.clear();
+		}
+		hitCount.set(0L);
+		missCount.set(0L);
+	}
+
+	private static final class Key {
+		private final Font font;
+		private final FontRenderContext fontRenderContext;
+
+		public Key(Font font, FontRenderContext fontRenderContext) {
+			this.font = font;
+			this.fontRenderContext = fontRenderContext;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key o = (Key) obj;
+			return Objects.equals(font, o.font) && Objects.equals(fontRenderContext, o.fontRenderContext);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(font)*31 + Objects.hashCode(fontRenderContext);
+		}
+	}
+}
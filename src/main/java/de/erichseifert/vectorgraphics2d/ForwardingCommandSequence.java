@@ -0,0 +1,63 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d;
+
+import de.erichseifert.vectorgraphics2d.intermediate.CommandSink;
+import de.erichseifert.vectorgraphics2d.intermediate.MutableCommandSequence;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.Command;
+
+/**
+ * Command sequence that passes its commands on to a {@code CommandSink}
+ * whenever a certain number of commands has been recorded. The storage is
+ * cleared and reused afterwards, so the memory needed for recording does not
+ * grow with the size of the drawing.
+ */
+class ForwardingCommandSequence extends MutableCommandSequence {
+	private final CommandSink sink;
+	private final int chunkSize;
+
+	public ForwardingCommandSequence(CommandSink sink, int chunkSize) {
+		if (sink == null) {
+			throw new NullPointerException("Sink cannot be null.");
+		}
+		this.sink = sink;
+		this.chunkSize = chunkSize;
+	}
+
+	@Override
+	protected void beforeAdd() {
+		if (size() >= chunkSize) {
+			flush();
+		}
+	}
+
+	/**
+	 * Passes all recorded commands to the sink and removes them from this
+	 * sequence.
+	 */
+	public void flush() {
+		for (Command<?> command : this) {
+			sink.add(command);
+		}
+		clear();
+	}
+}
@@ -0,0 +1,340 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d;
+
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.font.TextAttribute;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+import java.text.AttributedString;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import de.erichseifert.vectorgraphics2d.intermediate.CommandSequence;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.AffineTransformCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.Command;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.CreateCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DisposeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawEllipseCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawImageCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawLineCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawMarkersCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawRectangleCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawShapeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawStringCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawStyledStringCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawTransformedImageCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillEllipseCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillMarkersCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillRectangleCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillShapeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.Group;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetBackgroundCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetClipCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetColorCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetCompositeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetFontCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetHintCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetPaintCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetStrokeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetTransformCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetXORModeCommand;
+
+/**
+ * <p>Draws recorded commands onto another {@code Graphics2D} object, for
+ * example the graphics of a {@code BufferedImage}. This way, one recording
+ * can be exported to vector formats and rendered as raster image.</p>
+ * <p>Changes of the graphics state are collected and applied only before
+ * the next drawing operation, so consecutive changes of the same property
+ * result in a single call on the target. Each {@code CreateCommand} creates
+ * a child graphics object of the target, which is disposed by the matching
+ * {@code DisposeCommand}. Transformations and clipping shapes are applied
+ * relative to the transformation and clipping shape the target has when
+ * the replay starts.</p>
+ * <pre>
+ * BufferedImage image = new BufferedImage(200, 100, BufferedImage.TYPE_INT_ARGB);
+ * Graphics2D g = image.createGraphics();
+ * new GraphicsReplayer(g).replay(vectorGraphics.getCommands());
+ * g.dispose();
+ * </pre>
+ */
+public class GraphicsReplayer {
+	private final Graphics2D target;
+	/** Graphics objects of the enclosing {@code CreateCommand}s. */
+	private final Deque<Graphics2D> parents;
+	private final Line2D.Double line;
+	private final Rectangle2D.Double rectangle;
+	private final Ellipse2D.Double ellipse;
+	private final AffineTransform imageTransform;
+
+	private Graphics2D graphics;
+	private AffineTransform baseTransform;
+	private Shape baseClip;
+
+	private Paint pendingPaint;
+	private Stroke pendingStroke;
+	private Font pendingFont;
+	private Color pendingBackground;
+	/** Pending {@code Composite}, or {@code Color} of a pending XOR mode. */
+	private Object pendingComposite;
+	private AffineTransform pendingTransform;
+	private RenderingHints pendingHints;
+
+	/**
+	 * Initializes a new replayer which draws onto the specified graphics
+	 * object.
+	 * @param target Graphics object that receives the drawing operations.
+	 */
+	public GraphicsReplayer(Graphics2D target) {
+		if (target == null) {
+			throw new NullPointerException("Target cannot be null.");
+		}
+		this.target = target;
+		parents = new ArrayDeque<>();
+		line = new Line2D.Double();
+		rectangle = new Rectangle2D.Double();
+		ellipse = new Ellipse2D.Double();
+		imageTransform = new AffineTransform();
+	}
+
+	/**
+	 * Draws all commands of the specified sequence onto the target. Graphics
+	 * objects that were created by the sequence and not disposed are
+	 * disposed at the end.
+	 * @param commands Commands to be drawn.
+	 */
+	public void replay(CommandSequence commands) {
+		graphics = target;
+		baseTransform = target.getTransform();
+		baseClip = target.getClip();
+		try {
+			replay((Iterable<Command<?>>) commands);
+		} finally {
+			while (!parents.isEmpty()) {
+				dispose();
+			}
+			discardPendingState();
+			graphics = null;
+		}
+	}
+
+	private void replay(Iterable<Command<?>> commands) {
+		for (Command<?> command : commands) {
+			if (command instanceof Group) {
+				replay(((Group) command).getValue());
+			} else {
+				replay(command);
+			}
+		}
+	}
+
+	private void replay(Command<?> command) {
+		if (command instanceof SetColorCommand) {
+			pendingPaint = ((SetColorCommand) command).getValue();
+		} else if (command instanceof SetPaintCommand) {
+			pendingPaint = ((SetPaintCommand) command).getValue();
+		} else if (command instanceof SetStrokeCommand) {
+			pendingStroke = ((SetStrokeCommand) command).getValue();
+		} else if (command instanceof SetFontCommand) {
+			pendingFont = ((SetFontCommand) command).getValue();
+		} else if (command instanceof SetBackgroundCommand) {
+			pendingBackground = ((SetBackgroundCommand) command).getValue();
+		} else if (command instanceof SetCompositeCommand) {
+			pendingComposite = ((SetCompositeCommand) command).getValue();
+		} else if (command instanceof SetXORModeCommand) {
+			pendingComposite = ((SetXORModeCommand) command).getValue();
+		} else if (command instanceof SetHintCommand) {
+			SetHintCommand c = (SetHintCommand) command;
+			if (pendingHints == null) {
+				pendingHints = new RenderingHints(null);
+			}
+			pendingHints.put(c.getKey(), c.getValue());
+		} else if (command instanceof SetTransformCommand) {
+			pendingTransform = new AffineTransform(baseTransform);
+			pendingTransform.concatenate(((SetTransformCommand) command).getValue());
+		} else if (command instanceof AffineTransformCommand) {
+			if (pendingTransform == null) {
+				pendingTransform = graphics.getTransform();
+			}
+			((AffineTransformCommand) command).applyTo(pendingTransform);
+		} else if (command instanceof SetClipCommand) {
+			// The clipping shape depends on the current transformation
+			applyPendingState();
+			setClip(((SetClipCommand) command).getValue());
+		} else if (command instanceof CreateCommand) {
+			applyPendingState();
+			parents.push(graphics);
+			graphics = (Graphics2D) graphics.create();
+		} else if (command instanceof DisposeCommand) {
+			if (!parents.isEmpty()) {
+				dispose();
+			}
+		} else {
+			applyPendingState();
+			draw(command);
+		}
+	}
+
+	private void draw(Command<?> command) {
+		if (command instanceof DrawLineCommand) {
+			DrawLineCommand c = (DrawLineCommand) command;
+			line.setLine(c.getX1(), c.getY1(), c.getX2(), c.getY2());
+			graphics.draw(line);
+		} else if (command instanceof DrawRectangleCommand) {
+			DrawRectangleCommand c = (DrawRectangleCommand) command;
+			rectangle.setRect(c.getX(), c.getY(), c.getWidth(), c.getHeight());
+			graphics.draw(rectangle);
+		} else if (command instanceof FillRectangleCommand) {
+			FillRectangleCommand c = (FillRectangleCommand) command;
+			rectangle.setRect(c.getX(), c.getY(), c.getWidth(), c.getHeight());
+			graphics.fill(rectangle);
+		} else if (command instanceof DrawEllipseCommand) {
+			DrawEllipseCommand c = (DrawEllipseCommand) command;
+			ellipse.setFrame(c.getX(), c.getY(), c.getWidth(), c.getHeight());
+			graphics.draw(ellipse);
+		} else if (command instanceof FillEllipseCommand) {
+			FillEllipseCommand c = (FillEllipseCommand) command;
+			ellipse.setFrame(c.getX(), c.getY(), c.getWidth(), c.getHeight());
+			graphics.fill(ellipse);
+		} else if (command instanceof DrawMarkersCommand) {
+			DrawMarkersCommand c = (DrawMarkersCommand) command;
+			drawMarkers(c.getMarker(), c.getPositions(), false);
+		} else if (command instanceof FillMarkersCommand) {
+			FillMarkersCommand c = (FillMarkersCommand) command;
+			drawMarkers(c.getMarker(), c.getPositions(), true);
+		} else if (command instanceof DrawShapeCommand) {
+			graphics.draw(((DrawShapeCommand) command).getValue());
+		} else if (command instanceof FillShapeCommand) {
+			graphics.fill(((FillShapeCommand) command).getValue());
+		} else if (command instanceof DrawStringCommand) {
+			DrawStringCommand c = (DrawStringCommand) command;
+			graphics.drawString(c.getValue(), (float) c.getX(), (float) c.getY());
+		} else if (command instanceof DrawStyledStringCommand) {
+			DrawStyledStringCommand c = (DrawStyledStringCommand) command;
+			AttributedString text = new AttributedString(c.getValue());
+			for (int run = 0; run < c.getRunCount(); run++) {
+				int start = c.getRunStart(run);
+				int limit = c.getRunLimit(run);
+				text.addAttribute(TextAttribute.FONT, c.getFont(run), start, limit);
+				if (c.getColor(run) != null) {
+					text.addAttribute(TextAttribute.FOREGROUND, c.getColor(run), start, limit);
+				}
+			}
+			graphics.drawString(text.getIterator(), (float) c.getX(), (float) c.getY());
+		} else if (command instanceof DrawImageCommand) {
+			DrawImageCommand c = (DrawImageCommand) command;
+			imageTransform.setToTranslation(c.getX(), c.getY());
+			imageTransform.scale(c.getWidth()/c.getSourceWidth(), c.getHeight()/c.getSourceHeight());
+			imageTransform.translate(-c.getSourceX(), -c.getSourceY());
+			if (c.isCropped()) {
+				Shape clip = graphics.getClip();
+				graphics.clip(new Rectangle2D.Double(c.getX(), c.getY(), c.getWidth(), c.getHeight()));
+				graphics.drawImage(c.getValue(), imageTransform, null);
+				graphics.setClip(clip);
+			} else {
+				graphics.drawImage(c.getValue(), imageTransform, null);
+			}
+		} else if (command instanceof DrawTransformedImageCommand) {
+			DrawTransformedImageCommand c = (DrawTransformedImageCommand) command;
+			graphics.drawImage(c.getValue(), c.getTransform(), null);
+		}
+	}
+
+	private void drawMarkers(Shape marker, double[] positions, boolean fill) {
+		AffineTransform transform = graphics.getTransform();
+		for (int i = 0; i < positions.length; i += 2) {
+			graphics.translate(positions[i], positions[i + 1]);
+			if (fill) {
+				graphics.fill(marker);
+			} else {
+				graphics.draw(marker);
+			}
+			graphics.setTransform(transform);
+		}
+	}
+
+	private void setClip(Shape clip) {
+		if (baseClip == null) {
+			graphics.setClip(clip);
+			return;
+		}
+		AffineTransform transform = graphics.getTransform();
+		graphics.setTransform(baseTransform);
+		graphics.setClip(baseClip);
+		graphics.setTransform(transform);
+		if (clip != null) {
+			graphics.clip(clip);
+		}
+	}
+
+	private void dispose() {
+		discardPendingState();
+		graphics.dispose();
+		graphics = parents.pop();
+	}
+
+	private void applyPendingState() {
+		if (pendingHints != null) {
+			graphics.addRenderingHints(pendingHints);
+		}
+		if (pendingPaint != null) {
+			graphics.setPaint(pendingPaint);
+		}
+		if (pendingStroke != null) {
+			graphics.setStroke(pendingStroke);
+		}
+		if (pendingFont != null) {
+			graphics.setFont(pendingFont);
+		}
+		if (pendingBackground != null) {
+			graphics.setBackground(pendingBackground);
+		}
+		if (pendingComposite instanceof Color) {
+			graphics.setXORMode((Color) pendingComposite);
+		} else if (pendingComposite != null) {
+			graphics.setComposite((Composite) pendingComposite);
+		}
+		if (pendingTransform != null) {
+			graphics.setTransform(pendingTransform);
+		}
+		discardPendingState();
+	}
+
+	private void discardPendingState() {
+		pendingPaint = null;
+		pendingStroke = null;
+		pendingFont = null;
+		pendingBackground = null;
+		pendingComposite = null;
+		pendingTransform = null;
+		pendingHints = null;
+	}
+}
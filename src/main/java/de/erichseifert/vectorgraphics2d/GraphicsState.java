@@ -34,6 +34,7 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Rectangle2D;
 
+import de.erichseifert.vectorgraphics2d.util.ClipIntersection;
 import de.erichseifert.vectorgraphics2d.util.GraphicsUtils;
 
 /**
@@ -49,7 +50,7 @@ public class GraphicsState implements Cloneable {
 	/** Default composite mode. */
 	public static final Composite DEFAULT_COMPOSITE = AlphaComposite.SrcOver;
 	/** Default font. */
-	public static final Font DEFAULT_FONT = Font.decode(null);
+	public static final Font DEFAULT_FONT = new Font(Font.DIALOG, Font.PLAIN, 12);
 	/** Default paint. */
 	public static final Color DEFAULT_PAINT = DEFAULT_COLOR;
 	/** Default stroke. */
@@ -94,6 +95,23 @@ public class GraphicsState implements Cloneable {
 		xorMode = DEFAULT_XOR_MODE;
 	}
 
+	/**
+	 * Restores the default values of all properties. The objects storing
+	 * rendering hints and transformation are reused.
+	 */
+	public void reset() {
+		hints.clear();
+		background = DEFAULT_BACKGROUND;
+		color = DEFAULT_COLOR;
+		clip = DEFAULT_CLIP;
+		composite = DEFAULT_COMPOSITE;
+		font = DEFAULT_FONT;
+		paint = DEFAULT_PAINT;
+		stroke = DEFAULT_STROKE;
+		transform.setTransform(DEFAULT_TRANSFORM);
+		xorMode = DEFAULT_XOR_MODE;
+	}
+
 	@Override
 	public Object clone() throws CloneNotSupportedException {
 		GraphicsState clone = (GraphicsState) super.clone();
@@ -110,6 +128,9 @@ public class GraphicsState implements Cloneable {
         if (tx == null || tx.isIdentity()) {
             return GraphicsUtils.clone(s);
         }
+		if (s instanceof ClipIntersection) {
+			return ((ClipIntersection) s).createTransformedShape(tx);
+		}
 		boolean isRectangle = s instanceof Rectangle2D;
 		int nonRectlinearTxMask = AffineTransform.TYPE_GENERAL_TRANSFORM |
 				AffineTransform.TYPE_GENERAL_ROTATION;
@@ -177,6 +198,25 @@ public class GraphicsState implements Cloneable {
 		this.clip = transformShape(clip);
 	}
 
+	/**
+	 * Returns whether the specified clipping shape results in the same clipping
+	 * area as the current clipping shape when it is set with the current
+	 * transformation.
+	 * @param clip Clipping shape in user space.
+	 * @return {@code true} if the clipping areas are equal, {@code false} otherwise.
+	 */
+	public boolean isClipEqual(Shape clip) {
+		if (clip == null || this.clip == null) {
+			return clip == this.clip;
+		}
+		Shape deviceClip = transform.isIdentity() ? clip : transformShape(clip);
+		if (this.clip instanceof ClipIntersection || deviceClip instanceof ClipIntersection) {
+			// Comparing the paths would compute the intersections
+			return this.clip.equals(deviceClip);
+		}
+		return this.clip.equals(deviceClip) || GraphicsUtils.equals(this.clip, deviceClip);
+	}
+
 	public Composite getComposite() {
 		return composite;
 	}
@@ -213,10 +253,69 @@ public class GraphicsState implements Cloneable {
 		return new AffineTransform(transform);
 	}
 
+	/**
+	 * Returns the current transformation without copying it. The returned
+	 * object changes with the state and must not be modified.
+	 * @return Current transformation.
+	 */
+	AffineTransform getTransformInstance() {
+		return transform;
+	}
+
 	public void setTransform(AffineTransform tx) {
 		transform.setTransform(tx);
 	}
 
+	/**
+	 * Concatenates the current transformation with a translation.
+	 * The transformation is modified in place.
+	 * @param tx Distance in x direction.
+	 * @param ty Distance in y direction.
+	 */
+	public void translate(double tx, double ty) {
+		transform.translate(tx, ty);
+	}
+
+	/**
+	 * Concatenates the current transformation with a scaling.
+	 * The transformation is modified in place.
+	 * @param sx Scaling factor in x direction.
+	 * @param sy Scaling factor in y direction.
+	 */
+	public void scale(double sx, double sy) {
+		transform.scale(sx, sy);
+	}
+
+	/**
+	 * Concatenates the current transformation with a rotation around the
+	 * specified point. The transformation is modified in place.
+	 * @param theta Angle in radians.
+	 * @param x X coordinate of the center.
+	 * @param y Y coordinate of the center.
+	 */
+	public void rotate(double theta, double x, double y) {
+		transform.rotate(theta, x, y);
+	}
+
+	/**
+	 * Concatenates the current transformation with a shearing.
+	 * The transformation is modified in place.
+	 * @param shx Shearing factor in x direction.
+	 * @param shy Shearing factor in y direction.
+	 */
+	public void shear(double shx, double shy) {
+		transform.shear(shx, shy);
+	}
+
+	/**
+	 * Concatenates the current transformation with the specified
+	 * transformation. The transformation is modified in place.
+	 * @param tx Transformation to be concatenated.
+	 */
+	public void transform(AffineTransform tx) {
+		transform.concatenate(tx);
+	}
+
 	public Color getXorMode() {
 		return xorMode;
 	}
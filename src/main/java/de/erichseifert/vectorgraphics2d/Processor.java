@@ -21,8 +21,14 @@
  */
 package de.erichseifert.vectorgraphics2d;
 
+import java.awt.geom.Rectangle2D;
+import java.io.OutputStream;
+
+import de.erichseifert.vectorgraphics2d.intermediate.CommandIndex;
 import de.erichseifert.vectorgraphics2d.intermediate.CommandSequence;
+import de.erichseifert.vectorgraphics2d.intermediate.CommandSink;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.Command;
+import de.erichseifert.vectorgraphics2d.intermediate.filters.RegionFilter;
 import de.erichseifert.vectorgraphics2d.util.PageSize;
 
 /**
@@ -36,4 +42,54 @@ public interface Processor {
 	 * @return {@code Document} representation of the commands.
 	 */
 	Document getDocument(CommandSequence commands, PageSize pageSize);
+
+	/**
+	 * Constructs a {@code Document} from the commands recorded by the
+	 * specified graphics object. The page is fitted to the content bounds
+	 * that were tracked while recording, so the commands are not processed
+	 * an additional time to determine the extent of the drawing.
+	 * @param graphics Graphics object that tracks its content bounds.
+	 * @param margin Space that is added on each side of the content.
+	 * @return {@code Document} representation of the commands.
+	 * @throws IllegalStateException if content bounds are not tracked.
+	 * @see VectorGraphics2D#setContentBoundsTrackingEnabled(boolean)
+	 */
+	default Document getDocument(VectorGraphics2D graphics, double margin) {
+		return getDocument(graphics.getCommands(), graphics.getContentPageSize(margin));
+	}
+
+	/**
+	 * Constructs a {@code Document} that shows a region of the specified
+	 * commands. Only the drawing commands that intersect the region are
+	 * written, together with the state changes they need, so the size of
+	 * the document depends on the visible content instead of the whole
+	 * sequence. The page covers the region.
+	 * @param commands Commands used to create the {@code Document}.
+	 * @param index Index that was built from the same commands.
+	 * @param region Region in device space.
+	 * @return {@code Document} representation of the region.
+	 * @see RegionFilter
+	 */
+	default Document getDocument(CommandSequence commands, CommandIndex index, Rectangle2D region) {
+		return getDocument(new RegionFilter(commands, index, region), new PageSize(region));
+	}
+
+	/**
+	 * Returns a sink that writes a {@code Document} to the specified stream
+	 * while commands are added to it. The document is complete when the sink
+	 * has been closed; the stream itself is not closed.
+	 * <p>The default implementation keeps all commands until the sink is
+	 * closed and then writes the document returned by
+	 * {@link #getDocument(CommandSequence, PageSize)}. Processors that are
+	 * able to write documents incrementally override this method, so that
+	 * the memory needed does not depend on the number of commands. The EPS
+	 * and PDF processors do; SVG documents are built in memory and use the
+	 * default implementation.</p>
+	 * @param pageSize Size of the resulting {@code Document}.
+	 * @param out Stream the document is written to.
+	 * @return Sink that accepts the commands of the document.
+	 */
+	default CommandSink getSink(PageSize pageSize, OutputStream out) {
+		return new DocumentSink(this, pageSize, out);
+	}
 }
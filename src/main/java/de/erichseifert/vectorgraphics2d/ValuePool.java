@@ -0,0 +1,127 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Stroke;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * <p>Pool that maps equal state values to a single canonical instance.
+ * Recordings that set the same colors, strokes, or fonts many times only
+ * retain one instance per distinct value, and commands with equal values
+ * can be compared by identity.</p>
+ * <p>Only values of types that are known to be immutable are interned:
+ * {@code Color}, {@code BasicStroke}, and {@code Font}. Instances of
+ * subclasses are returned unchanged. A pool can be shared between several
+ * {@link VectorGraphics2D} instances and may be used from multiple threads
+ * concurrently.</p>
+ * <p>The pool only holds weak references to its values. A value is removed
+ * as soon as neither the recordings nor the caller use it any more, so a pool
+ * that lives as long as the application does not grow without limit.</p>
+ */
+public class ValuePool {
+	private final Map<Object, WeakReference<Object>> values;
+
+	/**
+	 * Initializes a new empty pool.
+	 */
+	public ValuePool() {
+		values = new WeakHashMap<>();
+	}
+
+	/**
+	 * Returns the canonical instance of the specified color.
+	 * @param color Color.
+	 * @return A color equal to the specified color.
+	 */
+	public Color intern(Color color) {
+		if (color == null || color.getClass() != Color.class) {
+			return color;
+		}
+		return internValue(color);
+	}
+
+	/**
+	 * Returns the canonical instance of the specified stroke.
+	 * @param stroke Stroke.
+	 * @return A stroke equal to the specified stroke.
+	 */
+	public Stroke intern(Stroke stroke) {
+		if (stroke == null || stroke.getClass() != BasicStroke.class) {
+			return stroke;
+		}
+		return internValue(stroke);
+	}
+
+	/**
+	 * Returns the canonical instance of the specified font.
+	 * @param font Font.
+	 * @return A font equal to the specified font.
+	 */
+	public Font intern(Font font) {
+		if (font == null || font.getClass() != Font.class) {
+			return font;
+		}
+		return internValue(font);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T internValue(T value) {
+		synchronized (values) {
+			Object canonical = get(value);
+			if (canonical == null) {
+				values.put(value, new WeakReference<Object>(value));
+				canonical = value;
+			}
+			return (T) canonical;
+		}
+	}
+
+	private Object get(Object value) {
+		WeakReference<Object> reference = values.get(value);
+		return reference != null ? reference.get() : null;
+	}
+
+	/**
+	 * Returns the number of distinct values in this pool.
+	 * @return Number of values.
+	 */
+	public int size() {
+		synchronized (values) {
+			return values.size();
+		}
+	}
+
+	/**
+	 * Removes all values from this pool.
+	 */
+	public void clear() {
+		synchronized (values) {
+			values.clear();
+		}
+	}
+}
@@ -42,26 +42,30 @@ import java.awt.Shape;
 import java.awt.Stroke;
 import java.awt.font.FontRenderContext;
 import java.awt.font.GlyphVector;
+import java.awt.font.TextAttribute;
 import java.awt.font.TextLayout;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Arc2D;
-import java.awt.geom.Area;
-import java.awt.geom.Ellipse2D;
-import java.awt.geom.Line2D;
-import java.awt.geom.Path2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.geom.RoundRectangle2D;
-import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
 import java.awt.image.BufferedImageOp;
 import java.awt.image.ImageObserver;
 import java.awt.image.RenderedImage;
 import java.awt.image.renderable.RenderableImage;
 import java.text.AttributedCharacterIterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 
 import de.erichseifert.vectorgraphics2d.intermediate.CommandSequence;
+import de.erichseifert.vectorgraphics2d.intermediate.CommandSink;
 import de.erichseifert.vectorgraphics2d.intermediate.MutableCommandSequence;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.Command;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.CreateCommand;
@@ -69,9 +73,9 @@ import de.erichseifert.vectorgraphics2d.intermediate.commands.DisposeCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawImageCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawShapeCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawStringCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawStyledStringCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawTransformedImageCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.FillShapeCommand;
-import de.erichseifert.vectorgraphics2d.intermediate.commands.RotateCommand;
-import de.erichseifert.vectorgraphics2d.intermediate.commands.ScaleCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.SetBackgroundCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.SetClipCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.SetColorCommand;
@@ -82,10 +86,9 @@ import de.erichseifert.vectorgraphics2d.intermediate.commands.SetPaintCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.SetStrokeCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.SetTransformCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.SetXORModeCommand;
-import de.erichseifert.vectorgraphics2d.intermediate.commands.ShearCommand;
-import de.erichseifert.vectorgraphics2d.intermediate.commands.TransformCommand;
-import de.erichseifert.vectorgraphics2d.intermediate.commands.TranslateCommand;
+import de.erichseifert.vectorgraphics2d.util.ClipIntersection;
 import de.erichseifert.vectorgraphics2d.util.GraphicsUtils;
+import de.erichseifert.vectorgraphics2d.util.PageSize;
 
 /**
  * <p>Implementation of the Graphics2D interface to Java to generate a sequence of
@@ -96,35 +99,184 @@ import de.erichseifert.vectorgraphics2d.util.GraphicsUtils;
  * @see <a href="http://www.java2s.com/Code/Java/2D-Graphics-GUI/YourownGraphics2D.htm">http://www.java2s.com/Code/Java/2D-Graphics-GUI/YourownGraphics2D.htm</a>
  */
 public class VectorGraphics2D extends Graphics2D implements Cloneable {
-	private final MutableCommandSequence commands;
-	/** Device configuration settings. */
-	private final GraphicsConfiguration deviceConfig;
-	/** Context settings used to render fonts. */
-	private final FontRenderContext fontRenderContext;
+	/** Number of commands that are collected before they are passed to a sink. */
+	private static final int SINK_CHUNK_SIZE = 256;
+	/** Maximum number of font metrics that are cached. */
+	private static final int FONT_METRICS_CACHE_SIZE = 256;
+	/** Font metrics shared by all graphics objects. */
+	private static final FontMetricsCache FONT_METRICS = new FontMetricsCache(FONT_METRICS_CACHE_SIZE);
+	/** Text attributes that change the font of styled text. */
+	private static final Collection<TextAttribute> FONT_ATTRIBUTES = Arrays.asList(
+		TextAttribute.FAMILY, TextAttribute.WEIGHT, TextAttribute.POSTURE,
+		TextAttribute.SIZE, TextAttribute.TRANSFORM
+	);
+	/** Stroke that is set at the beginning of each recording. */
+	private static final Stroke INITIAL_STROKE =
+		new BasicStroke(1f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10f, null, 0f);
+
+	/** Sequence this graphics object records into. Graphics objects created by {@link #create()} may have their own. */
+	private MutableCommandSequence commands;
+	/** Pool of canonical state values shared by all graphics objects of a recording. */
+	private final ValuePool valuePool;
+	/** Number of state commands of the recording that were skipped because they did not change the state. */
+	private final AtomicLong suppressedCommandCount;
 	/** Flag that tells whether this graphics object has been disposed. */
 	private boolean disposed;
+	/** Flag that tells whether XOR mode has been set after the last change of the composite. */
+	private boolean xorModeActive;
+	/** Flag that tells whether the geometry of shapes is copied into the command sequence. */
+	private boolean shapeCaptureEnabled;
+	/** Flag that tells whether graphics objects created by this object record into their own sequence. */
+	private boolean parallelRecordingEnabled;
+	/** Flag that tells whether this object records into a sequence that is nested in the sequence of its parent. */
+	private boolean nestedRecording;
+	/** Flag that tells whether this object records into the sequence of the object it was created from. */
+	private boolean sharedRecording;
+	/** Bounds of the content drawn into the command sequence of this object, shared with created graphics objects that record into the same sequence. */
+	private ContentBounds contentBounds;
+	/** Flag that tells whether drawn content is added to the content bounds. */
+	private boolean contentBoundsTrackingEnabled;
 
 	private GraphicsState state;
 
+	/**
+	 * Initializes a new graphics object with its own pool of state values.
+	 */
 	public VectorGraphics2D() {
-		this.commands = new MutableCommandSequence();
-		emit(new CreateCommand(this));
-		GraphicsEnvironment graphicsEnvironment = GraphicsEnvironment.getLocalGraphicsEnvironment();
-		if (!graphicsEnvironment.isHeadlessInstance()) {
-			GraphicsDevice graphicsDevice = graphicsEnvironment.getDefaultScreenDevice();
-			deviceConfig = graphicsDevice.getDefaultConfiguration();
-		} else {
-			deviceConfig = null;
-		}
-		fontRenderContext = new FontRenderContext(null, false, true);
+		this(new ValuePool());
+	}
 
+	/**
+	 * Initializes a new graphics object that canonicalizes colors, strokes,
+	 * and fonts using the specified pool. The pool may be shared between
+	 * several recordings.
+	 * @param valuePool Pool of state values.
+	 */
+	public VectorGraphics2D(ValuePool valuePool) {
+		this(valuePool, new MutableCommandSequence());
+	}
+
+	/**
+	 * Initializes a new graphics object that passes its commands to the
+	 * specified sink instead of keeping them. Only a small number of recent
+	 * commands is held in memory by this object. Whether the whole document
+	 * is written with bounded memory depends on the sink: the sinks of the EPS
+	 * and PDF processors write incrementally, while the sink of the SVG
+	 * processor still keeps all commands until it is closed.
+	 * <p>Commands are passed on in chunks. All pending commands are passed
+	 * on when a graphics object of the recording is disposed, so this object
+	 * has to be disposed before the sink is closed. {@link #getCommands()}
+	 * only returns the pending commands.</p>
+	 * @param sink Sink that receives the commands.
+	 */
+	public VectorGraphics2D(CommandSink sink) {
+		this(new ValuePool(), new ForwardingCommandSequence(sink, SINK_CHUNK_SIZE));
+	}
+
+	private VectorGraphics2D(ValuePool valuePool, MutableCommandSequence commands) {
+		if (valuePool == null) {
+			throw new NullPointerException("Value pool cannot be null.");
+		}
+		this.valuePool = valuePool;
+		this.suppressedCommandCount = new AtomicLong();
+		this.contentBounds = new ContentBounds();
+		this.commands = commands;
 		state = new GraphicsState();
 
+		startRecording();
+	}
+
+	/**
+	 * Discards all recorded commands and restores the initial state, so that
+	 * this object can be used for a new recording. In contrast to creating a
+	 * new object, the storage of the command sequence, the value pool, and
+	 * the device settings are kept. Recording options like shape capture,
+	 * parallel recording, and content bounds tracking are disabled again.
+	 * <p>The sequence returned by {@link #getCommands()} is cleared as well,
+	 * so any document created from it has to be written before. Graphics
+	 * objects that were derived by {@link #create()} must not be used after
+	 * a reset.</p>
+	 */
+	public void reset() {
+		commands.clear();
+		suppressedCommandCount.set(0L);
+		contentBounds.clear();
+		disposed = false;
+		xorModeActive = false;
+		shapeCaptureEnabled = false;
+		parallelRecordingEnabled = false;
+		contentBoundsTrackingEnabled = false;
+		state.reset();
+
+		startRecording();
+	}
+
+	/**
+	 * Returns a checkpoint of the current recording. The recording can later
+	 * be rewound to this point with {@link #rewind(Checkpoint)}, for example
+	 * to discard a block that was drawn speculatively and draw it again with
+	 * different parameters.
+	 * @return Checkpoint of the recorded commands and the graphics state.
+	 */
+	public Checkpoint checkpoint() {
+		return new Checkpoint(this, commands.mark(), copyState(state),
+				disposed, xorModeActive, contentBounds.mark());
+	}
+
+	/**
+	 * Discards all commands that were recorded after the specified checkpoint
+	 * and restores the graphics state of that time. Neither the commands
+	 * before the checkpoint nor the ones discarded have to be recorded again,
+	 * and the same checkpoint can be used several times.
+	 * <p>Snapshots taken before are not changed. Graphics objects that were
+	 * derived by {@link #create()} after the checkpoint must not be used
+	 * after rewinding, and checkpoints taken after the specified one become
+	 * invalid once drawing continues.</p>
+	 * <p>Only graphics objects that own their command sequence can be
+	 * rewound. Objects returned by {@link #create()} without parallel
+	 * recording record into the sequence of their parent, where rewinding
+	 * would also discard the commands of the parent and its other children.
+	 * The content bounds are restored in the same way: content drawn by
+	 * children with parallel recording that were created before the
+	 * checkpoint is kept, as their commands are kept as well.</p>
+	 * @param checkpoint Checkpoint of this graphics object.
+	 * @throws IllegalArgumentException if the checkpoint was taken by another
+	 * graphics object.
+	 * @throws IllegalStateException if this object shares the command
+	 * sequence of its parent, or if commands before the checkpoint have
+	 * been removed, for example by {@link #reset()} or because they have
+	 * already been passed to a {@link CommandSink}.
+	 */
+	public void rewind(Checkpoint checkpoint) {
+		if (checkpoint.graphics != this) {
+			throw new IllegalArgumentException("Checkpoint belongs to a different graphics object.");
+		}
+		if (sharedRecording) {
+			throw new IllegalStateException("Graphics objects that share the command sequence of their parent cannot be rewound.");
+		}
+		commands.truncate(checkpoint.mark);
+		state = copyState(checkpoint.state);
+		disposed = checkpoint.disposed;
+		xorModeActive = checkpoint.xorModeActive;
+		contentBounds.truncate(checkpoint.contentBounds);
+	}
+
+	private static GraphicsState copyState(GraphicsState state) {
+		try {
+			return (GraphicsState) state.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void startRecording() {
+		emit(new CreateCommand(this));
+
 		// Ensure that document state matches default state of Graphics2D
 		// TODO: Default graphics state does not need to be printed in the document.
 		// Use filters in the appropriate documents
 		setColor(Color.BLACK); // Required for EPS, PDF, and SVG
-		setStroke(new BasicStroke(1f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10f, null, 0f)); // EPS and PDF
+		setStroke(INITIAL_STROKE); // EPS and PDF
 	}
 
 	@Override
@@ -148,40 +300,24 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 	public void clip(Shape s) {
 		Shape clip = getClip();
 		if ((clip != null) && (s != null)) {
-			s = intersectShapes(clip, s);
+			s = ClipIntersection.intersect(clip, s);
 		}
 		setClip(s);
 	}
 
-	private static Shape intersectShapes(Shape s1, Shape s2) {
-		if (s1 instanceof Rectangle2D && s2 instanceof Rectangle2D) {
-			Rectangle2D r1 = (Rectangle2D) s1;
-			Rectangle2D r2 = (Rectangle2D) s2;
-	        double x1 = Math.max(r1.getMinX(), r2.getMinX());
-	        double y1 = Math.max(r1.getMinY(), r2.getMinY());
-	        double x2 = Math.min(r1.getMaxX(), r2.getMaxX());
-	        double y2 = Math.min(r1.getMaxY(), r2.getMaxY());
-
-	        Rectangle2D intersection = new Rectangle2D.Double();
-	        if ((x2 < x1) || (y2 < y1)) {
-	        	intersection.setFrameFromDiagonal(0, 0, 0, 0);
-	        } else {
-	        	intersection.setFrameFromDiagonal(x1, y1, x2, y2);
-	        }
-	        return intersection;
-        } else {
-			Area intersection = new Area(s1);
-			intersection.intersect(new Area(s2));
-			return intersection;
-        }
-	}
-
 	@Override
 	public void draw(Shape s) {
 		if (isDisposed() || s == null) {
 			return;
 		}
-		emit(new DrawShapeCommand(s));
+		if (contentBoundsTrackingEnabled) {
+			includeDrawnShape(s);
+		}
+		if (isShapeCaptureEnabled()) {
+			commands.addDrawShape(s);
+		} else {
+			emit(new DrawShapeCommand(s));
+		}
 	}
 
 	@Override
@@ -192,33 +328,21 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 
 	@Override
 	public boolean drawImage(Image img, AffineTransform xform, ImageObserver obs) {
-		BufferedImage bimg = getTransformedImage(img, xform);
-		return drawImage(bimg, bimg.getMinX(), bimg.getMinY(),
-			bimg.getWidth(), bimg.getHeight(), null, null);
-	}
+		if (isDisposed() || img == null) {
+			return true;
+		}
 
-	/**
-	 * Returns a transformed version of an image.
-	 * @param image Image to be transformed
-	 * @param xform Affine transform to be applied
-	 * @return Image with transformed content
-	 */
-	private BufferedImage getTransformedImage(Image image,
-			AffineTransform xform) {
-		Integer interpolationType =
-			(Integer) getRenderingHint(RenderingHints.KEY_INTERPOLATION);
-		if (RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR
-				.equals(interpolationType)) {
-			interpolationType = AffineTransformOp.TYPE_NEAREST_NEIGHBOR;
-		} else if (RenderingHints.VALUE_INTERPOLATION_BILINEAR
-				.equals(interpolationType)) {
-			interpolationType = AffineTransformOp.TYPE_BILINEAR;
-		} else {
-			interpolationType = AffineTransformOp.TYPE_BICUBIC;
+		int imageWidth = img.getWidth(obs);
+		int imageHeight = img.getHeight(obs);
+		AffineTransform transform = (xform != null) ? xform : new AffineTransform();
+
+		if (contentBoundsTrackingEnabled) {
+			AffineTransform deviceTransform = new AffineTransform(state.getTransformInstance());
+			deviceTransform.concatenate(transform);
+			contentBounds.add(0.0, 0.0, imageWidth, imageHeight, deviceTransform);
 		}
-		AffineTransformOp op = new AffineTransformOp(xform, interpolationType);
-		BufferedImage bufferedImage = GraphicsUtils.toBufferedImage(image);
-		return op.filter(bufferedImage, null);
+		emit(new DrawTransformedImageCommand(img, imageWidth, imageHeight, transform));
+		return true;
 	}
 
 	@Override
@@ -258,6 +382,11 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 					AffineTransform.getTranslateInstance(x, y));
 			fill(s);
 		} else {
+			if (contentBoundsTrackingEnabled) {
+				Rectangle2D textBounds = getFont().getStringBounds(str, getFontRenderContext());
+				includeBox(x + textBounds.getMinX(), y + textBounds.getMinY(),
+						x + textBounds.getMaxX(), y + textBounds.getMaxY(), 0.0);
+			}
 			emit(new DrawStringCommand(str, x, y));
 		}
 
@@ -271,13 +400,81 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 	@Override
 	public void drawString(AttributedCharacterIterator iterator, float x,
 			float y) {
-		// TODO Draw styled text
-		StringBuilder buf = new StringBuilder();
+		if (isDisposed() || iterator == null) {
+			return;
+		}
+
+		// Collect runs of characters that share font and color; other
+		// attributes are not recorded
+		Font font = getFont();
+		StringBuilder text = new StringBuilder();
+		List<Integer> runLimits = new ArrayList<>();
+		List<Font> fonts = new ArrayList<>();
+		List<Color> colors = new ArrayList<>();
+		boolean colored = false;
 		for (char c = iterator.first(); c != AttributedCharacterIterator.DONE;
-				c = iterator.next()) {
-			buf.append(c);
+				c = iterator.current()) {
+			Map<AttributedCharacterIterator.Attribute, Object> attributes = iterator.getAttributes();
+			Font runFont = font;
+			Object fontAttribute = attributes.get(TextAttribute.FONT);
+			if (fontAttribute instanceof Font) {
+				runFont = (Font) fontAttribute;
+			} else {
+				Map<AttributedCharacterIterator.Attribute, Object> fontAttributes = new HashMap<>(attributes);
+				fontAttributes.keySet().retainAll(FONT_ATTRIBUTES);
+				if (!fontAttributes.isEmpty()) {
+					runFont = font.deriveFont(fontAttributes);
+				}
+			}
+			Object foreground = attributes.get(TextAttribute.FOREGROUND);
+			Color runColor = (foreground instanceof Color) ? (Color) foreground : null;
+			colored |= runColor != null;
+
+			int runLimit = iterator.getRunLimit();
+			for (; iterator.getIndex() < runLimit; c = iterator.next()) {
+				text.append(c);
+			}
+
+			int run = fonts.size() - 1;
+			if (run >= 0 && fonts.get(run).equals(runFont) && Objects.equals(colors.get(run), runColor)) {
+				runLimits.set(run, text.length());
+			} else {
+				runLimits.add(text.length());
+				fonts.add(runFont);
+				colors.add(runColor);
+			}
+		}
+
+		if (fonts.size() <= 1 && !colored) {
+			Font runFont = fonts.isEmpty() ? font : fonts.get(0);
+			if (runFont.equals(font)) {
+				drawString(text.toString(), x, y);
+				return;
+			}
+		}
+		if (text.toString().trim().length() == 0) {
+			return;
+		}
+		if (colored) {
+			// Runs without a foreground color use the current color
+			Color color = getColor();
+			for (int i = 0; i < colors.size(); i++) {
+				if (colors.get(i) == null) {
+					colors.set(i, color);
+				}
+			}
+		}
+
+		int[] limits = new int[runLimits.size()];
+		for (int i = 0; i < limits.length; i++) {
+			limits[i] = runLimits.get(i);
+		}
+		DrawStyledStringCommand command = new DrawStyledStringCommand(text.toString(), x, y,
+				limits, fonts.toArray(new Font[0]), colors.toArray(new Color[0]));
+		if (contentBoundsTrackingEnabled) {
+			includeBox(command.getBounds(getFontRenderContext()), 0.0);
 		}
-		drawString(buf.toString(), x, y);
+		emit(command);
 	}
 
 	@Override
@@ -285,7 +482,14 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 		if (isDisposed() || s == null) {
 			return;
 		}
-		emit(new FillShapeCommand(s));
+		if (contentBoundsTrackingEnabled) {
+			includeBox(s.getBounds2D(), 0.0);
+		}
+		if (isShapeCaptureEnabled()) {
+			commands.addFillShape(s);
+		} else {
+			emit(new FillShapeCommand(s));
+		}
 	}
 
 	@Override
@@ -300,12 +504,12 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 
 	@Override
 	public GraphicsConfiguration getDeviceConfiguration() {
-		return deviceConfig;
+		return DeviceConfigurationHolder.DEVICE_CONFIG;
 	}
 
 	@Override
 	public FontRenderContext getFontRenderContext() {
-		return fontRenderContext;
+		return FontRenderContextHolder.FONT_RENDER_CONTEXT;
 	}
 
 	@Override
@@ -347,9 +551,14 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 
 	@Override
 	public void setBackground(Color color) {
-		if (isDisposed() || color == null || getColor().equals(color)) {
+		if (isDisposed() || color == null) {
+			return;
+		}
+		if (getBackground().equals(color)) {
+			suppress();
 			return;
 		}
+		color = valuePool.intern(color);
 		emit(new SetBackgroundCommand(color));
 		state.setBackground(color);
 	}
@@ -362,8 +571,13 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 		if (comp == null) {
 			throw new IllegalArgumentException("Cannot set a null composite.");
 		}
+		if (!xorModeActive && getComposite().equals(comp)) {
+			suppress();
+			return;
+		}
 		emit(new SetCompositeCommand(comp));
 		state.setComposite(comp);
+		xorModeActive = false;
 	}
 
 	@Override
@@ -376,6 +590,7 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 			return;
 		}
 		if (getPaint().equals(paint)) {
+			suppress();
 			return;
 		}
 		emit(new SetPaintCommand(paint));
@@ -387,7 +602,12 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 		if (isDisposed()) {
 			return;
 		}
-		state.getHints().put(hintKey, hintValue);
+		RenderingHints hints = state.getHints();
+		if (hints.containsKey(hintKey) && Objects.equals(hints.get(hintKey), hintValue)) {
+			suppress();
+			return;
+		}
+		hints.put(hintKey, hintValue);
 		emit(new SetHintCommand(hintKey, hintValue));
 	}
 
@@ -396,9 +616,19 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 		if (isDisposed()) {
 			return;
 		}
+		RenderingHints previousHints = (RenderingHints) state.getHints().clone();
 		state.getHints().clear();
 		for (Entry<?, ?> hint : hints.entrySet()) {
-			setRenderingHint((Key) hint.getKey(), hint.getValue());
+			Key hintKey = (Key) hint.getKey();
+			Object hintValue = hint.getValue();
+			if (previousHints.containsKey(hintKey) &&
+					Objects.equals(previousHints.get(hintKey), hintValue)) {
+				// The documents still know about the previous value
+				state.getHints().put(hintKey, hintValue);
+				suppress();
+			} else {
+				setRenderingHint(hintKey, hintValue);
+			}
 		}
 	}
 
@@ -410,6 +640,11 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 		if (s == null) {
 			throw new IllegalArgumentException("Cannot set a null stroke.");
 		}
+		if (getStroke() == s || getStroke().equals(s)) {
+			suppress();
+			return;
+		}
+		s = valuePool.intern(s);
 		emit(new SetStrokeCommand(s));
 		state.setStroke(s);
 	}
@@ -421,7 +656,11 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 
 	@Override
 	public void setTransform(AffineTransform tx) {
-		if (isDisposed() || tx == null || state.getTransform().equals(tx)) {
+		if (isDisposed() || tx == null) {
+			return;
+		}
+		if (state.getTransform().equals(tx)) {
+			suppress();
 			return;
 		}
 		emit(new SetTransformCommand(tx));
@@ -433,10 +672,8 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 		if (shx == 0.0 && shy == 0.0) {
 			return;
 		}
-		AffineTransform txNew = getTransform();
-		txNew.shear(shx, shy);
-		emit(new ShearCommand(shx, shy));
-		state.setTransform(txNew);
+		commands.addShear(shx, shy);
+		state.shear(shx, shy);
 	}
 
 	@Override
@@ -444,10 +681,8 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 		if (tx.isIdentity()) {
 			return;
 		}
-		AffineTransform txNew = getTransform();
-		txNew.concatenate(tx);
-		emit(new TransformCommand(tx));
-		state.setTransform(txNew);
+		commands.addTransform(tx);
+		state.transform(tx);
 	}
 
 	@Override
@@ -460,10 +695,8 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 		if (tx == 0.0 && ty == 0.0) {
 			return;
 		}
-		AffineTransform txNew = getTransform();
-		txNew.translate(tx, ty);
-		emit(new TranslateCommand(tx, ty));
-		state.setTransform(txNew);
+		commands.addTranslate(tx, ty);
+		state.translate(tx, ty);
 	}
 
 	@Override
@@ -476,16 +709,8 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 		if (theta == 0.0) {
 			return;
 		}
-
-		AffineTransform txNew = getTransform();
-		if (x == 0.0 && y == 0.0) {
-			txNew.rotate(theta);
-		} else {
-			txNew.rotate(theta, x, y);
-		}
-
-		emit(new RotateCommand(theta, x, y));
-		state.setTransform(txNew);
+		commands.addRotate(theta, x, y);
+		state.rotate(theta, x, y);
 	}
 
 	@Override
@@ -493,10 +718,8 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 		if (sx == 1.0 && sy == 1.0) {
 			return;
 		}
-		AffineTransform txNew = getTransform();
-		txNew.scale(sx, sy);
-		emit(new ScaleCommand(sx, sy));
-		state.setTransform(txNew);
+		commands.addScale(sx, sy);
+		state.scale(sx, sy);
 	}
 
 	@Override
@@ -526,7 +749,20 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 		VectorGraphics2D clone = null;
 		try {
 			clone = (VectorGraphics2D) this.clone();
-			emit(new CreateCommand(clone));
+			if (parallelRecordingEnabled && !(commands instanceof ForwardingCommandSequence)) {
+				// The child records into a nested sequence that is placed
+				// where its CreateCommand would otherwise be
+				clone.commands = new MutableCommandSequence();
+				clone.contentBounds = contentBounds.createChild();
+				clone.nestedRecording = true;
+				clone.sharedRecording = false;
+				commands.addSequence(clone.commands);
+				clone.emit(new CreateCommand(clone));
+			} else {
+				clone.nestedRecording = false;
+				clone.sharedRecording = true;
+				emit(new CreateCommand(clone));
+			}
 		} catch (CloneNotSupportedException e) {
 			e.printStackTrace();
 		}
@@ -540,6 +776,12 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 		}
 
 		emit(new DisposeCommand(this));
+		if (commands instanceof ForwardingCommandSequence) {
+			((ForwardingCommandSequence) commands).flush();
+		} else if (nestedRecording) {
+			// Snapshots of the parent include the commands of this object from now on
+			commands.complete();
+		}
 
 		disposed = true;
 	}
@@ -589,6 +831,9 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 			setColor(bgcolorOld);
 		}
 
+		if (contentBoundsTrackingEnabled) {
+			includeBox(x, y, x + width, y + height, 0.0);
+		}
 		emit(new DrawImageCommand(img, imageWidth, imageHeight, x, y, width, height));
 		return true;
 	}
@@ -604,7 +849,7 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 	public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2,
 			int sx1, int sy1, int sx2, int sy2, Color bgcolor,
 			ImageObserver observer) {
-		if (img == null) {
+		if (isDisposed() || img == null) {
 			return true;
 		}
 
@@ -617,48 +862,155 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 		int dw = Math.abs(dx2 - dx1);
 		int dh = Math.abs(dy2 - dy1);
 
-		// Draw image on rectangle
-		BufferedImage bufferedImg = GraphicsUtils.toBufferedImage(img);
-		Image cropped = bufferedImg.getSubimage(sx, sy, sw, sh);
-		return drawImage(cropped, dx, dy, dw, dh, bgcolor, observer);
+		int imageWidth = img.getWidth(observer);
+		int imageHeight = img.getHeight(observer);
+
+		if (bgcolor != null) {
+			// Fill rectangle with bgcolor
+			Color bgcolorOld = getColor();
+			setColor(bgcolor);
+			fill(new Rectangle(dx, dy, dw, dh));
+			setColor(bgcolorOld);
+		}
+
+		// The source region is recorded instead of a cropped copy, so all
+		// regions of an image refer to the same pixels
+		if (contentBoundsTrackingEnabled) {
+			includeBox(dx, dy, dx + dw, dy + dh, 0.0);
+		}
+		emit(new DrawImageCommand(img, imageWidth, imageHeight, sx, sy, sw, sh, dx, dy, dw, dh));
+		return true;
 	}
 
 	@Override
 	public void drawLine(int x1, int y1, int x2, int y2) {
-		draw(new Line2D.Double(x1, y1, x2, y2));
+		if (isDisposed()) {
+			return;
+		}
+		if (contentBoundsTrackingEnabled) {
+			includeDrawnBox(Math.min(x1, x2), Math.min(y1, y2),
+					Math.max(x1, x2), Math.max(y1, y2), true, false);
+		}
+		commands.addDrawLine(x1, y1, x2, y2);
+	}
+
+	/**
+	 * Draws many independent line segments with a single command. This is
+	 * equivalent to calling {@link #drawLine(int, int, int, int)} for each
+	 * segment, but the segments are recorded and written as one path.
+	 * @param coordinates Array containing the start and end point of each
+	 * segment in the order x1, y1, x2, y2.
+	 * @param offset Index of the first coordinate in the array.
+	 * @param count Number of segments.
+	 * @throws IndexOutOfBoundsException if the array does not contain
+	 * {@code count} segments starting at {@code offset}.
+	 */
+	public void drawLines(double[] coordinates, int offset, int count) {
+		if (isDisposed() || count == 0) {
+			return;
+		}
+		commands.addDrawLines(coordinates, offset, count);
+		if (contentBoundsTrackingEnabled) {
+			Rectangle2D linesBounds = getBounds(coordinates, offset, 2*count);
+			includeDrawnBox(linesBounds.getMinX(), linesBounds.getMinY(),
+					linesBounds.getMaxX(), linesBounds.getMaxY(), true, false);
+		}
+	}
+
+	/**
+	 * Draws the outline of the same marker shape at many positions. The
+	 * marker is translated to each position, so its coordinates should be
+	 * relative to the anchor point of the marker. Documents write the marker
+	 * only once and reference it for each position.
+	 * @param marker Shape that is drawn at each position.
+	 * @param positions Array containing the positions in the order x, y.
+	 * @param offset Index of the first coordinate in the array.
+	 * @param count Number of positions.
+	 * @throws IndexOutOfBoundsException if the array does not contain
+	 * {@code count} positions starting at {@code offset}.
+	 */
+	public void drawMarkers(Shape marker, double[] positions, int offset, int count) {
+		if (isDisposed() || marker == null || count == 0) {
+			return;
+		}
+		commands.addDrawMarkers(marker, positions, offset, count);
+		if (contentBoundsTrackingEnabled) {
+			includeMarkers(marker, positions, offset, count, true);
+		}
+	}
+
+	/**
+	 * Fills the same marker shape at many positions. The marker is
+	 * translated to each position, so its coordinates should be relative to
+	 * the anchor point of the marker. Documents write the marker only once
+	 * and reference it for each position.
+	 * @param marker Shape that is filled at each position.
+	 * @param positions Array containing the positions in the order x, y.
+	 * @param offset Index of the first coordinate in the array.
+	 * @param count Number of positions.
+	 * @throws IndexOutOfBoundsException if the array does not contain
+	 * {@code count} positions starting at {@code offset}.
+	 */
+	public void fillMarkers(Shape marker, double[] positions, int offset, int count) {
+		if (isDisposed() || marker == null || count == 0) {
+			return;
+		}
+		commands.addFillMarkers(marker, positions, offset, count);
+		if (contentBoundsTrackingEnabled) {
+			includeMarkers(marker, positions, offset, count, false);
+		}
 	}
 
 	@Override
 	public void drawOval(int x, int y, int width, int height) {
-		draw(new Ellipse2D.Double(x, y, width, height));
+		if (isDisposed() || width < 0 || height < 0) {
+			return;
+		}
+		if (contentBoundsTrackingEnabled) {
+			includeDrawnBox(x, y, x + width, y + height, false, false);
+		}
+		commands.addDrawEllipse(x, y, width, height);
 	}
 
 	@Override
 	public void drawPolygon(Polygon p) {
-		draw(p);
+		if (p == null) {
+			return;
+		}
+		drawPolygon(p.xpoints, p.ypoints, p.npoints);
 	}
 
 	@Override
 	public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) {
-		draw(new Polygon(xPoints, yPoints, nPoints));
+		if (isDisposed() || nPoints <= 0) {
+			return;
+		}
+		if (contentBoundsTrackingEnabled) {
+			includePolygon(xPoints, yPoints, nPoints, true, false, true);
+		}
+		commands.addDrawPolygon(xPoints, yPoints, nPoints);
 	}
 
 	@Override
 	public void drawPolyline(int[] xPoints, int[] yPoints, int nPoints) {
-		Path2D p = new Path2D.Float();
-		for (int i = 0; i < nPoints; i++) {
-			if (i > 0) {
-				p.lineTo(xPoints[i], yPoints[i]);
-			} else {
-				p.moveTo(xPoints[i], yPoints[i]);
-			}
+		if (isDisposed() || nPoints <= 0) {
+			return;
+		}
+		if (contentBoundsTrackingEnabled) {
+			includePolygon(xPoints, yPoints, nPoints, true, true, true);
 		}
-		draw(p);
+		commands.addDrawPolyline(xPoints, yPoints, nPoints);
 	}
 
 	@Override
 	public void drawRect(int x, int y, int width, int height) {
-		draw(new Rectangle(x, y, width, height));
+		if (isDisposed() || width < 0 || height < 0) {
+			return;
+		}
+		if (contentBoundsTrackingEnabled) {
+			includeDrawnBox(x, y, x + width, y + height, false, false);
+		}
+		commands.addDrawRectangle(x, y, width, height);
 	}
 
 	@Override
@@ -677,22 +1029,43 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 
 	@Override
 	public void fillOval(int x, int y, int width, int height) {
-		fill(new Ellipse2D.Double(x, y, width, height));
+		if (isDisposed() || width < 0 || height < 0) {
+			return;
+		}
+		if (contentBoundsTrackingEnabled) {
+			includeBox(x, y, x + width, y + height, 0.0);
+		}
+		commands.addFillEllipse(x, y, width, height);
 	}
 
 	@Override
 	public void fillPolygon(Polygon p) {
-		fill(p);
+		if (p == null) {
+			return;
+		}
+		fillPolygon(p.xpoints, p.ypoints, p.npoints);
 	}
 
 	@Override
 	public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
-		fill(new Polygon(xPoints, yPoints, nPoints));
+		if (isDisposed() || nPoints <= 0) {
+			return;
+		}
+		if (contentBoundsTrackingEnabled) {
+			includePolygon(xPoints, yPoints, nPoints, false, false, false);
+		}
+		commands.addFillPolygon(xPoints, yPoints, nPoints);
 	}
 
 	@Override
 	public void fillRect(int x, int y, int width, int height) {
-		fill(new Rectangle(x, y, width, height));
+		if (isDisposed() || width < 0 || height < 0) {
+			return;
+		}
+		if (contentBoundsTrackingEnabled) {
+			includeBox(x, y, x + width, y + height, 0.0);
+		}
+		commands.addFillRectangle(x, y, width, height);
 	}
 
 	@Override
@@ -727,12 +1100,16 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 
 	@Override
 	public FontMetrics getFontMetrics(Font f) {
-		BufferedImage bi =
-			new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB_PRE);
-	    Graphics g = bi.getGraphics();
-	    FontMetrics fontMetrics = g.getFontMetrics(f);
-	    g.dispose();
-	    return fontMetrics;
+		return FONT_METRICS.get(f, getFontRenderContext());
+	}
+
+	/**
+	 * Returns the cache that is used by all graphics objects to look up font
+	 * metrics.
+	 * @return Font metrics cache.
+	 */
+	public static FontMetricsCache getFontMetricsCache() {
+		return FONT_METRICS;
 	}
 
 	@Override
@@ -740,6 +1117,10 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 		if (isDisposed()) {
 			return;
 		}
+		if (state.isClipEqual(clip)) {
+			suppress();
+			return;
+		}
 		emit(new SetClipCommand(clip));
 		state.setClip(clip);
 	}
@@ -751,9 +1132,14 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 
 	@Override
 	public void setColor(Color c) {
-		if (isDisposed() || c == null || getColor().equals(c)) {
+		if (isDisposed() || c == null) {
+			return;
+		}
+		if (getColor() == c || getColor().equals(c)) {
+			suppress();
 			return;
 		}
+		c = valuePool.intern(c);
 		emit(new SetColorCommand(c));
 		state.setColor(c);
 		state.setPaint(c);
@@ -761,9 +1147,14 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 
 	@Override
 	public void setFont(Font font) {
-		if (isDisposed() || (font != null && getFont().equals(font))) {
+		if (isDisposed()) {
 			return;
 		}
+		if (font != null && getFont().equals(font)) {
+			suppress();
+			return;
+		}
+		font = valuePool.intern(font);
 		emit(new SetFontCommand(font));
 		state.setFont(font);
 	}
@@ -782,8 +1173,108 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 		if (isDisposed() || c1 == null) {
 			return;
 		}
+		if (xorModeActive && getXORMode().equals(c1)) {
+			suppress();
+			return;
+		}
+		c1 = valuePool.intern(c1);
 		emit(new SetXORModeCommand(c1));
 		state.setXorMode(c1);
+		xorModeActive = true;
+	}
+
+	private void includeDrawnShape(Shape s) {
+		double padding = GraphicsUtils.getStrokePadding(getStroke(), true, true);
+		if (padding < 0.0) {
+			includeBox(getStroke().createStrokedShape(s).getBounds2D(), 0.0);
+		} else {
+			includeBox(s.getBounds2D(), padding);
+		}
+	}
+
+	private void includeDrawnBox(double x1, double y1, double x2, double y2,
+			boolean hasEnds, boolean hasJoins) {
+		double padding = GraphicsUtils.getStrokePadding(getStroke(), hasEnds, hasJoins);
+		if (padding < 0.0) {
+			// Other strokes are approximated by stroking the box
+			Shape box = new Rectangle2D.Double(x1, y1, x2 - x1, y2 - y1);
+			includeBox(getStroke().createStrokedShape(box).getBounds2D(), 0.0);
+		} else {
+			includeBox(x1, y1, x2, y2, padding);
+		}
+	}
+
+	private void includePolygon(int[] xPoints, int[] yPoints, int nPoints,
+			boolean stroked, boolean hasEnds, boolean hasJoins) {
+		int minX = xPoints[0], minY = yPoints[0], maxX = minX, maxY = minY;
+		for (int i = 1; i < nPoints; i++) {
+			minX = Math.min(minX, xPoints[i]);
+			minY = Math.min(minY, yPoints[i]);
+			maxX = Math.max(maxX, xPoints[i]);
+			maxY = Math.max(maxY, yPoints[i]);
+		}
+		if (stroked) {
+			includeDrawnBox(minX, minY, maxX, maxY, hasEnds, hasJoins);
+		} else {
+			includeBox(minX, minY, maxX, maxY, 0.0);
+		}
+	}
+
+	private void includeMarkers(Shape marker, double[] positions, int offset,
+			int count, boolean stroked) {
+		Rectangle2D markerBounds;
+		double padding = 0.0;
+		if (!stroked) {
+			markerBounds = marker.getBounds2D();
+		} else {
+			padding = GraphicsUtils.getStrokePadding(getStroke(), true, true);
+			if (padding < 0.0) {
+				markerBounds = getStroke().createStrokedShape(marker).getBounds2D();
+				padding = 0.0;
+			} else {
+				markerBounds = marker.getBounds2D();
+			}
+		}
+		Rectangle2D positionBounds = getBounds(positions, offset, count);
+		includeBox(positionBounds.getMinX() + markerBounds.getMinX(),
+				positionBounds.getMinY() + markerBounds.getMinY(),
+				positionBounds.getMaxX() + markerBounds.getMaxX(),
+				positionBounds.getMaxY() + markerBounds.getMaxY(), padding);
+	}
+
+	private static Rectangle2D getBounds(double[] coordinates, int offset, int pointCount) {
+		double minX = coordinates[offset], minY = coordinates[offset + 1];
+		double maxX = minX, maxY = minY;
+		for (int i = offset + 2; i < offset + 2*pointCount; i += 2) {
+			minX = Math.min(minX, coordinates[i]);
+			minY = Math.min(minY, coordinates[i + 1]);
+			maxX = Math.max(maxX, coordinates[i]);
+			maxY = Math.max(maxY, coordinates[i + 1]);
+		}
+		return new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
+	}
+
+	private void includeBox(Rectangle2D box, double padding) {
+		includeBox(box.getMinX(), box.getMinY(), box.getMaxX(), box.getMaxY(), padding);
+	}
+
+	private void includeBox(double x1, double y1, double x2, double y2, double padding) {
+		contentBounds.add(x1 - padding, y1 - padding, x2 + padding, y2 + padding,
+				state.getTransformInstance());
+	}
+
+	private void suppress() {
+		suppressedCommandCount.incrementAndGet();
+	}
+
+	/**
+	 * Returns the number of state changes that were not recorded because they
+	 * would not have changed the current state. The count includes all
+	 * graphics objects that were created from the same recording.
+	 * @return Number of suppressed state commands.
+	 */
+	public long getSuppressedCommandCount() {
+		return suppressedCommandCount.get();
 	}
 
 	private void emit(Command<?> command) {
@@ -794,6 +1285,128 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 		return disposed;
 	}
 
+	/**
+	 * Returns the pool that is used to canonicalize state values.
+	 * @return Pool of state values.
+	 */
+	public ValuePool getValuePool() {
+		return valuePool;
+	}
+
+	/**
+	 * Returns whether the geometry of drawn and filled shapes is copied into
+	 * the command sequence instead of storing a copy of each {@code Shape}
+	 * object.
+	 * @return {@code true} if shape capture is enabled, {@code false} otherwise.
+	 */
+	public boolean isShapeCaptureEnabled() {
+		return shapeCaptureEnabled;
+	}
+
+	/**
+	 * Sets whether the geometry of drawn and filled shapes is copied into the
+	 * command sequence. If enabled, the path segments of each shape are
+	 * flattened into a compact coordinate storage at the time of the call, so
+	 * callers may reuse a single mutable shape for many primitives without
+	 * allocating a new shape object per call. Shapes are then returned as
+	 * general paths when the commands are read.
+	 * @param shapeCaptureEnabled {@code true} if shapes should be captured,
+	 * {@code false} otherwise.
+	 */
+	public void setShapeCaptureEnabled(boolean shapeCaptureEnabled) {
+		this.shapeCaptureEnabled = shapeCaptureEnabled;
+	}
+
+	/**
+	 * Returns whether graphics objects returned by {@link #create()} record
+	 * into a sequence of their own.
+	 * @return {@code true} if parallel recording is enabled, {@code false}
+	 * otherwise.
+	 */
+	public boolean isParallelRecordingEnabled() {
+		return parallelRecordingEnabled;
+	}
+
+	/**
+	 * Sets whether graphics objects returned by {@link #create()} record into
+	 * a sequence of their own. If enabled, each created object can be used
+	 * by a different thread. Its commands are placed at the position of
+	 * {@code create()} in the sequence of this object, regardless of when
+	 * they were recorded, so the result does not depend on the scheduling of
+	 * the threads. The setting is inherited by created objects.
+	 * <p>The commands of a created object only become visible to other
+	 * threads after the thread that draws has finished, for example after it
+	 * has been joined or its task has completed. All created objects should
+	 * be disposed before the sequence of this object is processed.</p>
+	 * <p>The setting has no effect if commands are passed to a
+	 * {@link CommandSink}.</p>
+	 * @param parallelRecordingEnabled {@code true} if created objects should
+	 * record into their own sequence, {@code false} otherwise.
+	 */
+	public void setParallelRecordingEnabled(boolean parallelRecordingEnabled) {
+		this.parallelRecordingEnabled = parallelRecordingEnabled;
+	}
+
+	/**
+	 * Returns whether the bounds of drawn content are tracked while recording.
+	 * @return {@code true} if content bounds are tracked, {@code false}
+	 * otherwise.
+	 */
+	public boolean isContentBoundsTrackingEnabled() {
+		return contentBoundsTrackingEnabled;
+	}
+
+	/**
+	 * Sets whether the bounds of drawn content are tracked while recording.
+	 * If enabled, the bounds of each shape, text, and image are transformed
+	 * to device space and added to the bounds returned by
+	 * {@link #getContentBounds()} when it is drawn, so the extent of a
+	 * drawing is known without processing the commands again. Outlines are
+	 * extended by the width of the stroke; miter joins are accounted for with
+	 * the miter limit. Clipping is not taken into account.
+	 * <p>Only content drawn while tracking is enabled is included. The setting
+	 * is inherited by graphics objects created by {@link #create()}, which add
+	 * to the bounds of this object. Objects created with parallel recording
+	 * keep bounds of their own that are included in the bounds of this
+	 * object.</p>
+	 * @param contentBoundsTrackingEnabled {@code true} if content bounds
+	 * should be tracked, {@code false} otherwise.
+	 */
+	public void setContentBoundsTrackingEnabled(boolean contentBoundsTrackingEnabled) {
+		this.contentBoundsTrackingEnabled = contentBoundsTrackingEnabled;
+	}
+
+	/**
+	 * Returns the device space bounds of the content that was drawn while
+	 * content bounds tracking was enabled.
+	 * @return Bounds of the content, or {@code null} if nothing was drawn.
+	 * @see #setContentBoundsTrackingEnabled(boolean)
+	 */
+	public Rectangle2D getContentBounds() {
+		return contentBounds.get();
+	}
+
+	/**
+	 * Returns a page size that fits the content that was drawn while content
+	 * bounds tracking was enabled. The page starts at the upper left corner
+	 * of the content, so no space is wasted and nothing is cut off.
+	 * @param margin Space that is added on each side of the content.
+	 * @return Page size enclosing the content and the margin.
+	 * @throws IllegalStateException if content bounds are not tracked.
+	 * @see #setContentBoundsTrackingEnabled(boolean)
+	 */
+	public PageSize getContentPageSize(double margin) {
+		if (!isContentBoundsTrackingEnabled()) {
+			throw new IllegalStateException("Content bounds are not tracked.");
+		}
+		Rectangle2D bounds = getContentBounds();
+		if (bounds == null) {
+			bounds = new Rectangle2D.Double();
+		}
+		return new PageSize(bounds.getX() - margin, bounds.getY() - margin,
+				bounds.getWidth() + 2.0*margin, bounds.getHeight() + 2.0*margin);
+	}
+
 	/**
 	 * Returns a {@code CommandSequence} representing all calls that were issued to this {@code VectorGraphics2D} object.
 	 * @return Sequence of commands since.
@@ -801,4 +1414,78 @@ public class VectorGraphics2D extends Graphics2D implements Cloneable {
 	public CommandSequence getCommands() {
 		return commands;
 	}
+
+	/**
+	 * Returns a {@code CommandSequence} containing the commands that were issued
+	 * to this {@code VectorGraphics2D} object so far. Unlike the sequence returned
+	 * by {@link #getCommands()}, the snapshot does not change when drawing
+	 * continues, so it can be processed by another thread. Taking a snapshot does
+	 * not copy the recorded commands.
+	 * <p>This method has to be called by the thread that draws. Commands of
+	 * graphics objects that were created with parallel recording are only
+	 * included once those objects have been disposed.</p>
+	 * @return Sequence of the commands recorded until now.
+	 */
+	public CommandSequence snapshot() {
+		return commands.snapshot();
+	}
+
+	/**
+	 * Point of a recording that a graphics object can be rewound to.
+	 * @see #checkpoint()
+	 */
+	public static final class Checkpoint {
+		private final VectorGraphics2D graphics;
+		private final MutableCommandSequence.Mark mark;
+		private final GraphicsState state;
+		private final boolean disposed;
+		private final boolean xorModeActive;
+		private final ContentBounds.Mark contentBounds;
+
+		private Checkpoint(VectorGraphics2D graphics, MutableCommandSequence.Mark mark,
+				GraphicsState state, boolean disposed, boolean xorModeActive,
+				ContentBounds.Mark contentBounds) {
+			this.graphics = graphics;
+			this.mark = mark;
+			this.state = state;
+			this.disposed = disposed;
+			this.xorModeActive = xorModeActive;
+			this.contentBounds = contentBounds;
+		}
+
+		/**
+		 * Returns the number of commands that were recorded before this
+		 * checkpoint.
+		 * @return Number of commands.
+		 */
+		public int getCommandCount() {
+			return mark.size();
+		}
+	}
+
+	/**
+	 * Holder of the device configuration. Querying the graphics environment
+	 * is slow, so it is done when the configuration is requested for the
+	 * first time instead of when a graphics object is created.
+	 */
+	private static class DeviceConfigurationHolder {
+		static final GraphicsConfiguration DEVICE_CONFIG = getDefaultConfiguration();
+
+		private static GraphicsConfiguration getDefaultConfiguration() {
+			GraphicsEnvironment graphicsEnvironment = GraphicsEnvironment.getLocalGraphicsEnvironment();
+			if (graphicsEnvironment.isHeadlessInstance()) {
+				return null;
+			}
+			GraphicsDevice graphicsDevice = graphicsEnvironment.getDefaultScreenDevice();
+			return graphicsDevice.getDefaultConfiguration();
+		}
+	}
+
+	/**
+	 * Holder of the context used to render fonts, which is shared by all
+	 * graphics objects and created when it is requested for the first time.
+	 */
+	private static class FontRenderContextHolder {
+		static final FontRenderContext FONT_RENDER_CONTEXT = new FontRenderContext(null, false, true);
+	}
 }
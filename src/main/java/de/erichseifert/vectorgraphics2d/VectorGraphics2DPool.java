@@ -0,0 +1,116 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * <p>Pool of {@link VectorGraphics2D} objects that can be reused for many
+ * short recordings, for example one per request of a server. Released
+ * objects are {@link VectorGraphics2D#reset() reset} and kept for the next
+ * caller, so that their storage and settings don't have to be set up
+ * again.</p>
+ * <p>All graphics objects of a pool share one {@link ValuePool}. As the
+ * value pool only references its values weakly, values that are no longer
+ * used by any recording are released, even if the pool lives as long as the
+ * application. Released graphics objects also drop the recording options of
+ * their previous caller.</p>
+ * <p>The pool may be used from multiple threads concurrently, but each graphics object
+ * must only be used by one thread between acquiring and releasing it.</p>
+ */
+public class VectorGraphics2DPool {
+	private final ValuePool valuePool;
+	private final BlockingQueue<VectorGraphics2D> idle;
+
+	/**
+	 * Initializes a new pool that keeps at most the specified number of idle
+	 * graphics objects.
+	 * @param capacity Maximum number of idle graphics objects.
+	 */
+	public VectorGraphics2DPool(int capacity) {
+		this(capacity, new ValuePool());
+	}
+
+	/**
+	 * Initializes a new pool that keeps at most the specified number of idle
+	 * graphics objects and creates graphics objects using the specified pool
+	 * of state values.
+	 * @param capacity Maximum number of idle graphics objects.
+	 * @param valuePool Pool of state values.
+	 */
+	public VectorGraphics2DPool(int capacity, ValuePool valuePool) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive.");
+		}
+		if (valuePool == null) {
+			throw new NullPointerException("Value pool cannot be null.");
+		}
+		this.valuePool = valuePool;
+		this.idle = new ArrayBlockingQueue<>(capacity);
+	}
+
+	/**
+	 * Returns a graphics object with an empty recording. An idle object is
+	 * reused if there is one, otherwise a new object is created.
+	 * @return Graphics object in its initial state.
+	 */
+	public VectorGraphics2D acquire() {
+		VectorGraphics2D g = idle.poll();
+		if (g == null) {
+			g = new VectorGraphics2D(valuePool);
+		}
+		return g;
+	}
+
+	/**
+	 * Returns the specified graphics object to this pool. Its recording is
+	 * discarded, so neither the graphics object nor its command sequence may
+	 * be used by the caller afterwards. If the pool is full, the object is
+	 * left to the garbage collector.
+	 * @param g Graphics object that was acquired from this pool.
+	 */
+	public void release(VectorGraphics2D g) {
+		if (g == null) {
+			throw new NullPointerException("Graphics object cannot be null.");
+		}
+		g.reset();
+		idle.offer(g);
+	}
+
+	/**
+	 * Returns the pool of state values that is used by all graphics objects
+	 * of this pool.
+	 * @return Pool of state values.
+	 */
+	public ValuePool getValuePool() {
+		return valuePool;
+	}
+
+	/**
+	 * Returns the number of graphics objects that are ready to be reused.
+	 * @return Number of idle graphics objects.
+	 */
+	public int getIdleCount() {
+		return idle.size();
+	}
+}
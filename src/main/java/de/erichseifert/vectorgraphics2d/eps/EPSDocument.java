@@ -39,7 +39,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
@@ -54,8 +57,16 @@ import de.erichseifert.vectorgraphics2d.intermediate.commands.Command;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.CreateCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.DisposeCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawImageCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawLinesCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawMarkersCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawPolygonCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawPolylineCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawShapeCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawStringCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawStyledStringCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawTransformedImageCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillMarkersCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillPolygonCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.FillShapeCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.RotateCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.ScaleCommand;
@@ -106,18 +117,33 @@ class EPSDocument extends SizedDocument {
 	);
 
 	private static final String FONT_LATIN1_SUFFIX = "Lat";
+	private static final String PREFIX_MARKER = "mk";
+	private static final String PREFIX_IMAGE = "img";
 
 	private final List<String> elements;
+	private final Map<String, String> markerProcedures;
+	private final Map<Integer, String> imageProcedures;
 
 	public EPSDocument(CommandSequence commands, PageSize pageSize) {
-		super(pageSize, true);
-		elements = new LinkedList<>();
-		addHeader();
+		this(pageSize);
 		for (Command<?> command : commands) {
 			handle(command);
 		}
 	}
 
+	/**
+	 * Initializes a document that only contains the header. The contents are
+	 * added by calling {@link #handle(Command)} for each command.
+	 * @param pageSize Size of the document.
+	 */
+	EPSDocument(PageSize pageSize) {
+		super(pageSize, true);
+		elements = new LinkedList<>();
+		markerProcedures = new HashMap<>();
+		imageProcedures = new HashMap<>();
+		addHeader();
+	}
+
 	private void addHeader() {
 		double x=getPageSize().getX()*UNITS_PER_MM,
 			y=getPageSize().getY()*UNITS_PER_MM,
@@ -152,7 +178,35 @@ class EPSDocument extends SizedDocument {
 	}
 
 	public void writeTo(OutputStream out) throws IOException {
-		OutputStreamWriter o = new OutputStreamWriter(out, CHARSET);
+		Writer o = getWriter(out);
+		writeElements(o);
+		writeTrailer(o);
+	}
+
+	static Writer getWriter(OutputStream out) {
+		return new OutputStreamWriter(out, Charset.forName(CHARSET));
+	}
+
+	/**
+	 * Writes all elements that were not written before and removes them from
+	 * this document.
+	 * @param o Writer that receives the elements.
+	 * @throws IOException if the elements could not be written.
+	 */
+	void writePendingElements(Writer o) throws IOException {
+		try {
+			writeElements(o);
+		} finally {
+			elements.clear();
+		}
+	}
+
+	void writeTrailer(Writer o) throws IOException {
+		o.append("%%EOF");
+		o.flush();
+	}
+
+	private void writeElements(Writer o) throws IOException {
 		for (String element : elements) {
 			if (element == null) {
 				continue;
@@ -175,8 +229,6 @@ class EPSDocument extends SizedDocument {
 				System.err.println("Unable to divide eps element into lines: " + element);
 			}
 		}
-		o.append("%%EOF");
-		o.flush();
 	}
 
 	public void handle(Command<?> command) {
@@ -246,16 +298,55 @@ class EPSDocument extends SizedDocument {
 			elements.add(String.valueOf(c.getDeltaX()) + " " + c.getDeltaY() + " translate");
 		} else if (command instanceof DrawImageCommand) {
 			DrawImageCommand c = (DrawImageCommand) command;
+			if (c.isCropped()) {
+				elements.add(getRegionOutput(c));
+			} else {
+				String e = getOutput(c.getValue(),
+						c.getImageWidth(), c.getImageHeight(),
+						c.getX(), c.getY(), c.getWidth(), c.getHeight());
+				elements.add(e);
+			}
+		} else if (command instanceof DrawTransformedImageCommand) {
+			DrawTransformedImageCommand c = (DrawTransformedImageCommand) command;
+			double[] matrix = new double[6];
+			c.getTransform().getMatrix(matrix);
 			String e = getOutput(c.getValue(),
 					c.getImageWidth(), c.getImageHeight(),
-					c.getX(), c.getY(), c.getWidth(), c.getHeight());
+					0.0, 0.0, c.getImageWidth(), c.getImageHeight());
+			elements.add("gsave [" + DataUtils.join(" ", matrix) + "] concat");
 			elements.add(e);
+			elements.add("grestore");
+		} else if (command instanceof DrawMarkersCommand) {
+			DrawMarkersCommand c = (DrawMarkersCommand) command;
+			elements.add(getMarkersOutput(c.getMarker(), c.getPositions(), " stroke"));
+		} else if (command instanceof FillMarkersCommand) {
+			FillMarkersCommand c = (FillMarkersCommand) command;
+			String fillMethod = " fill";
+			Shape marker = c.getMarker();
+			if (marker instanceof Path2D && ((Path2D) marker).getWindingRule() == Path2D.WIND_EVEN_ODD) {
+				fillMethod = " eofill";
+			}
+			elements.add(getMarkersOutput(marker, c.getPositions(), fillMethod));
+		} else if (command instanceof DrawLinesCommand) {
+			DrawLinesCommand c = (DrawLinesCommand) command;
+			elements.add(getLinesOutput(c.getCoordinates()) + " stroke");
+		} else if (command instanceof DrawPolylineCommand) {
+			DrawPolylineCommand c = (DrawPolylineCommand) command;
+			elements.add(getOutput(c.getCoordinates(), false) + " stroke");
+		} else if (command instanceof DrawPolygonCommand) {
+			DrawPolygonCommand c = (DrawPolygonCommand) command;
+			elements.add(getOutput(c.getCoordinates(), true) + " stroke");
+		} else if (command instanceof FillPolygonCommand) {
+			FillPolygonCommand c = (FillPolygonCommand) command;
+			elements.add(getOutput(c.getCoordinates(), true) + " eofill");
 		} else if (command instanceof DrawShapeCommand) {
 			DrawShapeCommand c = (DrawShapeCommand) command;
 			elements.add(getOutput(c.getValue()) + " stroke");
 		} else if (command instanceof DrawStringCommand) {
 			DrawStringCommand c = (DrawStringCommand) command;
 			elements.add(getOutput(c.getValue(), c.getX(), c.getY()));
+		} else if (command instanceof DrawStyledStringCommand) {
+			elements.add(getOutput((DrawStyledStringCommand) command));
 		} else if (command instanceof FillShapeCommand) {
 			FillShapeCommand c = (FillShapeCommand) command;
 			String fillMethod = " fill";
@@ -277,6 +368,50 @@ class EPSDocument extends SizedDocument {
 				color.getRed()/255f, color.getGreen()/255f, color.getBlue()/255f);
 	}
 
+	private String getMarkersOutput(Shape marker, double[] positions, String paintMethod) {
+		// Markers are painted by a procedure that is defined once per shape
+		String body = getOutput(marker) + paintMethod;
+		String procedure = markerProcedures.get(body);
+		if (procedure == null) {
+			procedure = PREFIX_MARKER + markerProcedures.size();
+			markerProcedures.put(body, procedure);
+			elements.add("/" + procedure + " { gsave translate " + body + " grestore } bind def");
+		}
+
+		StringBuilder out = new StringBuilder();
+		for (int i = 0; i < positions.length; i += 2) {
+			if (i > 0) {
+				out.append(" ");
+			}
+			out.append(DataUtils.format(positions[i])).append(" ")
+				.append(DataUtils.format(positions[i + 1])).append(" ").append(procedure);
+		}
+		return out.toString();
+	}
+
+	private static String getLinesOutput(double[] coordinates) {
+		StringBuilder out = new StringBuilder();
+		out.append("newpath");
+		for (int i = 0; i < coordinates.length; i += 4) {
+			out.append(" ").append(coordinates[i]).append(" ").append(coordinates[i + 1]).append(" M ")
+				.append(coordinates[i + 2]).append(" ").append(coordinates[i + 3]).append(" L");
+		}
+		return out.toString();
+	}
+
+	private static String getOutput(double[] coordinates, boolean closed) {
+		StringBuilder out = new StringBuilder();
+		out.append("newpath");
+		for (int i = 0; i < coordinates.length; i += 2) {
+			out.append(" ").append(coordinates[i]).append(" ").append(coordinates[i + 1])
+				.append(i == 0 ? " M" : " L");
+		}
+		if (closed) {
+			out.append(" Z");
+		}
+		return out.toString();
+	}
+
 	private static String getOutput(Shape s) {
 		StringBuilder out = new StringBuilder();
 		out.append("newpath ");
@@ -370,9 +505,44 @@ class EPSDocument extends SizedDocument {
 		return out.toString();
 	}
 
-	private static String getOutput(Image image, int imageWidth, int imageHeight,
+	private String getRegionOutput(DrawImageCommand command) {
+		// Place the whole image so that the source region covers the target
+		// rectangle and clip everything else
+		double scaleX = command.getWidth()/command.getSourceWidth();
+		double scaleY = command.getHeight()/command.getSourceHeight();
+		return "gsave " + DataUtils.format(command.getX()) + " " + DataUtils.format(command.getY()) + " " +
+				DataUtils.format(command.getWidth()) + " " + DataUtils.format(command.getHeight()) + " rectclip" + EOL +
+				getOutput(command.getValue(), command.getImageWidth(), command.getImageHeight(),
+						command.getX() - command.getSourceX()*scaleX,
+						command.getY() - command.getSourceY()*scaleY,
+						command.getImageWidth()*scaleX, command.getImageHeight()*scaleY) + EOL +
+				"grestore";
+	}
+
+	private String getOutput(Image image, int imageWidth, int imageHeight,
 			double x, double y, double width, double height) {
 		StringBuilder out = new StringBuilder();
+		out.append("gsave").append(EOL);
+		if (x != 0.0 || y != 0.0) {
+			out.append(x).append(" ").append(y).append(" translate").append(EOL);
+		}
+		if (width != 1.0 || height != 1.0) {
+			out.append(width).append(" ").append(height).append(" scale").append(EOL);
+		}
+		out.append(getImageProcedure(image, imageWidth, imageHeight)).append(EOL);
+		out.append("grestore");
+		return out.toString();
+	}
+
+	private String getImageProcedure(Image image, int imageWidth, int imageHeight) {
+		// The image data is defined once per image and read again from the
+		// start whenever the image is painted
+		String procedure = imageProcedures.get(image.hashCode());
+		if (procedure != null) {
+			return procedure;
+		}
+		procedure = PREFIX_IMAGE + imageProcedures.size();
+		imageProcedures.put(image.hashCode(), procedure);
 
 		BufferedImage bufferedImage = GraphicsUtils.toBufferedImage(image);
 		int bands = bufferedImage.getSampleModel().getNumBands();
@@ -382,18 +552,18 @@ class EPSDocument extends SizedDocument {
 			bands = 3;
 		}
 
-		out.append("gsave").append(EOL);
-		if (x != 0.0 || y != 0.0) {
-			out.append(x).append(" ").append(y).append(" translate").append(EOL);
-		}
-		if (width != 1.0 || height != 1.0) {
-			out.append(width).append(" ").append(height).append(" scale").append(EOL);
-		}
+		String data = procedure + "data";
+		String dataSource = data + " dup 0 setfileposition " +
+				"<< /BitsPerComponent " + bitsPerSample + " >> /FlateDecode filter ";
 
+		StringBuilder definition = new StringBuilder();
+		definition.append("/").append(data)
+			.append(" currentfile /ASCII85Decode filter /ReusableStreamDecode filter").append(EOL);
+		StringBuilder body = new StringBuilder();
 		int decodeScale = 1;
 		if (bufferedImage.getColorModel().hasAlpha()) {
 			// TODO Use different InterleaveType (2 or 3) for more efficient compression
-			out.append("<< /ImageType 3 /InterleaveType 1 ")
+			body.append("<< /ImageType 3 /InterleaveType 1 ")
 				.append("/MaskDict ")
 				.append(imageWidth).append(" ").append(imageHeight).append(" ")
 				.append(1).append(" ").append(bitsPerSample).append(" ").append(decodeScale).append(" ")
@@ -401,35 +571,31 @@ class EPSDocument extends SizedDocument {
 				.append("/DataDict ")
 				.append(imageWidth).append(" ").append(imageHeight).append(" ")
 				.append(bands).append(" ").append(bitsPerSample).append(" ").append(decodeScale).append(" ")
-				.append(true).append(" currentfile /ASCII85Decode filter ")
-					.append("<< /BitsPerComponent ").append(bitsPerSample).append(" >> ")
-					.append("/FlateDecode filter ")
+				.append(true).append(" ").append(dataSource)
 				.append("imgdict ")
-				.append(">> image").append(EOL);
+				.append(">> image");
 
 			// Convert alpha values to binary mask
 			// FIXME Do alpha conversion in a preprocessing step on commands
 			bufferedImage = new AlphaToMaskOp(true).filter(bufferedImage, null);
-			output(bufferedImage, out);
 		} else {
 			if (bands == 1) {
-				out.append("/DeviceGray setcolorspace").append(EOL);
+				body.append("/DeviceGray setcolorspace ");
 			}
 			if (bufferedImage.getType() == BufferedImage.TYPE_BYTE_BINARY) {
 				decodeScale = 255;
 			}
-			out.append(imageWidth).append(" ").append(imageHeight).append(" ")
+			body.append(imageWidth).append(" ").append(imageHeight).append(" ")
 				.append(bands).append(" ").append(bitsPerSample).append(" ").append(decodeScale).append(" ")
-				.append(true).append(" currentfile /ASCII85Decode filter ")
-					.append("<< /BitsPerComponent ").append(bitsPerSample).append(" >> ")
-					.append("/FlateDecode filter ")
+				.append(true).append(" ").append(dataSource)
 				.append("imgdict ")
-				.append("image").append(EOL);
-			output(bufferedImage, out);
+				.append("image");
 		}
-
-		out.append("grestore");
-		return out.toString();
+		output(bufferedImage, definition);
+		definition.append("def");
+		elements.add(definition.toString());
+		elements.add("/" + procedure + " { " + body + " } bind def");
+		return procedure;
 	}
 
 	private static void output(BufferedImage image, StringBuilder out) {
@@ -455,6 +621,30 @@ class EPSDocument extends SizedDocument {
 		return "gsave 1 -1 scale " + x + " " + -y + " M " + getOutput(str) + " show " + "grestore";
 	}
 
+	private static String getOutput(DrawStyledStringCommand command) {
+		// Each run continues at the current point of the previous one
+		StringBuilder out = new StringBuilder();
+		out.append("gsave 1 -1 scale ").append(command.getX()).append(" ")
+			.append(-command.getY()).append(" M");
+		Font currentFont = null;
+		Color currentColor = null;
+		for (int run = 0; run < command.getRunCount(); run++) {
+			Font font = command.getFont(run);
+			if (!font.equals(currentFont)) {
+				out.append(" ").append(getOutput(font));
+				currentFont = font;
+			}
+			Color color = command.getColor(run);
+			if (color != null && !color.equals(currentColor)) {
+				out.append(" ").append(getOutput(color));
+				currentColor = color;
+			}
+			out.append(" ").append(getOutput(command.getRunText(run))).append(" show");
+		}
+		out.append(" grestore");
+		return out.toString();
+	}
+
 	private static StringBuilder getOutput(String str) {
 		StringBuilder out = new StringBuilder();
 
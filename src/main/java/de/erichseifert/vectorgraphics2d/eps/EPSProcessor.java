@@ -21,9 +21,12 @@
  */
 package de.erichseifert.vectorgraphics2d.eps;
 
+import java.io.OutputStream;
+
 import de.erichseifert.vectorgraphics2d.Document;
 import de.erichseifert.vectorgraphics2d.Processor;
 import de.erichseifert.vectorgraphics2d.intermediate.CommandSequence;
+import de.erichseifert.vectorgraphics2d.intermediate.CommandSink;
 import de.erichseifert.vectorgraphics2d.intermediate.filters.FillPaintedShapeAsImageFilter;
 import de.erichseifert.vectorgraphics2d.util.PageSize;
 
@@ -45,4 +48,13 @@ public class EPSProcessor implements Processor {
 		FillPaintedShapeAsImageFilter paintedShapeAsImageFilter = new FillPaintedShapeAsImageFilter(commands);
 		return new EPSDocument(paintedShapeAsImageFilter, pageSize);
 	}
+
+	/**
+	 * Returns a sink that writes the EPS document while commands are added.
+	 * Elements are written as soon as they have been created.
+	 */
+	@Override
+	public CommandSink getSink(PageSize pageSize, OutputStream out) {
+		return new EPSSink(pageSize, out);
+	}
 }
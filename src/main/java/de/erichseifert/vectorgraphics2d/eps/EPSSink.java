@@ -0,0 +1,87 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d.eps;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Iterator;
+
+import de.erichseifert.vectorgraphics2d.intermediate.CommandQueue;
+import de.erichseifert.vectorgraphics2d.intermediate.CommandSink;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.Command;
+import de.erichseifert.vectorgraphics2d.intermediate.filters.FillPaintedShapeAsImageFilter;
+import de.erichseifert.vectorgraphics2d.util.PageSize;
+
+/**
+ * {@code CommandSink} that writes an EPS document while commands are added.
+ * Each command is passed through the filters of {@link EPSProcessor} and
+ * the resulting elements are written right away, so only the look-ahead of
+ * the filters is kept in memory.
+ */
+class EPSSink implements CommandSink {
+	private final CommandQueue queue;
+	private final Iterator<Command<?>> filtered;
+	private final EPSDocument document;
+	private final Writer out;
+	/** First error that occurred while writing. It is reported on {@link #close()}. */
+	private IOException error;
+	private boolean closed;
+
+	public EPSSink(PageSize pageSize, OutputStream out) {
+		queue = new CommandQueue();
+		filtered = new FillPaintedShapeAsImageFilter(queue).iterator();
+		document = new EPSDocument(pageSize);
+		this.out = EPSDocument.getWriter(out);
+	}
+
+	@Override
+	public void add(Command<?> command) {
+		if (closed) {
+			throw new IllegalStateException("Sink has already been closed.");
+		}
+		queue.add(command);
+		while (filtered.hasNext()) {
+			document.handle(filtered.next());
+		}
+		try {
+			document.writePendingElements(out);
+		} catch (IOException e) {
+			if (error == null) {
+				error = e;
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		if (error != null) {
+			throw error;
+		}
+		document.writePendingElements(out);
+		document.writeTrailer(out);
+	}
+}
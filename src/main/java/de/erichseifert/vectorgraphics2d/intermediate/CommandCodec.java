@@ -0,0 +1,796 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d.intermediate;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Image;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.awt.geom.RoundRectangle2D;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.erichseifert.vectorgraphics2d.VectorGraphics2D;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.Command;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.CreateCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DisposeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawEllipseCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawImageCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawLineCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawLinesCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawMarkersCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawPolygonCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawPolylineCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawRectangleCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawShapeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawStringCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawStyledStringCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawTransformedImageCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillEllipseCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillMarkersCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillPolygonCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillRectangleCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillShapeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.Group;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.RotateCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.ScaleCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetBackgroundCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetClipCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetColorCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetCompositeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetFontCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetHintCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetPaintCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetStrokeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetTransformCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetXORModeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.ShearCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.TransformCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.TranslateCommand;
+
+/**
+ * Binary encoding of {@code Command} objects.
+ * <p>Each command is encoded as a tag byte that is followed by its
+ * parameters. Numbers, strings, colors, strokes, fonts, alpha composites,
+ * and shapes are encoded as bytes. Other values, like images or custom
+ * paints, have no binary representation; they are kept in an object table
+ * and only their index is encoded.</p>
+ */
+class CommandCodec {
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+	private static final int INITIAL_CAPACITY = 256;
+
+	private static final byte OBJECT = 0;
+	private static final byte CREATE = 1;
+	private static final byte DISPOSE = 2;
+	private static final byte SET_BACKGROUND = 3;
+	private static final byte SET_CLIP = 4;
+	private static final byte SET_COLOR = 5;
+	private static final byte SET_COMPOSITE = 6;
+	private static final byte SET_FONT = 7;
+	private static final byte SET_HINT = 8;
+	private static final byte SET_PAINT = 9;
+	private static final byte SET_STROKE = 10;
+	private static final byte SET_TRANSFORM = 11;
+	private static final byte SET_XOR_MODE = 12;
+	private static final byte TRANSLATE = 13;
+	private static final byte SCALE = 14;
+	private static final byte ROTATE = 15;
+	private static final byte SHEAR = 16;
+	private static final byte TRANSFORM = 17;
+	private static final byte DRAW_STRING = 18;
+	private static final byte DRAW_IMAGE = 19;
+	private static final byte DRAW_SHAPE = 20;
+	private static final byte FILL_SHAPE = 21;
+	private static final byte DRAW_LINE = 22;
+	private static final byte DRAW_RECTANGLE = 23;
+	private static final byte FILL_RECTANGLE = 24;
+	private static final byte DRAW_ELLIPSE = 25;
+	private static final byte FILL_ELLIPSE = 26;
+	private static final byte DRAW_POLYLINE = 27;
+	private static final byte DRAW_POLYGON = 28;
+	private static final byte FILL_POLYGON = 29;
+	private static final byte DRAW_LINES = 30;
+	private static final byte DRAW_MARKERS = 31;
+	private static final byte FILL_MARKERS = 32;
+	private static final byte GROUP = 33;
+	private static final byte DRAW_TRANSFORMED_IMAGE = 34;
+	private static final byte DRAW_IMAGE_REGION = 35;
+	private static final byte DRAW_STYLED_STRING = 36;
+
+	protected static final byte VALUE_NULL = 0;
+	protected static final byte VALUE_OBJECT = 1;
+	private static final byte VALUE_STRING = 2;
+	private static final byte VALUE_COLOR = 3;
+	private static final byte VALUE_BASIC_STROKE = 4;
+	private static final byte VALUE_FONT = 5;
+	private static final byte VALUE_ALPHA_COMPOSITE = 6;
+	private static final byte VALUE_LINE = 7;
+	private static final byte VALUE_RECTANGLE = 8;
+	private static final byte VALUE_ROUND_RECTANGLE = 9;
+	private static final byte VALUE_ELLIPSE = 10;
+	private static final byte VALUE_ARC = 11;
+	private static final byte VALUE_PATH = 12;
+
+	/** Values without binary representation. */
+	private final List<Object> objects;
+	/** Indices of the values in {@code objects}. */
+	private final Map<Object, Integer> objectIndices;
+	/** Buffer that holds the encoding of the last command. */
+	private ByteBuffer buffer;
+	/** Font that was checked last by {@link #isPlainFont(Font)}. */
+	private Font lastFont;
+	/** Result of the last check by {@link #isPlainFont(Font)}. */
+	private boolean lastFontPlain;
+
+	/**
+	 * Initializes a new codec with an empty object table.
+	 */
+	public CommandCodec() {
+		objects = new ArrayList<>();
+		objectIndices = new IdentityHashMap<>();
+		buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Encodes the specified command. The returned buffer is reused by the
+	 * next call, so its contents have to be copied before.
+	 * @param command Command to be encoded.
+	 * @return Buffer containing the encoded command between its position
+	 * and its limit.
+	 */
+	public ByteBuffer encode(Command<?> command) {
+		((Buffer) buffer).clear();
+		writeCommand(command);
+		((Buffer) buffer).flip();
+		return buffer;
+	}
+
+	/**
+	 * Decodes the command at the position of the specified buffer and
+	 * advances the position to the next command.
+	 * @param in Buffer containing encoded commands.
+	 * @return Decoded command.
+	 */
+	public Command<?> decode(ByteBuffer in) {
+		byte tag = in.get();
+		switch (tag) {
+			case OBJECT:
+				return (Command<?>) readValue(in);
+			case CREATE:
+				return new CreateCommand((VectorGraphics2D) readValue(in));
+			case DISPOSE:
+				return new DisposeCommand((VectorGraphics2D) readValue(in));
+			case SET_BACKGROUND:
+				return new SetBackgroundCommand((Color) readValue(in));
+			case SET_CLIP:
+				return new SetClipCommand((Shape) readValue(in));
+			case SET_COLOR:
+				return new SetColorCommand((Color) readValue(in));
+			case SET_COMPOSITE:
+				return new SetCompositeCommand((java.awt.Composite) readValue(in));
+			case SET_FONT:
+				return new SetFontCommand((Font) readValue(in));
+			case SET_HINT:
+				Object key = readValue(in);
+				return new SetHintCommand(key, readValue(in));
+			case SET_PAINT:
+				return new SetPaintCommand((java.awt.Paint) readValue(in));
+			case SET_STROKE:
+				return new SetStrokeCommand((java.awt.Stroke) readValue(in));
+			case SET_TRANSFORM:
+				return new SetTransformCommand(readTransform(in));
+			case SET_XOR_MODE:
+				return new SetXORModeCommand((Color) readValue(in));
+			case TRANSLATE:
+				return new TranslateCommand(in.getDouble(), in.getDouble());
+			case SCALE:
+				return new ScaleCommand(in.getDouble(), in.getDouble());
+			case ROTATE:
+				return new RotateCommand(in.getDouble(), in.getDouble(), in.getDouble());
+			case SHEAR:
+				return new ShearCommand(in.getDouble(), in.getDouble());
+			case TRANSFORM:
+				return new TransformCommand(readTransform(in));
+			case DRAW_STRING:
+				String string = (String) readValue(in);
+				return new DrawStringCommand(string, in.getDouble(), in.getDouble());
+			case DRAW_STYLED_STRING:
+				String styledString = (String) readValue(in);
+				double stringX = in.getDouble();
+				double stringY = in.getDouble();
+				int runCount = in.getInt();
+				int[] runLimits = new int[runCount];
+				Font[] runFonts = new Font[runCount];
+				Color[] runColors = new Color[runCount];
+				for (int run = 0; run < runCount; run++) {
+					runLimits[run] = in.getInt();
+					runFonts[run] = (Font) readValue(in);
+					runColors[run] = (Color) readValue(in);
+				}
+				return new DrawStyledStringCommand(styledString, stringX, stringY,
+						runLimits, runFonts, runColors);
+			case DRAW_IMAGE:
+				Image image = (Image) readValue(in);
+				int imageWidth = in.getInt();
+				int imageHeight = in.getInt();
+				return new DrawImageCommand(image, imageWidth, imageHeight,
+						in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble());
+			case DRAW_IMAGE_REGION:
+				Image regionImage = (Image) readValue(in);
+				int regionImageWidth = in.getInt();
+				int regionImageHeight = in.getInt();
+				int sourceX = in.getInt();
+				int sourceY = in.getInt();
+				int sourceWidth = in.getInt();
+				int sourceHeight = in.getInt();
+				return new DrawImageCommand(regionImage, regionImageWidth, regionImageHeight,
+						sourceX, sourceY, sourceWidth, sourceHeight,
+						in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble());
+			case DRAW_TRANSFORMED_IMAGE:
+				Image transformedImage = (Image) readValue(in);
+				int transformedImageWidth = in.getInt();
+				int transformedImageHeight = in.getInt();
+				return new DrawTransformedImageCommand(transformedImage,
+						transformedImageWidth, transformedImageHeight, readTransform(in));
+			case DRAW_SHAPE:
+				return new DrawShapeCommand((Shape) readValue(in));
+			case FILL_SHAPE:
+				return new FillShapeCommand((Shape) readValue(in));
+			case DRAW_LINE:
+				return new DrawLineCommand(in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble());
+			case DRAW_RECTANGLE:
+				return new DrawRectangleCommand(in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble());
+			case FILL_RECTANGLE:
+				return new FillRectangleCommand(in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble());
+			case DRAW_ELLIPSE:
+				return new DrawEllipseCommand(in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble());
+			case FILL_ELLIPSE:
+				return new FillEllipseCommand(in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble());
+			case DRAW_POLYLINE:
+				int polylinePointCount = in.getInt();
+				return new DrawPolylineCommand(readDoubles(in, 2*polylinePointCount), 0, polylinePointCount);
+			case DRAW_POLYGON:
+				int drawPolygonPointCount = in.getInt();
+				return new DrawPolygonCommand(readDoubles(in, 2*drawPolygonPointCount), 0, drawPolygonPointCount);
+			case FILL_POLYGON:
+				int fillPolygonPointCount = in.getInt();
+				return new FillPolygonCommand(readDoubles(in, 2*fillPolygonPointCount), 0, fillPolygonPointCount);
+			case DRAW_LINES:
+				int segmentCount = in.getInt();
+				return new DrawLinesCommand(readDoubles(in, 4*segmentCount), 0, segmentCount);
+			case DRAW_MARKERS:
+				Shape drawMarker = (Shape) readValue(in);
+				int drawMarkerCount = in.getInt();
+				return new DrawMarkersCommand(drawMarker, readDoubles(in, 2*drawMarkerCount), 0, drawMarkerCount);
+			case FILL_MARKERS:
+				Shape fillMarker = (Shape) readValue(in);
+				int fillMarkerCount = in.getInt();
+				return new FillMarkersCommand(fillMarker, readDoubles(in, 2*fillMarkerCount), 0, fillMarkerCount);
+			case GROUP:
+				Group group = new Group();
+				int commandCount = in.getInt();
+				for (int i = 0; i < commandCount; i++) {
+					group.add(decode(in));
+				}
+				return group;
+			default:
+				throw new IllegalStateException("Unknown command tag: " + tag);
+		}
+	}
+
+	private void writeCommand(Command<?> command) {
+		Class<?> type = command.getClass();
+		if (type == CreateCommand.class) {
+			putByte(CREATE);
+			writeValue(command.getValue());
+		} else if (type == DisposeCommand.class) {
+			putByte(DISPOSE);
+			writeValue(command.getValue());
+		} else if (type == SetBackgroundCommand.class) {
+			putByte(SET_BACKGROUND);
+			writeValue(command.getValue());
+		} else if (type == SetClipCommand.class) {
+			putByte(SET_CLIP);
+			writeValue(command.getValue());
+		} else if (type == SetColorCommand.class) {
+			putByte(SET_COLOR);
+			writeValue(command.getValue());
+		} else if (type == SetCompositeCommand.class) {
+			putByte(SET_COMPOSITE);
+			writeValue(command.getValue());
+		} else if (type == SetFontCommand.class) {
+			putByte(SET_FONT);
+			writeValue(command.getValue());
+		} else if (type == SetHintCommand.class) {
+			SetHintCommand c = (SetHintCommand) command;
+			putByte(SET_HINT);
+			writeValue(c.getKey());
+			writeValue(c.getValue());
+		} else if (type == SetPaintCommand.class) {
+			putByte(SET_PAINT);
+			writeValue(command.getValue());
+		} else if (type == SetStrokeCommand.class) {
+			putByte(SET_STROKE);
+			writeValue(command.getValue());
+		} else if (type == SetTransformCommand.class) {
+			putByte(SET_TRANSFORM);
+			writeTransform(((SetTransformCommand) command).getValue());
+		} else if (type == SetXORModeCommand.class) {
+			putByte(SET_XOR_MODE);
+			writeValue(command.getValue());
+		} else if (type == TranslateCommand.class) {
+			TranslateCommand c = (TranslateCommand) command;
+			putByte(TRANSLATE);
+			putDoubles(c.getDeltaX(), c.getDeltaY());
+		} else if (type == ScaleCommand.class) {
+			ScaleCommand c = (ScaleCommand) command;
+			putByte(SCALE);
+			putDoubles(c.getScaleX(), c.getScaleY());
+		} else if (type == RotateCommand.class) {
+			RotateCommand c = (RotateCommand) command;
+			putByte(ROTATE);
+			putDoubles(c.getTheta(), c.getCenterX(), c.getCenterY());
+		} else if (type == ShearCommand.class) {
+			ShearCommand c = (ShearCommand) command;
+			putByte(SHEAR);
+			putDoubles(c.getShearX(), c.getShearY());
+		} else if (type == TransformCommand.class) {
+			putByte(TRANSFORM);
+			writeTransform(((TransformCommand) command).getTransform());
+		} else if (type == DrawStringCommand.class) {
+			DrawStringCommand c = (DrawStringCommand) command;
+			putByte(DRAW_STRING);
+			writeValue(c.getValue());
+			putDoubles(c.getX(), c.getY());
+		} else if (type == DrawStyledStringCommand.class) {
+			DrawStyledStringCommand c = (DrawStyledStringCommand) command;
+			putByte(DRAW_STYLED_STRING);
+			writeValue(c.getValue());
+			putDoubles(c.getX(), c.getY());
+			putInt(c.getRunCount());
+			for (int run = 0; run < c.getRunCount(); run++) {
+				putInt(c.getRunLimit(run));
+				writeValue(c.getFont(run));
+				writeValue(c.getColor(run));
+			}
+		} else if (type == DrawImageCommand.class) {
+			DrawImageCommand c = (DrawImageCommand) command;
+			putByte(c.isCropped() ? DRAW_IMAGE_REGION : DRAW_IMAGE);
+			writeValue(c.getValue());
+			putInt(c.getImageWidth());
+			putInt(c.getImageHeight());
+			if (c.isCropped()) {
+				putInt(c.getSourceX());
+				putInt(c.getSourceY());
+				putInt(c.getSourceWidth());
+				putInt(c.getSourceHeight());
+			}
+			putDoubles(c.getX(), c.getY(), c.getWidth(), c.getHeight());
+		} else if (type == DrawTransformedImageCommand.class) {
+			DrawTransformedImageCommand c = (DrawTransformedImageCommand) command;
+			putByte(DRAW_TRANSFORMED_IMAGE);
+			writeValue(c.getValue());
+			putInt(c.getImageWidth());
+			putInt(c.getImageHeight());
+			writeTransform(c.getTransform());
+		} else if (type == DrawShapeCommand.class) {
+			putByte(DRAW_SHAPE);
+			writeValue(command.getValue());
+		} else if (type == FillShapeCommand.class) {
+			putByte(FILL_SHAPE);
+			writeValue(command.getValue());
+		} else if (type == DrawLineCommand.class) {
+			DrawLineCommand c = (DrawLineCommand) command;
+			putByte(DRAW_LINE);
+			putDoubles(c.getX1(), c.getY1(), c.getX2(), c.getY2());
+		} else if (type == DrawRectangleCommand.class) {
+			DrawRectangleCommand c = (DrawRectangleCommand) command;
+			putByte(DRAW_RECTANGLE);
+			putDoubles(c.getX(), c.getY(), c.getWidth(), c.getHeight());
+		} else if (type == FillRectangleCommand.class) {
+			FillRectangleCommand c = (FillRectangleCommand) command;
+			putByte(FILL_RECTANGLE);
+			putDoubles(c.getX(), c.getY(), c.getWidth(), c.getHeight());
+		} else if (type == DrawEllipseCommand.class) {
+			DrawEllipseCommand c = (DrawEllipseCommand) command;
+			putByte(DRAW_ELLIPSE);
+			putDoubles(c.getX(), c.getY(), c.getWidth(), c.getHeight());
+		} else if (type == FillEllipseCommand.class) {
+			FillEllipseCommand c = (FillEllipseCommand) command;
+			putByte(FILL_ELLIPSE);
+			putDoubles(c.getX(), c.getY(), c.getWidth(), c.getHeight());
+		} else if (type == DrawPolylineCommand.class) {
+			DrawPolylineCommand c = (DrawPolylineCommand) command;
+			putByte(DRAW_POLYLINE);
+			putInt(c.getPointCount());
+			putDoubles(c.getCoordinates());
+		} else if (type == DrawPolygonCommand.class) {
+			DrawPolygonCommand c = (DrawPolygonCommand) command;
+			putByte(DRAW_POLYGON);
+			putInt(c.getPointCount());
+			putDoubles(c.getCoordinates());
+		} else if (type == FillPolygonCommand.class) {
+			FillPolygonCommand c = (FillPolygonCommand) command;
+			putByte(FILL_POLYGON);
+			putInt(c.getPointCount());
+			putDoubles(c.getCoordinates());
+		} else if (type == DrawLinesCommand.class) {
+			DrawLinesCommand c = (DrawLinesCommand) command;
+			putByte(DRAW_LINES);
+			putInt(c.getSegmentCount());
+			putDoubles(c.getCoordinates());
+		} else if (type == DrawMarkersCommand.class) {
+			DrawMarkersCommand c = (DrawMarkersCommand) command;
+			putByte(DRAW_MARKERS);
+			writeValue(c.getMarker());
+			putInt(c.getCount());
+			putDoubles(c.getPositions());
+		} else if (type == FillMarkersCommand.class) {
+			FillMarkersCommand c = (FillMarkersCommand) command;
+			putByte(FILL_MARKERS);
+			writeValue(c.getMarker());
+			putInt(c.getCount());
+			putDoubles(c.getPositions());
+		} else if (type == Group.class) {
+			List<Command<?>> commands = ((Group) command).getValue();
+			putByte(GROUP);
+			putInt(commands.size());
+			for (Command<?> c : commands) {
+				writeCommand(c);
+			}
+		} else {
+			putByte(OBJECT);
+			writeValue(command);
+		}
+	}
+
+	protected void writeValue(Object value) {
+		if (value == null) {
+			putByte(VALUE_NULL);
+		} else if (value instanceof String) {
+			putByte(VALUE_STRING);
+			putString((String) value);
+		} else if (value.getClass() == Color.class && ((Color) value).getColorSpace().isCS_sRGB()) {
+			float[] components = ((Color) value).getRGBComponents(null);
+			putByte(VALUE_COLOR);
+			ensureCapacity(4*components.length);
+			for (float component : components) {
+				buffer.putFloat(component);
+			}
+		} else if (value.getClass() == BasicStroke.class) {
+			BasicStroke stroke = (BasicStroke) value;
+			float[] dashArray = stroke.getDashArray();
+			putByte(VALUE_BASIC_STROKE);
+			ensureCapacity(28 + (dashArray != null ? 4*dashArray.length : 0));
+			buffer.putFloat(stroke.getLineWidth());
+			buffer.putInt(stroke.getEndCap());
+			buffer.putInt(stroke.getLineJoin());
+			buffer.putFloat(stroke.getMiterLimit());
+			buffer.putFloat(stroke.getDashPhase());
+			buffer.putInt(dashArray != null ? dashArray.length : -1);
+			if (dashArray != null) {
+				for (float dash : dashArray) {
+					buffer.putFloat(dash);
+				}
+			}
+		} else if (value.getClass() == Font.class && isPlainFont((Font) value)) {
+			Font font = (Font) value;
+			putByte(VALUE_FONT);
+			putString(font.getName());
+			putInt(font.getStyle());
+			ensureCapacity(4);
+			buffer.putFloat(font.getSize2D());
+			putByte((byte) (font.isTransformed() ? 1 : 0));
+			if (font.isTransformed()) {
+				writeTransform(font.getTransform());
+			}
+		} else if (value.getClass() == AlphaComposite.class) {
+			AlphaComposite composite = (AlphaComposite) value;
+			putByte(VALUE_ALPHA_COMPOSITE);
+			putInt(composite.getRule());
+			ensureCapacity(4);
+			buffer.putFloat(composite.getAlpha());
+		} else if (value instanceof Shape) {
+			writeShape((Shape) value);
+		} else {
+			writeObject(value);
+		}
+	}
+
+	/**
+	 * Returns whether the specified font is completely described by its name,
+	 * style, size, and transformation. Fonts with other attributes, like
+	 * underlining, tracking, or a non-standard weight, cannot be encoded
+	 * that way.
+	 * @param font Font.
+	 * @return {@code true} if the font has no other attributes.
+	 */
+	private boolean isPlainFont(Font font) {
+		if (font != lastFont) {
+			Font plain = new Font(font.getName(), font.getStyle(), 1).deriveFont(font.getSize2D());
+			if (font.isTransformed()) {
+				plain = plain.deriveFont(font.getTransform());
+			}
+			lastFont = font;
+			lastFontPlain = plain.equals(font);
+		}
+		return lastFontPlain;
+	}
+
+	/**
+	 * Encodes a value that has no binary representation. The default
+	 * implementation stores the value in the object table and writes its
+	 * index.
+	 * @param value Value to be encoded.
+	 */
+	protected void writeObject(Object value) {
+		putByte(VALUE_OBJECT);
+		putInt(getObjectIndex(value));
+	}
+
+	/**
+	 * Decodes a value that was encoded by {@link #writeObject(Object)}.
+	 * @param tag Tag of the value.
+	 * @param in Buffer positioned after the tag.
+	 * @return Decoded value.
+	 */
+	protected Object readObject(byte tag, ByteBuffer in) {
+		if (tag == VALUE_OBJECT) {
+			return objects.get(in.getInt());
+		}
+		throw new IllegalStateException("Unknown value tag: " + tag);
+	}
+
+	protected Object readValue(ByteBuffer in) {
+		byte tag = in.get();
+		switch (tag) {
+			case VALUE_NULL:
+				return null;
+			case VALUE_OBJECT:
+				return objects.get(in.getInt());
+			case VALUE_STRING:
+				return readString(in);
+			case VALUE_COLOR:
+				return new Color(in.getFloat(), in.getFloat(), in.getFloat(), in.getFloat());
+			case VALUE_BASIC_STROKE:
+				float width = in.getFloat();
+				int cap = in.getInt();
+				int join = in.getInt();
+				float miterLimit = in.getFloat();
+				float dashPhase = in.getFloat();
+				int dashCount = in.getInt();
+				float[] dashArray = null;
+				if (dashCount >= 0) {
+					dashArray = new float[dashCount];
+					for (int i = 0; i < dashCount; i++) {
+						dashArray[i] = in.getFloat();
+					}
+				}
+				return new BasicStroke(width, cap, join, miterLimit, dashArray, dashPhase);
+			case VALUE_FONT:
+				String name = readString(in);
+				int style = in.getInt();
+				Font font = new Font(name, style, 1).deriveFont(in.getFloat());
+				if (in.get() != 0) {
+					font = font.deriveFont(readTransform(in));
+				}
+				return font;
+			case VALUE_ALPHA_COMPOSITE:
+				int rule = in.getInt();
+				return AlphaComposite.getInstance(rule, in.getFloat());
+			case VALUE_LINE:
+				return new Line2D.Double(in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble());
+			case VALUE_RECTANGLE:
+				return new Rectangle2D.Double(in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble());
+			case VALUE_ROUND_RECTANGLE:
+				return new RoundRectangle2D.Double(in.getDouble(), in.getDouble(), in.getDouble(),
+						in.getDouble(), in.getDouble(), in.getDouble());
+			case VALUE_ELLIPSE:
+				return new Ellipse2D.Double(in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble());
+			case VALUE_ARC:
+				return new Arc2D.Double(in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble(),
+						in.getDouble(), in.getDouble(), in.getInt());
+			case VALUE_PATH:
+				return readPath(in);
+			default:
+				return readObject(tag, in);
+		}
+	}
+
+	private void writeShape(Shape shape) {
+		if (shape instanceof Line2D) {
+			Line2D s = (Line2D) shape;
+			putByte(VALUE_LINE);
+			putDoubles(s.getX1(), s.getY1(), s.getX2(), s.getY2());
+		} else if (shape instanceof Rectangle2D) {
+			Rectangle2D s = (Rectangle2D) shape;
+			putByte(VALUE_RECTANGLE);
+			putDoubles(s.getX(), s.getY(), s.getWidth(), s.getHeight());
+		} else if (shape instanceof RoundRectangle2D) {
+			RoundRectangle2D s = (RoundRectangle2D) shape;
+			putByte(VALUE_ROUND_RECTANGLE);
+			putDoubles(s.getX(), s.getY(), s.getWidth(), s.getHeight());
+			putDoubles(s.getArcWidth(), s.getArcHeight());
+		} else if (shape instanceof Ellipse2D) {
+			Ellipse2D s = (Ellipse2D) shape;
+			putByte(VALUE_ELLIPSE);
+			putDoubles(s.getX(), s.getY(), s.getWidth(), s.getHeight());
+		} else if (shape instanceof Arc2D) {
+			Arc2D s = (Arc2D) shape;
+			putByte(VALUE_ARC);
+			putDoubles(s.getX(), s.getY(), s.getWidth(), s.getHeight());
+			putDoubles(s.getAngleStart(), s.getAngleExtent());
+			putInt(s.getArcType());
+		} else {
+			writePath(shape);
+		}
+	}
+
+	private void writePath(Shape shape) {
+		PathIterator segments = shape.getPathIterator(null);
+		putByte(VALUE_PATH);
+		putInt(segments.getWindingRule());
+		// The number of segments is known after all segments have been written
+		int countPosition = buffer.position();
+		putInt(0);
+		int count = 0;
+		double[] coords = new double[6];
+		for (; !segments.isDone(); segments.next()) {
+			int segmentType = segments.currentSegment(coords);
+			putByte((byte) segmentType);
+			switch (segmentType) {
+				case PathIterator.SEG_MOVETO:
+				case PathIterator.SEG_LINETO:
+					putDoubles(coords[0], coords[1]);
+					break;
+				case PathIterator.SEG_QUADTO:
+					putDoubles(coords[0], coords[1], coords[2], coords[3]);
+					break;
+				case PathIterator.SEG_CUBICTO:
+					putDoubles(coords[0], coords[1], coords[2], coords[3]);
+					putDoubles(coords[4], coords[5]);
+					break;
+				case PathIterator.SEG_CLOSE:
+					break;
+				default:
+					throw new IllegalStateException("Unknown path operation.");
+			}
+			count++;
+		}
+		buffer.putInt(countPosition, count);
+	}
+
+	private static Path2D readPath(ByteBuffer in) {
+		int windingRule = in.getInt();
+		int count = in.getInt();
+		Path2D path = new Path2D.Double(windingRule, count);
+		for (int i = 0; i < count; i++) {
+			int segmentType = in.get();
+			switch (segmentType) {
+				case PathIterator.SEG_MOVETO:
+					path.moveTo(in.getDouble(), in.getDouble());
+					break;
+				case PathIterator.SEG_LINETO:
+					path.lineTo(in.getDouble(), in.getDouble());
+					break;
+				case PathIterator.SEG_QUADTO:
+					path.quadTo(in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble());
+					break;
+				case PathIterator.SEG_CUBICTO:
+					path.curveTo(in.getDouble(), in.getDouble(), in.getDouble(),
+							in.getDouble(), in.getDouble(), in.getDouble());
+					break;
+				case PathIterator.SEG_CLOSE:
+					path.closePath();
+					break;
+				default:
+					throw new IllegalStateException("Unknown path operation.");
+			}
+		}
+		return path;
+	}
+
+	protected void writeTransform(AffineTransform transform) {
+		putDoubles(transform.getScaleX(), transform.getShearY(), transform.getShearX(), transform.getScaleY());
+		putDoubles(transform.getTranslateX(), transform.getTranslateY());
+	}
+
+	protected static AffineTransform readTransform(ByteBuffer in) {
+		return new AffineTransform(in.getDouble(), in.getDouble(),
+				in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble());
+	}
+
+	protected static String readString(ByteBuffer in) {
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return new String(bytes, CHARSET);
+	}
+
+	private static double[] readDoubles(ByteBuffer in, int count) {
+		double[] values = new double[count];
+		in.asDoubleBuffer().get(values);
+		((Buffer) in).position(in.position() + 8*count);
+		return values;
+	}
+
+	private int getObjectIndex(Object object) {
+		Integer index = objectIndices.get(object);
+		if (index == null) {
+			index = objects.size();
+			objects.add(object);
+			objectIndices.put(object, index);
+		}
+		return index;
+	}
+
+	private void ensureCapacity(int length) {
+		if (buffer.remaining() < length) {
+			int capacity = Math.max(2*buffer.capacity(), buffer.position() + length);
+			ByteBuffer grown = ByteBuffer.allocate(capacity);
+			((Buffer) buffer).flip();
+			grown.put(buffer);
+			buffer = grown;
+		}
+	}
+
+	protected void putString(String value) {
+		putBytes(value.getBytes(CHARSET));
+	}
+
+	protected void putBytes(byte[] bytes) {
+		putInt(bytes.length);
+		ensureCapacity(bytes.length);
+		buffer.put(bytes);
+	}
+
+	protected void putByte(byte value) {
+		ensureCapacity(1);
+		buffer.put(value);
+	}
+
+	protected void putInt(int value) {
+		ensureCapacity(4);
+		buffer.putInt(value);
+	}
+
+	protected void putDoubles(double... values) {
+		ensureCapacity(8*values.length);
+		for (double value : values) {
+			buffer.putDouble(value);
+		}
+	}
+}
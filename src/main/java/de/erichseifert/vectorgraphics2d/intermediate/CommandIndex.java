@@ -0,0 +1,515 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d.intermediate;
+
+import java.awt.Font;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import de.erichseifert.vectorgraphics2d.GraphicsState;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.AffineTransformCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.Command;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.CreateCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DisposeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawEllipseCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawImageCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawLineCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawLinesCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawMarkersCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawRectangleCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawShapeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawStringCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawStyledStringCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawTransformedImageCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillEllipseCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillMarkersCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillRectangleCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillShapeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.Group;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetFontCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetStrokeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetTransformCommand;
+import de.erichseifert.vectorgraphics2d.util.GraphicsUtils;
+
+/**
+ * <p>Spatial index over the drawing commands of a {@code CommandSequence}.
+ * The index answers which commands intersect a rectangle without iterating
+ * the sequence, for example to export a region of a large drawing, to find
+ * the command at a certain point, or to skip commands that are not visible.</p>
+ * <p>The index is built once from a sequence that is not changed anymore,
+ * like a snapshot. The device space bounds of each drawing command are
+ * determined by following the transformations, strokes, and fonts of the
+ * sequence. The bounds are sorted along a Hilbert curve and packed into a
+ * static R-tree, so queries take logarithmic time in the number of
+ * commands plus the number of results.</p>
+ * <p>Commands are identified by their position, which is the number of
+ * commands that precede them when the sequence is iterated. Clipping is
+ * not taken into account.</p>
+ * <pre>
+ * CommandIndex index = CommandIndex.build(vectorGraphics.snapshot());
+ * int[] visible = index.query(new Rectangle2D.Double(0, 0, 100, 100));
+ * </pre>
+ */
+public final class CommandIndex {
+	/** Maximal number of children of a node. */
+	private static final int NODE_SIZE = 16;
+	/** Number of bits per coordinate of the Hilbert curve. */
+	private static final int HILBERT_ORDER = 15;
+	private static final FontRenderContext FONT_RENDER_CONTEXT =
+			new FontRenderContext(null, false, true);
+
+	/** Number of indexed drawing commands. */
+	private final int size;
+	/** Number of iterated commands. */
+	private final int commandCount;
+	/** Bounds of all nodes in the order minX, minY, maxX, maxY. Items come first, the root is last. */
+	private final double[] boxes;
+	/** Command position of each item, or index of the first child of each inner node. */
+	private final int[] indices;
+	/** Index of the first node after each level of the tree. */
+	private final int[] levelBounds;
+
+	private CommandIndex(int size, int commandCount, double[] boxes, int[] indices, int[] levelBounds) {
+		this.size = size;
+		this.commandCount = commandCount;
+		this.boxes = boxes;
+		this.indices = indices;
+		this.levelBounds = levelBounds;
+	}
+
+	/**
+	 * Builds an index over the drawing commands of the specified sequence.
+	 * The sequence is iterated once.
+	 * @param commands Sequence of commands.
+	 * @return Index of the drawing commands.
+	 */
+	public static CommandIndex build(CommandSequence commands) {
+		BoundsCollector collector = new BoundsCollector();
+		for (Command<?> command : commands) {
+			collector.add(command);
+		}
+		return pack(collector);
+	}
+
+	private static CommandIndex pack(BoundsCollector collector) {
+		int itemCount = collector.itemCount;
+		if (itemCount == 0) {
+			return new CommandIndex(0, collector.position, new double[0], new int[0], new int[0]);
+		}
+
+		// Determine the number of nodes on each level
+		int[] levelBounds = new int[32];
+		int levelCount = 0;
+		int nodeCount = itemCount;
+		int levelSize = itemCount;
+		levelBounds[levelCount++] = nodeCount;
+		while (levelSize > 1) {
+			levelSize = (levelSize + NODE_SIZE - 1)/NODE_SIZE;
+			nodeCount += levelSize;
+			levelBounds[levelCount++] = nodeCount;
+		}
+		levelBounds = Arrays.copyOf(levelBounds, levelCount);
+
+		// Sort the items by the Hilbert value of their centers
+		double[] itemBoxes = collector.boxes;
+		double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < itemCount; i++) {
+			minX = Math.min(minX, itemBoxes[4*i]);
+			minY = Math.min(minY, itemBoxes[4*i + 1]);
+			maxX = Math.max(maxX, itemBoxes[4*i + 2]);
+			maxY = Math.max(maxY, itemBoxes[4*i + 3]);
+		}
+		int hilbertMax = (1 << HILBERT_ORDER) - 1;
+		double scaleX = maxX > minX ? hilbertMax/(maxX - minX) : 0.0;
+		double scaleY = maxY > minY ? hilbertMax/(maxY - minY) : 0.0;
+		long[] keys = new long[itemCount];
+		for (int i = 0; i < itemCount; i++) {
+			double centerX = (itemBoxes[4*i] + itemBoxes[4*i + 2])/2.0;
+			double centerY = (itemBoxes[4*i + 1] + itemBoxes[4*i + 3])/2.0;
+			int hx = (int) ((centerX - minX)*scaleX);
+			int hy = (int) ((centerY - minY)*scaleY);
+			keys[i] = ((long) hilbert(hx, hy) << 32) | i;
+		}
+		Arrays.sort(keys);
+
+		double[] boxes = new double[4*nodeCount];
+		int[] indices = new int[nodeCount];
+		for (int i = 0; i < itemCount; i++) {
+			int item = (int) keys[i];
+			System.arraycopy(itemBoxes, 4*item, boxes, 4*i, 4);
+			indices[i] = collector.positions[item];
+		}
+
+		// Pack consecutive nodes of each level into their parents
+		int node = 0;
+		int parent = itemCount;
+		for (int level = 0; level < levelCount - 1; level++) {
+			int end = levelBounds[level];
+			while (node < end) {
+				double nodeMinX = Double.POSITIVE_INFINITY, nodeMinY = Double.POSITIVE_INFINITY;
+				double nodeMaxX = Double.NEGATIVE_INFINITY, nodeMaxY = Double.NEGATIVE_INFINITY;
+				indices[parent] = node;
+				for (int i = 0; i < NODE_SIZE && node < end; i++, node++) {
+					nodeMinX = Math.min(nodeMinX, boxes[4*node]);
+					nodeMinY = Math.min(nodeMinY, boxes[4*node + 1]);
+					nodeMaxX = Math.max(nodeMaxX, boxes[4*node + 2]);
+					nodeMaxY = Math.max(nodeMaxY, boxes[4*node + 3]);
+				}
+				boxes[4*parent] = nodeMinX;
+				boxes[4*parent + 1] = nodeMinY;
+				boxes[4*parent + 2] = nodeMaxX;
+				boxes[4*parent + 3] = nodeMaxY;
+				parent++;
+			}
+		}
+
+		return new CommandIndex(itemCount, collector.position, boxes, indices, levelBounds);
+	}
+
+	/**
+	 * Returns the distance of a point along a Hilbert curve.
+	 * @param x X coordinate between 0 and 2^{@value #HILBERT_ORDER} - 1.
+	 * @param y Y coordinate between 0 and 2^{@value #HILBERT_ORDER} - 1.
+	 * @return Distance along the curve.
+	 */
+	private static int hilbert(int x, int y) {
+		int n = 1 << HILBERT_ORDER;
+		int d = 0;
+		for (int s = n/2; s > 0; s /= 2) {
+			int rx = (x & s) != 0 ? 1 : 0;
+			int ry = (y & s) != 0 ? 1 : 0;
+			d += s*s*((3*rx) ^ ry);
+			if (ry == 0) {
+				if (rx == 1) {
+					x = n - 1 - x;
+					y = n - 1 - y;
+				}
+				int t = x;
+				x = y;
+				y = t;
+			}
+		}
+		return d;
+	}
+
+	/**
+	 * Returns the number of drawing commands in this index.
+	 * @return Number of indexed commands.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of commands of the indexed sequence, including
+	 * commands that change the state.
+	 * @return Number of commands.
+	 */
+	public int getCommandCount() {
+		return commandCount;
+	}
+
+	/**
+	 * Returns the device space bounds of all drawing commands.
+	 * @return Bounds of all commands, or {@code null} if the index is empty.
+	 */
+	public Rectangle2D getBounds() {
+		if (size == 0) {
+			return null;
+		}
+		int root = boxes.length - 4;
+		return new Rectangle2D.Double(boxes[root], boxes[root + 1],
+				boxes[root + 2] - boxes[root], boxes[root + 3] - boxes[root + 1]);
+	}
+
+	/**
+	 * Returns the positions of all drawing commands whose device space
+	 * bounds intersect the specified rectangle. Bounds that only touch the
+	 * rectangle are included.
+	 * @param region Rectangle in device space.
+	 * @return Positions of the commands in ascending order.
+	 */
+	public int[] query(Rectangle2D region) {
+		return query(region.getMinX(), region.getMinY(), region.getMaxX(), region.getMaxY());
+	}
+
+	/**
+	 * Returns the positions of all drawing commands whose device space
+	 * bounds intersect the specified rectangle. Bounds that only touch the
+	 * rectangle are included.
+	 * @param minX Smallest x coordinate of the rectangle.
+	 * @param minY Smallest y coordinate of the rectangle.
+	 * @param maxX Largest x coordinate of the rectangle.
+	 * @param maxY Largest y coordinate of the rectangle.
+	 * @return Positions of the commands in ascending order.
+	 */
+	public int[] query(double minX, double minY, double maxX, double maxY) {
+		int root = indices.length - 1;
+		if (size == 0 || !intersects(root, minX, minY, maxX, maxY)) {
+			return new int[0];
+		}
+		int[] results = new int[16];
+		int resultCount = 0;
+		int[] stack = new int[16];
+		int stackSize = 0;
+		stack[stackSize++] = root;
+		while (stackSize > 0) {
+			int node = stack[--stackSize];
+			if (node < size) {
+				if (resultCount == results.length) {
+					results = Arrays.copyOf(results, 2*results.length);
+				}
+				results[resultCount++] = indices[node];
+				continue;
+			}
+			int firstChild = indices[node];
+			int end = Math.min(firstChild + NODE_SIZE, getLevelEnd(firstChild));
+			for (int child = firstChild; child < end; child++) {
+				if (!intersects(child, minX, minY, maxX, maxY)) {
+					continue;
+				}
+				if (stackSize == stack.length) {
+					stack = Arrays.copyOf(stack, 2*stack.length);
+				}
+				stack[stackSize++] = child;
+			}
+		}
+		int[] positions = Arrays.copyOf(results, resultCount);
+		Arrays.sort(positions);
+		return positions;
+	}
+
+	private boolean intersects(int node, double minX, double minY, double maxX, double maxY) {
+		return boxes[4*node + 2] >= minX && boxes[4*node + 3] >= minY &&
+				boxes[4*node] <= maxX && boxes[4*node + 1] <= maxY;
+	}
+
+	private int getLevelEnd(int node) {
+		for (int levelBound : levelBounds) {
+			if (node < levelBound) {
+				return levelBound;
+			}
+		}
+		return indices.length;
+	}
+
+	/**
+	 * Follows the state of a sequence and collects the device space bounds
+	 * of its drawing commands.
+	 */
+	private static final class BoundsCollector {
+		private final Deque<State> parents;
+		private State state;
+		/** Position of the next command. */
+		private int position;
+		private int itemCount;
+		private int[] positions;
+		private double[] boxes;
+
+		public BoundsCollector() {
+			parents = new ArrayDeque<>();
+			state = new State(new AffineTransform(), GraphicsState.DEFAULT_STROKE, GraphicsState.DEFAULT_FONT);
+			positions = new int[16];
+			boxes = new double[64];
+		}
+
+		public void add(Command<?> command) {
+			if (command instanceof Group) {
+				// All commands of a group share the position of the group
+				for (Command<?> groupedCommand : ((Group) command).getValue()) {
+					handle(groupedCommand);
+				}
+			} else {
+				handle(command);
+			}
+			position++;
+		}
+
+		private void handle(Command<?> command) {
+			if (command instanceof SetTransformCommand) {
+				state.transform.setTransform(((SetTransformCommand) command).getValue());
+			} else if (command instanceof AffineTransformCommand) {
+				((AffineTransformCommand) command).applyTo(state.transform);
+			} else if (command instanceof SetStrokeCommand) {
+				state.stroke = ((SetStrokeCommand) command).getValue();
+			} else if (command instanceof SetFontCommand) {
+				state.font = ((SetFontCommand) command).getValue();
+			} else if (command instanceof CreateCommand) {
+				parents.push(state);
+				state = new State(new AffineTransform(state.transform), state.stroke, state.font);
+			} else if (command instanceof DisposeCommand) {
+				if (!parents.isEmpty()) {
+					state = parents.pop();
+				}
+			} else if (command instanceof DrawLineCommand) {
+				DrawLineCommand c = (DrawLineCommand) command;
+				addDrawn(Math.min(c.getX1(), c.getX2()), Math.min(c.getY1(), c.getY2()),
+						Math.max(c.getX1(), c.getX2()), Math.max(c.getY1(), c.getY2()), true, false);
+			} else if (command instanceof DrawRectangleCommand) {
+				DrawRectangleCommand c = (DrawRectangleCommand) command;
+				addDrawn(c.getX(), c.getY(), c.getX() + c.getWidth(), c.getY() + c.getHeight(), false, false);
+			} else if (command instanceof DrawEllipseCommand) {
+				DrawEllipseCommand c = (DrawEllipseCommand) command;
+				addDrawn(c.getX(), c.getY(), c.getX() + c.getWidth(), c.getY() + c.getHeight(), false, false);
+			} else if (command instanceof FillRectangleCommand) {
+				FillRectangleCommand c = (FillRectangleCommand) command;
+				addBox(c.getX(), c.getY(), c.getX() + c.getWidth(), c.getY() + c.getHeight(), 0.0);
+			} else if (command instanceof FillEllipseCommand) {
+				FillEllipseCommand c = (FillEllipseCommand) command;
+				addBox(c.getX(), c.getY(), c.getX() + c.getWidth(), c.getY() + c.getHeight(), 0.0);
+			} else if (command instanceof DrawLinesCommand) {
+				Rectangle2D bounds = getBounds(((DrawLinesCommand) command).getCoordinates());
+				addDrawn(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY(), true, false);
+			} else if (command instanceof DrawMarkersCommand) {
+				DrawMarkersCommand c = (DrawMarkersCommand) command;
+				addMarkers(c.getMarker(), c.getPositions(), true);
+			} else if (command instanceof FillMarkersCommand) {
+				FillMarkersCommand c = (FillMarkersCommand) command;
+				addMarkers(c.getMarker(), c.getPositions(), false);
+			} else if (command instanceof DrawShapeCommand) {
+				Shape shape = ((DrawShapeCommand) command).getValue();
+				double padding = GraphicsUtils.getStrokePadding(state.stroke, true, true);
+				if (padding < 0.0) {
+					addBox(state.stroke.createStrokedShape(shape).getBounds2D(), 0.0);
+				} else {
+					addBox(shape.getBounds2D(), padding);
+				}
+			} else if (command instanceof FillShapeCommand) {
+				addBox(((FillShapeCommand) command).getValue().getBounds2D(), 0.0);
+			} else if (command instanceof DrawStringCommand) {
+				DrawStringCommand c = (DrawStringCommand) command;
+				Rectangle2D textBounds = state.font.getStringBounds(c.getValue(), FONT_RENDER_CONTEXT);
+				addBox(c.getX() + textBounds.getMinX(), c.getY() + textBounds.getMinY(),
+						c.getX() + textBounds.getMaxX(), c.getY() + textBounds.getMaxY(), 0.0);
+			} else if (command instanceof DrawStyledStringCommand) {
+				addBox(((DrawStyledStringCommand) command).getBounds(FONT_RENDER_CONTEXT), 0.0);
+			} else if (command instanceof DrawImageCommand) {
+				DrawImageCommand c = (DrawImageCommand) command;
+				addBox(c.getX(), c.getY(), c.getX() + c.getWidth(), c.getY() + c.getHeight(), 0.0);
+			} else if (command instanceof DrawTransformedImageCommand) {
+				DrawTransformedImageCommand c = (DrawTransformedImageCommand) command;
+				Shape imageBox = new Rectangle2D.Double(0.0, 0.0, c.getImageWidth(), c.getImageHeight());
+				addBox(c.getTransform().createTransformedShape(imageBox).getBounds2D(), 0.0);
+			}
+		}
+
+		private void addDrawn(double x1, double y1, double x2, double y2, boolean hasEnds, boolean hasJoins) {
+			double padding = GraphicsUtils.getStrokePadding(state.stroke, hasEnds, hasJoins);
+			if (padding < 0.0) {
+				Shape box = new Rectangle2D.Double(x1, y1, x2 - x1, y2 - y1);
+				addBox(state.stroke.createStrokedShape(box).getBounds2D(), 0.0);
+			} else {
+				addBox(x1, y1, x2, y2, padding);
+			}
+		}
+
+		private void addMarkers(Shape marker, double[] positions, boolean stroked) {
+			if (positions.length == 0) {
+				return;
+			}
+			Rectangle2D markerBounds = marker.getBounds2D();
+			double padding = 0.0;
+			if (stroked) {
+				padding = GraphicsUtils.getStrokePadding(state.stroke, true, true);
+				if (padding < 0.0) {
+					markerBounds = state.stroke.createStrokedShape(marker).getBounds2D();
+					padding = 0.0;
+				}
+			}
+			Rectangle2D positionBounds = getBounds(positions);
+			addBox(positionBounds.getMinX() + markerBounds.getMinX(),
+					positionBounds.getMinY() + markerBounds.getMinY(),
+					positionBounds.getMaxX() + markerBounds.getMaxX(),
+					positionBounds.getMaxY() + markerBounds.getMaxY(), padding);
+		}
+
+		private static Rectangle2D getBounds(double[] coordinates) {
+			double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+			double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < coordinates.length; i += 2) {
+				minX = Math.min(minX, coordinates[i]);
+				minY = Math.min(minY, coordinates[i + 1]);
+				maxX = Math.max(maxX, coordinates[i]);
+				maxY = Math.max(maxY, coordinates[i + 1]);
+			}
+			return new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
+		}
+
+		private void addBox(Rectangle2D box, double padding) {
+			addBox(box.getMinX(), box.getMinY(), box.getMaxX(), box.getMaxY(), padding);
+		}
+
+		private void addBox(double x1, double y1, double x2, double y2, double padding) {
+			double[] corners = {
+				x1 - padding, y1 - padding, x2 + padding, y1 - padding,
+				x1 - padding, y2 + padding, x2 + padding, y2 + padding
+			};
+			state.transform.transform(corners, 0, corners, 0, 4);
+			double minX = Math.min(Math.min(corners[0], corners[2]), Math.min(corners[4], corners[6]));
+			double minY = Math.min(Math.min(corners[1], corners[3]), Math.min(corners[5], corners[7]));
+			double maxX = Math.max(Math.max(corners[0], corners[2]), Math.max(corners[4], corners[6]));
+			double maxY = Math.max(Math.max(corners[1], corners[3]), Math.max(corners[5], corners[7]));
+			if (itemCount > 0 && positions[itemCount - 1] == position) {
+				// Commands of a group are merged into one item
+				int i = 4*(itemCount - 1);
+				boxes[i] = Math.min(boxes[i], minX);
+				boxes[i + 1] = Math.min(boxes[i + 1], minY);
+				boxes[i + 2] = Math.max(boxes[i + 2], maxX);
+				boxes[i + 3] = Math.max(boxes[i + 3], maxY);
+				return;
+			}
+			if (itemCount == positions.length) {
+				positions = Arrays.copyOf(positions, 2*positions.length);
+				boxes = Arrays.copyOf(boxes, 2*boxes.length);
+			}
+			positions[itemCount] = position;
+			boxes[4*itemCount] = minX;
+			boxes[4*itemCount + 1] = minY;
+			boxes[4*itemCount + 2] = maxX;
+			boxes[4*itemCount + 3] = maxY;
+			itemCount++;
+		}
+	}
+
+	/**
+	 * Properties of a graphics object that affect the bounds of its drawing
+	 * commands.
+	 */
+	private static final class State {
+		private final AffineTransform transform;
+		private Stroke stroke;
+		private Font font;
+
+		public State(AffineTransform transform, Stroke stroke, Font font) {
+			this.transform = transform;
+			this.stroke = stroke;
+			this.font = font;
+		}
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d.intermediate;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+
+import de.erichseifert.vectorgraphics2d.intermediate.commands.Command;
+
+/**
+ * {@code CommandSequence} that holds commands only until they have been
+ * iterated. Iterators remove the commands they return and report no further
+ * commands when the queue is empty, but they can be asked again after more
+ * commands were added. This allows filters to be fed with commands while
+ * they are being recorded.
+ */
+public class CommandQueue implements CommandSequence {
+	private final Queue<Command<?>> commands;
+
+	/**
+	 * Initializes a new empty queue.
+	 */
+	public CommandQueue() {
+		commands = new ArrayDeque<>();
+	}
+
+	/**
+	 * Appends the specified command to the end of this queue.
+	 * @param command Command to be added.
+	 */
+	public void add(Command<?> command) {
+		commands.add(command);
+	}
+
+	/**
+	 * Returns whether this queue contains no commands.
+	 * @return {@code true} if the queue is empty, {@code false} otherwise.
+	 */
+	public boolean isEmpty() {
+		return commands.isEmpty();
+	}
+
+	@Override
+	public Iterator<Command<?>> iterator() {
+		return new Iterator<Command<?>>() {
+			@Override
+			public boolean hasNext() {
+				return !commands.isEmpty();
+			}
+
+			@Override
+			public Command<?> next() {
+				Command<?> command = commands.poll();
+				if (command == null) {
+					throw new NoSuchElementException();
+				}
+				return command;
+			}
+		};
+	}
+}
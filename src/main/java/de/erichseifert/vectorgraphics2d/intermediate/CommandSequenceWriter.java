@@ -0,0 +1,136 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d.intermediate;
+
+import java.awt.Image;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.function.Function;
+
+import de.erichseifert.vectorgraphics2d.intermediate.commands.Command;
+
+/**
+ * Writes commands to a stream in a compact binary format that can be read
+ * by {@link MappedCommandSequence}. Recordings can be stored this way and
+ * processed later, or by another program, without drawing them again.
+ * <p>The stream starts with the bytes {@code VG2D} and the format version.
+ * It is followed by blocks of encoded commands, each prefixed with its
+ * length. Images are embedded as PNG data unless a function is given that
+ * returns a name for each image.</p>
+ * <p>The writer can be used as {@link CommandSink} of a
+ * {@code VectorGraphics2D} object to store a drawing while it is recorded.
+ * Values without binary encoding, like custom paints or strokes, cause an
+ * {@code IllegalArgumentException}.</p>
+ */
+public class CommandSequenceWriter implements CommandSink {
+	static final byte[] MAGIC = "VG2D".getBytes(Charset.forName("US-ASCII"));
+	static final int VERSION = 1;
+	private static final int BLOCK_SIZE = 64*1024;
+
+	private final DataOutputStream out;
+	private final CommandCodec codec;
+	private final ByteBuffer block;
+
+	/**
+	 * Initializes a new writer which embeds images, and writes the header of
+	 * the format to the specified stream.
+	 * @param out Stream that receives the commands.
+	 * @throws IOException if the header could not be written.
+	 */
+	public CommandSequenceWriter(OutputStream out) throws IOException {
+		this(out, null);
+	}
+
+	/**
+	 * Initializes a new writer which writes images as names, and writes the
+	 * header of the format to the specified stream.
+	 * @param out Stream that receives the commands.
+	 * @param imageNames Function returning the name of an image, or
+	 * {@code null} to embed images.
+	 * @throws IOException if the header could not be written.
+	 */
+	public CommandSequenceWriter(OutputStream out, Function<Image, String> imageNames) throws IOException {
+		this.out = new DataOutputStream(out);
+		codec = new PortableCommandCodec(imageNames, null);
+		block = ByteBuffer.allocate(BLOCK_SIZE);
+		this.out.write(MAGIC);
+		this.out.writeInt(VERSION);
+	}
+
+	/**
+	 * Encodes the specified command and writes it to the stream once a
+	 * block of commands is complete.
+	 * @param command Command to be written.
+	 * @throws IllegalArgumentException if the command contains a value that
+	 * cannot be encoded.
+	 * @throws UncheckedIOException if the stream could not be written.
+	 */
+	@Override
+	public void add(Command<?> command) {
+		ByteBuffer encoded = codec.encode(command);
+		try {
+			if (encoded.remaining() > block.remaining()) {
+				flush();
+			}
+			if (encoded.remaining() > block.capacity()) {
+				writeBlock(encoded);
+			} else {
+				block.put(encoded);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Writes all pending commands, then closes the stream.
+	 * @throws IOException if the stream could not be written.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			out.close();
+		}
+	}
+
+	private void flush() throws IOException {
+		if (block.position() == 0) {
+			return;
+		}
+		((Buffer) block).flip();
+		writeBlock(block);
+		((Buffer) block).clear();
+	}
+
+	private void writeBlock(ByteBuffer bytes) throws IOException {
+		out.writeInt(bytes.remaining());
+		out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+		((Buffer) bytes).position(bytes.limit());
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d.intermediate;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import de.erichseifert.vectorgraphics2d.intermediate.commands.Command;
+
+/**
+ * Receives {@link Command} objects one after another while they are
+ * recorded, instead of collecting them in a {@link CommandSequence} first.
+ * A sink is usually provided by a {@link de.erichseifert.vectorgraphics2d.Processor}
+ * and writes a document while drawing is still in progress.
+ */
+public interface CommandSink extends Closeable {
+	/**
+	 * Processes the specified command.
+	 * @param command Command to be processed.
+	 */
+	void add(Command<?> command);
+
+	/**
+	 * Processes all pending commands and finishes the output. Errors that
+	 * occurred while commands were added are reported here.
+	 * @throws IOException if the output could not be written.
+	 */
+	@Override
+	void close() throws IOException;
+}
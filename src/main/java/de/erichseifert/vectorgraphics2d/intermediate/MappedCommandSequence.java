@@ -0,0 +1,171 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d.intermediate;
+
+import java.awt.Image;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+import de.erichseifert.vectorgraphics2d.intermediate.commands.Command;
+
+/**
+ * {@code CommandSequence} that reads commands from a file written by
+ * {@link CommandSequenceWriter}. The file is memory mapped and commands are
+ * decoded directly from the mapping while iterating, so files can be
+ * processed that are much larger than the heap.
+ */
+public class MappedCommandSequence implements CommandSequence, Closeable {
+	/** Maximal number of bytes that are mapped at once. */
+	private static final int WINDOW_SIZE = 64*1024*1024;
+	private static final int HEADER_SIZE = CommandSequenceWriter.MAGIC.length + 4;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long length;
+	private final Function<String, Image> imagesByName;
+
+	/**
+	 * Opens the specified file, which must contain embedded images.
+	 * @param file File written by {@code CommandSequenceWriter}.
+	 * @throws IOException if the file could not be read or has an unknown
+	 * format.
+	 */
+	public MappedCommandSequence(File file) throws IOException {
+		this(file, null);
+	}
+
+	/**
+	 * Opens the specified file. Images that were written as names are
+	 * loaded with the specified function.
+	 * @param file File written by {@code CommandSequenceWriter}.
+	 * @param imagesByName Function returning the image for a name.
+	 * @throws IOException if the file could not be read or has an unknown
+	 * format.
+	 */
+	public MappedCommandSequence(File file, Function<String, Image> imagesByName) throws IOException {
+		this.file = new RandomAccessFile(file, "r");
+		this.imagesByName = imagesByName;
+		channel = this.file.getChannel();
+		length = channel.size();
+		try {
+			byte[] magic = new byte[CommandSequenceWriter.MAGIC.length];
+			this.file.readFully(magic);
+			if (!Arrays.equals(magic, CommandSequenceWriter.MAGIC)) {
+				throw new IOException("Not a command sequence file: " + file);
+			}
+			int version = this.file.readInt();
+			if (version > CommandSequenceWriter.VERSION) {
+				throw new IOException("Unsupported format version: " + version);
+			}
+		} catch (IOException e) {
+			this.file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Closes the file. Iterators cannot be used afterwards.
+	 * @throws IOException if the file could not be closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+	private MappedByteBuffer map(long position, long size) {
+		try {
+			return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Returns an iterator which decodes the commands of the file. Every
+	 * iteration creates new command objects.
+	 * @return Iterator over all commands.
+	 * @throws UncheckedIOException if the file could not be mapped or is
+	 * truncated.
+	 */
+	@Override
+	public Iterator<Command<?>> iterator() {
+		return new Iterator<Command<?>>() {
+			private final CommandCodec codec = new PortableCommandCodec(null, imagesByName);
+			/** File offset of the current mapping. */
+			private long windowStart = HEADER_SIZE;
+			private ByteBuffer window = ByteBuffer.allocate(0);
+			/** Commands of the current block. */
+			private ByteBuffer block = ByteBuffer.allocate(0);
+
+			@Override
+			public boolean hasNext() {
+				return block.hasRemaining() || windowStart + window.position() < length;
+			}
+
+			@Override
+			public Command<?> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				if (!block.hasRemaining()) {
+					nextBlock();
+				}
+				return codec.decode(block);
+			}
+
+			private void nextBlock() {
+				long blockStart = windowStart + window.position();
+				if (window.remaining() < 4) {
+					moveWindow(blockStart, 4);
+				}
+				int blockLength = window.getInt();
+				if (window.remaining() < blockLength) {
+					moveWindow(blockStart, 4 + blockLength);
+					((Buffer) window).position(4);
+				}
+				block = window.slice();
+				((Buffer) block).limit(blockLength);
+				((Buffer) window).position(window.position() + blockLength);
+			}
+
+			private void moveWindow(long start, long minSize) {
+				if (start + minSize > length) {
+					throw new UncheckedIOException(new EOFException("Truncated command sequence."));
+				}
+				windowStart = start;
+				window = map(start, Math.min(Math.max(WINDOW_SIZE, minSize), length - start));
+			}
+		};
+	}
+}
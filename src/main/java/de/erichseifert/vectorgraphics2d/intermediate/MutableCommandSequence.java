@@ -21,32 +21,1050 @@
  */
 package de.erichseifert.vectorgraphics2d.intermediate;
 
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.Image;
+import java.awt.Paint;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.NoSuchElementException;
 
+import de.erichseifert.vectorgraphics2d.VectorGraphics2D;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.Command;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.CreateCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DisposeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawEllipseCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawImageCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawLineCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawLinesCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawMarkersCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawPolygonCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawPolylineCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawRectangleCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawShapeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawStringCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawTransformedImageCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillEllipseCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillMarkersCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillPolygonCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillRectangleCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillShapeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.RotateCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.ScaleCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetBackgroundCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetClipCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetColorCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetCompositeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetFontCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetHintCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetPaintCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetStrokeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetTransformCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetXORModeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.ShearCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.TransformCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.TranslateCommand;
+import de.erichseifert.vectorgraphics2d.util.GraphicsUtils;
 
 /**
  * Mutable implementation of {@code CommandSequence}.
  * It is possible to add commands to this sequence.
+ * <p>The sequence does not keep a list of {@code Command} objects. Each
+ * command is stored as an opcode, its numeric parameters are packed into a
+ * {@code double} array, and object payloads like fonts or images are kept in
+ * a separate table. The {@code Command} objects are recreated while iterating,
+ * so every iteration allocates one command object per element; only the
+ * storage itself is compact. Paths are packed into their segments, while
+ * other shapes like rectangles or ellipses are stored as they are, because
+ * their type determines the output. Commands of unknown types are stored as
+ * they are as well.</p>
+ * <p>Shapes can also be added with {@link #addDrawShape(Shape)} and
+ * {@link #addFillShape(Shape)}. Their path segments are then copied into the
+ * sequence right away, so no {@code Shape} object is retained and the caller
+ * is free to modify or reuse the shape afterwards.</p>
+ * <p>Commands are only ever appended to the storage, so {@link #snapshot()}
+ * can return a view of the current commands without copying them.</p>
+ * <p>Other sequences can be nested with {@link #addSequence(CommandSequence)}.
+ * Their commands are returned in place of the nested sequence while
+ * iterating.</p>
+ * <p>The sequence can be truncated to a position returned by
+ * {@link #mark()}, which discards the commands that were added after the
+ * mark without touching the commands before it.</p>
  */
 public class MutableCommandSequence implements CommandSequence {
-	private final List<Command<?>> commands;
+	private static final int INITIAL_CAPACITY = 16;
+
+	private static final byte OBJECT = 0;
+	private static final byte CREATE = 1;
+	private static final byte DISPOSE = 2;
+	private static final byte SET_BACKGROUND = 3;
+	private static final byte SET_CLIP = 4;
+	private static final byte SET_COLOR = 5;
+	private static final byte SET_COMPOSITE = 6;
+	private static final byte SET_FONT = 7;
+	private static final byte SET_HINT = 8;
+	private static final byte SET_PAINT = 9;
+	private static final byte SET_STROKE = 10;
+	private static final byte SET_TRANSFORM = 11;
+	private static final byte SET_XOR_MODE = 12;
+	private static final byte TRANSLATE = 13;
+	private static final byte SCALE = 14;
+	private static final byte ROTATE = 15;
+	private static final byte SHEAR = 16;
+	private static final byte TRANSFORM = 17;
+	private static final byte DRAW_STRING = 18;
+	private static final byte DRAW_IMAGE = 19;
+	private static final byte DRAW_PATH = 20;
+	private static final byte FILL_PATH = 21;
+	private static final byte DRAW_LINE = 22;
+	private static final byte DRAW_RECTANGLE = 23;
+	private static final byte FILL_RECTANGLE = 24;
+	private static final byte DRAW_ELLIPSE = 25;
+	private static final byte FILL_ELLIPSE = 26;
+	private static final byte DRAW_POLYLINE = 27;
+	private static final byte DRAW_POLYGON = 28;
+	private static final byte FILL_POLYGON = 29;
+	private static final byte DRAW_LINES = 30;
+	private static final byte DRAW_MARKERS = 31;
+	private static final byte FILL_MARKERS = 32;
+	private static final byte SEQUENCE = 33;
+	private static final byte DRAW_TRANSFORMED_IMAGE = 34;
+	private static final byte DRAW_IMAGE_REGION = 35;
+
+	/** Opcodes of all commands. */
+	private byte[] opcodes;
+	/** Number of commands. */
+	private int size;
+	/** Numeric parameters of all commands. */
+	private double[] numbers;
+	/** Number of used elements in {@code numbers}. */
+	private int numberCount;
+	/** Object payloads of all commands. */
+	private Object[] objects;
+	/** Number of used elements in {@code objects}. */
+	private int objectCount;
+	/** Segment types of all shapes that were added as paths. */
+	private byte[] segments;
+	/** Number of used elements in {@code segments}. */
+	private int segmentCount;
+	/** Flag that tells whether a snapshot refers to the current storage. */
+	private boolean shared;
+	/** Number of times this sequence has been cleared, used to detect outdated marks. */
+	private int clearCount;
+	/** Sequences that are nested in this sequence, in the order they were added. */
+	private CommandSequence[] nestedSequences;
+	/** Number of used elements in {@code nestedSequences}. */
+	private int nestedCount;
+	/** Snapshot that was taken when this sequence was completed, or {@code null}. */
+	private volatile CommandSequence completed;
 
 	/**
 	 * Initializes a new {@code CommandSequence} object.
 	 */
 	public MutableCommandSequence() {
-		this.commands = new LinkedList<>();
+		opcodes = new byte[INITIAL_CAPACITY];
+		numbers = new double[INITIAL_CAPACITY];
+		objects = new Object[INITIAL_CAPACITY];
+		segments = new byte[INITIAL_CAPACITY];
+		nestedSequences = new CommandSequence[0];
 	}
 
+	/**
+	 * Appends the specified command to the end of this sequence.
+	 * @param command Command to be added.
+	 */
 	public void add(Command<?> command) {
-		commands.add(command);
+		Class<?> type = command.getClass();
+		if (type == CreateCommand.class) {
+			addOpcode(CREATE);
+			addObject(command.getValue());
+		} else if (type == DisposeCommand.class) {
+			addOpcode(DISPOSE);
+			addObject(command.getValue());
+		} else if (type == SetBackgroundCommand.class) {
+			addOpcode(SET_BACKGROUND);
+			addObject(command.getValue());
+		} else if (type == SetClipCommand.class) {
+			addOpcode(SET_CLIP);
+			addObject(command.getValue());
+		} else if (type == SetColorCommand.class) {
+			addOpcode(SET_COLOR);
+			addObject(command.getValue());
+		} else if (type == SetCompositeCommand.class) {
+			addOpcode(SET_COMPOSITE);
+			addObject(command.getValue());
+		} else if (type == SetFontCommand.class) {
+			addOpcode(SET_FONT);
+			addObject(command.getValue());
+		} else if (type == SetHintCommand.class) {
+			SetHintCommand c = (SetHintCommand) command;
+			addOpcode(SET_HINT);
+			addObject(c.getKey());
+			addObject(c.getValue());
+		} else if (type == SetPaintCommand.class) {
+			addOpcode(SET_PAINT);
+			addObject(command.getValue());
+		} else if (type == SetStrokeCommand.class) {
+			addOpcode(SET_STROKE);
+			addObject(command.getValue());
+		} else if (type == SetTransformCommand.class) {
+			addOpcode(SET_TRANSFORM);
+			addMatrix(((SetTransformCommand) command).getValue());
+		} else if (type == SetXORModeCommand.class) {
+			addOpcode(SET_XOR_MODE);
+			addObject(command.getValue());
+		} else if (type == TranslateCommand.class) {
+			TranslateCommand c = (TranslateCommand) command;
+			addTranslate(c.getDeltaX(), c.getDeltaY());
+		} else if (type == ScaleCommand.class) {
+			ScaleCommand c = (ScaleCommand) command;
+			addScale(c.getScaleX(), c.getScaleY());
+		} else if (type == RotateCommand.class) {
+			RotateCommand c = (RotateCommand) command;
+			addRotate(c.getTheta(), c.getCenterX(), c.getCenterY());
+		} else if (type == ShearCommand.class) {
+			ShearCommand c = (ShearCommand) command;
+			addShear(c.getShearX(), c.getShearY());
+		} else if (type == TransformCommand.class) {
+			addTransform(((TransformCommand) command).getTransform());
+		} else if (type == DrawStringCommand.class) {
+			DrawStringCommand c = (DrawStringCommand) command;
+			addOpcode(DRAW_STRING);
+			addObject(c.getValue());
+			addNumber(c.getX());
+			addNumber(c.getY());
+		} else if (type == DrawImageCommand.class) {
+			DrawImageCommand c = (DrawImageCommand) command;
+			addOpcode(c.isCropped() ? DRAW_IMAGE_REGION : DRAW_IMAGE);
+			addObject(c.getValue());
+			addNumber(c.getImageWidth());
+			addNumber(c.getImageHeight());
+			if (c.isCropped()) {
+				addNumber(c.getSourceX());
+				addNumber(c.getSourceY());
+				addNumber(c.getSourceWidth());
+				addNumber(c.getSourceHeight());
+			}
+			addNumber(c.getX());
+			addNumber(c.getY());
+			addNumber(c.getWidth());
+			addNumber(c.getHeight());
+		} else if (type == DrawTransformedImageCommand.class) {
+			DrawTransformedImageCommand c = (DrawTransformedImageCommand) command;
+			addOpcode(DRAW_TRANSFORMED_IMAGE);
+			addObject(c.getValue());
+			addNumber(c.getImageWidth());
+			addNumber(c.getImageHeight());
+			addMatrix(c.getTransform());
+		} else if (type == DrawLineCommand.class) {
+			DrawLineCommand c = (DrawLineCommand) command;
+			addDrawLine(c.getX1(), c.getY1(), c.getX2(), c.getY2());
+		} else if (type == DrawRectangleCommand.class) {
+			DrawRectangleCommand c = (DrawRectangleCommand) command;
+			addDrawRectangle(c.getX(), c.getY(), c.getWidth(), c.getHeight());
+		} else if (type == FillRectangleCommand.class) {
+			FillRectangleCommand c = (FillRectangleCommand) command;
+			addFillRectangle(c.getX(), c.getY(), c.getWidth(), c.getHeight());
+		} else if (type == DrawEllipseCommand.class) {
+			DrawEllipseCommand c = (DrawEllipseCommand) command;
+			addDrawEllipse(c.getX(), c.getY(), c.getWidth(), c.getHeight());
+		} else if (type == FillEllipseCommand.class) {
+			FillEllipseCommand c = (FillEllipseCommand) command;
+			addFillEllipse(c.getX(), c.getY(), c.getWidth(), c.getHeight());
+		} else if (type == DrawPolylineCommand.class) {
+			addOpcode(DRAW_POLYLINE);
+			addCoordinates(((DrawPolylineCommand) command).getCoordinates());
+		} else if (type == DrawPolygonCommand.class) {
+			addOpcode(DRAW_POLYGON);
+			addCoordinates(((DrawPolygonCommand) command).getCoordinates());
+		} else if (type == FillPolygonCommand.class) {
+			addOpcode(FILL_POLYGON);
+			addCoordinates(((FillPolygonCommand) command).getCoordinates());
+		} else if (type == DrawLinesCommand.class) {
+			double[] coordinates = ((DrawLinesCommand) command).getCoordinates();
+			addDrawLines(coordinates, 0, coordinates.length/4);
+		} else if (type == DrawMarkersCommand.class) {
+			DrawMarkersCommand c = (DrawMarkersCommand) command;
+			addOpcode(DRAW_MARKERS);
+			addMarkers(c.getMarker(), c.getPositions(), 0, c.getCount());
+		} else if (type == FillMarkersCommand.class) {
+			FillMarkersCommand c = (FillMarkersCommand) command;
+			addOpcode(FILL_MARKERS);
+			addMarkers(c.getMarker(), c.getPositions(), 0, c.getCount());
+		} else if (type == DrawShapeCommand.class && command.getValue() instanceof Path2D) {
+			addDrawShape((Shape) command.getValue());
+		} else if (type == FillShapeCommand.class && command.getValue() instanceof Path2D) {
+			addFillShape((Shape) command.getValue());
+		} else {
+			addOpcode(OBJECT);
+			addObject(command);
+		}
+	}
+
+	/**
+	 * Appends a {@code TranslateCommand} without creating a command object.
+	 * @param tx Distance in x direction.
+	 * @param ty Distance in y direction.
+	 */
+	public void addTranslate(double tx, double ty) {
+		addOpcode(TRANSLATE);
+		addNumber(tx);
+		addNumber(ty);
+	}
+
+	/**
+	 * Appends a {@code ScaleCommand} without creating a command object.
+	 * @param sx Scaling factor in x direction.
+	 * @param sy Scaling factor in y direction.
+	 */
+	public void addScale(double sx, double sy) {
+		addOpcode(SCALE);
+		addNumber(sx);
+		addNumber(sy);
+	}
+
+	/**
+	 * Appends a {@code RotateCommand} without creating a command object.
+	 * @param theta Angle in radians.
+	 * @param centerX X coordinate of the center.
+	 * @param centerY Y coordinate of the center.
+	 */
+	public void addRotate(double theta, double centerX, double centerY) {
+		addOpcode(ROTATE);
+		addNumber(theta);
+		addNumber(centerX);
+		addNumber(centerY);
+	}
+
+	/**
+	 * Appends a {@code ShearCommand} without creating a command object.
+	 * @param shx Shearing factor in x direction.
+	 * @param shy Shearing factor in y direction.
+	 */
+	public void addShear(double shx, double shy) {
+		addOpcode(SHEAR);
+		addNumber(shx);
+		addNumber(shy);
+	}
+
+	/**
+	 * Appends a {@code TransformCommand} without creating a command object.
+	 * Only the matrix values are stored, the transformation itself is not
+	 * retained.
+	 * @param transform Transformation.
+	 */
+	public void addTransform(AffineTransform transform) {
+		addOpcode(TRANSFORM);
+		addMatrix(transform);
+	}
+
+	/**
+	 * Appends a {@code DrawLineCommand} without creating a command object.
+	 * @param x1 X coordinate of the start point.
+	 * @param y1 Y coordinate of the start point.
+	 * @param x2 X coordinate of the end point.
+	 * @param y2 Y coordinate of the end point.
+	 */
+	public void addDrawLine(double x1, double y1, double x2, double y2) {
+		addOpcode(DRAW_LINE);
+		addBox(x1, y1, x2, y2);
+	}
+
+	/**
+	 * Appends a {@code DrawLinesCommand} without creating a command object.
+	 * @param coordinates Array containing the start and end point of each
+	 * segment in the order x1, y1, x2, y2.
+	 * @param offset Index of the first coordinate in the array.
+	 * @param segmentCount Number of segments.
+	 */
+	public void addDrawLines(double[] coordinates, int offset, int segmentCount) {
+		checkRange(coordinates, offset, 4*segmentCount);
+		addOpcode(DRAW_LINES);
+		addNumber(segmentCount);
+		addNumbers(coordinates, offset, 4*segmentCount);
+	}
+
+	/**
+	 * Appends a {@code DrawMarkersCommand} without creating a command object.
+	 * The marker shape is copied.
+	 * @param marker Shape that is placed at each position.
+	 * @param positions Array containing the positions in the order x, y.
+	 * @param offset Index of the first coordinate in the array.
+	 * @param count Number of positions.
+	 */
+	public void addDrawMarkers(Shape marker, double[] positions, int offset, int count) {
+		checkRange(positions, offset, 2*count);
+		addOpcode(DRAW_MARKERS);
+		addMarkers(GraphicsUtils.clone(marker), positions, offset, count);
+	}
+
+	/**
+	 * Appends a {@code FillMarkersCommand} without creating a command object.
+	 * The marker shape is copied.
+	 * @param marker Shape that is placed at each position.
+	 * @param positions Array containing the positions in the order x, y.
+	 * @param offset Index of the first coordinate in the array.
+	 * @param count Number of positions.
+	 */
+	public void addFillMarkers(Shape marker, double[] positions, int offset, int count) {
+		checkRange(positions, offset, 2*count);
+		addOpcode(FILL_MARKERS);
+		addMarkers(GraphicsUtils.clone(marker), positions, offset, count);
+	}
+
+	/**
+	 * Appends a {@code DrawRectangleCommand} without creating a command object.
+	 * @param x X coordinate of the upper left corner.
+	 * @param y Y coordinate of the upper left corner.
+	 * @param width Width.
+	 * @param height Height.
+	 */
+	public void addDrawRectangle(double x, double y, double width, double height) {
+		addOpcode(DRAW_RECTANGLE);
+		addBox(x, y, width, height);
+	}
+
+	/**
+	 * Appends a {@code FillRectangleCommand} without creating a command object.
+	 * @param x X coordinate of the upper left corner.
+	 * @param y Y coordinate of the upper left corner.
+	 * @param width Width.
+	 * @param height Height.
+	 */
+	public void addFillRectangle(double x, double y, double width, double height) {
+		addOpcode(FILL_RECTANGLE);
+		addBox(x, y, width, height);
+	}
+
+	/**
+	 * Appends a {@code DrawEllipseCommand} without creating a command object.
+	 * @param x X coordinate of the upper left corner of the bounding box.
+	 * @param y Y coordinate of the upper left corner of the bounding box.
+	 * @param width Width of the bounding box.
+	 * @param height Height of the bounding box.
+	 */
+	public void addDrawEllipse(double x, double y, double width, double height) {
+		addOpcode(DRAW_ELLIPSE);
+		addBox(x, y, width, height);
+	}
+
+	/**
+	 * Appends a {@code FillEllipseCommand} without creating a command object.
+	 * @param x X coordinate of the upper left corner of the bounding box.
+	 * @param y Y coordinate of the upper left corner of the bounding box.
+	 * @param width Width of the bounding box.
+	 * @param height Height of the bounding box.
+	 */
+	public void addFillEllipse(double x, double y, double width, double height) {
+		addOpcode(FILL_ELLIPSE);
+		addBox(x, y, width, height);
+	}
+
+	/**
+	 * Appends a {@code DrawPolylineCommand} without creating a command object.
+	 * @param xPoints X coordinates of the points.
+	 * @param yPoints Y coordinates of the points.
+	 * @param pointCount Number of points.
+	 */
+	public void addDrawPolyline(int[] xPoints, int[] yPoints, int pointCount) {
+		addOpcode(DRAW_POLYLINE);
+		addCoordinates(xPoints, yPoints, pointCount);
+	}
+
+	/**
+	 * Appends a {@code DrawPolygonCommand} without creating a command object.
+	 * @param xPoints X coordinates of the points.
+	 * @param yPoints Y coordinates of the points.
+	 * @param pointCount Number of points.
+	 */
+	public void addDrawPolygon(int[] xPoints, int[] yPoints, int pointCount) {
+		addOpcode(DRAW_POLYGON);
+		addCoordinates(xPoints, yPoints, pointCount);
+	}
+
+	/**
+	 * Appends a {@code FillPolygonCommand} without creating a command object.
+	 * @param xPoints X coordinates of the points.
+	 * @param yPoints Y coordinates of the points.
+	 * @param pointCount Number of points.
+	 */
+	public void addFillPolygon(int[] xPoints, int[] yPoints, int pointCount) {
+		addOpcode(FILL_POLYGON);
+		addCoordinates(xPoints, yPoints, pointCount);
+	}
+
+	/**
+	 * Appends a command for drawing the outline of the specified shape.
+	 * The geometry is copied into this sequence, the shape itself is not
+	 * retained.
+	 * @param shape Shape to be drawn.
+	 */
+	public void addDrawShape(Shape shape) {
+		addOpcode(DRAW_PATH);
+		addPath(shape);
+	}
+
+	/**
+	 * Appends a command for filling the specified shape.
+	 * The geometry is copied into this sequence, the shape itself is not
+	 * retained.
+	 * @param shape Shape to be filled.
+	 */
+	public void addFillShape(Shape shape) {
+		addOpcode(FILL_PATH);
+		addPath(shape);
+	}
+
+	/**
+	 * Appends a nested sequence. The commands of the nested sequence are not
+	 * copied; they are returned at this position whenever this sequence is
+	 * iterated, so the nested sequence may still be filled afterwards.
+	 * <p>A nested {@code MutableCommandSequence} may be filled by another
+	 * thread. Snapshots of this sequence only contain its commands once it
+	 * has been {@link #complete() completed}; until then it is left out.</p>
+	 * @param sequence Sequence to be nested.
+	 */
+	public void addSequence(CommandSequence sequence) {
+		if (sequence == null) {
+			throw new NullPointerException("Sequence cannot be null.");
+		}
+		addOpcode(SEQUENCE);
+		addObject(sequence);
+		if (nestedCount == nestedSequences.length) {
+			nestedSequences = Arrays.copyOf(nestedSequences, Math.max(INITIAL_CAPACITY, 2*nestedCount));
+		}
+		nestedSequences[nestedCount++] = sequence;
+	}
+
+	/**
+	 * Marks this sequence as complete, so that snapshots of the sequences it
+	 * is nested in contain the commands that were added until now. Commands
+	 * that are added afterwards are not visible to those snapshots.
+	 * <p>This method has to be called by the thread that adds commands.</p>
+	 */
+	public void complete() {
+		completed = snapshot();
+	}
+
+	/**
+	 * Removes all commands from this sequence. The allocated storage is kept,
+	 * so that the sequence can be filled again without growing its arrays.
+	 */
+	public void clear() {
+		if (shared) {
+			// Snapshots still read the old storage, so it must not be overwritten
+			opcodes = new byte[opcodes.length];
+			numbers = new double[numbers.length];
+			objects = new Object[objects.length];
+			segments = new byte[segments.length];
+			shared = false;
+		} else {
+			Arrays.fill(objects, 0, objectCount, null);
+		}
+		Arrays.fill(nestedSequences, 0, nestedCount, null);
+		size = 0;
+		numberCount = 0;
+		objectCount = 0;
+		segmentCount = 0;
+		nestedCount = 0;
+		completed = null;
+		clearCount++;
+	}
+
+	/**
+	 * Returns the current end of this sequence. The sequence can later be
+	 * truncated to this position with {@link #truncate(Mark)}.
+	 * @return Mark of the current end.
+	 */
+	public Mark mark() {
+		return new Mark(this, clearCount, size, numberCount, objectCount, segmentCount, nestedCount);
+	}
+
+	/**
+	 * Removes all commands that were added after the specified mark. This
+	 * takes time proportional to the number of removed commands. If a
+	 * snapshot refers to the storage, the storage is copied instead, so the
+	 * snapshot is not changed.
+	 * <p>Marks that were taken after the specified mark must not be used
+	 * anymore once commands have been added again.</p>
+	 * @param mark Mark returned by {@link #mark()} of this sequence.
+	 * @throws IllegalArgumentException if the mark belongs to another sequence.
+	 * @throws IllegalStateException if the sequence has been cleared or
+	 * truncated before the mark.
+	 */
+	public void truncate(Mark mark) {
+		if (mark.sequence != this) {
+			throw new IllegalArgumentException("Mark belongs to a different sequence.");
+		}
+		if (mark.clearCount != clearCount || mark.size > size) {
+			throw new IllegalStateException("Commands before the mark have been removed.");
+		}
+		if (shared) {
+			// Snapshots still read the removed commands, so they must not be overwritten
+			opcodes = Arrays.copyOf(opcodes, opcodes.length);
+			numbers = Arrays.copyOf(numbers, numbers.length);
+			objects = Arrays.copyOf(objects, objects.length);
+			segments = Arrays.copyOf(segments, segments.length);
+			shared = false;
+		}
+		Arrays.fill(objects, mark.objectCount, objectCount, null);
+		Arrays.fill(nestedSequences, mark.nestedCount, nestedCount, null);
+		size = mark.size;
+		numberCount = mark.numberCount;
+		objectCount = mark.objectCount;
+		segmentCount = mark.segmentCount;
+		nestedCount = mark.nestedCount;
+		completed = null;
+	}
+
+	/**
+	 * Returns the number of commands in this sequence. A nested sequence is
+	 * counted as a single command.
+	 * @return Number of commands.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Called before a command is appended to this sequence. All commands
+	 * that were appended before are complete at this point, so subclasses
+	 * may read or clear them. The default implementation does nothing.
+	 */
+	protected void beforeAdd() {
+	}
+
+	private void addOpcode(byte opcode) {
+		beforeAdd();
+		if (size == opcodes.length) {
+			opcodes = Arrays.copyOf(opcodes, 2*opcodes.length);
+		}
+		opcodes[size++] = opcode;
+	}
+
+	private void addObject(Object object) {
+		if (objectCount == objects.length) {
+			objects = Arrays.copyOf(objects, 2*objects.length);
+		}
+		objects[objectCount++] = object;
+	}
+
+	private void addNumber(double value) {
+		if (numberCount == numbers.length) {
+			numbers = Arrays.copyOf(numbers, 2*numbers.length);
+		}
+		numbers[numberCount++] = value;
+	}
+
+	private static void checkRange(double[] values, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > values.length) {
+			throw new IndexOutOfBoundsException("Invalid offset or count.");
+		}
+	}
+
+	private void addMarkers(Shape marker, double[] positions, int offset, int count) {
+		addObject(marker);
+		addNumber(count);
+		addNumbers(positions, offset, 2*count);
+	}
+
+	private void addNumbers(double[] values, int offset, int length) {
+		if (numberCount + length > numbers.length) {
+			numbers = Arrays.copyOf(numbers, Math.max(2*numbers.length, numberCount + length));
+		}
+		System.arraycopy(values, offset, numbers, numberCount, length);
+		numberCount += length;
+	}
+
+	private void addBox(double a, double b, double c, double d) {
+		addNumber(a);
+		addNumber(b);
+		addNumber(c);
+		addNumber(d);
+	}
+
+	private void addCoordinates(int[] xPoints, int[] yPoints, int pointCount) {
+		addNumber(pointCount);
+		for (int i = 0; i < pointCount; i++) {
+			addNumber(xPoints[i]);
+			addNumber(yPoints[i]);
+		}
+	}
+
+	private void addCoordinates(double[] coordinates) {
+		addNumber(coordinates.length/2);
+		for (double coordinate : coordinates) {
+			addNumber(coordinate);
+		}
+	}
+
+	private void addSegment(int segmentType) {
+		if (segmentCount == segments.length) {
+			segments = Arrays.copyOf(segments, 2*segments.length);
+		}
+		segments[segmentCount++] = (byte) segmentType;
+	}
+
+	private void addPath(Shape shape) {
+		PathIterator path = shape.getPathIterator(null);
+		addNumber(path.getWindingRule());
+		int countIndex = numberCount;
+		addNumber(0);
+		int count = 0;
+		double[] coords = new double[6];
+		for (; !path.isDone(); path.next()) {
+			int segmentType = path.currentSegment(coords);
+			addSegment(segmentType);
+			for (int i = 0; i < getCoordinateCount(segmentType); i++) {
+				addNumber(coords[i]);
+			}
+			count++;
+		}
+		numbers[countIndex] = count;
+	}
+
+	private static int getCoordinateCount(int segmentType) {
+		switch (segmentType) {
+			case PathIterator.SEG_MOVETO:
+			case PathIterator.SEG_LINETO:
+				return 2;
+			case PathIterator.SEG_QUADTO:
+				return 4;
+			case PathIterator.SEG_CUBICTO:
+				return 6;
+			default:
+				return 0;
+		}
+	}
+
+	private void addMatrix(AffineTransform transform) {
+		addNumber(transform.getScaleX());
+		addNumber(transform.getShearY());
+		addNumber(transform.getShearX());
+		addNumber(transform.getScaleY());
+		addNumber(transform.getTranslateX());
+		addNumber(transform.getTranslateY());
+	}
+
+	/**
+	 * Returns an immutable view of the commands that are currently in this
+	 * sequence. This takes constant time because the storage is shared with
+	 * the snapshot; commands that are added later are not visible in the
+	 * snapshot.
+	 * <p>This method has to be called by the thread that adds commands. The
+	 * returned snapshot may then be iterated by any thread, also while new
+	 * commands are being added to this sequence.</p>
+	 * <p>Nested {@code MutableCommandSequence} objects are included as they
+	 * were when they were last {@link #complete() completed}. Nested
+	 * sequences that have not been completed yet are left out, so they may
+	 * still be filled by other threads without changing the snapshot.</p>
+	 * @return Sequence of the current commands.
+	 */
+	public CommandSequence snapshot() {
+		shared = true;
+		CommandSequence[] nested = new CommandSequence[nestedCount];
+		for (int i = 0; i < nestedCount; i++) {
+			CommandSequence sequence = nestedSequences[i];
+			if (sequence instanceof MutableCommandSequence) {
+				sequence = ((MutableCommandSequence) sequence).completed;
+			}
+			nested[i] = sequence;
+		}
+		return new Snapshot(opcodes, size, numbers, objects, segments, nested);
 	}
 
 	@Override
 	public Iterator<Command<?>> iterator() {
-		return commands.iterator();
+		return new CommandIterator(opcodes, size, numbers, objects, segments, null);
+	}
+
+	/**
+	 * Position in a {@code MutableCommandSequence} that the sequence can be
+	 * truncated to.
+	 */
+	public static final class Mark {
+		private final MutableCommandSequence sequence;
+		private final int clearCount;
+		private final int size;
+		private final int numberCount;
+		private final int objectCount;
+		private final int segmentCount;
+		private final int nestedCount;
+
+		private Mark(MutableCommandSequence sequence, int clearCount, int size,
+				int numberCount, int objectCount, int segmentCount, int nestedCount) {
+			this.sequence = sequence;
+			this.clearCount = clearCount;
+			this.size = size;
+			this.numberCount = numberCount;
+			this.objectCount = objectCount;
+			this.segmentCount = segmentCount;
+			this.nestedCount = nestedCount;
+		}
+
+		/**
+		 * Returns the number of commands before this mark.
+		 * @return Number of commands.
+		 */
+		public int size() {
+			return size;
+		}
+	}
+
+	/**
+	 * Immutable view of the storage of a sequence at a certain point.
+	 */
+	private static final class Snapshot implements CommandSequence {
+		private final byte[] opcodes;
+		private final int size;
+		private final double[] numbers;
+		private final Object[] objects;
+		private final byte[] segments;
+		/** Nested sequences as they were when the snapshot was taken. */
+		private final CommandSequence[] nestedSequences;
+
+		public Snapshot(byte[] opcodes, int size, double[] numbers, Object[] objects, byte[] segments,
+				CommandSequence[] nestedSequences) {
+			this.opcodes = opcodes;
+			this.size = size;
+			this.numbers = numbers;
+			this.objects = objects;
+			this.segments = segments;
+			this.nestedSequences = nestedSequences;
+		}
+
+		@Override
+		public Iterator<Command<?>> iterator() {
+			return new CommandIterator(opcodes, size, numbers, objects, segments, nestedSequences);
+		}
+	}
+
+	/**
+	 * Iterator that recreates the commands from their packed representation.
+	 * It iterates the commands that were stored when it was created.
+	 */
+	private static final class CommandIterator implements Iterator<Command<?>> {
+		private final byte[] opcodes;
+		private final int size;
+		private final double[] numbers;
+		private final Object[] objects;
+		private final byte[] segments;
+		private int index;
+		private int numberIndex;
+		private int objectIndex;
+		private int segmentIndex;
+		/**
+		 * Replacements for the nested sequences in the order they occur, or
+		 * {@code null} if the nested sequences are iterated directly.
+		 */
+		private final CommandSequence[] nestedSequences;
+		private int nestedIndex;
+		/** Iterator of the nested sequence whose commands are currently returned. */
+		private Iterator<Command<?>> nested;
+
+		public CommandIterator(byte[] opcodes, int size, double[] numbers, Object[] objects, byte[] segments,
+				CommandSequence[] nestedSequences) {
+			this.opcodes = opcodes;
+			this.size = size;
+			this.numbers = numbers;
+			this.objects = objects;
+			this.segments = segments;
+			this.nestedSequences = nestedSequences;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (nested == null || !nested.hasNext()) {
+				nested = null;
+				if (index >= size) {
+					return false;
+				}
+				if (opcodes[index] != SEQUENCE) {
+					return true;
+				}
+				index++;
+				CommandSequence sequence = (CommandSequence) nextObject();
+				if (nestedSequences != null) {
+					sequence = nestedSequences[nestedIndex++];
+				}
+				if (sequence != null) {
+					nested = sequence.iterator();
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public Command<?> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			if (nested != null) {
+				return nested.next();
+			}
+			byte opcode = opcodes[index++];
+			switch (opcode) {
+				case OBJECT:
+					return (Command<?>) nextObject();
+				case CREATE:
+					return new CreateCommand((VectorGraphics2D) nextObject());
+				case DISPOSE:
+					return new DisposeCommand((VectorGraphics2D) nextObject());
+				case SET_BACKGROUND:
+					return new SetBackgroundCommand((Color) nextObject());
+				case SET_CLIP:
+					return new SetClipCommand((Shape) nextObject());
+				case SET_COLOR:
+					return new SetColorCommand((Color) nextObject());
+				case SET_COMPOSITE:
+					return new SetCompositeCommand((Composite) nextObject());
+				case SET_FONT:
+					return new SetFontCommand((Font) nextObject());
+				case SET_HINT:
+					Object key = nextObject();
+					return new SetHintCommand(key, nextObject());
+				case SET_PAINT:
+					return new SetPaintCommand((Paint) nextObject());
+				case SET_STROKE:
+					return new SetStrokeCommand((Stroke) nextObject());
+				case SET_TRANSFORM:
+					return new SetTransformCommand(nextMatrix());
+				case SET_XOR_MODE:
+					return new SetXORModeCommand((Color) nextObject());
+				case TRANSLATE:
+					return new TranslateCommand(nextNumber(), nextNumber());
+				case SCALE:
+					return new ScaleCommand(nextNumber(), nextNumber());
+				case ROTATE:
+					return new RotateCommand(nextNumber(), nextNumber(), nextNumber());
+				case SHEAR:
+					return new ShearCommand(nextNumber(), nextNumber());
+				case TRANSFORM:
+					return new TransformCommand(nextMatrix());
+				case DRAW_STRING:
+					String string = (String) nextObject();
+					return new DrawStringCommand(string, nextNumber(), nextNumber());
+				case DRAW_IMAGE:
+					Image image = (Image) nextObject();
+					int imageWidth = (int) nextNumber();
+					int imageHeight = (int) nextNumber();
+					return new DrawImageCommand(image, imageWidth, imageHeight,
+							nextNumber(), nextNumber(), nextNumber(), nextNumber());
+				case DRAW_IMAGE_REGION:
+					Image regionImage = (Image) nextObject();
+					int regionImageWidth = (int) nextNumber();
+					int regionImageHeight = (int) nextNumber();
+					int sourceX = (int) nextNumber();
+					int sourceY = (int) nextNumber();
+					int sourceWidth = (int) nextNumber();
+					int sourceHeight = (int) nextNumber();
+					return new DrawImageCommand(regionImage, regionImageWidth, regionImageHeight,
+							sourceX, sourceY, sourceWidth, sourceHeight,
+							nextNumber(), nextNumber(), nextNumber(), nextNumber());
+				case DRAW_TRANSFORMED_IMAGE:
+					Image transformedImage = (Image) nextObject();
+					int transformedImageWidth = (int) nextNumber();
+					int transformedImageHeight = (int) nextNumber();
+					return new DrawTransformedImageCommand(transformedImage,
+							transformedImageWidth, transformedImageHeight, nextMatrix());
+				case DRAW_LINE:
+					return new DrawLineCommand(nextNumber(), nextNumber(), nextNumber(), nextNumber());
+				case DRAW_RECTANGLE:
+					return new DrawRectangleCommand(nextNumber(), nextNumber(), nextNumber(), nextNumber());
+				case FILL_RECTANGLE:
+					return new FillRectangleCommand(nextNumber(), nextNumber(), nextNumber(), nextNumber());
+				case DRAW_ELLIPSE:
+					return new DrawEllipseCommand(nextNumber(), nextNumber(), nextNumber(), nextNumber());
+				case FILL_ELLIPSE:
+					return new FillEllipseCommand(nextNumber(), nextNumber(), nextNumber(), nextNumber());
+				case DRAW_POLYLINE:
+					int polylinePointCount = (int) nextNumber();
+					DrawPolylineCommand polyline = new DrawPolylineCommand(numbers, numberIndex, polylinePointCount);
+					numberIndex += 2*polylinePointCount;
+					return polyline;
+				case DRAW_POLYGON:
+					int drawPolygonPointCount = (int) nextNumber();
+					DrawPolygonCommand drawPolygon = new DrawPolygonCommand(numbers, numberIndex, drawPolygonPointCount);
+					numberIndex += 2*drawPolygonPointCount;
+					return drawPolygon;
+				case FILL_POLYGON:
+					int fillPolygonPointCount = (int) nextNumber();
+					FillPolygonCommand fillPolygon = new FillPolygonCommand(numbers, numberIndex, fillPolygonPointCount);
+					numberIndex += 2*fillPolygonPointCount;
+					return fillPolygon;
+				case DRAW_LINES:
+					int segmentCount = (int) nextNumber();
+					DrawLinesCommand lines = new DrawLinesCommand(numbers, numberIndex, segmentCount);
+					numberIndex += 4*segmentCount;
+					return lines;
+				case DRAW_MARKERS:
+					Shape drawMarker = (Shape) nextObject();
+					int drawMarkerCount = (int) nextNumber();
+					DrawMarkersCommand drawMarkers = new DrawMarkersCommand(drawMarker, numbers, numberIndex, drawMarkerCount);
+					numberIndex += 2*drawMarkerCount;
+					return drawMarkers;
+				case FILL_MARKERS:
+					Shape fillMarker = (Shape) nextObject();
+					int fillMarkerCount = (int) nextNumber();
+					FillMarkersCommand fillMarkers = new FillMarkersCommand(fillMarker, numbers, numberIndex, fillMarkerCount);
+					numberIndex += 2*fillMarkerCount;
+					return fillMarkers;
+				case DRAW_PATH:
+					return new DrawShapeCommand(nextPath());
+				case FILL_PATH:
+					return new FillShapeCommand(nextPath());
+				default:
+					throw new IllegalStateException("Unknown opcode: " + opcode);
+			}
+		}
+
+		private Object nextObject() {
+			return objects[objectIndex++];
+		}
+
+		private double nextNumber() {
+			return numbers[numberIndex++];
+		}
+
+		private Path2D nextPath() {
+			int windingRule = (int) nextNumber();
+			int count = (int) nextNumber();
+			Path2D path = new Path2D.Double(windingRule, count);
+			for (int i = 0; i < count; i++) {
+				int segmentType = segments[segmentIndex++];
+				switch (segmentType) {
+					case PathIterator.SEG_MOVETO:
+						path.moveTo(nextNumber(), nextNumber());
+						break;
+					case PathIterator.SEG_LINETO:
+						path.lineTo(nextNumber(), nextNumber());
+						break;
+					case PathIterator.SEG_QUADTO:
+						path.quadTo(nextNumber(), nextNumber(), nextNumber(), nextNumber());
+						break;
+					case PathIterator.SEG_CUBICTO:
+						path.curveTo(nextNumber(), nextNumber(), nextNumber(),
+								nextNumber(), nextNumber(), nextNumber());
+						break;
+					case PathIterator.SEG_CLOSE:
+						path.closePath();
+						break;
+					default:
+						throw new IllegalStateException("Unknown path operation.");
+				}
+			}
+			return path;
+		}
+
+		private AffineTransform nextMatrix() {
+			return new AffineTransform(nextNumber(), nextNumber(),
+					nextNumber(), nextNumber(), nextNumber(), nextNumber());
+		}
 	}
 }
@@ -0,0 +1,280 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d.intermediate;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.GradientPaint;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.font.TextAttribute;
+import java.awt.font.TransformAttribute;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import javax.imageio.ImageIO;
+
+import de.erichseifert.vectorgraphics2d.VectorGraphics2D;
+import de.erichseifert.vectorgraphics2d.VectorHints;
+import de.erichseifert.vectorgraphics2d.util.GraphicsUtils;
+
+/**
+ * {@code CommandCodec} whose output does not depend on objects in memory,
+ * so it can be decoded by another process. Images are embedded as PNG data
+ * or written as names, rendering hints are written as the names of their
+ * constants, and fonts with additional attributes are written as their
+ * attribute maps. References to graphics objects are written as indices and
+ * decoded as placeholder graphics objects, one for each original object.
+ */
+class PortableCommandCodec extends CommandCodec {
+	private static final byte VALUE_IMAGE = 64;
+	private static final byte VALUE_IMAGE_NAME = 65;
+	private static final byte VALUE_IMAGE_INDEX = 66;
+	private static final byte VALUE_HINT = 67;
+	private static final byte VALUE_INTEGER = 68;
+	private static final byte VALUE_GRADIENT_PAINT = 69;
+	private static final byte VALUE_GRAPHICS = 70;
+	private static final byte VALUE_FONT_ATTRIBUTES = 71;
+	private static final byte VALUE_FLOAT = 72;
+	private static final byte VALUE_BOOLEAN = 73;
+	private static final byte VALUE_TRANSFORM_ATTRIBUTE = 74;
+
+	private static final Map<String, Object> HINTS_BY_NAME = new HashMap<>();
+	private static final Map<Object, String> HINT_NAMES = new IdentityHashMap<>();
+	private static final Map<String, TextAttribute> TEXT_ATTRIBUTES_BY_NAME = new HashMap<>();
+	private static final Map<TextAttribute, String> TEXT_ATTRIBUTE_NAMES = new HashMap<>();
+	static {
+		addHintConstants(RenderingHints.class);
+		addHintConstants(VectorHints.class);
+		for (Field field : TextAttribute.class.getFields()) {
+			if (field.getType() != TextAttribute.class) {
+				continue;
+			}
+			try {
+				TextAttribute attribute = (TextAttribute) field.get(null);
+				TEXT_ATTRIBUTES_BY_NAME.put(field.getName(), attribute);
+				TEXT_ATTRIBUTE_NAMES.put(attribute, field.getName());
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	private final Function<Image, String> imageNames;
+	private final Function<String, Image> imagesByName;
+	/** Indices of the images that have been encoded. */
+	private final Map<Image, Integer> imageIndices;
+	/** Images that have been decoded. */
+	private final List<Image> images;
+	/** Indices of the graphics objects that have been encoded. */
+	private final Map<VectorGraphics2D, Integer> graphicsIndices;
+	/** Placeholders for the graphics objects that have been decoded. */
+	private final List<VectorGraphics2D> graphics;
+
+	/**
+	 * Initializes a new codec.
+	 * @param imageNames Function returning the name under which an image is
+	 * written, or {@code null} to embed images.
+	 * @param imagesByName Function returning the image for a decoded name.
+	 */
+	public PortableCommandCodec(Function<Image, String> imageNames, Function<String, Image> imagesByName) {
+		this.imageNames = imageNames;
+		this.imagesByName = imagesByName;
+		imageIndices = new IdentityHashMap<>();
+		images = new ArrayList<>();
+		graphicsIndices = new IdentityHashMap<>();
+		graphics = new ArrayList<>();
+	}
+
+	private static void addHintConstants(Class<?> type) {
+		for (Field field : type.getFields()) {
+			int modifiers = field.getModifiers();
+			if (!Modifier.isStatic(modifiers) || !Modifier.isFinal(modifiers)) {
+				continue;
+			}
+			try {
+				String name = type.getSimpleName() + "." + field.getName();
+				Object constant = field.get(null);
+				HINTS_BY_NAME.put(name, constant);
+				HINT_NAMES.put(constant, name);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	@Override
+	protected void writeObject(Object value) {
+		if (value instanceof VectorGraphics2D) {
+			Integer index = graphicsIndices.get(value);
+			if (index == null) {
+				index = graphicsIndices.size();
+				graphicsIndices.put((VectorGraphics2D) value, index);
+			}
+			putByte(VALUE_GRAPHICS);
+			putInt(index);
+		} else if (value instanceof Image) {
+			writeImage((Image) value);
+		} else if (HINT_NAMES.containsKey(value)) {
+			putByte(VALUE_HINT);
+			putString(HINT_NAMES.get(value));
+		} else if (value instanceof Integer) {
+			putByte(VALUE_INTEGER);
+			putInt((Integer) value);
+		} else if (value instanceof Float) {
+			putByte(VALUE_FLOAT);
+			putDoubles((Float) value);
+		} else if (value instanceof Boolean) {
+			putByte(VALUE_BOOLEAN);
+			putByte((byte) ((Boolean) value ? 1 : 0));
+		} else if (value instanceof TransformAttribute) {
+			putByte(VALUE_TRANSFORM_ATTRIBUTE);
+			writeTransform(((TransformAttribute) value).getTransform());
+		} else if (value.getClass() == Font.class) {
+			writeFontAttributes((Font) value);
+		} else if (value.getClass() == GradientPaint.class) {
+			GradientPaint paint = (GradientPaint) value;
+			putByte(VALUE_GRADIENT_PAINT);
+			putDoubles(paint.getPoint1().getX(), paint.getPoint1().getY(),
+					paint.getPoint2().getX(), paint.getPoint2().getY());
+			writeValue(paint.getColor1());
+			writeValue(paint.getColor2());
+			putByte((byte) (paint.isCyclic() ? 1 : 0));
+		} else {
+			throw new IllegalArgumentException("Cannot encode " + value.getClass().getName() + ".");
+		}
+	}
+
+	private void writeFontAttributes(Font font) {
+		Map<TextAttribute, ?> attributes = font.getAttributes();
+		int count = 0;
+		for (Object value : attributes.values()) {
+			if (value != null) {
+				count++;
+			}
+		}
+		putByte(VALUE_FONT_ATTRIBUTES);
+		putInt(count);
+		for (Map.Entry<TextAttribute, ?> attribute : attributes.entrySet()) {
+			if (attribute.getValue() == null) {
+				continue;
+			}
+			String name = TEXT_ATTRIBUTE_NAMES.get(attribute.getKey());
+			if (name == null) {
+				throw new IllegalArgumentException("Cannot encode font attribute " + attribute.getKey() + ".");
+			}
+			putString(name);
+			writeValue(attribute.getValue());
+		}
+	}
+
+	private void writeImage(Image image) {
+		Integer index = imageIndices.get(image);
+		if (index != null) {
+			putByte(VALUE_IMAGE_INDEX);
+			putInt(index);
+			return;
+		}
+		imageIndices.put(image, imageIndices.size());
+		if (imageNames != null) {
+			putByte(VALUE_IMAGE_NAME);
+			putString(imageNames.apply(image));
+			return;
+		}
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		try {
+			ImageIO.write(GraphicsUtils.toBufferedImage(image), "png", data);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		putByte(VALUE_IMAGE);
+		putBytes(data.toByteArray());
+	}
+
+	@Override
+	protected Object readObject(byte tag, ByteBuffer in) {
+		switch (tag) {
+			case VALUE_IMAGE:
+				byte[] data = new byte[in.getInt()];
+				in.get(data);
+				try {
+					images.add(ImageIO.read(new ByteArrayInputStream(data)));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				return images.get(images.size() - 1);
+			case VALUE_IMAGE_NAME:
+				String name = readString(in);
+				if (imagesByName == null) {
+					throw new IllegalStateException("No image can be loaded for name: " + name);
+				}
+				images.add(imagesByName.apply(name));
+				return images.get(images.size() - 1);
+			case VALUE_IMAGE_INDEX:
+				return images.get(in.getInt());
+			case VALUE_HINT:
+				return HINTS_BY_NAME.get(readString(in));
+			case VALUE_INTEGER:
+				return in.getInt();
+			case VALUE_FLOAT:
+				return (float) in.getDouble();
+			case VALUE_BOOLEAN:
+				return in.get() != 0;
+			case VALUE_TRANSFORM_ATTRIBUTE:
+				return new TransformAttribute(readTransform(in));
+			case VALUE_GRAPHICS:
+				int graphicsIndex = in.getInt();
+				while (graphics.size() <= graphicsIndex) {
+					graphics.add(new VectorGraphics2D());
+				}
+				return graphics.get(graphicsIndex);
+			case VALUE_FONT_ATTRIBUTES:
+				int attributeCount = in.getInt();
+				Map<TextAttribute, Object> attributes = new HashMap<>();
+				for (int i = 0; i < attributeCount; i++) {
+					TextAttribute attribute = TEXT_ATTRIBUTES_BY_NAME.get(readString(in));
+					attributes.put(attribute, readValue(in));
+				}
+				return new Font(attributes);
+			case VALUE_GRADIENT_PAINT:
+				float x1 = (float) in.getDouble();
+				float y1 = (float) in.getDouble();
+				float x2 = (float) in.getDouble();
+				float y2 = (float) in.getDouble();
+				Color color1 = (Color) readValue(in);
+				Color color2 = (Color) readValue(in);
+				return new GradientPaint(x1, y1, color1, x2, y2, color2, in.get() != 0);
+			default:
+				return super.readObject(tag, in);
+		}
+	}
+}
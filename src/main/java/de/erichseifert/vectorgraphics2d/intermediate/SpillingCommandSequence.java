@@ -0,0 +1,268 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d.intermediate;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import de.erichseifert.vectorgraphics2d.intermediate.commands.Command;
+
+/**
+ * {@code CommandSequence} that stores its commands in binary form and moves
+ * them to a temporary file when a memory budget is exceeded. Iterators read
+ * the file through memory mapping and decode the commands one after another,
+ * so sequences can be processed that are much larger than the heap.
+ * <p>Numbers, strings, shapes, colors, basic strokes, alpha composites, and
+ * plain fonts are written to the file. Other objects, like images, are kept
+ * in memory and are only referenced by the file.</p>
+ * <p>The sequence can be used as {@link CommandSink} of a
+ * {@code VectorGraphics2D} object to record a drawing directly into it. The
+ * temporary file is removed by {@link #delete()}, or when the virtual
+ * machine exits.</p>
+ */
+public class SpillingCommandSequence implements CommandSequence, CommandSink {
+	private static final int INITIAL_CAPACITY = 4096;
+
+	private final int memoryBudget;
+	private final File directory;
+	private final CommandCodec codec;
+
+	/** Encoded commands that have not been written to the file yet. */
+	private ByteBuffer pending;
+	private File file;
+	private RandomAccessFile fileAccess;
+	private FileChannel channel;
+	/** End offset of each block of commands in the file. */
+	private long[] chunkEnds;
+	private int chunkCount;
+	private int size;
+	private boolean closed;
+	private boolean deleted;
+
+	/**
+	 * Initializes a new sequence which creates its temporary file in the
+	 * default temporary-file directory.
+	 * @param memoryBudget Number of bytes that may be kept in memory.
+	 */
+	public SpillingCommandSequence(int memoryBudget) {
+		this(memoryBudget, null);
+	}
+
+	/**
+	 * Initializes a new sequence which creates its temporary file in the
+	 * specified directory.
+	 * @param memoryBudget Number of bytes that may be kept in memory.
+	 * @param directory Directory of the temporary file, or {@code null} for
+	 * the default temporary-file directory.
+	 */
+	public SpillingCommandSequence(int memoryBudget, File directory) {
+		if (memoryBudget <= 0) {
+			throw new IllegalArgumentException("Memory budget must be positive.");
+		}
+		this.memoryBudget = memoryBudget;
+		this.directory = directory;
+		codec = new CommandCodec();
+		pending = ByteBuffer.allocate(Math.min(INITIAL_CAPACITY, memoryBudget));
+		chunkEnds = new long[8];
+	}
+
+	/**
+	 * Appends the specified command to the end of this sequence.
+	 * @param command Command to be added.
+	 * @throws IllegalStateException if the sequence has been closed.
+	 * @throws UncheckedIOException if the temporary file could not be written.
+	 */
+	@Override
+	public void add(Command<?> command) {
+		if (closed) {
+			throw new IllegalStateException("Sequence has been closed.");
+		}
+		ByteBuffer encoded = codec.encode(command);
+		int length = encoded.remaining();
+		if (pending.position() + length > memoryBudget) {
+			spill();
+		}
+		if (length > memoryBudget) {
+			// Commands that do not fit into memory are written on their own
+			write(encoded);
+		} else {
+			ensureCapacity(length);
+			pending.put(encoded);
+		}
+		size++;
+	}
+
+	/**
+	 * Finishes this sequence. No commands can be added afterwards, but the
+	 * sequence can still be iterated.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+	}
+
+	/**
+	 * Closes this sequence, removes its temporary file, and releases the
+	 * memory of all commands. The sequence is empty afterwards.
+	 * @throws UncheckedIOException if the temporary file could not be closed.
+	 */
+	public void delete() {
+		closed = true;
+		deleted = true;
+		size = 0;
+		chunkCount = 0;
+		pending = ByteBuffer.allocate(0);
+		if (channel != null) {
+			try {
+				fileAccess.close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} finally {
+				channel = null;
+				fileAccess = null;
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of commands in this sequence.
+	 * @return Number of commands.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of bytes that have been written to the temporary
+	 * file.
+	 * @return Number of bytes on disk.
+	 */
+	public long getSpilledByteCount() {
+		return chunkCount > 0 ? chunkEnds[chunkCount - 1] : 0L;
+	}
+
+	private void spill() {
+		if (pending.position() == 0) {
+			return;
+		}
+		((Buffer) pending).flip();
+		write(pending);
+		((Buffer) pending).clear();
+	}
+
+	private void write(ByteBuffer bytes) {
+		try {
+			if (channel == null) {
+				file = File.createTempFile("vectorgraphics2d-", ".tmp", directory);
+				file.deleteOnExit();
+				fileAccess = new RandomAccessFile(file, "rw");
+				channel = fileAccess.getChannel();
+			}
+			long end = getSpilledByteCount() + bytes.remaining();
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+			if (chunkCount == chunkEnds.length) {
+				chunkEnds = Arrays.copyOf(chunkEnds, 2*chunkEnds.length);
+			}
+			chunkEnds[chunkCount++] = end;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void ensureCapacity(int length) {
+		if (pending.remaining() < length) {
+			int capacity = Math.min(Math.max(2*pending.capacity(), pending.position() + length), memoryBudget);
+			ByteBuffer grown = ByteBuffer.allocate(capacity);
+			((Buffer) pending).flip();
+			grown.put(pending);
+			pending = grown;
+		}
+	}
+
+	private ByteBuffer map(int chunk) {
+		long start = chunk > 0 ? chunkEnds[chunk - 1] : 0L;
+		try {
+			return channel.map(FileChannel.MapMode.READ_ONLY, start, chunkEnds[chunk] - start);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Returns an iterator over the commands of this sequence. The commands are
+	 * decoded while iterating, so every iteration creates new command objects.
+	 * Commands that are added during the iteration are returned as well.
+	 * @return Iterator over all commands.
+	 */
+	@Override
+	public Iterator<Command<?>> iterator() {
+		return new Iterator<Command<?>>() {
+			/** Number of commands that have been returned. */
+			private int index;
+			/** Index of the next file block to be read. */
+			private int chunk;
+			/** Current file block, or {@code null} if the block has been read. */
+			private ByteBuffer mapped;
+			/** Read position in the pending commands. */
+			private int pendingPosition;
+
+			@Override
+			public boolean hasNext() {
+				return index < size;
+			}
+
+			@Override
+			public Command<?> next() {
+				if (deleted || !hasNext()) {
+					throw new NoSuchElementException();
+				}
+				index++;
+				while (mapped == null || !mapped.hasRemaining()) {
+					if (chunk == chunkCount) {
+						ByteBuffer view = pending.duplicate();
+						((Buffer) view).position(pendingPosition);
+						Command<?> command = codec.decode(view);
+						pendingPosition = view.position();
+						return command;
+					}
+					mapped = map(chunk++);
+					// Pending commands that have already been returned may
+					// have been written to the file in the meantime
+					((Buffer) mapped).position(pendingPosition);
+					pendingPosition = 0;
+				}
+				return codec.decode(mapped);
+			}
+		};
+	}
+}
@@ -27,5 +27,15 @@ public abstract class AffineTransformCommand extends StateCommand<AffineTransfor
 	public AffineTransformCommand(AffineTransform transform) {
 		super(transform);
 	}
+
+	/**
+	 * Concatenates this transformation to the specified transformation.
+	 * Subclasses that store their parameters instead of a matrix apply them
+	 * directly, without creating an intermediate transformation object.
+	 * @param transform Transformation that will be modified.
+	 */
+	public void applyTo(AffineTransform transform) {
+		transform.concatenate(getValue());
+	}
 }
 
@@ -46,7 +46,12 @@ public abstract class Command<T> {
 			return false;
 		}
 		Command<?> o = (Command<?>) obj;
-		return value == o.value || value.equals(o.value);
+		return value == o.value || (value != null && value.equals(o.value));
+	}
+
+	@Override
+	public int hashCode() {
+		return (value != null) ? value.hashCode() : 0;
 	}
 }
 
@@ -24,9 +24,19 @@ package de.erichseifert.vectorgraphics2d.intermediate.commands;
 import java.awt.Image;
 import java.util.Locale;
 
+/**
+ * Command that draws a rectangular region of an image into a rectangle in
+ * user space. By default the region spans the whole image. Drawing only a
+ * region does not create a copy of the image, so all commands that draw
+ * regions of the same image share its pixels.
+ */
 public class DrawImageCommand extends Command<Image> {
 	private final int imageWidth;
 	private final int imageHeight;
+	private final int sourceX;
+	private final int sourceY;
+	private final int sourceWidth;
+	private final int sourceHeight;
 	private final double x;
 	private final double y;
 	private final double width;
@@ -34,9 +44,20 @@ public class DrawImageCommand extends Command<Image> {
 
 	public DrawImageCommand(Image image, int imageWidth, int imageHeight,
 			double x, double y, double width, double height) {
+		this(image, imageWidth, imageHeight, 0, 0, imageWidth, imageHeight,
+				x, y, width, height);
+	}
+
+	public DrawImageCommand(Image image, int imageWidth, int imageHeight,
+			int sourceX, int sourceY, int sourceWidth, int sourceHeight,
+			double x, double y, double width, double height) {
 		super(image);
 		this.imageWidth = imageWidth;
 		this.imageHeight = imageHeight;
+		this.sourceX = sourceX;
+		this.sourceY = sourceY;
+		this.sourceWidth = sourceWidth;
+		this.sourceHeight = sourceHeight;
 		this.x = x;
 		this.y = y;
 		this.width = width;
@@ -50,6 +71,29 @@ public class DrawImageCommand extends Command<Image> {
 		return imageHeight;
 	}
 
+	public int getSourceX() {
+		return sourceX;
+	}
+	public int getSourceY() {
+		return sourceY;
+	}
+	public int getSourceWidth() {
+		return sourceWidth;
+	}
+	public int getSourceHeight() {
+		return sourceHeight;
+	}
+
+	/**
+	 * Returns whether only a region of the image is drawn.
+	 * @return {@code true} if the source region differs from the image
+	 * bounds, {@code false} otherwise.
+	 */
+	public boolean isCropped() {
+		return sourceX != 0 || sourceY != 0 ||
+				sourceWidth != imageWidth || sourceHeight != imageHeight;
+	}
+
 	public double getX() {
 		return x;
 	}
@@ -63,13 +107,40 @@ public class DrawImageCommand extends Command<Image> {
 		return height;
 	}
 
+	@Override
+	public boolean equals(Object obj) {
+		if (!super.equals(obj)) {
+			return false;
+		}
+		DrawImageCommand o = (DrawImageCommand) obj;
+		return imageWidth == o.imageWidth && imageHeight == o.imageHeight &&
+				sourceX == o.sourceX && sourceY == o.sourceY &&
+				sourceWidth == o.sourceWidth && sourceHeight == o.sourceHeight &&
+				Double.compare(x, o.x) == 0 && Double.compare(y, o.y) == 0 &&
+				Double.compare(width, o.width) == 0 && Double.compare(height, o.height) == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = super.hashCode();
+		hash = 31*hash + sourceX;
+		hash = 31*hash + sourceY;
+		hash = 31*hash + sourceWidth;
+		hash = 31*hash + sourceHeight;
+		hash = 31*hash + Double.hashCode(x);
+		hash = 31*hash + Double.hashCode(y);
+		hash = 31*hash + Double.hashCode(width);
+		hash = 31*hash + Double.hashCode(height);
+		return hash;
+	}
+
 	@Override
 	public String toString() {
 		return String.format((Locale) null,
-				"%s[value=%s, imageWidth=%d, imageHeight=%d, x=%f, y=%f, width=%f, height=%f]",
+				"%s[value=%s, imageWidth=%d, imageHeight=%d, sourceX=%d, sourceY=%d, sourceWidth=%d, sourceHeight=%d, x=%f, y=%f, width=%f, height=%f]",
 				getClass().getName(), getValue(),
 				getImageWidth(), getImageHeight(),
+				getSourceX(), getSourceY(), getSourceWidth(), getSourceHeight(),
 				getX(), getY(), getWidth(), getHeight());
 	}
 }
-
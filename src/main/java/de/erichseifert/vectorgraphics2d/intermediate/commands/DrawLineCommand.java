@@ -0,0 +1,95 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d.intermediate.commands;
+
+import java.awt.geom.Line2D;
+import java.util.Locale;
+
+/**
+ * Command that draws a straight line. Only the coordinates are stored, the
+ * shape returned by {@link #getValue()} is created on demand.
+ */
+public class DrawLineCommand extends DrawShapeCommand {
+	private final double x1;
+	private final double y1;
+	private final double x2;
+	private final double y2;
+
+	public DrawLineCommand(double x1, double y1, double x2, double y2) {
+		super(null);
+		this.x1 = x1;
+		this.y1 = y1;
+		this.x2 = x2;
+		this.y2 = y2;
+	}
+
+	public double getX1() {
+		return x1;
+	}
+
+	public double getY1() {
+		return y1;
+	}
+
+	public double getX2() {
+		return x2;
+	}
+
+	public double getY2() {
+		return y2;
+	}
+
+	/**
+	 * Returns a new line with the coordinates of this command.
+	 * @return Line.
+	 */
+	@Override
+	public Line2D getValue() {
+		return new Line2D.Double(x1, y1, x2, y2);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == null || getClass() != obj.getClass()) {
+			return false;
+		}
+		DrawLineCommand o = (DrawLineCommand) obj;
+		return Double.compare(x1, o.x1) == 0 && Double.compare(y1, o.y1) == 0 &&
+				Double.compare(x2, o.x2) == 0 && Double.compare(y2, o.y2) == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = Double.hashCode(x1);
+		hash = 31*hash + Double.hashCode(y1);
+		hash = 31*hash + Double.hashCode(x2);
+		hash = 31*hash + Double.hashCode(y2);
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return String.format((Locale) null,
+				"%s[x1=%f, y1=%f, x2=%f, y2=%f]", getClass().getName(),
+				getX1(), getY1(), getX2(), getY2());
+	}
+}
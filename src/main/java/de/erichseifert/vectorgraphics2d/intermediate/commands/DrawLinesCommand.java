@@ -0,0 +1,96 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d.intermediate.commands;
+
+import java.awt.geom.Path2D;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Command that draws many independent line segments as a single path. The
+ * segments are stored as a flat array of coordinates, the shape returned by
+ * {@link #getValue()} is created on demand.
+ */
+public class DrawLinesCommand extends DrawShapeCommand {
+	/** Coordinates of all segments in the order x1, y1, x2, y2, ... */
+	private final double[] coordinates;
+
+	/**
+	 * Initializes a new command with the specified segments.
+	 * @param coordinates Array containing the start and end point of each
+	 * segment in the order x1, y1, x2, y2.
+	 * @param offset Index of the first coordinate in the array.
+	 * @param segmentCount Number of segments.
+	 */
+	public DrawLinesCommand(double[] coordinates, int offset, int segmentCount) {
+		super(null);
+		this.coordinates = Arrays.copyOfRange(coordinates, offset, offset + 4*segmentCount);
+	}
+
+	/**
+	 * Returns the coordinates of all segments in the order x1, y1, x2, y2, ...
+	 * The returned array must not be modified.
+	 * @return Coordinates.
+	 */
+	public double[] getCoordinates() {
+		return coordinates;
+	}
+
+	public int getSegmentCount() {
+		return coordinates.length/4;
+	}
+
+	/**
+	 * Returns a new path that contains all segments of this command.
+	 * @return Path.
+	 */
+	@Override
+	public Path2D getValue() {
+		Path2D path = new Path2D.Double(Path2D.WIND_NON_ZERO, 2*getSegmentCount());
+		for (int i = 0; i < coordinates.length; i += 4) {
+			path.moveTo(coordinates[i], coordinates[i + 1]);
+			path.lineTo(coordinates[i + 2], coordinates[i + 3]);
+		}
+		return path;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == null || getClass() != obj.getClass()) {
+			return false;
+		}
+		DrawLinesCommand o = (DrawLinesCommand) obj;
+		return Arrays.equals(coordinates, o.coordinates);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(coordinates);
+	}
+
+	@Override
+	public String toString() {
+		return String.format((Locale) null,
+				"%s[coordinates=%s]", getClass().getName(),
+				Arrays.toString(getCoordinates()));
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d.intermediate.commands;
+
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.util.Arrays;
+import java.util.Locale;
+
+import de.erichseifert.vectorgraphics2d.util.GraphicsUtils;
+
+/**
+ * Command that draws the outline of the same marker shape at many positions. Documents can
+ * write the marker once and reference it for each position. The shape
+ * returned by {@link #getValue()} contains all instances and is created on
+ * demand.
+ */
+public class DrawMarkersCommand extends DrawShapeCommand {
+	private final Shape marker;
+	/** Coordinates of all positions in the order x0, y0, x1, y1, ... */
+	private final double[] positions;
+
+	/**
+	 * Initializes a new command with the specified marker and positions.
+	 * @param marker Shape that is placed at each position.
+	 * @param positions Array containing the positions in the order x, y.
+	 * @param offset Index of the first coordinate in the array.
+	 * @param count Number of positions.
+	 */
+	public DrawMarkersCommand(Shape marker, double[] positions, int offset, int count) {
+		super(null);
+		this.marker = GraphicsUtils.clone(marker);
+		this.positions = Arrays.copyOfRange(positions, offset, offset + 2*count);
+	}
+
+	/**
+	 * Returns the shape that is placed at each position.
+	 * @return Marker shape.
+	 */
+	public Shape getMarker() {
+		return marker;
+	}
+
+	/**
+	 * Returns the coordinates of all positions in the order x0, y0, x1, y1, ...
+	 * The returned array must not be modified.
+	 * @return Positions.
+	 */
+	public double[] getPositions() {
+		return positions;
+	}
+
+	public int getCount() {
+		return positions.length/2;
+	}
+
+	/**
+	 * Returns a new path that contains the marker at all positions.
+	 * @return Path.
+	 */
+	@Override
+	public Path2D getValue() {
+		Path2D path = new Path2D.Double(marker.getPathIterator(null).getWindingRule());
+		AffineTransform translation = new AffineTransform();
+		for (int i = 0; i < positions.length; i += 2) {
+			translation.setToTranslation(positions[i], positions[i + 1]);
+			path.append(marker.getPathIterator(translation), false);
+		}
+		return path;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == null || getClass() != obj.getClass()) {
+			return false;
+		}
+		DrawMarkersCommand o = (DrawMarkersCommand) obj;
+		return Arrays.equals(positions, o.positions) &&
+				(marker == o.marker || GraphicsUtils.equals(marker, o.marker));
+	}
+
+	@Override
+	public int hashCode() {
+		// Markers are compared by their geometry, so only the positions are hashed
+		return Arrays.hashCode(positions);
+	}
+
+	@Override
+	public String toString() {
+		return String.format((Locale) null,
+				"%s[marker=%s, positions=%s]", getClass().getName(),
+				getMarker(), Arrays.toString(getPositions()));
+	}
+}
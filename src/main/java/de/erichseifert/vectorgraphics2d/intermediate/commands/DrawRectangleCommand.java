@@ -0,0 +1,95 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d.intermediate.commands;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Locale;
+
+/**
+ * Command that draws the outline of a rectangle given by its bounding box. Only the coordinates are
+ * stored, the shape returned by {@link #getValue()} is created on demand.
+ */
+public class DrawRectangleCommand extends DrawShapeCommand {
+	private final double x;
+	private final double y;
+	private final double width;
+	private final double height;
+
+	public DrawRectangleCommand(double x, double y, double width, double height) {
+		super(null);
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+	}
+
+	public double getX() {
+		return x;
+	}
+
+	public double getY() {
+		return y;
+	}
+
+	public double getWidth() {
+		return width;
+	}
+
+	public double getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns a new rectangle with the coordinates of this command.
+	 * @return Rectangle.
+	 */
+	@Override
+	public Rectangle2D getValue() {
+		return new Rectangle2D.Double(x, y, width, height);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == null || getClass() != obj.getClass()) {
+			return false;
+		}
+		DrawRectangleCommand o = (DrawRectangleCommand) obj;
+		return Double.compare(x, o.x) == 0 && Double.compare(y, o.y) == 0 &&
+				Double.compare(width, o.width) == 0 && Double.compare(height, o.height) == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = Double.hashCode(x);
+		hash = 31*hash + Double.hashCode(y);
+		hash = 31*hash + Double.hashCode(width);
+		hash = 31*hash + Double.hashCode(height);
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return String.format((Locale) null,
+				"%s[x=%f, y=%f, width=%f, height=%f]", getClass().getName(),
+				getX(), getY(), getWidth(), getHeight());
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d.intermediate.commands;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Command that draws a string which consists of runs with different fonts
+ * and colors. The runs are laid out one after another starting at the
+ * baseline position of the command. A run without a color is drawn with the
+ * current color.
+ */
+public class DrawStyledStringCommand extends Command<String> {
+	private final double x;
+	private final double y;
+	private final int[] runLimits;
+	private final Font[] fonts;
+	private final Color[] colors;
+
+	/**
+	 * Initializes a new command.
+	 * @param string Text of all runs.
+	 * @param x Horizontal position of the baseline.
+	 * @param y Vertical position of the baseline.
+	 * @param runLimits Index of the character after each run.
+	 * @param fonts Font of each run.
+	 * @param colors Color of each run, or {@code null} for the current color.
+	 */
+	public DrawStyledStringCommand(String string, double x, double y,
+			int[] runLimits, Font[] fonts, Color[] colors) {
+		super(string);
+		if (runLimits.length != fonts.length || runLimits.length != colors.length) {
+			throw new IllegalArgumentException("Every run must have a limit, a font, and a color.");
+		}
+		this.x = x;
+		this.y = y;
+		this.runLimits = Arrays.copyOf(runLimits, runLimits.length);
+		this.fonts = Arrays.copyOf(fonts, fonts.length);
+		this.colors = Arrays.copyOf(colors, colors.length);
+	}
+
+	public double getX() {
+		return x;
+	}
+
+	public double getY() {
+		return y;
+	}
+
+	public int getRunCount() {
+		return runLimits.length;
+	}
+
+	public int getRunStart(int run) {
+		return (run == 0) ? 0 : runLimits[run - 1];
+	}
+
+	public int getRunLimit(int run) {
+		return runLimits[run];
+	}
+
+	public String getRunText(int run) {
+		return getValue().substring(getRunStart(run), getRunLimit(run));
+	}
+
+	public Font getFont(int run) {
+		return fonts[run];
+	}
+
+	public Color getColor(int run) {
+		return colors[run];
+	}
+
+	/**
+	 * Returns the logical bounds of all runs in user space.
+	 * @param frc Context that is used to measure the text.
+	 * @return Rectangle containing all runs.
+	 */
+	public Rectangle2D getBounds(FontRenderContext frc) {
+		Rectangle2D bounds = null;
+		double advance = x;
+		for (int run = 0; run < runLimits.length; run++) {
+			Rectangle2D runBounds = fonts[run].getStringBounds(getValue(),
+					getRunStart(run), getRunLimit(run), frc);
+			runBounds.setRect(advance + runBounds.getX(), y + runBounds.getY(),
+					runBounds.getWidth(), runBounds.getHeight());
+			if (bounds == null) {
+				bounds = runBounds;
+			} else {
+				bounds.add(runBounds);
+			}
+			advance = runBounds.getMaxX();
+		}
+		return (bounds != null) ? bounds : new Rectangle2D.Double(x, y, 0.0, 0.0);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!super.equals(obj)) {
+			return false;
+		}
+		DrawStyledStringCommand o = (DrawStyledStringCommand) obj;
+		return Double.compare(x, o.x) == 0 && Double.compare(y, o.y) == 0 &&
+				Arrays.equals(runLimits, o.runLimits) && Arrays.equals(fonts, o.fonts) &&
+				Arrays.equals(colors, o.colors);
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = super.hashCode();
+		hash = 31*hash + Double.hashCode(x);
+		hash = 31*hash + Double.hashCode(y);
+		hash = 31*hash + Arrays.hashCode(runLimits);
+		hash = 31*hash + Arrays.hashCode(fonts);
+		hash = 31*hash + Arrays.hashCode(colors);
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return String.format((Locale) null, "%s[value=%s, x=%f, y=%f, runLimits=%s]",
+			getClass().getName(), getValue(), getX(), getY(), Arrays.toString(runLimits));
+	}
+}
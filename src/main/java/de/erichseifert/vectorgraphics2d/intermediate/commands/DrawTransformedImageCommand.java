@@ -0,0 +1,88 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d.intermediate.commands;
+
+import java.awt.Image;
+import java.awt.geom.AffineTransform;
+import java.util.Locale;
+
+/**
+ * Command that draws an image through an affine transformation. The image
+ * spans the rectangle from (0, 0) to (imageWidth, imageHeight) in image
+ * space, which is mapped to user space by the transformation. The image
+ * itself is not resampled, so output formats can embed it unchanged.
+ */
+public class DrawTransformedImageCommand extends Command<Image> {
+	private final int imageWidth;
+	private final int imageHeight;
+	private final AffineTransform transform;
+
+	public DrawTransformedImageCommand(Image image, int imageWidth, int imageHeight,
+			AffineTransform transform) {
+		super(image);
+		this.imageWidth = imageWidth;
+		this.imageHeight = imageHeight;
+		this.transform = new AffineTransform(transform);
+	}
+
+	public int getImageWidth() {
+		return imageWidth;
+	}
+	public int getImageHeight() {
+		return imageHeight;
+	}
+
+	/**
+	 * Returns the transformation from image space to user space.
+	 * @return A copy of the transformation.
+	 */
+	public AffineTransform getTransform() {
+		return new AffineTransform(transform);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!super.equals(obj)) {
+			return false;
+		}
+		DrawTransformedImageCommand o = (DrawTransformedImageCommand) obj;
+		return imageWidth == o.imageWidth && imageHeight == o.imageHeight &&
+				transform.equals(o.transform);
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = super.hashCode();
+		hash = 31*hash + imageWidth;
+		hash = 31*hash + imageHeight;
+		hash = 31*hash + transform.hashCode();
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return String.format((Locale) null,
+				"%s[value=%s, imageWidth=%d, imageHeight=%d, transform=%s]",
+				getClass().getName(), getValue(),
+				getImageWidth(), getImageHeight(), transform);
+	}
+}
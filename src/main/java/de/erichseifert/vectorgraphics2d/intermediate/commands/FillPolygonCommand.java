@@ -0,0 +1,102 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d.intermediate.commands;
+
+import java.awt.geom.Path2D;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Command that fills a closed polygon using the even-odd rule. The points are stored as a flat array of
+ * coordinates, the shape returned by {@link #getValue()} is created on
+ * demand.
+ */
+public class FillPolygonCommand extends FillShapeCommand {
+	/** Coordinates of all points in the order x0, y0, x1, y1, ... */
+	private final double[] coordinates;
+
+	public FillPolygonCommand(int[] xPoints, int[] yPoints, int pointCount) {
+		super(null);
+		coordinates = new double[2*pointCount];
+		for (int i = 0; i < pointCount; i++) {
+			coordinates[2*i] = xPoints[i];
+			coordinates[2*i + 1] = yPoints[i];
+		}
+	}
+
+	public FillPolygonCommand(double[] coordinates, int offset, int pointCount) {
+		super(null);
+		this.coordinates = Arrays.copyOfRange(coordinates, offset, offset + 2*pointCount);
+	}
+
+	/**
+	 * Returns the coordinates of all points in the order x0, y0, x1, y1, ...
+	 * The returned array must not be modified.
+	 * @return Coordinates.
+	 */
+	public double[] getCoordinates() {
+		return coordinates;
+	}
+
+	public int getPointCount() {
+		return coordinates.length/2;
+	}
+
+	/**
+	 * Returns a new path that connects the points of this polygon.
+	 * @return Path.
+	 */
+	@Override
+	public Path2D getValue() {
+		Path2D path = new Path2D.Double(Path2D.WIND_EVEN_ODD, getPointCount() + 1);
+		for (int i = 0; i < coordinates.length; i += 2) {
+			if (i == 0) {
+				path.moveTo(coordinates[i], coordinates[i + 1]);
+			} else {
+				path.lineTo(coordinates[i], coordinates[i + 1]);
+			}
+		}
+		path.closePath();
+		return path;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == null || getClass() != obj.getClass()) {
+			return false;
+		}
+		FillPolygonCommand o = (FillPolygonCommand) obj;
+		return Arrays.equals(coordinates, o.coordinates);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(coordinates);
+	}
+
+	@Override
+	public String toString() {
+		return String.format((Locale) null,
+				"%s[coordinates=%s]", getClass().getName(),
+				Arrays.toString(getCoordinates()));
+	}
+}
@@ -30,7 +30,7 @@ public class RotateCommand extends AffineTransformCommand {
 	private final double centerY;
 
 	public RotateCommand(double theta, double centerX, double centerY) {
-		super(AffineTransform.getRotateInstance(theta, centerX, centerY));
+		super(null);
 		this.theta = theta;
 		this.centerX = centerX;
 		this.centerY = centerY;
@@ -48,6 +48,39 @@ public class RotateCommand extends AffineTransformCommand {
 		return centerY;
 	}
 
+	/**
+	 * Returns a new transformation that represents this rotation.
+	 * @return Transformation matrix.
+	 */
+	@Override
+	public AffineTransform getValue() {
+		return AffineTransform.getRotateInstance(theta, centerX, centerY);
+	}
+
+	@Override
+	public void applyTo(AffineTransform transform) {
+		transform.rotate(theta, centerX, centerY);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == null || getClass() != obj.getClass()) {
+			return false;
+		}
+		RotateCommand o = (RotateCommand) obj;
+		return Double.compare(theta, o.theta) == 0 &&
+				Double.compare(centerX, o.centerX) == 0 &&
+				Double.compare(centerY, o.centerY) == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = Double.hashCode(theta);
+		hash = 31*hash + Double.hashCode(centerX);
+		hash = 31*hash + Double.hashCode(centerY);
+		return hash;
+	}
+
 	@Override
 	public String toString() {
 		return String.format((Locale) null,
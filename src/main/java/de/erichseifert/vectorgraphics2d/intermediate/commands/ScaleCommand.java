@@ -29,7 +29,7 @@ public class ScaleCommand extends AffineTransformCommand {
 	private final double scaleY;
 
 	public ScaleCommand(double scaleX, double scaleY) {
-		super(AffineTransform.getScaleInstance(scaleX, scaleY));
+		super(null);
 		this.scaleX = scaleX;
 		this.scaleY = scaleY;
 	}
@@ -42,6 +42,37 @@ public class ScaleCommand extends AffineTransformCommand {
 		return scaleY;
 	}
 
+	/**
+	 * Returns a new transformation that represents this scaling.
+	 * @return Transformation matrix.
+	 */
+	@Override
+	public AffineTransform getValue() {
+		return AffineTransform.getScaleInstance(scaleX, scaleY);
+	}
+
+	@Override
+	public void applyTo(AffineTransform transform) {
+		transform.scale(scaleX, scaleY);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == null || getClass() != obj.getClass()) {
+			return false;
+		}
+		ScaleCommand o = (ScaleCommand) obj;
+		return Double.compare(scaleX, o.scaleX) == 0 &&
+				Double.compare(scaleY, o.scaleY) == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = Double.hashCode(scaleX);
+		hash = 31*hash + Double.hashCode(scaleY);
+		return hash;
+	}
+
 	@Override
 	public String toString() {
 		return String.format((Locale) null,
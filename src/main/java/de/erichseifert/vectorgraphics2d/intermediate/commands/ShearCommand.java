@@ -29,7 +29,7 @@ public class ShearCommand extends AffineTransformCommand {
 	private final double shearY;
 
 	public ShearCommand(double shearX, double shearY) {
-		super(AffineTransform.getShearInstance(shearX, shearY));
+		super(null);
 		this.shearX = shearX;
 		this.shearY = shearY;
 	}
@@ -42,6 +42,37 @@ public class ShearCommand extends AffineTransformCommand {
 		return shearY;
 	}
 
+	/**
+	 * Returns a new transformation that represents this shearing.
+	 * @return Transformation matrix.
+	 */
+	@Override
+	public AffineTransform getValue() {
+		return AffineTransform.getShearInstance(shearX, shearY);
+	}
+
+	@Override
+	public void applyTo(AffineTransform transform) {
+		transform.shear(shearX, shearY);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == null || getClass() != obj.getClass()) {
+			return false;
+		}
+		ShearCommand o = (ShearCommand) obj;
+		return Double.compare(shearX, o.shearX) == 0 &&
+				Double.compare(shearY, o.shearY) == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = Double.hashCode(shearX);
+		hash = 31*hash + Double.hashCode(shearY);
+		return hash;
+	}
+
 	@Override
 	public String toString() {
 		return String.format((Locale) null,
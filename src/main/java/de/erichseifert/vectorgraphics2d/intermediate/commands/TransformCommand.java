@@ -24,15 +24,12 @@ package de.erichseifert.vectorgraphics2d.intermediate.commands;
 import java.awt.geom.AffineTransform;
 
 public class TransformCommand extends AffineTransformCommand {
-	private final AffineTransform transform;
-
 	public TransformCommand(AffineTransform transform) {
-		super(transform);
-		this.transform = new AffineTransform(transform);
+		super(new AffineTransform(transform));
 	}
 
 	public AffineTransform getTransform() {
-		return transform;
+		return getValue();
 	}
 }
 
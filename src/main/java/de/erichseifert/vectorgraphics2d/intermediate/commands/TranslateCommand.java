@@ -29,7 +29,7 @@ public class TranslateCommand extends AffineTransformCommand {
 	private final double deltaY;
 
 	public TranslateCommand(double x, double y) {
-		super(AffineTransform.getTranslateInstance(x, y));
+		super(null);
 		this.deltaX = x;
 		this.deltaY = y;
 	}
@@ -42,6 +42,37 @@ public class TranslateCommand extends AffineTransformCommand {
 		return deltaY;
 	}
 
+	/**
+	 * Returns a new transformation that represents this translation.
+	 * @return Transformation matrix.
+	 */
+	@Override
+	public AffineTransform getValue() {
+		return AffineTransform.getTranslateInstance(deltaX, deltaY);
+	}
+
+	@Override
+	public void applyTo(AffineTransform transform) {
+		transform.translate(deltaX, deltaY);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == null || getClass() != obj.getClass()) {
+			return false;
+		}
+		TranslateCommand o = (TranslateCommand) obj;
+		return Double.compare(deltaX, o.deltaX) == 0 &&
+				Double.compare(deltaY, o.deltaY) == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = Double.hashCode(deltaX);
+		hash = 31*hash + Double.hashCode(deltaY);
+		return hash;
+	}
+
 	@Override
 	public String toString() {
 		return String.format((Locale) null,
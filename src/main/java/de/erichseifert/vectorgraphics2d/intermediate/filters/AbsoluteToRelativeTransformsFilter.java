@@ -48,7 +48,7 @@ public class AbsoluteToRelativeTransformsFilter extends StreamingFilter {
 		Command<?> nextCommand = super.next();
 		if (nextCommand instanceof AffineTransformCommand) {
 			AffineTransformCommand affineTransformCommand = (AffineTransformCommand) nextCommand;
-			getCurrentTransform().concatenate(affineTransformCommand.getValue());
+			affineTransformCommand.applyTo(getCurrentTransform());
 		} else if (nextCommand instanceof CreateCommand) {
 			AffineTransform newTransform = transforms.isEmpty() ? new AffineTransform() : new AffineTransform(getCurrentTransform());
 			transforms.push(newTransform);
@@ -0,0 +1,217 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d.intermediate.filters;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import de.erichseifert.vectorgraphics2d.intermediate.CommandIndex;
+import de.erichseifert.vectorgraphics2d.intermediate.CommandSequence;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.AffineTransformCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.Command;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.CreateCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DisposeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetClipCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetHintCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetTransformCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.StateCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.TransformCommand;
+
+/**
+ * <p>Filter that only passes the drawing commands that intersect a region in
+ * device space, together with the state changes they depend on. The
+ * visible commands are looked up in a {@link CommandIndex} of the filtered
+ * sequence, so one index can be used to export many regions.</p>
+ * <p>State changes are held back until the next visible drawing command.
+ * Changes that are overridden before that command are dropped, and
+ * consecutive transformations are combined into one. Graphics objects that
+ * were created and disposed without drawing anything visible are dropped
+ * completely. The output therefore grows with the visible content rather
+ * than with the whole sequence.</p>
+ */
+public class RegionFilter extends StreamingFilter {
+	/** Positions of the visible drawing commands in ascending order. */
+	private final int[] visiblePositions;
+	/** Index of the next visible position that has not been reached yet. */
+	private int nextVisible;
+	/** Position of the next command of the filtered sequence. */
+	private int position;
+	/** State of the graphics object the sequence starts with. */
+	private final Level rootLevel;
+	/** States of the graphics objects that have been created and not disposed yet. */
+	private final Deque<Level> levels;
+
+	/**
+	 * Initializes a filter that passes the commands intersecting the
+	 * specified region.
+	 * @param stream Sequence to be filtered.
+	 * @param index Index that was built from the same sequence.
+	 * @param region Region in device space.
+	 */
+	public RegionFilter(CommandSequence stream, CommandIndex index, Rectangle2D region) {
+		super(stream);
+		visiblePositions = index.query(region);
+		rootLevel = new Level(null);
+		levels = new ArrayDeque<>();
+	}
+
+	@Override
+	protected List<Command<?>> filter(Command<?> command) {
+		int commandPosition = position++;
+		if (command instanceof CreateCommand) {
+			levels.push(new Level(command));
+			return null;
+		}
+		if (command instanceof DisposeCommand) {
+			if (levels.isEmpty()) {
+				return null;
+			}
+			Level level = levels.pop();
+			// State changes after the last visible command have no effect
+			return level.isEmitted() ? Collections.<Command<?>>singletonList(command) : null;
+		}
+		if (command instanceof StateCommand) {
+			getCurrentLevel().pendingCommands.add(command);
+			return null;
+		}
+		if (!isVisible(commandPosition)) {
+			return null;
+		}
+		List<Command<?>> commands = new LinkedList<>();
+		rootLevel.flush(commands);
+		for (Iterator<Level> i = levels.descendingIterator(); i.hasNext(); ) {
+			i.next().flush(commands);
+		}
+		commands.add(command);
+		return commands;
+	}
+
+	private Level getCurrentLevel() {
+		return levels.isEmpty() ? rootLevel : levels.peek();
+	}
+
+	private boolean isVisible(int commandPosition) {
+		while (nextVisible < visiblePositions.length && visiblePositions[nextVisible] < commandPosition) {
+			nextVisible++;
+		}
+		return nextVisible < visiblePositions.length && visiblePositions[nextVisible] == commandPosition;
+	}
+
+	/**
+	 * State changes of a graphics object that have not been passed on yet.
+	 */
+	private static final class Level {
+		/** {@code CreateCommand} of the graphics object, or {@code null} once it has been passed on. */
+		private Command<?> createCommand;
+		private final List<Command<?>> pendingCommands;
+
+		public Level(Command<?> createCommand) {
+			this.createCommand = createCommand;
+			pendingCommands = new ArrayList<>();
+		}
+
+		public boolean isEmitted() {
+			return createCommand == null;
+		}
+
+		/**
+		 * Adds the {@code CreateCommand} if it has not been passed on yet and
+		 * the pending state changes to the specified list.
+		 * @param commands List receiving the commands.
+		 */
+		public void flush(List<Command<?>> commands) {
+			if (createCommand != null) {
+				commands.add(createCommand);
+				createCommand = null;
+			}
+			// Clipping shapes depend on the current transformation, so
+			// changes are only combined between clipping commands
+			int start = 0;
+			for (int i = 0; i < pendingCommands.size(); i++) {
+				Command<?> command = pendingCommands.get(i);
+				if (command instanceof SetClipCommand) {
+					compact(pendingCommands.subList(start, i), commands);
+					commands.add(command);
+					start = i + 1;
+				}
+			}
+			compact(pendingCommands.subList(start, pendingCommands.size()), commands);
+			pendingCommands.clear();
+		}
+
+		/**
+		 * Adds the last change of each property and a single transformation
+		 * that combines all transformations to the specified list.
+		 * @param stateCommands State changes without clipping commands.
+		 * @param commands List receiving the combined commands.
+		 */
+		private static void compact(List<Command<?>> stateCommands, List<Command<?>> commands) {
+			Map<Object, Integer> lastIndices = new HashMap<>();
+			AffineTransform transform = null;
+			boolean absolute = false;
+			for (int i = 0; i < stateCommands.size(); i++) {
+				Command<?> command = stateCommands.get(i);
+				if (command instanceof SetTransformCommand) {
+					transform = new AffineTransform(((SetTransformCommand) command).getValue());
+					absolute = true;
+				} else if (command instanceof AffineTransformCommand) {
+					if (transform == null) {
+						transform = new AffineTransform();
+					}
+					((AffineTransformCommand) command).applyTo(transform);
+				} else {
+					lastIndices.put(getProperty(command), i);
+				}
+			}
+			for (int i = 0; i < stateCommands.size(); i++) {
+				Command<?> command = stateCommands.get(i);
+				if (command instanceof AffineTransformCommand || command instanceof SetTransformCommand) {
+					continue;
+				}
+				if (lastIndices.get(getProperty(command)) == i) {
+					commands.add(command);
+				}
+			}
+			if (absolute) {
+				commands.add(new SetTransformCommand(transform));
+			} else if (transform != null && !transform.isIdentity()) {
+				commands.add(new TransformCommand(transform));
+			}
+		}
+
+		private static Object getProperty(Command<?> command) {
+			if (command instanceof SetHintCommand) {
+				return ((SetHintCommand) command).getKey();
+			}
+			return command.getClass();
+		}
+	}
+}
@@ -31,12 +31,14 @@ import java.awt.color.ColorSpace;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Path2D;
 import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -52,8 +54,19 @@ import de.erichseifert.vectorgraphics2d.intermediate.commands.Command;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.CreateCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.DisposeCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawImageCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawLineCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawLinesCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawMarkersCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawPolygonCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawPolylineCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawRectangleCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawShapeCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawStringCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawStyledStringCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawTransformedImageCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillMarkersCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillPolygonCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillRectangleCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.FillShapeCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.Group;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.SetBackgroundCommand;
@@ -102,13 +115,43 @@ class PDFDocument extends SizedDocument {
 	private final Map<PDFObject, Long> crossReferences;
 
 	private final Stream contents;
+	/** Length of the contents if they are written while commands are handled. */
+	private DefaultPDFObject contentsLength;
+	/** Output of a document whose contents are written while commands are handled. */
+	private final FormattingWriter output;
 	private Resources resources;
 	private final Map<Integer, PDFObject> images;
+	/** Form XObjects of markers by path, paint operator, and stroke. */
+	private final Map<List<Object>, PDFObject> markerForms;
 
 	private final Stack<GraphicsState> states;
 	private boolean transformed;
 
 	PDFDocument(CommandSequence commands, PageSize pageSize, boolean compressed) {
+		this(pageSize, compressed, null);
+		for (Command<?> command : commands) {
+			try {
+				handle(command);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		close();
+	}
+
+	/**
+	 * Initializes a document whose page contents are written to the specified
+	 * stream while commands are handled. The content stream comes first in
+	 * the file and its length is written as a separate object after it, so
+	 * the contents are never kept in memory. Images, marker forms, and
+	 * resources are written by {@link #finish()}.
+	 * @param pageSize Size of the page.
+	 * @param compressed {@code true} if the contents should be compressed.
+	 * @param out Stream the document is written to, or {@code null} if the
+	 * document should be kept in memory until {@link #writeTo(OutputStream)}
+	 * is called.
+	 */
+	PDFDocument(PageSize pageSize, boolean compressed, OutputStream out) {
 		super(pageSize, compressed);
 
 		states = new Stack<>();
@@ -117,18 +160,25 @@ class PDFDocument extends SizedDocument {
 		objects = new LinkedList<>();
 		crossReferences = new HashMap<>();
 		images = new HashMap<>();
+		markerForms = new HashMap<>();
 
-		contents = initPage();
-		for (Command<?> command : commands) {
-			try {
-				byte[] pdfStatement = toBytes(command);
-				contents.write(pdfStatement);
-				contents.write(EOL.getBytes(CHARSET));
-			} catch (IOException e) {
-				throw new RuntimeException(e);
-			}
+		try {
+			output = (out != null) ? new FormattingWriter(out, CHARSET, EOL) : null;
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
 		}
-		close();
+		contents = initPage();
+	}
+
+	/**
+	 * Appends the output of the specified command to the page contents.
+	 * @param command Command to be added.
+	 * @throws IOException if the contents could not be written.
+	 */
+	void handle(Command<?> command) throws IOException {
+		byte[] pdfStatement = toBytes(command);
+		contents.write(pdfStatement);
+		contents.write(EOL.getBytes(CHARSET));
 	}
 
 	private GraphicsState getCurrentState() {
@@ -151,12 +201,19 @@ class PDFDocument extends SizedDocument {
 
 		// Contents
 		Stream.Filter[] filters = isCompressed() ? new Stream.Filter[] {Stream.Filter.FLATE} : new Stream.Filter[0];
-		Stream contents = new Stream(filters);
+		Stream contents = new Stream(getContentsOutput(), filters);
 		objects.add(contents);
 		page.dict.put("Contents", contents);
 
 		// Initial content
 		try {
+			if (output != null) {
+				contentsLength = new DefaultPDFObject(null, new Payload(), false);
+				objects.add(contentsLength);
+				output.writeln(HEADER);
+				writeContentsHeader(contents);
+			}
+
 			double scaleH = MM_IN_UNITS;
 			double scaleV = -MM_IN_UNITS;
 
@@ -190,6 +247,39 @@ class PDFDocument extends SizedDocument {
 		return contents;
 	}
 
+	/**
+	 * Returns the stream that receives the encoded page contents, or
+	 * {@code null} if the contents are kept in memory.
+	 */
+	private OutputStream getContentsOutput() {
+		if (output == null) {
+			return null;
+		}
+		return new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				output.write(new byte[] {(byte) b});
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				output.write(b, off, len);
+			}
+		};
+	}
+
+	private void writeContentsHeader(Stream contents) throws IOException {
+		crossReferences.put(contents, output.tell());
+		output.write(getId(contents)).write(" ").write(getVersion(contents)).writeln(" obj");
+		output.writeln("<<");
+		output.write("/Length ").writeln(serialize(contentsLength));
+		if (contents.getFilters().contains(Stream.Filter.FLATE)) {
+			output.writeln("/Filter /FlateDecode");
+		}
+		output.writeln(">>");
+		output.writeln("stream");
+	}
+
 	private void setFont(String fontId, float fontSize, Stream contents) {
 		try {
 			FormattingWriter string = new FormattingWriter(contents, CHARSET, EOL);
@@ -205,6 +295,49 @@ class PDFDocument extends SizedDocument {
 		return object;
 	}
 
+	/**
+	 * Returns a form XObject that paints the specified marker. Markers with
+	 * the same geometry and paint settings share a single form.
+	 * @param marker Marker shape.
+	 * @param paintOperator Operator used to paint the marker path.
+	 * @param stroke Stroke used for drawing or {@code null} if the marker is filled.
+	 * @return Form XObject.
+	 */
+	private PDFObject getMarkerForm(Shape marker, String paintOperator, Stroke stroke) {
+		byte[] path = getOutput(marker);
+		List<Object> key = Arrays.asList(ByteBuffer.wrap(path), paintOperator, stroke);
+		PDFObject form = markerForms.get(key);
+		if (form != null) {
+			return form;
+		}
+
+		Payload payload = new Payload();
+		String[] formFilters = {};
+		if (isCompressed()) {
+			payload.addFilter(FlateEncodeStream.class);
+			formFilters = new String[] {"FlateDecode"};
+		}
+		try {
+			payload.write(path);
+			payload.write((" " + paintOperator).getBytes(CHARSET));
+			payload.close();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+
+		Shape paintedShape = (stroke != null) ? stroke.createStrokedShape(marker) : marker;
+		Rectangle2D bounds = paintedShape.getBounds2D();
+		Map<String, Object> formDict = DataUtils.map(
+			new String[] {"Type", "Subtype", "BBox", "Length", "Filter"},
+			new Object[] {"XObject", "Form",
+				new double[] {bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY()},
+				payload.getBytes().length, formFilters}
+		);
+		form = addObject(formDict, payload);
+		markerForms.put(key, form);
+		return form;
+	}
+
 	private DefaultPDFObject addCatalog() {
 		Map<String, Object> dict = DataUtils.map(
 			new String[] {"Type"},
@@ -301,24 +434,58 @@ class PDFDocument extends SizedDocument {
 	}
 
 	public void writeTo(OutputStream out) throws IOException {
+		if (output != null) {
+			throw new IllegalStateException("The document has already been written while commands were handled.");
+		}
 		FormattingWriter o = new FormattingWriter(out, CHARSET, EOL);
 
 		o.writeln(HEADER);
 
 		for (PDFObject obj : objects) {
-			crossReferences.put(obj, o.tell());
-			byte[] objectString;
-			if (obj instanceof Resources) {
-				objectString = toBytes((Resources) obj);
-			} else if (obj instanceof Stream) {
-				objectString = toBytes((Stream) obj);
-			} else {
-				objectString = toBytes(obj);
+			writeObject(o, obj);
+		}
+
+		writeCrossReferences(o);
+	}
+
+	/**
+	 * Completes a document whose page contents have been written while
+	 * commands were handled. The content stream is closed and its length,
+	 * all other objects, the cross-reference table, and the trailer are
+	 * written.
+	 * @throws IOException if the document could not be written.
+	 */
+	void finish() throws IOException {
+		writeFooter();
+		output.writeln();
+		output.writeln("endstream");
+		output.writeln("endobj");
+		contentsLength.payload.write(serialize(contents.getLength()));
+
+		for (PDFObject obj : objects) {
+			if (obj != contents) {
+				writeObject(output, obj);
 			}
-			o.writeln(objectString);
-			o.flush();
 		}
 
+		writeCrossReferences(output);
+	}
+
+	private void writeObject(FormattingWriter o, PDFObject obj) throws IOException {
+		crossReferences.put(obj, o.tell());
+		byte[] objectString;
+		if (obj instanceof Resources) {
+			objectString = toBytes((Resources) obj);
+		} else if (obj instanceof Stream) {
+			objectString = toBytes((Stream) obj);
+		} else {
+			objectString = toBytes(obj);
+		}
+		o.writeln(objectString);
+		o.flush();
+	}
+
+	private void writeCrossReferences(FormattingWriter o) throws IOException {
 		long xrefPos = o.tell();
 		o.writeln("xref");
 		o.write(0).write(" ").writeln(objects.size() + 1);
@@ -505,6 +672,35 @@ class PDFDocument extends SizedDocument {
 			applyStateCommands(c.getValue());
 			s = getOutput(getCurrentState(), resources, !transformed);
 			transformed = true;
+		} else if (command instanceof DrawLineCommand) {
+			DrawLineCommand c = (DrawLineCommand) command;
+			s = getPolylineOutput(new double[] {c.getX1(), c.getY1(), c.getX2(), c.getY2()},
+					false, " S");
+		} else if (command instanceof DrawMarkersCommand) {
+			DrawMarkersCommand c = (DrawMarkersCommand) command;
+			s = getMarkersOutput(c.getMarker(), c.getPositions(), "S", getCurrentState().getStroke());
+		} else if (command instanceof FillMarkersCommand) {
+			FillMarkersCommand c = (FillMarkersCommand) command;
+			boolean evenOdd = c.getMarker().getPathIterator(null).getWindingRule() == Path2D.WIND_EVEN_ODD;
+			s = getMarkersOutput(c.getMarker(), c.getPositions(), evenOdd ? "f*" : "f", null);
+		} else if (command instanceof DrawLinesCommand) {
+			DrawLinesCommand c = (DrawLinesCommand) command;
+			s = getLinesOutput(c.getCoordinates());
+		} else if (command instanceof DrawRectangleCommand) {
+			DrawRectangleCommand c = (DrawRectangleCommand) command;
+			s = getRectangleOutput(c.getX(), c.getY(), c.getWidth(), c.getHeight(), " S");
+		} else if (command instanceof FillRectangleCommand) {
+			FillRectangleCommand c = (FillRectangleCommand) command;
+			s = getRectangleOutput(c.getX(), c.getY(), c.getWidth(), c.getHeight(), " f");
+		} else if (command instanceof DrawPolylineCommand) {
+			DrawPolylineCommand c = (DrawPolylineCommand) command;
+			s = getPolylineOutput(c.getCoordinates(), false, " S");
+		} else if (command instanceof DrawPolygonCommand) {
+			DrawPolygonCommand c = (DrawPolygonCommand) command;
+			s = getPolylineOutput(c.getCoordinates(), true, " S");
+		} else if (command instanceof FillPolygonCommand) {
+			FillPolygonCommand c = (FillPolygonCommand) command;
+			s = getPolylineOutput(c.getCoordinates(), true, " f*");
 		} else if (command instanceof DrawShapeCommand) {
 			DrawShapeCommand c = (DrawShapeCommand) command;
 			try (ByteArrayOutputStream ba = new ByteArrayOutputStream()) {
@@ -531,6 +727,8 @@ class PDFDocument extends SizedDocument {
 		} else if (command instanceof DrawStringCommand) {
 			DrawStringCommand c = (DrawStringCommand) command;
 			s = getOutput(c.getValue(), c.getX(), c.getY());
+		} else if (command instanceof DrawStyledStringCommand) {
+			s = getOutput((DrawStyledStringCommand) command, resources);
 		} else if (command instanceof DrawImageCommand) {
 			DrawImageCommand c = (DrawImageCommand) command;
 			// Create object for image data
@@ -540,8 +738,30 @@ class PDFDocument extends SizedDocument {
 				imageObject = addObject(image);
 				images.put(image.hashCode(), imageObject);
 			}
-			s = getOutput(imageObject, c.getX(), c.getY(),
-					c.getWidth(), c.getHeight(), resources);
+			if (c.isCropped()) {
+				// Place the whole image so that the source region covers the
+				// target rectangle and clip everything else
+				double scaleX = c.getWidth()/c.getSourceWidth();
+				double scaleY = c.getHeight()/c.getSourceHeight();
+				s = getOutput(imageObject,
+						c.getX() - c.getSourceX()*scaleX, c.getY() - c.getSourceY()*scaleY,
+						c.getImageWidth()*scaleX, c.getImageHeight()*scaleY, resources);
+				s = getClippedOutput(s, c.getX(), c.getY(), c.getWidth(), c.getHeight());
+			} else {
+				s = getOutput(imageObject, c.getX(), c.getY(),
+						c.getWidth(), c.getHeight(), resources);
+			}
+		} else if (command instanceof DrawTransformedImageCommand) {
+			DrawTransformedImageCommand c = (DrawTransformedImageCommand) command;
+			// Create object for image data
+			Image image = c.getValue();
+			PDFObject imageObject = images.get(image.hashCode());
+			if (imageObject == null) {
+				imageObject = addObject(image);
+				images.put(image.hashCode(), imageObject);
+			}
+			s = getOutput(imageObject, c.getTransform(),
+					c.getImageWidth(), c.getImageHeight(), resources);
 		}
 		return s;
 	}
@@ -571,8 +791,7 @@ class PDFDocument extends SizedDocument {
 			} else if (command instanceof AffineTransformCommand) {
 				AffineTransformCommand c = (AffineTransformCommand) command;
 				AffineTransform stateTransform = getCurrentState().getTransform();
-				AffineTransform transformToBeApplied = c.getValue();
-				stateTransform.concatenate(transformToBeApplied);
+				c.applyTo(stateTransform);
 				getCurrentState().setTransform(stateTransform);
 			} else if (command instanceof SetClipCommand) {
 				SetClipCommand c = (SetClipCommand) command;
@@ -676,6 +895,72 @@ class PDFDocument extends SizedDocument {
 		}
 	}
 
+	private static byte[] getRectangleOutput(double x, double y, double width, double height,
+			String paintOperator) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (FormattingWriter string = new FormattingWriter(out, CHARSET, EOL)) {
+			string.write(x).write(" ").write(y).write(" ")
+					.write(width).write(" ").write(height).write(" re")
+					.write(paintOperator);
+			return out.toByteArray();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static byte[] getPolylineOutput(double[] coordinates, boolean closed,
+			String paintOperator) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (FormattingWriter string = new FormattingWriter(out, CHARSET, EOL)) {
+			for (int i = 0; i < coordinates.length; i += 2) {
+				if (i > 0) {
+					string.write(" ");
+				}
+				string.write(coordinates[i]).write(" ").write(coordinates[i + 1])
+						.write(i == 0 ? " m" : " l");
+			}
+			if (closed) {
+				string.write(" h");
+			}
+			string.write(paintOperator);
+			return out.toByteArray();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private byte[] getMarkersOutput(Shape marker, double[] positions, String paintOperator,
+			Stroke stroke) {
+		String formId = resources.getFormId(getMarkerForm(marker, paintOperator, stroke));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (FormattingWriter string = new FormattingWriter(out, CHARSET, EOL)) {
+			for (int i = 0; i < positions.length; i += 2) {
+				if (i > 0) {
+					string.write(" ");
+				}
+				string.write("q 1 0 0 1 ").write(positions[i]).write(" ").write(positions[i + 1])
+						.write(" cm /").write(formId).write(" Do Q");
+			}
+			return out.toByteArray();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static byte[] getLinesOutput(double[] coordinates) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (FormattingWriter string = new FormattingWriter(out, CHARSET, EOL)) {
+			for (int i = 0; i < coordinates.length; i += 4) {
+				string.write(coordinates[i]).write(" ").write(coordinates[i + 1]).write(" m ")
+						.write(coordinates[i + 2]).write(" ").write(coordinates[i + 3]).write(" l ");
+			}
+			string.write("S");
+			return out.toByteArray();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
 	private byte[] getOutput(GraphicsState state, Resources resources, boolean first) {
 		ByteArrayOutputStream out = new ByteArrayOutputStream();
 		try (FormattingWriter string = new FormattingWriter(out, CHARSET, EOL)) {
@@ -776,6 +1061,47 @@ class PDFDocument extends SizedDocument {
 		}
 	}
 
+	private byte[] getOutput(DrawStyledStringCommand command, Resources resources) {
+		// Save current graphics state
+		// Undo swapping of y axis
+		// Render all runs in one text object, changing font and color
+		// only between runs that differ
+		// Restore previous graphics state
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (FormattingWriter string = new FormattingWriter(out, CHARSET, EOL)) {
+			string.write("q 1 0 0 -1 ").write(command.getX()).write(" ").write(command.getY())
+					.write(" cm BT");
+			Font currentFont = getCurrentState().getFont();
+			Color currentColor = getCurrentState().getColor();
+			for (int run = 0; run < command.getRunCount(); run++) {
+				Font font = command.getFont(run);
+				if (!font.equals(currentFont)) {
+					string.write(" /").write(resources.getId(font)).write(" ")
+							.write(font.getSize2D()).write(" Tf");
+					currentFont = font;
+				}
+				Color color = command.getColor(run);
+				if (color == null) {
+					color = getCurrentState().getColor();
+				}
+				if (!color.equals(currentColor)) {
+					if (color.getAlpha() != currentColor.getAlpha()) {
+						double a = color.getAlpha()/255.0;
+						string.write(" /").write(resources.getId(a)).write(" gs");
+					}
+					string.write(" ").write(getOutput(color));
+					currentColor = color;
+				}
+				string.write(" ").write(getOutput(command.getRunText(run))).write(" Tj");
+			}
+			string.write(" ET Q");
+			return out.toByteArray();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
 	private static byte[] getOutput(String str) {
 		// Escape string
 		str = str.replaceAll("\\\\", "\\\\\\\\")
@@ -818,18 +1144,63 @@ class PDFDocument extends SizedDocument {
 		}
 	}
 
+	private static byte[] getClippedOutput(byte[] output, double x, double y,
+			double width, double height) {
+		// Save graphics state
+		// Clip to rectangle without painting it
+		// Restore previous graphics state
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (FormattingWriter string = new FormattingWriter(out, CHARSET, EOL)) {
+			string.write("q ").write(x).write(" ").write(y).write(" ")
+					.write(width).write(" ").write(height).write(" re W n ")
+					.write(output).write(" Q");
+			return out.toByteArray();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static byte[] getOutput(PDFObject image, AffineTransform transform,
+			int imageWidth, int imageHeight, Resources resources) {
+		// Query image resource id
+		String resourceId = resources.getId(image);
+
+		// Save graphics state
+		// Apply image transformation
+		// Scale image to (imageWidth, imageHeight)
+		// Swap y axis
+		// Draw image
+		// Restore old graphics state
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (FormattingWriter string = new FormattingWriter(out, CHARSET, EOL)) {
+			string.write("q ").write(getOutput(transform)).write(" cm ")
+					.write(imageWidth).write(" 0 0 ").write(imageHeight)
+					.write(" 0 0 cm 1 0 0 -1 0 1 cm /").write(resourceId)
+					.write(" Do Q");
+			return out.toByteArray();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
 	public void close() {
 		try {
-			String footer = "Q";
-			if (transformed) {
-				footer += EOL + "Q";
-			}
-			contents.write(footer.getBytes(CHARSET));
-			contents.close();
+			writeFooter();
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	private void writeFooter() throws IOException {
+		String footer = "Q";
+		if (transformed) {
+			footer += EOL + "Q";
+		}
+		contents.write(footer.getBytes(CHARSET));
+		contents.finish();
+	}
+
 }
 
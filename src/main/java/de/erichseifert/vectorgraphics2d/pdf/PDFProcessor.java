@@ -21,9 +21,12 @@
  */
 package de.erichseifert.vectorgraphics2d.pdf;
 
+import java.io.OutputStream;
+
 import de.erichseifert.vectorgraphics2d.Document;
 import de.erichseifert.vectorgraphics2d.Processor;
 import de.erichseifert.vectorgraphics2d.intermediate.CommandSequence;
+import de.erichseifert.vectorgraphics2d.intermediate.CommandSink;
 import de.erichseifert.vectorgraphics2d.intermediate.filters.AbsoluteToRelativeTransformsFilter;
 import de.erichseifert.vectorgraphics2d.intermediate.filters.FillPaintedShapeAsImageFilter;
 import de.erichseifert.vectorgraphics2d.intermediate.filters.StateChangeGroupingFilter;
@@ -61,9 +64,21 @@ public class PDFProcessor implements Processor {
 
 	@Override
 	public Document getDocument(CommandSequence commands, PageSize pageSize) {
+		return new PDFDocument(filter(commands), pageSize, isCompressed());
+	}
+
+	/**
+	 * Returns a sink that writes the PDF document while commands are added.
+	 * The page contents are written as soon as they have been created.
+	 */
+	@Override
+	public CommandSink getSink(PageSize pageSize, OutputStream out) {
+		return new PDFSink(pageSize, isCompressed(), out);
+	}
+
+	static CommandSequence filter(CommandSequence commands) {
 		AbsoluteToRelativeTransformsFilter absoluteToRelativeTransformsFilter = new AbsoluteToRelativeTransformsFilter(commands);
 		FillPaintedShapeAsImageFilter paintedShapeAsImageFilter = new FillPaintedShapeAsImageFilter(absoluteToRelativeTransformsFilter);
-		CommandSequence filtered = new StateChangeGroupingFilter(paintedShapeAsImageFilter);
-		return new PDFDocument(filtered, pageSize, isCompressed());
+		return new StateChangeGroupingFilter(paintedShapeAsImageFilter);
 	}
 }
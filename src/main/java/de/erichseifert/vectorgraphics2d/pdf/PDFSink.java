@@ -0,0 +1,93 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d.pdf;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+import de.erichseifert.vectorgraphics2d.intermediate.CommandQueue;
+import de.erichseifert.vectorgraphics2d.intermediate.CommandSink;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.Command;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.StateCommand;
+import de.erichseifert.vectorgraphics2d.util.PageSize;
+
+/**
+ * {@code CommandSink} that writes a PDF document while commands are added.
+ * Each command is passed through the filters of {@link PDFProcessor} and
+ * its output is appended to the page contents right away. The page contents
+ * are the first object of the file, so only images, marker forms, and
+ * resources are kept until the sink is closed.
+ */
+class PDFSink implements CommandSink {
+	private final CommandQueue queue;
+	private final Iterator<Command<?>> filtered;
+	private final PDFDocument document;
+	/** First error that occurred while writing. It is reported on {@link #close()}. */
+	private IOException error;
+	private boolean closed;
+
+	public PDFSink(PageSize pageSize, boolean compressed, OutputStream out) {
+		queue = new CommandQueue();
+		filtered = PDFProcessor.filter(queue).iterator();
+		document = new PDFDocument(pageSize, compressed, out);
+	}
+
+	@Override
+	public void add(Command<?> command) {
+		if (closed) {
+			throw new IllegalStateException("Sink has already been closed.");
+		}
+		queue.add(command);
+		if (command instanceof StateCommand) {
+			// State changes are grouped with the ones that follow them, so they
+			// are only passed on together with the next drawing command
+			return;
+		}
+		try {
+			handlePendingCommands();
+		} catch (IOException e) {
+			if (error == null) {
+				error = e;
+			}
+		}
+	}
+
+	private void handlePendingCommands() throws IOException {
+		while (filtered.hasNext()) {
+			document.handle(filtered.next());
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		if (error != null) {
+			throw error;
+		}
+		handlePendingCommands();
+		document.finish();
+	}
+}
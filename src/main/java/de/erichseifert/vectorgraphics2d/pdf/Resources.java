@@ -42,16 +42,19 @@ class Resources extends DefaultPDFObject {
 
 	private static final String PREFIX_FONT = "Fnt";
 	private static final String PREFIX_IMAGE = "Img";
+	private static final String PREFIX_FORM = "Frm";
 	private static final String PREFIX_TRANSPARENCY = "Trp";
 
 	private final List<String> procSet;
 	private final Map<String, TrueTypeFont> fontsByFontId;
 	private final Map<Font, String> fontIDsByFont;
 	private final Map<PDFObject, String> images;
+	private final Map<PDFObject, String> forms;
 	private final Map<Double, String> transparencies;
 
 	private final AtomicInteger currentFontId = new AtomicInteger();
 	private final AtomicInteger currentImageId = new AtomicInteger();
+	private final AtomicInteger currentFormId = new AtomicInteger();
 	private final AtomicInteger currentTransparencyId = new AtomicInteger();
 
 	public Resources() {
@@ -61,6 +64,7 @@ class Resources extends DefaultPDFObject {
 		fontsByFontId = new HashMap<>();
 		fontIDsByFont = new HashMap<>();
 		images = new HashMap<>();
+		forms = new HashMap<>();
 		transparencies = new HashMap<>();
 
 		setProcSet(VALUE_PROC_SET);
@@ -90,18 +94,31 @@ class Resources extends DefaultPDFObject {
 	}
 
 	public String getId(PDFObject image) {
-		// Make sure a dictionary entry for images exists
+		String resourceId = getResourceId(images, image, PREFIX_IMAGE, currentImageId);
+		getXObjects().put(resourceId, image);
+		return resourceId;
+	}
+
+	/**
+	 * Returns the resource id of the specified form XObject.
+	 * @param form Form XObject.
+	 * @return Resource id.
+	 */
+	public String getFormId(PDFObject form) {
+		String resourceId = getResourceId(forms, form, PREFIX_FORM, currentFormId);
+		getXObjects().put(resourceId, form);
+		return resourceId;
+	}
+
+	private Map<String, PDFObject> getXObjects() {
+		// Make sure a dictionary entry for external objects exists
 		Map<String, PDFObject> dictEntry =
 				(Map<String, PDFObject>) dict.get(KEY_IMAGE);
 		if (dictEntry == null) {
 			dictEntry = new LinkedHashMap<>();
 			dict.put(KEY_IMAGE, dictEntry);
 		}
-
-		String resourceId = getResourceId(images, image, PREFIX_IMAGE, currentImageId);
-		dictEntry.put(resourceId, image);
-
-		return resourceId;
+		return dictEntry;
 	}
 
 	public String getId(Double transparency) {
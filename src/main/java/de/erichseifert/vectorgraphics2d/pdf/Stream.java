@@ -22,6 +22,7 @@
 package de.erichseifert.vectorgraphics2d.pdf;
 
 import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
@@ -42,17 +43,30 @@ class Stream extends OutputStream implements PDFObject {
 	private final ByteArrayOutputStream data;
 	private final List<Filter> filters;
 	private OutputStream filteredData;
+	private long length;
 	private boolean closed;
 
 	/**
 	 * Initializes a new {@code Stream}.
 	 */
 	public Stream(Filter... filters) {
-		data = new ByteArrayOutputStream();
+		this(null, filters);
+	}
+
+	/**
+	 * Initializes a new {@code Stream} that passes its encoded content on to
+	 * the specified output instead of keeping it. The output is not closed
+	 * when the {@code Stream} is closed.
+	 * @param out Output of the encoded content, or {@code null} if the
+	 * content should be kept in memory.
+	 * @param filters Filters used to encode the content.
+	 */
+	Stream(OutputStream out, Filter... filters) {
+		data = (out == null) ? new ByteArrayOutputStream() : null;
 		this.filters = new ArrayList<>(filters.length);
 		this.filters.addAll(Arrays.asList(filters));
 
-		filteredData = data;
+		filteredData = new CountingStream((out == null) ? data : out);
 		for (Filter filter : filters) {
 			if (filter == Filter.FLATE) {
 				filteredData = new DeflaterOutputStream(filteredData);
@@ -65,11 +79,7 @@ class Stream extends OutputStream implements PDFObject {
 		if (isClosed()) {
 			throw new IOException("Unable to write to closed stream.");
 		}
-		try {
-			this.filteredData.write(b);
-		} catch (IOException e) {
-			throw new RuntimeException("Unable to write to the output stream", e);
-		}
+		this.filteredData.write(b);
 	}
 
 	/**
@@ -80,11 +90,7 @@ class Stream extends OutputStream implements PDFObject {
 		if (isClosed()) {
 			throw new IOException("Unable to write to closed stream.");
 		}
-		try {
-			this.filteredData.write(data);
-		} catch (IOException e) {
-			throw new RuntimeException("Unable to write to the output stream", e);
-		}
+		this.filteredData.write(data);
 	}
 
 	/**
@@ -96,18 +102,22 @@ class Stream extends OutputStream implements PDFObject {
 		if (!isClosed()) {
 			throw new IllegalStateException("Unable to determine the length of an open Stream. Close the stream first.");
 		}
-		return data.size();
+		return (int) length;
 	}
 
 	/**
 	 * Returns the content that has been written to this {@code Stream}.
 	 * @return Stream content.
-	 * @throws IllegalStateException if the stream is still open.
+	 * @throws IllegalStateException if the stream is still open or if its
+	 * content has been passed on to another output.
 	 */
 	public byte[] getContent() {
 		if (!isClosed()) {
 			throw new IllegalStateException("Unable to retrieve the content of an open Stream. Close the stream first.");
 		}
+		if (data == null) {
+			throw new IllegalStateException("The content of the Stream has been passed on to another output.");
+		}
 		return data.toByteArray();
 	}
 
@@ -117,16 +127,51 @@ class Stream extends OutputStream implements PDFObject {
 
 	@Override
 	public void close() {
-		closed = true;
 		try {
-			filteredData.close();
+			finish();
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	/**
+	 * Encodes all remaining data and closes the {@code Stream}. Unlike
+	 * {@link #close()}, errors of the output are passed on to the caller.
+	 * @throws IOException if the remaining data could not be written.
+	 */
+	void finish() throws IOException {
+		closed = true;
+		filteredData.close();
+	}
+
 	public List<Filter> getFilters() {
 		return Collections.unmodifiableList(filters);
 	}
-}
 
+	/**
+	 * Counts the encoded bytes on their way to the output. Closing it flushes
+	 * the output but leaves it open.
+	 */
+	private class CountingStream extends FilterOutputStream {
+		public CountingStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			length++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			length += len;
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+}
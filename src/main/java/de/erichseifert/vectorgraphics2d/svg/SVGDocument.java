@@ -64,8 +64,16 @@ import de.erichseifert.vectorgraphics2d.intermediate.commands.Command;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.CreateCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.DisposeCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawImageCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawLinesCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawMarkersCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawPolygonCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawPolylineCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawShapeCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawStringCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawStyledStringCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawTransformedImageCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillMarkersCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillPolygonCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.FillShapeCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.Group;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.SetBackgroundCommand;
@@ -101,6 +109,8 @@ class SVGDocument extends SizedDocument {
 	private static final String XLINK_NAMESPACE_URI = "http://www.w3.org/1999/xlink";
 
 	private static final String PREFIX_CLIP = "clip";
+	private static final String PREFIX_MARKER = "marker";
+	private static final String PREFIX_IMAGE = "image";
 
 	// TODO Resolution settings
 	private static final String CHARSET = "UTF-8";
@@ -114,6 +124,8 @@ class SVGDocument extends SizedDocument {
 
 	private Element defs;
 	private final Map<Integer, Element> clippingPathElements;
+	private final Map<String, Element> markerElements;
+	private final Map<Image, Element> imageElements;
 
 	/** Mapping of stroke endcap values from Java to SVG. */
 	private static final Map<Integer, String> STROKE_ENDCAPS = DataUtils.map(
@@ -133,6 +145,8 @@ class SVGDocument extends SizedDocument {
 		states = new Stack<>();
 		states.push(new GraphicsState());
 		clippingPathElements = new HashMap<>();
+		markerElements = new HashMap<>();
+		imageElements = new HashMap<>();
 
 		// Prepare DOM
 		DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
@@ -232,19 +246,13 @@ class SVGDocument extends SizedDocument {
 			return path;
 		}
 
-		// Make sure <defs> exists
-		if (defs == null) {
-			defs = doc.createElement("defs");
-			root.insertBefore(defs, root.getFirstChild());
-		}
-
 		// Store clipping path in <defs> without styling information
 		path = doc.createElement("clipPath");
 		path.setAttribute("id", PREFIX_CLIP + clip.hashCode());
 		Element shape = getElement(clip);
 		shape.removeAttribute("style");
 		path.appendChild(shape);
-		defs.appendChild(path);
+		getDefsElement().appendChild(path);
 
 		// Register path
 		clippingPathElements.put(clip.hashCode(), path);
@@ -252,6 +260,57 @@ class SVGDocument extends SizedDocument {
 		return path;
 	}
 
+	private Element getImageElement(Image image, int imageWidth, int imageHeight) {
+		// Look for existing entries
+		Element elem = imageElements.get(image);
+		if (elem != null) {
+			return elem;
+		}
+
+		// Store image data in <defs> at its size in pixels
+		elem = getElement(image, 0.0, 0.0, imageWidth, imageHeight);
+		elem.removeAttribute("x");
+		elem.removeAttribute("y");
+		elem.setAttribute("id", PREFIX_IMAGE + imageElements.size());
+		getDefsElement().appendChild(elem);
+
+		// Register image
+		imageElements.put(image, elem);
+
+		return elem;
+	}
+
+	private Element getMarkerElement(Shape marker) {
+		// Markers with the same geometry share one symbol
+		String key = getOutput(marker);
+		Element symbol = markerElements.get(key);
+		if (symbol != null) {
+			return symbol;
+		}
+
+		// Store marker in <defs> without styling information, so that
+		// every <use> inherits the style of its enclosing group
+		symbol = doc.createElement("symbol");
+		symbol.setAttribute("id", PREFIX_MARKER + markerElements.size());
+		symbol.setAttribute("overflow", "visible");
+		symbol.appendChild(getElement(marker));
+		getDefsElement().appendChild(symbol);
+
+		// Register marker
+		markerElements.put(key, symbol);
+
+		return symbol;
+	}
+
+	private Element getDefsElement() {
+		// Make sure <defs> exists
+		if (defs == null) {
+			defs = doc.createElement("defs");
+			root.insertBefore(defs, root.getFirstChild());
+		}
+		return defs;
+	}
+
 	private void addToGroup(Element e) {
 		group.appendChild(e);
 		if (!groupAdded && group != root) {
@@ -269,8 +328,62 @@ class SVGDocument extends SizedDocument {
 			}
 		} else if (command instanceof DrawImageCommand) {
 			DrawImageCommand c = (DrawImageCommand) command;
+			Element e;
+			if (c.isCropped()) {
+				e = getElement(c.getValue(), c.getImageWidth(), c.getImageHeight(),
+						c.getSourceX(), c.getSourceY(),
+						c.getSourceWidth(), c.getSourceHeight(),
+						c.getX(), c.getY(), c.getWidth(), c.getHeight());
+			} else {
+				e = getElement(c.getValue(),
+						c.getX(), c.getY(), c.getWidth(), c.getHeight());
+			}
+			addToGroup(e);
+		} else if (command instanceof DrawTransformedImageCommand) {
+			DrawTransformedImageCommand c = (DrawTransformedImageCommand) command;
 			Element e = getElement(c.getValue(),
-					c.getX(), c.getY(), c.getWidth(), c.getHeight());
+					0.0, 0.0, c.getImageWidth(), c.getImageHeight());
+			AffineTransform transform = c.getTransform();
+			if (!transform.isIdentity()) {
+				e.setAttribute("transform", getOutput(transform));
+			}
+			addToGroup(e);
+		} else if (command instanceof DrawMarkersCommand) {
+			DrawMarkersCommand c = (DrawMarkersCommand) command;
+			Element e = getElement(c.getMarker(), c.getPositions());
+			e.setAttribute("style", getStyle(false));
+			addToGroup(e);
+		} else if (command instanceof FillMarkersCommand) {
+			FillMarkersCommand c = (FillMarkersCommand) command;
+			Shape marker = c.getMarker();
+			Element e = getElement(marker, c.getPositions());
+			if (marker instanceof Path2D) {
+				Path2D path = (Path2D) marker;
+				e.setAttribute("style", getStyle(true, path.getWindingRule() == Path2D.WIND_NON_ZERO));
+			} else {
+				e.setAttribute("style", getStyle(true));
+			}
+			addToGroup(e);
+		} else if (command instanceof DrawLinesCommand) {
+			DrawLinesCommand c = (DrawLinesCommand) command;
+			Element e = doc.createElement("path");
+			e.setAttribute("d", getLinesOutput(c.getCoordinates()));
+			e.setAttribute("style", getStyle(false));
+			addToGroup(e);
+		} else if (command instanceof DrawPolylineCommand) {
+			DrawPolylineCommand c = (DrawPolylineCommand) command;
+			Element e = getElement("polyline", c.getCoordinates());
+			e.setAttribute("style", getStyle(false));
+			addToGroup(e);
+		} else if (command instanceof DrawPolygonCommand) {
+			DrawPolygonCommand c = (DrawPolygonCommand) command;
+			Element e = getElement("polygon", c.getCoordinates());
+			e.setAttribute("style", getStyle(false));
+			addToGroup(e);
+		} else if (command instanceof FillPolygonCommand) {
+			FillPolygonCommand c = (FillPolygonCommand) command;
+			Element e = getElement("polygon", c.getCoordinates());
+			e.setAttribute("style", getStyle(true, false));
 			addToGroup(e);
 		} else if (command instanceof DrawShapeCommand) {
 			DrawShapeCommand c = (DrawShapeCommand) command;
@@ -282,6 +395,8 @@ class SVGDocument extends SizedDocument {
 			Element e = getElement(c.getValue(), c.getX(), c.getY());
 			e.setAttribute("style", getStyle(getCurrentState().getFont()));
 			addToGroup(e);
+		} else if (command instanceof DrawStyledStringCommand) {
+			addToGroup(getElement((DrawStyledStringCommand) command));
 		} else if (command instanceof FillShapeCommand) {
 			FillShapeCommand c = (FillShapeCommand) command;
 			Shape shape = c.getValue();
@@ -326,8 +441,7 @@ class SVGDocument extends SizedDocument {
 			} else if (command instanceof AffineTransformCommand) {
 				AffineTransformCommand c = (AffineTransformCommand) command;
 				AffineTransform stateTransform = state.getTransform();
-				AffineTransform transformToBeApplied = c.getValue();
-				stateTransform.concatenate(transformToBeApplied);
+				c.applyTo(stateTransform);
 				state.setTransform(stateTransform);
 			} else if (command instanceof SetHintCommand) {
 				SetHintCommand c = (SetHintCommand) command;
@@ -492,6 +606,18 @@ class SVGDocument extends SizedDocument {
 		return out.toString();
 	}
 
+	private static String getLinesOutput(double[] coordinates) {
+		StringBuilder out = new StringBuilder();
+		for (int i = 0; i < coordinates.length; i += 4) {
+			if (i > 0) {
+				out.append(" ");
+			}
+			out.append("M").append(DataUtils.format(coordinates[i])).append(",").append(DataUtils.format(coordinates[i + 1]))
+				.append(" L").append(DataUtils.format(coordinates[i + 2])).append(",").append(DataUtils.format(coordinates[i + 3]));
+		}
+		return out.toString();
+	}
+
 	private static String getOutput(Font font) {
 		StringBuilder out = new StringBuilder();
 		if (!GraphicsState.DEFAULT_FONT.getFamily().equals(font.getFamily())) {
@@ -576,6 +702,33 @@ class SVGDocument extends SizedDocument {
 		return elem;
 	}
 
+	private Element getElement(String elementName, double[] coordinates) {
+		StringBuilder points = new StringBuilder();
+		for (int i = 0; i < coordinates.length; i += 2) {
+			if (i > 0) {
+				points.append(" ");
+			}
+			points.append(DataUtils.format(coordinates[i])).append(",")
+				.append(DataUtils.format(coordinates[i + 1]));
+		}
+		Element elem = doc.createElement(elementName);
+		elem.setAttribute("points", points.toString());
+		return elem;
+	}
+
+	private Element getElement(Shape marker, double[] positions) {
+		String ref = "#" + getMarkerElement(marker).getAttribute("id");
+		Element elem = doc.createElement("g");
+		for (int i = 0; i < positions.length; i += 2) {
+			Element use = doc.createElement("use");
+			use.setAttribute("xlink:href", ref);
+			use.setAttribute("x", DataUtils.format(positions[i]));
+			use.setAttribute("y", DataUtils.format(positions[i + 1]));
+			elem.appendChild(use);
+		}
+		return elem;
+	}
+
 	private Element getElement(String text, double x, double y) {
 		Element elem = doc.createElement("text");
 		elem.appendChild(doc.createTextNode(text));
@@ -584,6 +737,94 @@ class SVGDocument extends SizedDocument {
 		return elem;
 	}
 
+	private Element getElement(DrawStyledStringCommand command) {
+		// The text element is styled like the first run and every further
+		// run only states how it differs. Mixed content and preserved
+		// spaces keep serializers from indenting between the runs.
+		Font font = command.getFont(0);
+		Color color = getRunColor(command, 0);
+		Element elem = doc.createElement("text");
+		elem.setAttribute("x", DataUtils.format(command.getX()));
+		elem.setAttribute("y", DataUtils.format(command.getY()));
+		elem.setAttribute("xml:space", "preserve");
+		elem.setAttribute("style", getTextStyle(font, color));
+		elem.appendChild(doc.createTextNode(command.getRunText(0)));
+		for (int run = 1; run < command.getRunCount(); run++) {
+			String style = getTextRunStyle(command.getFont(run), font,
+					getRunColor(command, run), color);
+			if (style.isEmpty()) {
+				elem.appendChild(doc.createTextNode(command.getRunText(run)));
+				continue;
+			}
+			Element span = doc.createElement("tspan");
+			span.appendChild(doc.createTextNode(command.getRunText(run)));
+			span.setAttribute("style", style);
+			elem.appendChild(span);
+		}
+		return elem;
+	}
+
+	private Color getRunColor(DrawStyledStringCommand command, int run) {
+		Color color = command.getColor(run);
+		return (color != null) ? color : getCurrentState().getColor();
+	}
+
+	private static String getTextStyle(Font font, Color color) {
+		StringBuilder style = new StringBuilder();
+		appendStyle(style, "fill", getOutput(color));
+		if (color.getAlpha() < 255) {
+			appendStyle(style, "fill-opacity", color.getAlpha()/255.0);
+		}
+		appendStyle(style, "stroke", "none");
+		if (!GraphicsState.DEFAULT_FONT.equals(font)) {
+			style.append(getOutput(font));
+		}
+		return style.toString();
+	}
+
+	private static String getTextRunStyle(Font font, Font parentFont, Color color, Color parentColor) {
+		StringBuilder style = new StringBuilder();
+		if (!font.getFamily().equals(parentFont.getFamily())) {
+			String physicalFamily = GraphicsUtils.getPhysicalFont(font).getFamily();
+			appendStyle(style, "font-family", "\"" + physicalFamily + "\"");
+		}
+		if (font.getSize2D() != parentFont.getSize2D()) {
+			appendStyle(style, "font-size", DataUtils.format(font.getSize2D()) + "px");
+		}
+		if (font.isItalic() != parentFont.isItalic()) {
+			appendStyle(style, "font-style", font.isItalic() ? "italic" : "normal");
+		}
+		if (font.isBold() != parentFont.isBold()) {
+			appendStyle(style, "font-weight", font.isBold() ? "bold" : "normal");
+		}
+		if (!color.equals(parentColor)) {
+			appendStyle(style, "fill", getOutput(color));
+			if (color.getAlpha() != parentColor.getAlpha()) {
+				appendStyle(style, "fill-opacity", color.getAlpha()/255.0);
+			}
+		}
+		return style.toString();
+	}
+
+	private Element getElement(Image image, int imageWidth, int imageHeight,
+			int sourceX, int sourceY, int sourceWidth, int sourceHeight,
+			double x, double y, double width, double height) {
+		// A nested viewport maps the source region to the target rectangle
+		// and clips the rest of the shared image
+		Element elem = doc.createElement("svg");
+		elem.setAttribute("x", DataUtils.format(x));
+		elem.setAttribute("y", DataUtils.format(y));
+		elem.setAttribute("width", DataUtils.format(width));
+		elem.setAttribute("height", DataUtils.format(height));
+		elem.setAttribute("viewBox",
+				sourceX + " " + sourceY + " " + sourceWidth + " " + sourceHeight);
+		elem.setAttribute("preserveAspectRatio", "none");
+		Element use = doc.createElement("use");
+		use.setAttribute("xlink:href", "#" + getImageElement(image, imageWidth, imageHeight).getAttribute("id"));
+		elem.appendChild(use);
+		return elem;
+	}
+
 	private Element getElement(Image image, double x, double y, double width, double height) {
 		Element elem = doc.createElement("image");
 		elem.setAttribute("x", DataUtils.format(x));
@@ -0,0 +1,369 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d.util;
+
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+/**
+ * <p>Shape that represents the intersection of two clipping shapes.</p>
+ * <p>Intersections are computed by {@link #intersect(Shape, Shape)}, which
+ * handles common cases without the expensive {@code Area} operations:
+ * two rectangles result in a rectangle, two convex polygons, like rotated
+ * rectangles, are clipped against each other, and a copy of a shape that
+ * lies inside a rectangle is returned. In all other cases an instance of
+ * this class is returned, which only stores copies of both shapes. The
+ * intersection is computed the first time the geometry is needed and is
+ * stored as a path, which takes less memory than an {@code Area}.</p>
+ * <p>Instances are immutable and may be shared, as they never refer to the
+ * shapes that were passed to {@link #intersect(Shape, Shape)}.</p>
+ */
+public final class ClipIntersection implements Shape {
+	private final Shape shape1;
+	private final Shape shape2;
+	/** Intersection of both shapes, or {@code null} if it has not been computed yet. */
+	private volatile Path2D intersection;
+
+	private ClipIntersection(Shape shape1, Shape shape2) {
+		this.shape1 = shape1;
+		this.shape2 = shape2;
+	}
+
+	/**
+	 * Returns a shape that contains the area that is covered by both
+	 * specified shapes.
+	 * @param shape1 First shape.
+	 * @param shape2 Second shape.
+	 * @return Intersection of the shapes.
+	 */
+	public static Shape intersect(Shape shape1, Shape shape2) {
+		if (shape1 instanceof Rectangle2D && shape2 instanceof Rectangle2D) {
+			return intersect((Rectangle2D) shape1, (Rectangle2D) shape2);
+		}
+		if (shape1 instanceof Rectangle2D && contains((Rectangle2D) shape1, shape2)) {
+			return GraphicsUtils.clone(shape2);
+		}
+		if (shape2 instanceof Rectangle2D && contains((Rectangle2D) shape2, shape1)) {
+			return GraphicsUtils.clone(shape1);
+		}
+		double[] polygon1 = getConvexPolygon(shape1);
+		if (polygon1 != null) {
+			double[] polygon2 = getConvexPolygon(shape2);
+			if (polygon2 != null) {
+				return toPath(clip(polygon1, polygon2));
+			}
+		}
+		// The shapes are copied, so that the caller may modify them afterwards
+		return new ClipIntersection(GraphicsUtils.clone(shape1), GraphicsUtils.clone(shape2));
+	}
+
+	private static Rectangle2D intersect(Rectangle2D r1, Rectangle2D r2) {
+		double x1 = Math.max(r1.getMinX(), r2.getMinX());
+		double y1 = Math.max(r1.getMinY(), r2.getMinY());
+		double x2 = Math.min(r1.getMaxX(), r2.getMaxX());
+		double y2 = Math.min(r1.getMaxY(), r2.getMaxY());
+
+		Rectangle2D intersection = new Rectangle2D.Double();
+		if ((x2 < x1) || (y2 < y1)) {
+			intersection.setFrameFromDiagonal(0, 0, 0, 0);
+		} else {
+			intersection.setFrameFromDiagonal(x1, y1, x2, y2);
+		}
+		return intersection;
+	}
+
+	private static boolean contains(Rectangle2D rectangle, Shape shape) {
+		Rectangle2D bounds = shape.getBounds2D();
+		return rectangle.getMinX() <= bounds.getMinX() && rectangle.getMinY() <= bounds.getMinY() &&
+			rectangle.getMaxX() >= bounds.getMaxX() && rectangle.getMaxY() >= bounds.getMaxY();
+	}
+
+	/**
+	 * Returns the corners of the specified shape if it is a simple convex
+	 * polygon. Such a polygon covers the same area for both winding rules.
+	 * @param shape Shape.
+	 * @return Coordinates of the corners in the order x0, y0, x1, y1, ...,
+	 * or {@code null} if the shape is not a simple convex polygon.
+	 */
+	private static double[] getConvexPolygon(Shape shape) {
+		if (shape instanceof Rectangle2D) {
+			Rectangle2D r = (Rectangle2D) shape;
+			return new double[] {
+				r.getMinX(), r.getMinY(), r.getMaxX(), r.getMinY(),
+				r.getMaxX(), r.getMaxY(), r.getMinX(), r.getMaxY()
+			};
+		}
+		if (!(shape instanceof Path2D) && !(shape instanceof Polygon)) {
+			return null;
+		}
+		double[] corners = new double[16];
+		int length = 0;
+		boolean closed = false;
+		double[] coords = new double[6];
+		for (PathIterator i = shape.getPathIterator(null); !i.isDone(); i.next()) {
+			int segmentType = i.currentSegment(coords);
+			if (closed || (segmentType == PathIterator.SEG_MOVETO) != (length == 0)) {
+				return null;
+			}
+			if (segmentType == PathIterator.SEG_CLOSE) {
+				closed = true;
+			} else if (segmentType == PathIterator.SEG_MOVETO || segmentType == PathIterator.SEG_LINETO) {
+				if (length > 0 && coords[0] == corners[length - 2] && coords[1] == corners[length - 1]) {
+					// Repeated points don't form an edge
+					continue;
+				}
+				if (length == corners.length) {
+					corners = Arrays.copyOf(corners, 2*length);
+				}
+				corners[length++] = coords[0];
+				corners[length++] = coords[1];
+			} else {
+				return null;
+			}
+		}
+		if (length > 2 && corners[0] == corners[length - 2] && corners[1] == corners[length - 1]) {
+			// The outline returns to its start point before it is closed
+			length -= 2;
+		}
+		if (length < 6) {
+			return null;
+		}
+		corners = Arrays.copyOf(corners, length);
+		return isConvex(corners) ? corners : null;
+	}
+
+	private static boolean isConvex(double[] corners) {
+		int n = corners.length/2;
+		int sign = 0;
+		double turning = 0.0;
+		for (int i = 0; i < n; i++) {
+			int j = (i + 1) % n;
+			int k = (i + 2) % n;
+			double dx1 = corners[2*j] - corners[2*i];
+			double dy1 = corners[2*j + 1] - corners[2*i + 1];
+			double dx2 = corners[2*k] - corners[2*j];
+			double dy2 = corners[2*k + 1] - corners[2*j + 1];
+			double cross = dx1*dy2 - dy1*dx2;
+			double dot = dx1*dx2 + dy1*dy2;
+			if (cross != 0.0) {
+				int crossSign = cross > 0.0 ? 1 : -1;
+				if (sign != 0 && crossSign != sign) {
+					return false;
+				}
+				sign = crossSign;
+			} else if (dot < 0.0) {
+				// The outline reverses its direction
+				return false;
+			}
+			turning += Math.atan2(cross, dot);
+		}
+		// Self-intersecting polygons like a pentagram turn in one direction
+		// as well, but more than once
+		return sign != 0 && Math.abs(Math.abs(turning) - 2.0*Math.PI) < 1e-6;
+	}
+
+	private static double cross(double x0, double y0, double x1, double y1, double x2, double y2) {
+		return (x1 - x0)*(y2 - y0) - (y1 - y0)*(x2 - x0);
+	}
+
+	/**
+	 * Clips a polygon with a convex polygon using the algorithm of
+	 * Sutherland and Hodgman.
+	 * @param subject Coordinates of the polygon to be clipped.
+	 * @param clip Coordinates of the convex clipping polygon.
+	 * @return Coordinates of the clipped polygon.
+	 */
+	private static double[] clip(double[] subject, double[] clip) {
+		int clipCount = clip.length/2;
+		double orientation = signedArea(clip) >= 0.0 ? 1.0 : -1.0;
+		double[] input = subject;
+		int inputLength = subject.length;
+		double[] output = new double[2*(subject.length + clip.length)];
+		for (int edge = 0; edge < clipCount && inputLength > 0; edge++) {
+			double ex0 = clip[2*edge];
+			double ey0 = clip[2*edge + 1];
+			double ex1 = clip[2*((edge + 1) % clipCount)];
+			double ey1 = clip[2*((edge + 1) % clipCount) + 1];
+			int outputLength = 0;
+			double px = input[inputLength - 2];
+			double py = input[inputLength - 1];
+			boolean previousInside = orientation*cross(ex0, ey0, ex1, ey1, px, py) >= 0.0;
+			for (int i = 0; i < inputLength; i += 2) {
+				double cx = input[i];
+				double cy = input[i + 1];
+				boolean currentInside = orientation*cross(ex0, ey0, ex1, ey1, cx, cy) >= 0.0;
+				if (currentInside != previousInside) {
+					double dp = cross(ex0, ey0, ex1, ey1, px, py);
+					double dc = cross(ex0, ey0, ex1, ey1, cx, cy);
+					double t = dp/(dp - dc);
+					if (outputLength + 2 > output.length) {
+						output = Arrays.copyOf(output, 2*output.length);
+					}
+					output[outputLength++] = px + t*(cx - px);
+					output[outputLength++] = py + t*(cy - py);
+				}
+				if (currentInside) {
+					if (outputLength + 2 > output.length) {
+						output = Arrays.copyOf(output, 2*output.length);
+					}
+					output[outputLength++] = cx;
+					output[outputLength++] = cy;
+				}
+				px = cx;
+				py = cy;
+				previousInside = currentInside;
+			}
+			double[] swap = input == subject ? new double[output.length] : input;
+			input = output;
+			inputLength = outputLength;
+			output = swap;
+		}
+		return Arrays.copyOf(input, inputLength);
+	}
+
+	private static double signedArea(double[] polygon) {
+		double area = 0.0;
+		int n = polygon.length/2;
+		for (int i = 0; i < n; i++) {
+			int j = (i + 1) % n;
+			area += polygon[2*i]*polygon[2*j + 1] - polygon[2*j]*polygon[2*i + 1];
+		}
+		return area/2.0;
+	}
+
+	private static Shape toPath(double[] polygon) {
+		if (polygon.length < 6) {
+			return new Rectangle2D.Double();
+		}
+		Path2D path = new Path2D.Double(Path2D.WIND_NON_ZERO, polygon.length/2 + 1);
+		path.moveTo(polygon[0], polygon[1]);
+		for (int i = 2; i < polygon.length; i += 2) {
+			path.lineTo(polygon[i], polygon[i + 1]);
+		}
+		path.closePath();
+		return path;
+	}
+
+	/**
+	 * Returns the intersection of the transformed shapes, without computing
+	 * the intersection if it has not been computed yet.
+	 * @param transform Transformation.
+	 * @return Transformed intersection.
+	 */
+	public Shape createTransformedShape(AffineTransform transform) {
+		Path2D computed = intersection;
+		if (computed != null) {
+			return transform.createTransformedShape(computed);
+		}
+		return intersect(transform.createTransformedShape(shape1), transform.createTransformedShape(shape2));
+	}
+
+	private Path2D getIntersection() {
+		Path2D computed = intersection;
+		if (computed == null) {
+			Area area = new Area(shape1);
+			area.intersect(new Area(shape2));
+			computed = new Path2D.Double(area);
+			intersection = computed;
+		}
+		return computed;
+	}
+
+	@Override
+	public Rectangle getBounds() {
+		return getBounds2D().getBounds();
+	}
+
+	@Override
+	public Rectangle2D getBounds2D() {
+		Path2D computed = intersection;
+		if (computed != null) {
+			return computed.getBounds2D();
+		}
+		// The bounds of the intersection lie within the bounds of both shapes
+		return shape1.getBounds2D().createIntersection(shape2.getBounds2D());
+	}
+
+	@Override
+	public boolean contains(double x, double y) {
+		return getIntersection().contains(x, y);
+	}
+
+	@Override
+	public boolean contains(Point2D p) {
+		return getIntersection().contains(p);
+	}
+
+	@Override
+	public boolean intersects(double x, double y, double w, double h) {
+		return getIntersection().intersects(x, y, w, h);
+	}
+
+	@Override
+	public boolean intersects(Rectangle2D r) {
+		return getIntersection().intersects(r);
+	}
+
+	@Override
+	public boolean contains(double x, double y, double w, double h) {
+		return getIntersection().contains(x, y, w, h);
+	}
+
+	@Override
+	public boolean contains(Rectangle2D r) {
+		return getIntersection().contains(r);
+	}
+
+	@Override
+	public PathIterator getPathIterator(AffineTransform at) {
+		return getIntersection().getPathIterator(at);
+	}
+
+	@Override
+	public PathIterator getPathIterator(AffineTransform at, double flatness) {
+		return getIntersection().getPathIterator(at, flatness);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof ClipIntersection)) {
+			return false;
+		}
+		ClipIntersection o = (ClipIntersection) obj;
+		// Copies of paths are only equal by their geometry
+		return (shape1.equals(o.shape1) || GraphicsUtils.equals(shape1, o.shape1)) &&
+				(shape2.equals(o.shape2) || GraphicsUtils.equals(shape2, o.shape2));
+	}
+
+	@Override
+	public int hashCode() {
+		return shape1.getBounds2D().hashCode()*31 + shape2.getBounds2D().hashCode();
+	}
+}
@@ -39,15 +39,21 @@ import java.util.regex.Pattern;
  * collections like maps or lists.
  */
 public abstract class DataUtils {
-	/** Standard pattern to format numbers */
-	private static final DecimalFormat DOUBLE_FORMAT =
-			new DecimalFormat("0", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
-	private static final DecimalFormat FLOAT_FORMAT =
-			new DecimalFormat("0", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
+	/**
+	 * Holder of the formats for numbers. Loading locale data for the formats
+	 * is slow, so they are created when a number is formatted for the first
+	 * time instead of when this class is loaded.
+	 */
+	private static class NumberFormats {
+		/** Standard pattern to format numbers */
+		static final DecimalFormat DOUBLE_FORMAT = createFormat(15);
+		static final DecimalFormat FLOAT_FORMAT = createFormat(6);
 
-	static {
-		DOUBLE_FORMAT.setMaximumFractionDigits(15);
-		FLOAT_FORMAT.setMaximumFractionDigits(6);
+		private static DecimalFormat createFormat(int maximumFractionDigits) {
+			DecimalFormat format = new DecimalFormat("0", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
+			format.setMaximumFractionDigits(maximumFractionDigits);
+			return format;
+		}
 	}
 
 	/**
@@ -198,9 +204,9 @@ public abstract class DataUtils {
 	public static String format(Number number) {
 		String formatted;
 		if (number instanceof Double) {
-			formatted = DOUBLE_FORMAT.format(number.doubleValue());
+			formatted = NumberFormats.DOUBLE_FORMAT.format(number.doubleValue());
 		} else if (number instanceof Float) {
-			formatted = FLOAT_FORMAT.format(number.floatValue());
+			formatted = NumberFormats.FLOAT_FORMAT.format(number.floatValue());
 		} else {
 			formatted = number.toString();
 		}
@@ -46,8 +46,12 @@ public class FormattingWriter implements Closeable, Flushable, AutoCloseable {
 	}
 
 	public FormattingWriter write(byte[] bytes) throws IOException {
-		out.write(bytes, 0, bytes.length);
-		position += bytes.length;
+		return write(bytes, 0, bytes.length);
+	}
+
+	public FormattingWriter write(byte[] bytes, int offset, int length) throws IOException {
+		out.write(bytes, offset, length);
+		position += length;
 		return this;
 	}
 
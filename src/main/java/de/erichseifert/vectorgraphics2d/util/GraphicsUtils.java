@@ -21,6 +21,7 @@
  */
 package de.erichseifert.vectorgraphics2d.util;
 
+import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics;
@@ -32,6 +33,7 @@ import java.awt.Image;
 import java.awt.Polygon;
 import java.awt.Rectangle;
 import java.awt.Shape;
+import java.awt.Stroke;
 import java.awt.Transparency;
 import java.awt.color.ColorSpace;
 import java.awt.font.FontRenderContext;
@@ -56,9 +58,11 @@ import java.awt.image.WritableRaster;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.swing.ImageIcon;
 
 /**
@@ -70,6 +74,8 @@ public abstract class GraphicsUtils {
 		new FontRenderContext(null, false, true);
 	private static final String FONT_TEST_STRING =
 		"Falsches Üben von Xylophonmusik quält jeden größeren Zwerg";
+	/** Physical fonts that have been determined for logical fonts. */
+	private static final Map<Font, Font> PHYSICAL_FONTS = new ConcurrentHashMap<>();
 
 	/**
 	 * Default constructor that prevents creation of class.
@@ -222,7 +228,10 @@ public abstract class GraphicsUtils {
 			return null;
 		}
 		Shape clone;
-		if (shape instanceof Line2D) {
+		if (shape instanceof ClipIntersection) {
+			// Intersections are immutable
+			clone = shape;
+		} else if (shape instanceof Line2D) {
 			clone = (shape instanceof Line2D.Float) ?
 					new Line2D.Float() : new Line2D.Double();
 			((Line2D) clone).setLine((Line2D) shape);
@@ -352,8 +361,21 @@ public abstract class GraphicsUtils {
 		return physicalFonts.poll();
 	}
 
+	/**
+	 * Try to guess physical font from the properties of a logical font, like
+	 * "Dialog", "Serif", "Monospaced" etc. Comparing a font with all installed
+	 * fonts is slow, so the result is cached for each logical font.
+	 * @param logicalFont Logical font object.
+	 * @return An object of the first matching physical font. The original font
+	 * object is returned if it was a physical font or no font matched.
+	 */
 	public static Font getPhysicalFont(Font logicalFont) {
-		return getPhysicalFont(logicalFont, FONT_TEST_STRING);
+		Font physicalFont = PHYSICAL_FONTS.get(logicalFont);
+		if (physicalFont == null) {
+			physicalFont = getPhysicalFont(logicalFont, FONT_TEST_STRING);
+			PHYSICAL_FONTS.put(logicalFont, physicalFont);
+		}
+		return physicalFont;
 	}
 
 	public static BufferedImage getAlphaImage(BufferedImage image) {
@@ -407,6 +429,9 @@ public abstract class GraphicsUtils {
 		double[] pathASegment = new double[6];
 		double[] pathBSegment = new double[6];
 		while (!pathAIterator.isDone()) {
+			if (pathBIterator.isDone()) {
+				return false;
+			}
 			int pathASegmentType = pathAIterator.currentSegment(pathASegment);
 			int pathBSegmentType = pathBIterator.currentSegment(pathBSegment);
 			if (pathASegmentType != pathBSegmentType) {
@@ -428,4 +453,30 @@ public abstract class GraphicsUtils {
 		}
 		return true;
 	}
+
+	/**
+	 * Returns the distance by which the specified stroke extends the outline
+	 * of a shape beyond its bounds. Square caps and miter joins are taken
+	 * into account; for miter joins the miter limit is used, as the actual
+	 * extent depends on the angles of the shape.
+	 * @param stroke Stroke.
+	 * @param hasEnds Whether the outline has open ends that receive caps.
+	 * @param hasJoins Whether the outline has joins with arbitrary angles.
+	 * @return Distance in user space, or a negative value if the stroke is
+	 * not a {@code BasicStroke}.
+	 */
+	public static double getStrokePadding(Stroke stroke, boolean hasEnds, boolean hasJoins) {
+		if (!(stroke instanceof BasicStroke)) {
+			return -1.0;
+		}
+		BasicStroke basicStroke = (BasicStroke) stroke;
+		double factor = 1.0;
+		if (hasEnds && basicStroke.getEndCap() == BasicStroke.CAP_SQUARE) {
+			factor = Math.sqrt(2.0);
+		}
+		if (hasJoins && basicStroke.getLineJoin() == BasicStroke.JOIN_MITER) {
+			factor = Math.max(factor, basicStroke.getMiterLimit());
+		}
+		return basicStroke.getLineWidth()/2.0*factor;
+	}
 }
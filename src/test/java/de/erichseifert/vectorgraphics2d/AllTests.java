@@ -36,6 +36,10 @@ import de.erichseifert.vectorgraphics2d.util.UtilTests;
 	UtilTests.class,
 	IRTests.class,
 	VectorGraphics2DTest.class,
+	ValuePoolTest.class,
+	VectorGraphics2DPoolTest.class,
+	FontMetricsCacheTest.class,
+	GraphicsReplayerTest.class,
 	ProcessorsTest.class,
 	EPSTests.class,
 	PDFTests.class,
@@ -0,0 +1,92 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.font.FontRenderContext;
+
+import org.junit.Test;
+
+public class FontMetricsCacheTest {
+	private static final FontRenderContext FONT_RENDER_CONTEXT = new FontRenderContext(null, false, true);
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNonPositiveCapacityFails() {
+		new FontMetricsCache(0);
+	}
+
+	@Test
+	public void testEqualFontsReturnCachedMetrics() {
+		FontMetricsCache cache = new FontMetricsCache(4);
+
+		FontMetrics metrics = cache.get(new Font(Font.SERIF, Font.PLAIN, 12), FONT_RENDER_CONTEXT);
+
+		assertSame(metrics, cache.get(new Font(Font.SERIF, Font.PLAIN, 12), FONT_RENDER_CONTEXT));
+		assertEquals(1L, cache.getHitCount());
+		assertEquals(1L, cache.getMissCount());
+	}
+
+	@Test
+	public void testMetricsUseFontRenderContext() {
+		FontMetricsCache cache = new FontMetricsCache(4);
+		Font font = new Font(Font.SERIF, Font.PLAIN, 12);
+		FontRenderContext integerMetrics = new FontRenderContext(null, true, false);
+
+		assertEquals(FONT_RENDER_CONTEXT, cache.get(font, FONT_RENDER_CONTEXT).getFontRenderContext());
+		assertEquals(integerMetrics, cache.get(font, integerMetrics).getFontRenderContext());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedMetricsAreRemoved() {
+		FontMetricsCache cache = new FontMetricsCache(2);
+		Font font1 = new Font(Font.SERIF, Font.PLAIN, 10);
+		Font font2 = new Font(Font.SERIF, Font.PLAIN, 11);
+		Font font3 = new Font(Font.SERIF, Font.PLAIN, 12);
+		cache.get(font1, FONT_RENDER_CONTEXT);
+		cache.get(font2, FONT_RENDER_CONTEXT);
+		cache.get(font1, FONT_RENDER_CONTEXT);
+
+		cache.get(font3, FONT_RENDER_CONTEXT);
+		assertEquals(2, cache.size());
+		assertEquals(3L, cache.getMissCount());
+
+		cache.get(font1, FONT_RENDER_CONTEXT);
+		assertEquals(3L, cache.getMissCount());
+		cache.get(font2, FONT_RENDER_CONTEXT);
+		assertEquals(4L, cache.getMissCount());
+	}
+
+	@Test
+	public void testClearResetsCounters() {
+		FontMetricsCache cache = new FontMetricsCache(2);
+		cache.get(new Font(Font.SERIF, Font.PLAIN, 12), FONT_RENDER_CONTEXT);
+
+		cache.clear();
+
+		assertEquals(0, cache.size());
+		assertEquals(0L, cache.getMissCount());
+	}
+}
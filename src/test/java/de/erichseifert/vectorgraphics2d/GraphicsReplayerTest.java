@@ -0,0 +1,147 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+import de.erichseifert.vectorgraphics2d.intermediate.CommandQueue;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.Command;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillRectangleCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.Group;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetColorCommand;
+
+public class GraphicsReplayerTest {
+	private static BufferedImage replay(VectorGraphics2D recording, double scale) {
+		BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = image.createGraphics();
+		g.scale(scale, scale);
+		new GraphicsReplayer(g).replay(recording.getCommands());
+		g.dispose();
+		return image;
+	}
+
+	private static int countCommands(VectorGraphics2D g, Class<?> commandType) {
+		int count = 0;
+		for (Command<?> command : g.getCommands()) {
+			if (commandType.isInstance(command)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Test
+	public void testShapesAreDrawn() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		g.setColor(Color.RED);
+		g.fillRect(2, 2, 3, 3);
+
+		BufferedImage image = replay(g, 1.0);
+
+		assertEquals(Color.RED.getRGB(), image.getRGB(3, 3));
+		assertEquals(0, image.getRGB(6, 6));
+	}
+
+	@Test
+	public void testTransformsAreRelativeToTarget() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		g.translate(1, 1);
+		g.fillRect(0, 0, 1, 1);
+
+		BufferedImage image = replay(g, 2.0);
+
+		assertEquals(Color.BLACK.getRGB(), image.getRGB(3, 3));
+		assertEquals(0, image.getRGB(1, 1));
+	}
+
+	@Test
+	public void testDisposeRestoresState() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		g.setColor(Color.RED);
+		Graphics2D child = (Graphics2D) g.create();
+		child.setColor(Color.BLUE);
+		child.translate(5, 5);
+		child.fillRect(0, 0, 1, 1);
+		child.dispose();
+		g.fillRect(0, 0, 1, 1);
+
+		BufferedImage image = replay(g, 1.0);
+
+		assertEquals(Color.BLUE.getRGB(), image.getRGB(5, 5));
+		assertEquals(Color.RED.getRGB(), image.getRGB(0, 0));
+	}
+
+	@Test
+	public void testTargetStateIsNotChanged() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		g.setColor(Color.RED);
+		g.translate(3, 3);
+		g.fillRect(0, 0, 1, 1);
+		g.dispose();
+		VectorGraphics2D target = new VectorGraphics2D();
+
+		new GraphicsReplayer(target).replay(g.getCommands());
+
+		assertEquals(Color.BLACK, target.getColor());
+		assertEquals(0.0, target.getTransform().getTranslateX(), 0.0);
+	}
+
+	@Test
+	public void testConsecutiveStateChangesAreAppliedOnce() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		g.setColor(Color.RED);
+		g.setColor(Color.GREEN);
+		g.setColor(Color.BLUE);
+		g.fillRect(0, 0, 1, 1);
+		g.setColor(Color.RED);
+		g.dispose();
+		VectorGraphics2D target = new VectorGraphics2D();
+		int colorsBefore = countCommands(target, SetColorCommand.class);
+
+		new GraphicsReplayer(target).replay(g.getCommands());
+
+		// The initial color and the three colors are applied as blue
+		assertEquals(1, countCommands(target, SetColorCommand.class) - colorsBefore);
+	}
+
+	@Test
+	public void testGroupsAreReplayed() {
+		Group group = new Group();
+		group.add(new SetColorCommand(Color.RED));
+		group.add(new FillRectangleCommand(0.0, 0.0, 2.0, 2.0));
+		CommandQueue commands = new CommandQueue();
+		commands.add(group);
+		BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = image.createGraphics();
+
+		new GraphicsReplayer(g).replay(commands);
+		g.dispose();
+
+		assertEquals(Color.RED.getRGB(), image.getRGB(1, 1));
+	}
+}
@@ -82,5 +82,17 @@ public class GraphicsStateTest {
 		assertNotSame(state, clone);
 		assertEquals(state, clone);
 	}
+
+	@Test
+	public void testResetRestoresInitialState() {
+		GraphicsState state = new GraphicsState();
+		state.setColor(Color.RED);
+		state.setClip(new Rectangle2D.Double(1.0, 2.0, 3.0, 4.0));
+		state.translate(5.0, 6.0);
+
+		state.reset();
+
+		assertEquals(new GraphicsState(), state);
+	}
 }
 
@@ -23,8 +23,15 @@ package de.erichseifert.vectorgraphics2d;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.core.IsNull.notNullValue;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeFalse;
 
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import org.junit.Test;
@@ -33,6 +40,12 @@ import org.junit.experimental.theories.Theories;
 import org.junit.experimental.theories.Theory;
 import org.junit.runner.RunWith;
 
+import de.erichseifert.vectorgraphics2d.intermediate.CommandSequenceWriter;
+import de.erichseifert.vectorgraphics2d.intermediate.CommandSink;
+import de.erichseifert.vectorgraphics2d.intermediate.MappedCommandSequence;
+import de.erichseifert.vectorgraphics2d.intermediate.SpillingCommandSequence;
+import de.erichseifert.vectorgraphics2d.util.PageSize;
+
 @RunWith(Theories.class)
 public class ProcessorsTest {
 	@Test(expected = NullPointerException.class)
@@ -54,4 +67,76 @@ public class ProcessorsTest {
 
 		assertThat(processor, is(notNullValue()));
 	}
+
+	@Theory
+	public void testSinkWritesSameDocumentAsRecording(String format) throws IOException {
+		// PDF sinks write the page contents before the other objects, see PDFProcessorTest
+		assumeFalse("pdf".equals(format));
+		Processor processor = Processors.get(format);
+		PageSize pageSize = new PageSize(0.0, 0.0, 100.0, 100.0);
+		VectorGraphics2D recorded = new VectorGraphics2D();
+		draw(recorded);
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		processor.getDocument(recorded.getCommands(), pageSize).writeTo(expected);
+
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		CommandSink sink = processor.getSink(pageSize, actual);
+		draw(new VectorGraphics2D(sink));
+		sink.close();
+
+		assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+	}
+
+	@Theory
+	public void testSpilledRecordingWritesSameDocument(String format) throws IOException {
+		Processor processor = Processors.get(format);
+		PageSize pageSize = new PageSize(0.0, 0.0, 100.0, 100.0);
+		VectorGraphics2D recorded = new VectorGraphics2D();
+		draw(recorded);
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		processor.getDocument(recorded.getCommands(), pageSize).writeTo(expected);
+
+		SpillingCommandSequence spilled = new SpillingCommandSequence(1024);
+		draw(new VectorGraphics2D(spilled));
+		spilled.close();
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		processor.getDocument(spilled, pageSize).writeTo(actual);
+		spilled.delete();
+
+		assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+	}
+
+	@Theory
+	public void testStoredRecordingWritesSameDocument(String format) throws IOException {
+		Processor processor = Processors.get(format);
+		PageSize pageSize = new PageSize(0.0, 0.0, 100.0, 100.0);
+		VectorGraphics2D recorded = new VectorGraphics2D();
+		draw(recorded);
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		processor.getDocument(recorded.getCommands(), pageSize).writeTo(expected);
+
+		File file = File.createTempFile("vectorgraphics2d-", ".bin");
+		try {
+			try (CommandSequenceWriter writer = new CommandSequenceWriter(new FileOutputStream(file))) {
+				draw(new VectorGraphics2D(writer));
+			}
+			ByteArrayOutputStream actual = new ByteArrayOutputStream();
+			try (MappedCommandSequence stored = new MappedCommandSequence(file)) {
+				processor.getDocument(stored, pageSize).writeTo(actual);
+			}
+
+			assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static void draw(VectorGraphics2D g) {
+		for (int i = 0; i < 1000; i++) {
+			g.setColor(i % 2 == 0 ? Color.RED : Color.BLUE);
+			g.fillRect(i % 100, i / 10, 2, 2);
+		}
+		g.drawString("Text", 10, 20);
+		g.dispose();
+	}
 }
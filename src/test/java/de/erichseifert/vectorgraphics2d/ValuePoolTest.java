@@ -0,0 +1,72 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Stroke;
+import org.junit.Test;
+
+public class ValuePoolTest {
+	@Test
+	public void testInternReturnsFirstOfEqualColors() {
+		ValuePool pool = new ValuePool();
+		Color first = new Color(1, 2, 3);
+
+		pool.intern(first);
+
+		assertSame(first, pool.intern(new Color(1, 2, 3)));
+	}
+
+	@Test
+	public void testInternReturnsFirstOfEqualStrokes() {
+		ValuePool pool = new ValuePool();
+		Stroke first = new BasicStroke(2f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL);
+
+		pool.intern(first);
+
+		assertSame(first, pool.intern(new BasicStroke(2f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL)));
+	}
+
+	@Test
+	public void testInternReturnsFirstOfEqualFonts() {
+		ValuePool pool = new ValuePool();
+		Font first = new Font(Font.SERIF, Font.BOLD, 12);
+
+		pool.intern(first);
+
+		assertSame(first, pool.intern(new Font(Font.SERIF, Font.BOLD, 12)));
+	}
+
+	@Test
+	public void testInternIgnoresSubclasses() {
+		ValuePool pool = new ValuePool();
+		Color color = new Color(1, 2, 3) {};
+
+		assertSame(color, pool.intern(color));
+		assertEquals(0, pool.size());
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.awt.Color;
+import org.junit.Test;
+
+import de.erichseifert.vectorgraphics2d.intermediate.commands.Command;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillShapeCommand;
+
+public class VectorGraphics2DPoolTest {
+	@Test
+	public void testAcquireReusesReleasedGraphics() {
+		VectorGraphics2DPool pool = new VectorGraphics2DPool(2);
+		VectorGraphics2D g = pool.acquire();
+
+		pool.release(g);
+
+		assertSame(g, pool.acquire());
+	}
+
+	@Test
+	public void testReleasedGraphicsHasEmptyRecording() {
+		VectorGraphics2DPool pool = new VectorGraphics2DPool(2);
+		VectorGraphics2D g = pool.acquire();
+		g.setColor(Color.RED);
+		g.fillRect(0, 0, 10, 10);
+
+		pool.release(g);
+
+		for (Command<?> command : pool.acquire().getCommands()) {
+			assertFalse(command instanceof FillShapeCommand);
+		}
+	}
+
+	@Test
+	public void testReleasedGraphicsHasDefaultOptions() {
+		VectorGraphics2DPool pool = new VectorGraphics2DPool(2);
+		VectorGraphics2D g = pool.acquire();
+		g.setShapeCaptureEnabled(true);
+		g.setParallelRecordingEnabled(true);
+		g.setContentBoundsTrackingEnabled(true);
+
+		pool.release(g);
+
+		VectorGraphics2D reused = pool.acquire();
+		assertFalse(reused.isShapeCaptureEnabled());
+		assertFalse(reused.isParallelRecordingEnabled());
+		assertFalse(reused.isContentBoundsTrackingEnabled());
+	}
+
+	@Test
+	public void testReleaseKeepsAtMostCapacityGraphics() {
+		VectorGraphics2DPool pool = new VectorGraphics2DPool(1);
+		VectorGraphics2D g1 = pool.acquire();
+		VectorGraphics2D g2 = pool.acquire();
+
+		pool.release(g1);
+		pool.release(g2);
+
+		assertEquals(1, pool.getIdleCount());
+	}
+
+	@Test
+	public void testAcquiredGraphicsShareValuePool() {
+		ValuePool valuePool = new ValuePool();
+		VectorGraphics2DPool pool = new VectorGraphics2DPool(2, valuePool);
+		VectorGraphics2D g1 = pool.acquire();
+		VectorGraphics2D g2 = pool.acquire();
+
+		assertNotSame(g1, g2);
+		assertSame(valuePool, g1.getValuePool());
+		assertSame(valuePool, g2.getValuePool());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCapacityMustBePositive() {
+		new VectorGraphics2DPool(0);
+	}
+}
@@ -25,22 +25,58 @@ import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
 import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.font.TextAttribute;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.text.AttributedString;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import org.junit.Test;
 import org.junit.experimental.theories.Theories;
 import org.junit.runner.RunWith;
 
 import de.erichseifert.vectorgraphics2d.intermediate.CommandSequence;
+import de.erichseifert.vectorgraphics2d.intermediate.CommandSink;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.AffineTransformCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.Command;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.CreateCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.DisposeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawImageCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawLinesCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawMarkersCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawPolylineCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawShapeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawStringCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawStyledStringCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawTransformedImageCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillMarkersCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillRectangleCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetBackgroundCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetClipCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetColorCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetCompositeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetHintCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetStrokeCommand;
 import de.erichseifert.vectorgraphics2d.util.GraphicsUtils;
+import de.erichseifert.vectorgraphics2d.util.PageSize;
 
 @RunWith(Theories.class)
 public class VectorGraphics2DTest {
@@ -128,4 +164,644 @@ public class VectorGraphics2DTest {
 
 		assertThat(vg2d.getBackground(), is(backgroundColor));
 	}
+
+	@Test
+	public void testShapeCaptureAllowsReusingShapes() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		g.setShapeCaptureEnabled(true);
+		Rectangle2D.Double rect = new Rectangle2D.Double();
+
+		for (int i = 0; i < 3; i++) {
+			rect.setRect(i, i, 1.0, 1.0);
+			g.draw(rect);
+		}
+
+		int i = 0;
+		for (Command<?> command : g.getCommands()) {
+			if (command instanceof DrawShapeCommand) {
+				Shape shape = ((DrawShapeCommand) command).getValue();
+				assertEquals(new Rectangle2D.Double(i, i, 1.0, 1.0), shape.getBounds2D());
+				i++;
+			}
+		}
+		assertEquals(3, i);
+	}
+
+	@Test
+	public void testRecordingsWithSharedPoolUseCanonicalColors() {
+		ValuePool pool = new ValuePool();
+		VectorGraphics2D g1 = new VectorGraphics2D(pool);
+		VectorGraphics2D g2 = new VectorGraphics2D(pool);
+
+		g1.setColor(new Color(1, 2, 3));
+		g2.setColor(new Color(1, 2, 3));
+
+		assertSame(g1.getColor(), g2.getColor());
+		Color recordedColor = null;
+		for (Command<?> command : g2.getCommands()) {
+			if (command instanceof SetColorCommand) {
+				recordedColor = ((SetColorCommand) command).getValue();
+			}
+		}
+		assertSame(g1.getColor(), recordedColor);
+	}
+
+	@Test
+	public void testFontMetricsAreCached() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		Font font = new Font(Font.MONOSPACED, Font.PLAIN, 17);
+
+		FontMetrics metrics = g.getFontMetrics(font);
+
+		assertSame(metrics, new VectorGraphics2D().getFontMetrics(font));
+		assertEquals(font, metrics.getFont());
+	}
+
+	private static int countCommands(VectorGraphics2D g, Class<?> commandType) {
+		int count = 0;
+		for (Command<?> command : g.getCommands()) {
+			if (commandType.isInstance(command)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Test
+	public void testRedundantStateChangesAreSuppressed() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		long suppressedBefore = g.getSuppressedCommandCount();
+
+		for (int i = 0; i < 3; i++) {
+			g.setStroke(new BasicStroke(2f));
+			g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			g.setClip(new Rectangle2D.Double(1.0, 2.0, 3.0, 4.0));
+			g.setComposite(AlphaComposite.SrcOver);
+		}
+
+		assertEquals(2, countCommands(g, SetStrokeCommand.class));
+		assertEquals(1, countCommands(g, SetHintCommand.class));
+		assertEquals(1, countCommands(g, SetClipCommand.class));
+		assertEquals(0, countCommands(g, SetCompositeCommand.class));
+		assertEquals(9, g.getSuppressedCommandCount() - suppressedBefore);
+	}
+
+	@Test
+	public void testSuppressedCommandCountIncludesCreatedGraphics() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		VectorGraphics2D g2 = (VectorGraphics2D) g.create();
+		long suppressedBefore = g.getSuppressedCommandCount();
+
+		g2.setColor(g2.getColor());
+
+		assertEquals(suppressedBefore + 1, g.getSuppressedCommandCount());
+	}
+
+	@Test
+	public void testSetRenderingHintsOnlyEmitsChangedHints() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+		RenderingHints hints = new RenderingHints(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+		hints.put(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_ENABLE);
+
+		g.setRenderingHints(hints);
+
+		assertEquals(2, countCommands(g, SetHintCommand.class));
+		assertEquals(hints, g.getRenderingHints());
+	}
+
+	@Test
+	public void testSetPaintModeAfterXORModeIsNotSuppressed() {
+		VectorGraphics2D g = new VectorGraphics2D();
+
+		g.setXORMode(Color.RED);
+		g.setPaintMode();
+
+		assertEquals(1, countCommands(g, SetCompositeCommand.class));
+	}
+
+	@Test
+	public void testSetBackgroundComparesWithBackgroundColor() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		g.setColor(Color.RED);
+
+		g.setBackground(Color.RED);
+
+		assertEquals(Color.RED, g.getBackground());
+		assertEquals(1, countCommands(g, SetBackgroundCommand.class));
+	}
+
+	@Test
+	public void testRelativeTransformsMatchAffineTransform() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		AffineTransform expected = new AffineTransform();
+		AffineTransform custom = new AffineTransform(1.0, 2.0, 3.0, 4.0, 5.0, 6.0);
+
+		g.translate(1.0, 2.0);
+		expected.translate(1.0, 2.0);
+		g.rotate(0.5, 3.0, 4.0);
+		expected.rotate(0.5, 3.0, 4.0);
+		g.scale(2.0, 3.0);
+		expected.scale(2.0, 3.0);
+		g.shear(0.1, 0.2);
+		expected.shear(0.1, 0.2);
+		g.transform(custom);
+		expected.concatenate(custom);
+
+		assertEquals(expected, g.getTransform());
+		AffineTransform recorded = new AffineTransform();
+		for (Command<?> command : g.getCommands()) {
+			if (command instanceof AffineTransformCommand) {
+				recorded.concatenate(((AffineTransformCommand) command).getValue());
+			}
+		}
+		assertEquals(expected, recorded);
+	}
+
+	@Test
+	public void testIntPrimitivesAreRecordedAsPrimitiveCommands() {
+		VectorGraphics2D g = new VectorGraphics2D();
+
+		g.fillRect(1, 2, 3, 4);
+		g.drawPolyline(new int[] {0, 2, 1}, new int[] {0, 0, 3}, 3);
+		g.fillRect(1, 2, -3, 4);
+
+		assertEquals(1, countCommands(g, FillRectangleCommand.class));
+		assertEquals(1, countCommands(g, DrawPolylineCommand.class));
+	}
+
+	@Test
+	public void testDrawLinesRecordsSingleCommand() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		double[] coordinates = {-1.0, 0.0, 0.0, 1.0, 2.0, 3.0, 4.0, 5.0, 6.0};
+
+		g.drawLines(coordinates, 1, 2);
+
+		DrawLinesCommand lines = null;
+		for (Command<?> command : g.getCommands()) {
+			if (command instanceof DrawLinesCommand) {
+				lines = (DrawLinesCommand) command;
+			}
+		}
+		assertEquals(new DrawLinesCommand(new double[] {0.0, 0.0, 1.0, 2.0, 3.0, 4.0, 5.0, 6.0}, 0, 2), lines);
+		assertEquals(2, lines.getSegmentCount());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testDrawLinesFailsForTooFewCoordinates() {
+		VectorGraphics2D g = new VectorGraphics2D();
+
+		g.drawLines(new double[] {0.0, 0.0, 1.0, 1.0, 2.0}, 0, 2);
+	}
+
+	@Test
+	public void testResetStartsNewRecording() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		int initialSize = countCommands(g, Command.class);
+		g.setColor(Color.RED);
+		g.setColor(Color.RED);
+		g.translate(1.0, 2.0);
+		g.fillRect(0, 0, 10, 10);
+		g.dispose();
+
+		g.reset();
+
+		assertEquals(initialSize, countCommands(g, Command.class));
+		assertThat(g.getCommands().iterator().next(), instanceOf(CreateCommand.class));
+		assertEquals(Color.BLACK, g.getColor());
+		assertTrue(g.getTransform().isIdentity());
+		assertEquals(0L, g.getSuppressedCommandCount());
+	}
+
+	@Test
+	public void testResetGraphicsCanBeUsedAfterDispose() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		g.dispose();
+
+		g.reset();
+		g.fillRect(0, 0, 10, 10);
+
+		assertEquals(1, countCommands(g, FillRectangleCommand.class));
+	}
+
+	@Test
+	public void testSnapshotIsNotChangedByLaterDrawing() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		g.fillRect(0, 0, 10, 10);
+
+		CommandSequence snapshot = g.snapshot();
+		g.fillRect(10, 10, 10, 10);
+		g.reset();
+
+		int fillCount = 0;
+		for (Command<?> command : snapshot) {
+			if (command instanceof FillRectangleCommand) {
+				fillCount++;
+			}
+		}
+		assertEquals(1, fillCount);
+	}
+
+	@Test
+	public void testParallelRecordingPlacesCommandsAtCreate() throws Exception {
+		VectorGraphics2D g = new VectorGraphics2D();
+		g.setParallelRecordingEnabled(true);
+		final VectorGraphics2D first = (VectorGraphics2D) g.create();
+		final VectorGraphics2D second = (VectorGraphics2D) g.create();
+		g.fillRect(0, 0, 1, 1);
+
+		Thread secondThread = new Thread() {
+			@Override
+			public void run() {
+				second.fillRect(2, 2, 1, 1);
+				second.dispose();
+			}
+		};
+		secondThread.start();
+		secondThread.join();
+		Thread firstThread = new Thread() {
+			@Override
+			public void run() {
+				first.fillRect(1, 1, 1, 1);
+				first.dispose();
+			}
+		};
+		firstThread.start();
+		firstThread.join();
+
+		List<Command<?>> commands = new ArrayList<>();
+		for (Command<?> command : g.getCommands()) {
+			commands.add(command);
+		}
+		int start = commands.indexOf(new CreateCommand(first));
+		assertEquals(Arrays.asList(
+			new CreateCommand(first),
+			new FillRectangleCommand(1.0, 1.0, 1.0, 1.0),
+			new DisposeCommand(first),
+			new CreateCommand(second),
+			new FillRectangleCommand(2.0, 2.0, 1.0, 1.0),
+			new DisposeCommand(second),
+			new FillRectangleCommand(0.0, 0.0, 1.0, 1.0)
+		), commands.subList(start, commands.size()));
+	}
+
+	@Test
+	public void testSnapshotDoesNotChangeWhileParallelChildDraws() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		g.setParallelRecordingEnabled(true);
+		VectorGraphics2D child = (VectorGraphics2D) g.create();
+		child.fillRect(0, 0, 1, 1);
+
+		CommandSequence snapshot = g.snapshot();
+		int sizeBefore = 0;
+		for (Command<?> command : snapshot) {
+			sizeBefore++;
+		}
+		child.fillRect(1, 1, 1, 1);
+		child.dispose();
+
+		int sizeAfter = 0;
+		for (Command<?> command : snapshot) {
+			assertFalse(command instanceof FillRectangleCommand);
+			sizeAfter++;
+		}
+		assertEquals(sizeBefore, sizeAfter);
+		int fillCount = 0;
+		for (Command<?> command : g.snapshot()) {
+			if (command instanceof FillRectangleCommand) {
+				fillCount++;
+			}
+		}
+		assertEquals(2, fillCount);
+	}
+
+	@Test
+	public void testSinkReceivesAllCommandsWithoutRecordingThem() {
+		final List<Command<?>> received = new ArrayList<>();
+		CommandSink sink = new CommandSink() {
+			@Override
+			public void add(Command<?> command) {
+				received.add(command);
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+		VectorGraphics2D g = new VectorGraphics2D(sink);
+
+		for (int i = 0; i < 10000; i++) {
+			g.fillRect(i, i, 1, 1);
+		}
+		int pendingCommandCount = countCommands(g, Command.class);
+		g.dispose();
+
+		assertTrue(pendingCommandCount < 10000);
+		assertEquals(0, countCommands(g, Command.class));
+		int fillCount = 0;
+		for (Command<?> command : received) {
+			if (command instanceof FillRectangleCommand) {
+				fillCount++;
+			}
+		}
+		assertEquals(10000, fillCount);
+		assertThat(received.get(received.size() - 1), instanceOf(DisposeCommand.class));
+	}
+
+	@Test
+	public void testDrawMarkersRecordsSingleCommand() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		Rectangle2D marker = new Rectangle2D.Double(-1.0, -1.0, 2.0, 2.0);
+		double[] positions = {5.0, 6.0, 7.0, 8.0};
+
+		g.drawMarkers(marker, positions, 0, 2);
+		g.fillMarkers(marker, positions, 1, 1);
+
+		assertEquals(1, countCommands(g, DrawMarkersCommand.class));
+		assertEquals(1, countCommands(g, FillMarkersCommand.class));
+	}
+
+	@Test
+	public void testDrawMarkersWithoutPositionsRecordsNothing() {
+		VectorGraphics2D g = new VectorGraphics2D();
+
+		g.drawMarkers(new Rectangle2D.Double(), new double[0], 0, 0);
+
+		assertEquals(0, countCommands(g, DrawMarkersCommand.class));
+	}
+
+	@Test
+	public void testContentBoundsAreNotTrackedByDefault() {
+		VectorGraphics2D g = new VectorGraphics2D();
+
+		g.fillRect(0, 0, 10, 10);
+
+		assertThat(g.getContentBounds(), nullValue());
+	}
+
+	@Test
+	public void testContentBoundsIncludeTransformAndStroke() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		g.setContentBoundsTrackingEnabled(true);
+
+		g.fillRect(10, 20, 30, 40);
+		g.translate(100.0, 0.0);
+		g.setStroke(new BasicStroke(2f));
+		g.drawRect(0, 0, 10, 10);
+
+		assertEquals(new Rectangle2D.Double(10.0, -1.0, 101.0, 61.0), g.getContentBounds());
+	}
+
+	@Test
+	public void testContentBoundsIncludeCreatedGraphics() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		g.setContentBoundsTrackingEnabled(true);
+
+		Graphics2D child = (Graphics2D) g.create();
+		child.scale(2.0, 2.0);
+		child.fillOval(5, 5, 10, 10);
+		child.dispose();
+
+		assertEquals(new Rectangle2D.Double(10.0, 10.0, 20.0, 20.0), g.getContentBounds());
+	}
+
+	@Test
+	public void testContentPageSizeAddsMargin() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		g.setContentBoundsTrackingEnabled(true);
+
+		g.fillRect(10, 20, 30, 40);
+		PageSize pageSize = g.getContentPageSize(5.0);
+
+		assertEquals(5.0, pageSize.getX(), 0.0);
+		assertEquals(15.0, pageSize.getY(), 0.0);
+		assertEquals(40.0, pageSize.getWidth(), 0.0);
+		assertEquals(50.0, pageSize.getHeight(), 0.0);
+	}
+
+	@Test
+	public void testResetClearsContentBounds() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		g.setContentBoundsTrackingEnabled(true);
+		g.fillRect(10, 20, 30, 40);
+
+		g.reset();
+
+		assertThat(g.getContentBounds(), nullValue());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testContentPageSizeFailsWithoutTracking() {
+		new VectorGraphics2D().getContentPageSize(0.0);
+	}
+
+	@Test
+	public void testRewindRestoresCommandsAndState() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		g.setColor(Color.RED);
+		g.fillRect(0, 0, 10, 10);
+		List<Command<?>> expected = new ArrayList<>();
+		for (Command<?> command : g.getCommands()) {
+			expected.add(command);
+		}
+
+		VectorGraphics2D.Checkpoint checkpoint = g.checkpoint();
+		for (int attempt = 0; attempt < 2; attempt++) {
+			g.setColor(Color.BLUE);
+			g.translate(5.0, 5.0);
+			g.fillRect(0, 0, 10, 10);
+			g.rewind(checkpoint);
+		}
+
+		List<Command<?>> actual = new ArrayList<>();
+		for (Command<?> command : g.getCommands()) {
+			actual.add(command);
+		}
+		assertEquals(expected, actual);
+		assertEquals(Color.RED, g.getColor());
+		assertEquals(new AffineTransform(), g.getTransform());
+	}
+
+	@Test
+	public void testRewindRestoresContentBounds() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		g.setContentBoundsTrackingEnabled(true);
+		g.fillRect(0, 0, 10, 10);
+
+		VectorGraphics2D.Checkpoint checkpoint = g.checkpoint();
+		g.fillRect(100, 100, 10, 10);
+		g.rewind(checkpoint);
+
+		assertEquals(new Rectangle2D.Double(0.0, 0.0, 10.0, 10.0), g.getContentBounds());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRewindFailsAfterReset() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		VectorGraphics2D.Checkpoint checkpoint = g.checkpoint();
+
+		g.reset();
+		g.rewind(checkpoint);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRewindFailsForCheckpointOfOtherGraphics() {
+		new VectorGraphics2D().rewind(new VectorGraphics2D().checkpoint());
+	}
+
+	@Test
+	public void testRewindFailsForChildSharingCommands() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		VectorGraphics2D child = (VectorGraphics2D) g.create();
+		VectorGraphics2D.Checkpoint checkpoint = child.checkpoint();
+		g.fillRect(0, 0, 1, 1);
+
+		try {
+			child.rewind(checkpoint);
+			fail("Rewinding a child that shares the commands of its parent must fail.");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+		assertEquals(1, countCommands(g, FillRectangleCommand.class));
+	}
+
+	@Test
+	public void testRewindOfParallelChildKeepsParentCommands() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		g.setParallelRecordingEnabled(true);
+		VectorGraphics2D child = (VectorGraphics2D) g.create();
+		VectorGraphics2D.Checkpoint checkpoint = child.checkpoint();
+		child.fillRect(1, 1, 1, 1);
+		g.fillRect(0, 0, 1, 1);
+
+		child.rewind(checkpoint);
+
+		assertEquals(1, countCommands(g, FillRectangleCommand.class));
+	}
+
+	@Test
+	public void testRewindOfParallelChildKeepsParentContentBounds() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		g.setParallelRecordingEnabled(true);
+		g.setContentBoundsTrackingEnabled(true);
+		VectorGraphics2D child = (VectorGraphics2D) g.create();
+		VectorGraphics2D.Checkpoint checkpoint = child.checkpoint();
+		child.fillRect(100, 100, 10, 10);
+		g.fillRect(0, 0, 10, 10);
+
+		child.rewind(checkpoint);
+
+		assertEquals(new Rectangle2D.Double(0.0, 0.0, 10.0, 10.0), g.getContentBounds());
+	}
+
+	@Test
+	public void testRewindKeepsContentBoundsOfParallelChildCreatedBefore() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		g.setParallelRecordingEnabled(true);
+		g.setContentBoundsTrackingEnabled(true);
+		VectorGraphics2D child = (VectorGraphics2D) g.create();
+		VectorGraphics2D.Checkpoint checkpoint = g.checkpoint();
+		child.fillRect(0, 0, 10, 10);
+		g.fillRect(100, 100, 10, 10);
+		VectorGraphics2D discarded = (VectorGraphics2D) g.create();
+		discarded.fillRect(200, 200, 10, 10);
+
+		g.rewind(checkpoint);
+
+		assertEquals(new Rectangle2D.Double(0.0, 0.0, 10.0, 10.0), g.getContentBounds());
+		assertEquals(1, countCommands(g, FillRectangleCommand.class));
+	}
+
+	@Test
+	public void testDrawImageWithTransformKeepsOriginalImage() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		BufferedImage image = new BufferedImage(4, 3, BufferedImage.TYPE_INT_RGB);
+		AffineTransform transform = AffineTransform.getRotateInstance(0.5);
+		transform.scale(2.0, 3.0);
+
+		g.drawImage(image, transform, null);
+
+		DrawTransformedImageCommand command = null;
+		for (Command<?> c : g.getCommands()) {
+			if (c instanceof DrawTransformedImageCommand) {
+				command = (DrawTransformedImageCommand) c;
+			}
+		}
+		assertSame(image, command.getValue());
+		assertEquals(4, command.getImageWidth());
+		assertEquals(3, command.getImageHeight());
+		assertEquals(transform, command.getTransform());
+		assertEquals(0, countCommands(g, DrawImageCommand.class));
+	}
+
+	@Test
+	public void testContentBoundsIncludeTransformedImage() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		g.setContentBoundsTrackingEnabled(true);
+		BufferedImage image = new BufferedImage(4, 3, BufferedImage.TYPE_INT_RGB);
+
+		g.translate(10.0, 0.0);
+		g.drawRenderedImage(image, AffineTransform.getScaleInstance(2.0, 2.0));
+
+		assertEquals(new Rectangle2D.Double(10.0, 0.0, 8.0, 6.0), g.getContentBounds());
+	}
+
+	@Test
+	public void testDrawImageRegionRecordsSourceRectangle() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		BufferedImage image = new BufferedImage(40, 20, BufferedImage.TYPE_INT_RGB);
+
+		g.drawImage(image, 5, 6, 25, 16, 10, 0, 20, 10, null);
+
+		DrawImageCommand command = null;
+		for (Command<?> c : g.getCommands()) {
+			if (c instanceof DrawImageCommand) {
+				command = (DrawImageCommand) c;
+			}
+		}
+		assertSame(image, command.getValue());
+		assertTrue(command.isCropped());
+		assertEquals(10, command.getSourceX());
+		assertEquals(0, command.getSourceY());
+		assertEquals(10, command.getSourceWidth());
+		assertEquals(10, command.getSourceHeight());
+		assertEquals(new Rectangle2D.Double(5.0, 6.0, 20.0, 10.0), new Rectangle2D.Double(
+				command.getX(), command.getY(), command.getWidth(), command.getHeight()));
+	}
+
+	@Test
+	public void testDrawStyledStringRecordsRunsInOneCommand() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		AttributedString text = new AttributedString("plain bold red");
+		text.addAttribute(TextAttribute.WEIGHT, TextAttribute.WEIGHT_BOLD, 6, 10);
+		text.addAttribute(TextAttribute.FOREGROUND, Color.RED, 11, 14);
+
+		g.drawString(text.getIterator(), 1f, 2f);
+
+		assertEquals(0, countCommands(g, DrawStringCommand.class));
+		DrawStyledStringCommand command = null;
+		for (Command<?> c : g.getCommands()) {
+			if (c instanceof DrawStyledStringCommand) {
+				command = (DrawStyledStringCommand) c;
+			}
+		}
+		assertEquals("plain bold red", command.getValue());
+		assertEquals(4, command.getRunCount());
+		assertEquals("bold", command.getRunText(1));
+		assertTrue(command.getFont(1).isBold());
+		assertEquals(Color.BLACK, command.getColor(0));
+		assertEquals(Color.RED, command.getColor(3));
+	}
+
+	@Test
+	public void testDrawStringWithoutStylesRecordsPlainString() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		AttributedString text = new AttributedString("plain");
+		text.addAttribute(TextAttribute.UNDERLINE, TextAttribute.UNDERLINE_ON);
+
+		g.drawString(text.getIterator(), 1f, 2f);
+
+		assertEquals(1, countCommands(g, DrawStringCommand.class));
+		assertEquals(0, countCommands(g, DrawStyledStringCommand.class));
+	}
 }
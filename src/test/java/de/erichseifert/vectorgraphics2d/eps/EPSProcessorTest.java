@@ -23,7 +23,11 @@ package de.erichseifert.vectorgraphics2d.eps;
 
 import static de.erichseifert.vectorgraphics2d.TestUtils.Template;
 import static de.erichseifert.vectorgraphics2d.TestUtils.assertTemplateEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.regex.Pattern;
@@ -32,6 +36,10 @@ import org.junit.Test;
 import de.erichseifert.vectorgraphics2d.Document;
 import de.erichseifert.vectorgraphics2d.intermediate.MutableCommandSequence;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.Command;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawImageCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawLinesCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillMarkersCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillPolygonCommand;
 import de.erichseifert.vectorgraphics2d.util.PageSize;
 
 public class EPSProcessorTest {
@@ -86,4 +94,38 @@ public class EPSProcessorTest {
 		assertTemplateEquals(expected, actual);
 	}
 
+	@Test public void fillPolygonUsesEvenOddRule() throws IOException {
+		String result = process(new FillPolygonCommand(new int[] {0, 2, 1}, new int[] {0, 0, 3}, 3));
+
+		assertTrue(result.contains(EOL + "newpath 0.0 0.0 M 2.0 0.0 L 1.0 3.0 L Z eofill" + EOL));
+	}
+
+	@Test public void drawLinesIsStrokedOnce() throws IOException {
+		String result = process(new DrawLinesCommand(new double[] {0, 0, 1, 2, 3, 4, 5, 6}, 0, 2));
+
+		assertTrue(result.contains(EOL + "newpath 0.0 0.0 M 1.0 2.0 L 3.0 4.0 M 5.0 6.0 L stroke" + EOL));
+	}
+
+	@Test public void fillMarkersDefinesProcedureOnce() throws IOException {
+		Rectangle2D marker = new Rectangle2D.Double(-1.0, -1.0, 2.0, 2.0);
+		String result = process(
+			new FillMarkersCommand(marker, new double[] {1.0, 2.0, 3.0, 4.0}, 0, 2),
+			new FillMarkersCommand(marker, new double[] {5.0, 6.0}, 0, 1)
+		);
+		assertTrue(result.contains(EOL + "/mk0 { gsave translate newpath -1.0 -1.0 2.0 2.0 rect Z fill grestore } bind def" + EOL +
+			"1 2 mk0 3 4 mk0" + EOL + "5 6 mk0" + EOL));
+	}
+
+	@Test public void imageRegionsShareImageData() throws IOException {
+		BufferedImage image = new BufferedImage(2, 1, BufferedImage.TYPE_INT_RGB);
+		String result = process(
+			new DrawImageCommand(image, 2, 1, 0, 0, 1, 1, 0.0, 0.0, 1.0, 1.0),
+			new DrawImageCommand(image, 2, 1, 1, 0, 1, 1, 2.0, 0.0, 1.0, 1.0)
+		);
+		assertEquals(1, result.split("/ReusableStreamDecode filter", -1).length - 1);
+		assertEquals(2, result.split(EOL + "img0" + EOL, -1).length - 1);
+		assertTrue(result.contains(EOL + "gsave 0 0 1 1 rectclip" + EOL));
+		assertTrue(result.contains(EOL + "gsave 2 0 1 1 rectclip" + EOL));
+		assertTrue(result.contains(EOL + "1.0 0.0 translate" + EOL));
+	}
 }
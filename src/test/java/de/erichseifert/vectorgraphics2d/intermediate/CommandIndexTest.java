@@ -0,0 +1,113 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d.intermediate;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+import de.erichseifert.vectorgraphics2d.VectorGraphics2D;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillRectangleCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.TranslateCommand;
+
+public class CommandIndexTest {
+	@Test
+	public void testEmptySequenceHasEmptyIndex() {
+		CommandIndex index = CommandIndex.build(new MutableCommandSequence());
+
+		assertEquals(0, index.size());
+		assertNull(index.getBounds());
+		assertArrayEquals(new int[0], index.query(-1e9, -1e9, 1e9, 1e9));
+	}
+
+	@Test
+	public void testQueryReturnsPositionsOfIntersectingCommands() {
+		MutableCommandSequence commands = new MutableCommandSequence();
+		commands.add(new FillRectangleCommand(0.0, 0.0, 10.0, 10.0));
+		commands.add(new TranslateCommand(100.0, 0.0));
+		commands.add(new FillRectangleCommand(0.0, 0.0, 10.0, 10.0));
+
+		CommandIndex index = CommandIndex.build(commands);
+
+		assertEquals(2, index.size());
+		assertEquals(3, index.getCommandCount());
+		assertArrayEquals(new int[] {0}, index.query(new Rectangle2D.Double(5.0, 5.0, 1.0, 1.0)));
+		assertArrayEquals(new int[] {2}, index.query(new Rectangle2D.Double(105.0, 5.0, 1.0, 1.0)));
+		assertArrayEquals(new int[] {0, 2}, index.query(new Rectangle2D.Double(0.0, 0.0, 200.0, 1.0)));
+		assertArrayEquals(new int[0], index.query(new Rectangle2D.Double(50.0, 0.0, 10.0, 10.0)));
+	}
+
+	@Test
+	public void testTransformOfCreatedGraphicsIsRestoredOnDispose() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		Graphics2D child = (Graphics2D) g.create();
+		child.translate(100, 100);
+		child.fillRect(0, 0, 10, 10);
+		child.dispose();
+		g.fillRect(0, 0, 10, 10);
+
+		CommandIndex index = CommandIndex.build(g.getCommands());
+
+		assertEquals(new Rectangle2D.Double(0.0, 0.0, 110.0, 110.0), index.getBounds());
+		assertEquals(1, index.query(new Rectangle2D.Double(1.0, 1.0, 1.0, 1.0)).length);
+	}
+
+	@Test
+	public void testQueryMatchesLinearScan() {
+		Random random = new Random(42L);
+		MutableCommandSequence commands = new MutableCommandSequence();
+		List<Rectangle2D> rectangles = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			Rectangle2D rectangle = new Rectangle2D.Double(random.nextInt(1000), random.nextInt(1000),
+					random.nextInt(20), random.nextInt(20));
+			rectangles.add(rectangle);
+			commands.add(new FillRectangleCommand(rectangle.getX(), rectangle.getY(),
+					rectangle.getWidth(), rectangle.getHeight()));
+		}
+		CommandIndex index = CommandIndex.build(commands);
+
+		for (int query = 0; query < 50; query++) {
+			Rectangle2D region = new Rectangle2D.Double(random.nextInt(1000), random.nextInt(1000),
+					random.nextInt(200), random.nextInt(200));
+			List<Integer> expected = new ArrayList<>();
+			for (int i = 0; i < rectangles.size(); i++) {
+				Rectangle2D r = rectangles.get(i);
+				if (r.getMaxX() >= region.getMinX() && r.getMaxY() >= region.getMinY() &&
+						r.getMinX() <= region.getMaxX() && r.getMinY() <= region.getMaxY()) {
+					expected.add(i);
+				}
+			}
+			int[] expectedPositions = new int[expected.size()];
+			for (int i = 0; i < expectedPositions.length; i++) {
+				expectedPositions[i] = expected.get(i);
+			}
+			assertArrayEquals(expectedPositions, index.query(region));
+		}
+	}
+}
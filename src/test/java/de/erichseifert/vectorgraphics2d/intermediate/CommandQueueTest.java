@@ -0,0 +1,58 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d.intermediate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.util.Iterator;
+import org.junit.Test;
+
+import de.erichseifert.vectorgraphics2d.intermediate.commands.Command;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetColorCommand;
+
+public class CommandQueueTest {
+	@Test
+	public void testIteratorRemovesReturnedCommands() {
+		CommandQueue queue = new CommandQueue();
+		queue.add(new SetColorCommand(Color.RED));
+
+		Iterator<Command<?>> commands = queue.iterator();
+		assertEquals(new SetColorCommand(Color.RED), commands.next());
+
+		assertTrue(queue.isEmpty());
+		assertFalse(commands.hasNext());
+	}
+
+	@Test
+	public void testIteratorReturnsCommandsAddedAfterItWasEmpty() {
+		CommandQueue queue = new CommandQueue();
+		Iterator<Command<?>> commands = queue.iterator();
+
+		queue.add(new SetColorCommand(Color.RED));
+
+		assertTrue(commands.hasNext());
+		assertEquals(new SetColorCommand(Color.RED), commands.next());
+	}
+}
@@ -29,6 +29,10 @@ import de.erichseifert.vectorgraphics2d.intermediate.filters.FilterTests;
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
 	MutableCommandSequenceTest.class,
+	CommandQueueTest.class,
+	SpillingCommandSequenceTest.class,
+	MappedCommandSequenceTest.class,
+	CommandIndexTest.class,
 	FilterTests.class
 })
 public class IRTests {
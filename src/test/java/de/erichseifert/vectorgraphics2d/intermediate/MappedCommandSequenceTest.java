@@ -0,0 +1,255 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d.intermediate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.GradientPaint;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.TexturePaint;
+import java.awt.font.TextAttribute;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.erichseifert.vectorgraphics2d.VectorGraphics2D;
+import de.erichseifert.vectorgraphics2d.VectorHints;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.Command;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.CreateCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DisposeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawImageCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawLinesCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawStyledStringCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawTransformedImageCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillRectangleCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.Group;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetColorCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetFontCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetHintCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetPaintCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetStrokeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.TransformCommand;
+
+public class MappedCommandSequenceTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File write(List<Command<?>> commands) throws IOException {
+		File file = folder.newFile();
+		try (CommandSequenceWriter writer = new CommandSequenceWriter(new FileOutputStream(file))) {
+			for (Command<?> command : commands) {
+				writer.add(command);
+			}
+		}
+		return file;
+	}
+
+	private static List<Command<?>> read(File file) throws IOException {
+		List<Command<?>> commands = new ArrayList<>();
+		try (MappedCommandSequence sequence = new MappedCommandSequence(file)) {
+			for (Command<?> command : sequence) {
+				commands.add(command);
+			}
+		}
+		return commands;
+	}
+
+	@Test
+	public void testCommandsAreReadEqually() throws IOException {
+		Group group = new Group();
+		group.add(new SetColorCommand(Color.RED));
+		group.add(new FillRectangleCommand(1.0, 2.0, 3.0, 4.0));
+		List<Command<?>> expected = Arrays.<Command<?>>asList(
+			new SetFontCommand(new Font(Font.SANS_SERIF, Font.ITALIC, 10)
+					.deriveFont(AffineTransform.getRotateInstance(0.5))),
+			new SetStrokeCommand(new BasicStroke(3f)),
+			new SetHintCommand(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY),
+			new SetHintCommand(VectorHints.KEY_TEXT, VectorHints.VALUE_TEXT_VECTOR),
+			new SetHintCommand(RenderingHints.KEY_TEXT_LCD_CONTRAST, 140),
+			new TransformCommand(new AffineTransform(1.0, 2.0, 3.0, 4.0, 5.0, 6.0)),
+			group
+		);
+
+		assertEquals(expected, read(write(expected)));
+	}
+
+	@Test
+	public void testGradientPaintsAreRead() throws IOException {
+		GradientPaint paint = new GradientPaint(1f, 2f, Color.RED, 10f, 20f, Color.BLUE, true);
+
+		List<Command<?>> commands = read(write(Arrays.<Command<?>>asList(new SetPaintCommand(paint))));
+
+		GradientPaint decoded = (GradientPaint) commands.get(0).getValue();
+		assertEquals(paint.getPoint1(), decoded.getPoint1());
+		assertEquals(paint.getPoint2(), decoded.getPoint2());
+		assertEquals(Color.RED, decoded.getColor1());
+		assertEquals(Color.BLUE, decoded.getColor2());
+		assertTrue(decoded.isCyclic());
+	}
+
+	@Test
+	public void testStyledStringsKeepRuns() throws IOException {
+		Font font = new Font(Font.SERIF, Font.PLAIN, 10);
+		Command<?> command = new DrawStyledStringCommand("foo bar", 1.0, 2.0, new int[] {4, 7},
+				new Font[] {font, font.deriveFont(Font.ITALIC)}, new Color[] {Color.RED, null});
+
+		assertEquals(Arrays.asList(command), read(write(Arrays.<Command<?>>asList(command))));
+	}
+
+	@Test
+	public void testGraphicsReferencesAreReplacedByPlaceholders() throws IOException {
+		VectorGraphics2D g1 = new VectorGraphics2D();
+		VectorGraphics2D g2 = new VectorGraphics2D();
+
+		List<Command<?>> commands = read(write(Arrays.<Command<?>>asList(
+				new CreateCommand(g1), new CreateCommand(g2), new DisposeCommand(g1))));
+
+		assertNotNull(commands.get(0).getValue());
+		assertNotSame(commands.get(0).getValue(), commands.get(1).getValue());
+		assertSame(commands.get(0).getValue(), commands.get(2).getValue());
+		assertFalse(commands.get(0).equals(new CreateCommand(g1)));
+	}
+
+	@Test
+	public void testFontAttributesAreKept() throws IOException {
+		Map<TextAttribute, Object> attributes = new HashMap<>();
+		attributes.put(TextAttribute.UNDERLINE, TextAttribute.UNDERLINE_ON);
+		attributes.put(TextAttribute.TRACKING, 0.1f);
+		attributes.put(TextAttribute.KERNING, TextAttribute.KERNING_ON);
+		attributes.put(TextAttribute.WEIGHT, TextAttribute.WEIGHT_SEMIBOLD);
+		Font font = new Font(Font.SERIF, Font.PLAIN, 10).deriveFont(attributes);
+		List<Command<?>> expected = Arrays.<Command<?>>asList(new SetFontCommand(font));
+
+		assertEquals(expected, read(write(expected)));
+	}
+
+	@Test
+	public void testCommandsLargerThanBlockAreRead() throws IOException {
+		double[] coordinates = new double[40000];
+		for (int i = 0; i < coordinates.length; i++) {
+			coordinates[i] = i;
+		}
+		List<Command<?>> expected = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			expected.add(new FillRectangleCommand(i, i, 1.0, 1.0));
+		}
+		expected.add(new DrawLinesCommand(coordinates, 0, 10000));
+		expected.add(new FillRectangleCommand(0.0, 0.0, 1.0, 1.0));
+
+		assertEquals(expected, read(write(expected)));
+	}
+
+	@Test
+	public void testImagesAreEmbeddedOnce() throws IOException {
+		BufferedImage image = new BufferedImage(2, 1, BufferedImage.TYPE_INT_ARGB);
+		image.setRGB(1, 0, 0xff123456);
+		Command<?> command = new DrawImageCommand(image, 2, 1, 0.0, 0.0, 2.0, 1.0);
+
+		List<Command<?>> commands = read(write(Arrays.<Command<?>>asList(command, command)));
+
+		BufferedImage decoded = (BufferedImage) commands.get(0).getValue();
+		assertEquals(0xff123456, decoded.getRGB(1, 0));
+		assertSame(decoded, commands.get(1).getValue());
+	}
+
+	@Test
+	public void testImageRegionsKeepSourceRectangle() throws IOException {
+		BufferedImage image = new BufferedImage(4, 2, BufferedImage.TYPE_INT_ARGB);
+		Command<?> command = new DrawImageCommand(image, 4, 2, 1, 0, 2, 2, 5.0, 6.0, 7.0, 8.0);
+
+		DrawImageCommand decoded = (DrawImageCommand)
+				read(write(Arrays.<Command<?>>asList(command))).get(0);
+
+		assertEquals(1, decoded.getSourceX());
+		assertEquals(0, decoded.getSourceY());
+		assertEquals(2, decoded.getSourceWidth());
+		assertEquals(2, decoded.getSourceHeight());
+		assertEquals(7.0, decoded.getWidth(), 0.0);
+	}
+
+	@Test
+	public void testTransformedImagesKeepTransform() throws IOException {
+		BufferedImage image = new BufferedImage(2, 1, BufferedImage.TYPE_INT_ARGB);
+		AffineTransform transform = new AffineTransform(1.0, 2.0, 3.0, 4.0, 5.0, 6.0);
+		Command<?> command = new DrawTransformedImageCommand(image, 2, 1, transform);
+
+		DrawTransformedImageCommand decoded = (DrawTransformedImageCommand)
+				read(write(Arrays.<Command<?>>asList(command))).get(0);
+
+		assertEquals(2, decoded.getImageWidth());
+		assertEquals(1, decoded.getImageHeight());
+		assertEquals(transform, decoded.getTransform());
+	}
+
+	@Test
+	public void testImagesAreWrittenAsNames() throws IOException {
+		final BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+		File file = folder.newFile();
+		try (CommandSequenceWriter writer = new CommandSequenceWriter(new FileOutputStream(file), i -> "logo")) {
+			writer.add(new DrawImageCommand(image, 1, 1, 0.0, 0.0, 1.0, 1.0));
+		}
+
+		Image decoded;
+		try (MappedCommandSequence sequence = new MappedCommandSequence(file,
+				name -> "logo".equals(name) ? image : null)) {
+			decoded = (Image) sequence.iterator().next().getValue();
+		}
+
+		assertSame(image, decoded);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupportedValuesFail() throws IOException {
+		BufferedImage texture = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+		write(Arrays.<Command<?>>asList(new SetPaintCommand(
+				new TexturePaint(texture, new Rectangle2D.Double(0.0, 0.0, 1.0, 1.0)))));
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnknownFileFails() throws IOException {
+		File file = folder.newFile();
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			out.write(new byte[] {1, 2, 3, 4, 0, 0, 0, 1});
+		}
+		new MappedCommandSequence(file).close();
+	}
+}
@@ -22,12 +22,53 @@
 package de.erichseifert.vectorgraphics2d.intermediate;
 
 import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.instanceOf;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 import org.junit.Test;
 
 import de.erichseifert.vectorgraphics2d.intermediate.commands.Command;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawEllipseCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawLineCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawMarkersCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawPolygonCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawPolylineCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawRectangleCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawShapeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawStringCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawTransformedImageCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillEllipseCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillMarkersCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillPolygonCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillRectangleCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillShapeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.RotateCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetColorCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetFontCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetHintCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetStrokeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetTransformCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.TransformCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.TranslateCommand;
 
 public class MutableCommandSequenceTest {
 	@Test
@@ -39,5 +80,338 @@ public class MutableCommandSequenceTest {
 
 		assertThat(commands, hasItem(command));
 	}
-}
 
+	@Test
+	public void testIteratorReturnsCommandsInInsertionOrder() {
+		MutableCommandSequence commands = new MutableCommandSequence();
+		List<Command<?>> expected = Arrays.<Command<?>>asList(
+			new SetColorCommand(Color.RED),
+			new SetStrokeCommand(new BasicStroke(2f)),
+			new SetFontCommand(new Font(Font.SERIF, Font.BOLD, 10)),
+			new SetHintCommand(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON),
+			new TranslateCommand(1.0, 2.0),
+			new RotateCommand(0.5, 3.0, 4.0),
+			new TransformCommand(new AffineTransform(1.0, 2.0, 3.0, 4.0, 5.0, 6.0)),
+			new SetTransformCommand(AffineTransform.getScaleInstance(2.0, 3.0)),
+			new DrawStringCommand("foo", 7.0, 8.0),
+			new DrawTransformedImageCommand(new BufferedImage(2, 1, BufferedImage.TYPE_INT_RGB), 2, 1,
+					AffineTransform.getRotateInstance(0.5)),
+			new FillShapeCommand(new Rectangle2D.Double(1.0, 2.0, 3.0, 4.0))
+		);
+
+		for (Command<?> command : expected) {
+			commands.add(command);
+		}
+
+		Iterator<Command<?>> actual = commands.iterator();
+		for (Command<?> command : expected) {
+			assertEquals(command, actual.next());
+		}
+		assertFalse(actual.hasNext());
+	}
+
+	@Test
+	public void testIteratorReturnsCommandsOfUnknownTypeUnchanged() {
+		MutableCommandSequence commands = new MutableCommandSequence();
+		Command<?> command = new SetColorCommand(Color.RED) {};
+
+		commands.add(command);
+
+		assertSame(command, commands.iterator().next());
+	}
+
+	@Test
+	public void testSizeReturnsNumberOfAddedCommands() {
+		MutableCommandSequence commands = new MutableCommandSequence();
+		for (int i = 0; i < 100; i++) {
+			commands.add(new TranslateCommand(i, i));
+		}
+
+		assertEquals(100, commands.size());
+	}
+
+	@Test
+	public void testAddFillShapeCopiesGeometry() {
+		MutableCommandSequence commands = new MutableCommandSequence();
+		Rectangle2D.Double rect = new Rectangle2D.Double(1.0, 2.0, 3.0, 4.0);
+
+		commands.addFillShape(rect);
+		rect.setRect(10.0, 20.0, 30.0, 40.0);
+		commands.addFillShape(rect);
+
+		Iterator<Command<?>> iterator = commands.iterator();
+		Command<?> first = iterator.next();
+		assertThat(first, instanceOf(FillShapeCommand.class));
+		assertEquals(new Rectangle2D.Double(1.0, 2.0, 3.0, 4.0), ((Shape) first.getValue()).getBounds2D());
+		assertEquals(rect, ((Shape) iterator.next().getValue()).getBounds2D());
+		assertFalse(iterator.hasNext());
+	}
+
+	@Test
+	public void testAddDrawShapePreservesSegmentsAndWindingRule() {
+		MutableCommandSequence commands = new MutableCommandSequence();
+		Path2D path = new Path2D.Double(Path2D.WIND_EVEN_ODD);
+		path.moveTo(0.0, 0.0);
+		path.lineTo(1.0, 0.0);
+		path.quadTo(2.0, 1.0, 1.0, 2.0);
+		path.curveTo(0.5, 3.0, 0.0, 2.5, 0.0, 1.0);
+		path.closePath();
+
+		commands.addDrawShape(path);
+
+		Command<?> command = commands.iterator().next();
+		assertThat(command, instanceOf(DrawShapeCommand.class));
+		PathIterator expected = path.getPathIterator(null);
+		PathIterator actual = ((Shape) command.getValue()).getPathIterator(null);
+		assertEquals(expected.getWindingRule(), actual.getWindingRule());
+		double[] expectedCoords = new double[6];
+		double[] actualCoords = new double[6];
+		for (; !expected.isDone(); expected.next(), actual.next()) {
+			assertFalse(actual.isDone());
+			assertEquals(expected.currentSegment(expectedCoords), actual.currentSegment(actualCoords));
+			assertArrayEquals(expectedCoords, actualCoords, 0.0);
+		}
+		assertTrue(actual.isDone());
+	}
+
+	@Test
+	public void testAddPacksPathCommands() {
+		MutableCommandSequence commands = new MutableCommandSequence();
+		Path2D path = new Path2D.Double();
+		path.moveTo(0.0, 0.0);
+		path.lineTo(2.0, 0.0);
+		path.lineTo(1.0, 3.0);
+		path.closePath();
+		Rectangle2D rect = new Rectangle2D.Double(1.0, 2.0, 3.0, 4.0);
+
+		commands.add(new FillShapeCommand(path));
+		commands.add(new DrawShapeCommand(rect));
+
+		Iterator<Command<?>> iterator = commands.iterator();
+		Command<?> filled = iterator.next();
+		assertThat(filled, instanceOf(FillShapeCommand.class));
+		assertEquals(path.getBounds2D(), ((Shape) filled.getValue()).getBounds2D());
+		assertEquals(rect, iterator.next().getValue());
+	}
+
+	@Test
+	public void testIteratorReturnsPrimitiveCommands() {
+		MutableCommandSequence commands = new MutableCommandSequence();
+		int[] xPoints = {0, 2, 1};
+		int[] yPoints = {0, 0, 3};
+		List<Command<?>> expected = Arrays.<Command<?>>asList(
+			new DrawLineCommand(1.0, 2.0, 3.0, 4.0),
+			new DrawRectangleCommand(1.0, 2.0, 3.0, 4.0),
+			new FillRectangleCommand(1.0, 2.0, 3.0, 4.0),
+			new DrawEllipseCommand(1.0, 2.0, 3.0, 4.0),
+			new FillEllipseCommand(1.0, 2.0, 3.0, 4.0),
+			new DrawPolylineCommand(xPoints, yPoints, 3),
+			new DrawPolygonCommand(xPoints, yPoints, 3),
+			new FillPolygonCommand(xPoints, yPoints, 3)
+		);
+
+		for (Command<?> command : expected) {
+			commands.add(command);
+		}
+		commands.addFillPolygon(xPoints, yPoints, 3);
+
+		Iterator<Command<?>> actual = commands.iterator();
+		for (Command<?> command : expected) {
+			Command<?> next = actual.next();
+			assertEquals(command, next);
+			assertEquals(command.hashCode(), next.hashCode());
+		}
+		assertEquals(new FillPolygonCommand(xPoints, yPoints, 3), actual.next());
+		assertFalse(actual.hasNext());
+	}
+
+	@Test
+	public void testClearRemovesAllCommands() {
+		MutableCommandSequence commands = new MutableCommandSequence();
+		for (int i = 0; i < 100; i++) {
+			commands.add(new SetColorCommand(Color.RED));
+			commands.addFillRectangle(i, i, 1.0, 1.0);
+		}
+
+		commands.clear();
+		commands.addDrawLine(1.0, 2.0, 3.0, 4.0);
+
+		assertEquals(1, commands.size());
+		Iterator<Command<?>> actual = commands.iterator();
+		assertEquals(new DrawLineCommand(1.0, 2.0, 3.0, 4.0), actual.next());
+		assertFalse(actual.hasNext());
+	}
+
+	@Test
+	public void testSnapshotDoesNotContainLaterCommands() {
+		MutableCommandSequence commands = new MutableCommandSequence();
+		commands.addDrawLine(1.0, 2.0, 3.0, 4.0);
+
+		CommandSequence snapshot = commands.snapshot();
+		for (int i = 0; i < 100; i++) {
+			commands.addFillRectangle(i, i, 1.0, 1.0);
+		}
+
+		Iterator<Command<?>> actual = snapshot.iterator();
+		assertEquals(new DrawLineCommand(1.0, 2.0, 3.0, 4.0), actual.next());
+		assertFalse(actual.hasNext());
+	}
+
+	@Test
+	public void testSnapshotIsNotChangedByClear() {
+		MutableCommandSequence commands = new MutableCommandSequence();
+		commands.add(new SetColorCommand(Color.RED));
+
+		CommandSequence snapshot = commands.snapshot();
+		commands.clear();
+		commands.add(new SetColorCommand(Color.BLUE));
+
+		Iterator<Command<?>> actual = snapshot.iterator();
+		assertEquals(new SetColorCommand(Color.RED), actual.next());
+		assertFalse(actual.hasNext());
+	}
+
+	@Test
+	public void testTruncateRemovesCommandsAfterMark() {
+		MutableCommandSequence commands = new MutableCommandSequence();
+		commands.add(new SetColorCommand(Color.RED));
+		commands.addDrawLine(1.0, 2.0, 3.0, 4.0);
+
+		MutableCommandSequence.Mark mark = commands.mark();
+		for (int i = 0; i < 100; i++) {
+			commands.add(new SetColorCommand(Color.BLUE));
+			commands.addFillShape(new Rectangle2D.Double(i, i, 1.0, 1.0));
+		}
+		commands.truncate(mark);
+		commands.addFillRectangle(5.0, 6.0, 7.0, 8.0);
+
+		assertEquals(3, commands.size());
+		Iterator<Command<?>> actual = commands.iterator();
+		assertEquals(new SetColorCommand(Color.RED), actual.next());
+		assertEquals(new DrawLineCommand(1.0, 2.0, 3.0, 4.0), actual.next());
+		assertEquals(new FillRectangleCommand(5.0, 6.0, 7.0, 8.0), actual.next());
+		assertFalse(actual.hasNext());
+	}
+
+	@Test
+	public void testSnapshotIsNotChangedByTruncate() {
+		MutableCommandSequence commands = new MutableCommandSequence();
+		MutableCommandSequence.Mark mark = commands.mark();
+		commands.add(new SetColorCommand(Color.RED));
+
+		CommandSequence snapshot = commands.snapshot();
+		commands.truncate(mark);
+		commands.add(new SetColorCommand(Color.BLUE));
+
+		Iterator<Command<?>> actual = snapshot.iterator();
+		assertEquals(new SetColorCommand(Color.RED), actual.next());
+		assertFalse(actual.hasNext());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testTruncateFailsAfterClear() {
+		MutableCommandSequence commands = new MutableCommandSequence();
+		MutableCommandSequence.Mark mark = commands.mark();
+
+		commands.clear();
+		commands.truncate(mark);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTruncateFailsForMarkOfOtherSequence() {
+		new MutableCommandSequence().truncate(new MutableCommandSequence().mark());
+	}
+
+	@Test
+	public void testSnapshotCanBeIteratedWhileCommandsAreAdded() throws Exception {
+		final MutableCommandSequence commands = new MutableCommandSequence();
+		for (int i = 0; i < 1000; i++) {
+			commands.addFillRectangle(i, i, 1.0, 1.0);
+		}
+		final CommandSequence snapshot = commands.snapshot();
+		final int[] count = new int[1];
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				for (Command<?> command : snapshot) {
+					count[0]++;
+				}
+			}
+		};
+
+		reader.start();
+		for (int i = 0; i < 100000; i++) {
+			commands.addDrawLine(i, i, i + 1.0, i + 1.0);
+		}
+		reader.join();
+
+		assertEquals(1000, count[0]);
+	}
+
+	@Test
+	public void testNestedSequenceIsIteratedInPlace() {
+		MutableCommandSequence commands = new MutableCommandSequence();
+		MutableCommandSequence nested = new MutableCommandSequence();
+		commands.addDrawLine(1.0, 1.0, 1.0, 1.0);
+		commands.addSequence(nested);
+		commands.addSequence(new MutableCommandSequence());
+		commands.addDrawLine(3.0, 3.0, 3.0, 3.0);
+		commands.addSequence(new MutableCommandSequence());
+
+		nested.addDrawLine(2.0, 2.0, 2.0, 2.0);
+
+		Iterator<Command<?>> actual = commands.iterator();
+		assertEquals(new DrawLineCommand(1.0, 1.0, 1.0, 1.0), actual.next());
+		assertEquals(new DrawLineCommand(2.0, 2.0, 2.0, 2.0), actual.next());
+		assertEquals(new DrawLineCommand(3.0, 3.0, 3.0, 3.0), actual.next());
+		assertFalse(actual.hasNext());
+	}
+
+	@Test
+	public void testSnapshotContainsNestedSequencesAsCompleted() {
+		MutableCommandSequence commands = new MutableCommandSequence();
+		MutableCommandSequence completed = new MutableCommandSequence();
+		MutableCommandSequence pending = new MutableCommandSequence();
+		commands.addSequence(completed);
+		commands.addSequence(pending);
+		completed.addDrawLine(1.0, 1.0, 1.0, 1.0);
+		completed.complete();
+		pending.addDrawLine(2.0, 2.0, 2.0, 2.0);
+
+		CommandSequence snapshot = commands.snapshot();
+		completed.addDrawLine(3.0, 3.0, 3.0, 3.0);
+		completed.complete();
+
+		Iterator<Command<?>> actual = snapshot.iterator();
+		assertEquals(new DrawLineCommand(1.0, 1.0, 1.0, 1.0), actual.next());
+		assertFalse(actual.hasNext());
+	}
+
+	@Test
+	public void testMarkerCommandsAreRestoredFromSequence() {
+		MutableCommandSequence commands = new MutableCommandSequence();
+		Shape marker = new Rectangle2D.Double(-1.0, -1.0, 2.0, 2.0);
+		double[] positions = {0.0, 1.0, 2.0, 3.0, 4.0};
+
+		commands.addDrawMarkers(marker, positions, 1, 2);
+		commands.addFillMarkers(marker, positions, 0, 1);
+
+		Iterator<Command<?>> actual = commands.iterator();
+		assertEquals(new DrawMarkersCommand(marker, new double[] {1.0, 2.0, 3.0, 4.0}, 0, 2), actual.next());
+		assertEquals(new FillMarkersCommand(marker, new double[] {0.0, 1.0}, 0, 1), actual.next());
+		assertFalse(actual.hasNext());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testAddMarkersFailsForTooFewPositions() {
+		MutableCommandSequence commands = new MutableCommandSequence();
+
+		commands.addDrawMarkers(new Rectangle2D.Double(), new double[] {0.0, 1.0, 2.0}, 0, 2);
+	}
+
+	@Test
+	public void testPrimitiveCommandsAreNotEqualToDifferentPrimitives() {
+		assertFalse(new DrawRectangleCommand(1.0, 2.0, 3.0, 4.0).equals(new DrawRectangleCommand(1.0, 2.0, 3.0, 5.0)));
+		assertFalse(new DrawRectangleCommand(1.0, 2.0, 3.0, 4.0).equals(new FillRectangleCommand(1.0, 2.0, 3.0, 4.0)));
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d.intermediate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.erichseifert.vectorgraphics2d.intermediate.commands.Command;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawImageCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawLinesCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawMarkersCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawShapeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawStringCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillPolygonCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillRectangleCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.Group;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.RotateCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetColorCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetCompositeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetFontCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetHintCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetStrokeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetTransformCommand;
+import de.erichseifert.vectorgraphics2d.util.GraphicsUtils;
+
+public class SpillingCommandSequenceTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static List<Command<?>> toList(CommandSequence sequence) {
+		List<Command<?>> commands = new ArrayList<>();
+		for (Command<?> command : sequence) {
+			commands.add(command);
+		}
+		return commands;
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNonPositiveMemoryBudgetFails() {
+		new SpillingCommandSequence(0);
+	}
+
+	@Test
+	public void testCommandsAreDecodedEqually() {
+		Group group = new Group();
+		group.add(new SetColorCommand(Color.RED));
+		group.add(new FillRectangleCommand(1.0, 2.0, 3.0, 4.0));
+		List<Command<?>> expected = Arrays.<Command<?>>asList(
+			new SetColorCommand(new Color(10, 20, 30, 40)),
+			new SetStrokeCommand(new BasicStroke(2f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL,
+					4f, new float[] {1f, 2f}, 0.5f)),
+			new SetFontCommand(new Font(Font.SERIF, Font.BOLD, 12).deriveFont(12.5f)),
+			new SetCompositeCommand(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.5f)),
+			new SetHintCommand(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON),
+			new SetTransformCommand(new AffineTransform(1.0, 2.0, 3.0, 4.0, 5.0, 6.0)),
+			new RotateCommand(0.5, 1.0, 2.0),
+			new DrawStringCommand("Text ä€", 1.0, 2.0),
+			new DrawShapeCommand(new Rectangle2D.Double(1.0, 2.0, 3.0, 4.0)),
+			new DrawShapeCommand(new Ellipse2D.Double(1.0, 2.0, 3.0, 4.0)),
+			new FillPolygonCommand(new double[] {1.0, 2.0, 3.0, 4.0, 5.0, 6.0}, 0, 3),
+			new DrawLinesCommand(new double[] {1.0, 2.0, 3.0, 4.0}, 0, 1),
+			new DrawMarkersCommand(new Rectangle2D.Double(0.0, 0.0, 1.0, 1.0), new double[] {1.0, 2.0}, 0, 1),
+			group
+		);
+		SpillingCommandSequence sequence = new SpillingCommandSequence(64, folder.getRoot());
+		for (Command<?> command : expected) {
+			sequence.add(command);
+		}
+
+		assertEquals(expected, toList(sequence));
+		sequence.delete();
+	}
+
+	@Test
+	public void testPathsAreDecodedEqually() {
+		Path2D path = new Path2D.Double(Path2D.WIND_EVEN_ODD);
+		path.moveTo(0.0, 0.0);
+		path.lineTo(1.0, 0.0);
+		path.quadTo(2.0, 1.0, 1.0, 2.0);
+		path.curveTo(0.5, 2.0, 0.0, 1.5, 0.0, 1.0);
+		path.closePath();
+		SpillingCommandSequence sequence = new SpillingCommandSequence(1024);
+		sequence.add(new DrawShapeCommand(path));
+
+		Shape decoded = (Shape) sequence.iterator().next().getValue();
+
+		assertTrue(GraphicsUtils.equals(path, decoded));
+		sequence.delete();
+	}
+
+	@Test
+	public void testObjectsWithoutEncodingAreKeptByReference() {
+		BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+		SpillingCommandSequence sequence = new SpillingCommandSequence(16, folder.getRoot());
+		sequence.add(new DrawImageCommand(image, 1, 1, 0.0, 0.0, 1.0, 1.0));
+
+		assertSame(image, sequence.iterator().next().getValue());
+		sequence.delete();
+	}
+
+	@Test
+	public void testCommandsExceedingBudgetAreSpilled() {
+		SpillingCommandSequence sequence = new SpillingCommandSequence(256, folder.getRoot());
+		List<Command<?>> expected = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			Command<?> command = new FillRectangleCommand(i, i, 1.0, 1.0);
+			expected.add(command);
+			sequence.add(command);
+		}
+		// Larger than the memory budget
+		double[] coordinates = new double[200];
+		Command<?> lines = new DrawLinesCommand(coordinates, 0, 50);
+		expected.add(lines);
+		sequence.add(lines);
+		sequence.close();
+
+		assertEquals(1001, sequence.size());
+		assertTrue(sequence.getSpilledByteCount() > 0L);
+		assertEquals(expected, toList(sequence));
+		assertEquals(1, folder.getRoot().listFiles().length);
+		sequence.delete();
+		assertEquals(0, folder.getRoot().listFiles().length);
+	}
+
+	@Test
+	public void testIteratorReturnsCommandsSpilledDuringIteration() {
+		SpillingCommandSequence sequence = new SpillingCommandSequence(64, folder.getRoot());
+		sequence.add(new FillRectangleCommand(0.0, 0.0, 1.0, 1.0));
+		Iterator<Command<?>> commands = sequence.iterator();
+		assertEquals(new FillRectangleCommand(0.0, 0.0, 1.0, 1.0), commands.next());
+		assertFalse(commands.hasNext());
+
+		for (int i = 1; i < 10; i++) {
+			sequence.add(new FillRectangleCommand(i, i, 1.0, 1.0));
+		}
+
+		for (int i = 1; i < 10; i++) {
+			assertEquals(new FillRectangleCommand(i, i, 1.0, 1.0), commands.next());
+		}
+		assertFalse(commands.hasNext());
+		sequence.delete();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testAddAfterCloseFails() {
+		SpillingCommandSequence sequence = new SpillingCommandSequence(64);
+		sequence.close();
+		sequence.add(new SetColorCommand(Color.RED));
+	}
+}
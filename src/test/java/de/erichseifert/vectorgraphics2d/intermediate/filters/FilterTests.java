@@ -28,7 +28,8 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses({
 	StreamingFilterTest.class,
 	GroupingFilterTest.class,
-	FillPaintedShapeAsImageFilterTest.class
+	FillPaintedShapeAsImageFilterTest.class,
+	RegionFilterTest.class
 })
 public class FilterTests {
 }
@@ -0,0 +1,130 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d.intermediate.filters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+import de.erichseifert.vectorgraphics2d.VectorGraphics2D;
+import de.erichseifert.vectorgraphics2d.intermediate.CommandIndex;
+import de.erichseifert.vectorgraphics2d.intermediate.MutableCommandSequence;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.Command;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillRectangleCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetClipCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetColorCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetStrokeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.TransformCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.TranslateCommand;
+
+public class RegionFilterTest {
+	private static List<Command<?>> filter(MutableCommandSequence stream, Rectangle2D region) {
+		RegionFilter filter = new RegionFilter(stream, CommandIndex.build(stream), region);
+		List<Command<?>> commands = new ArrayList<>();
+		for (Command<?> command : filter) {
+			commands.add(command);
+		}
+		return commands;
+	}
+
+	@Test
+	public void filterPassesVisibleCommandsWithLastStateChanges() {
+		MutableCommandSequence stream = new MutableCommandSequence();
+		stream.add(new SetColorCommand(Color.RED));
+		stream.add(new FillRectangleCommand(0.0, 0.0, 10.0, 10.0));
+		stream.add(new SetColorCommand(Color.GREEN));
+		stream.add(new TranslateCommand(50.0, 0.0));
+		stream.add(new SetColorCommand(Color.BLUE));
+		stream.add(new TranslateCommand(50.0, 0.0));
+		stream.add(new FillRectangleCommand(0.0, 0.0, 10.0, 10.0));
+
+		List<Command<?>> commands = filter(stream, new Rectangle2D.Double(100.0, 0.0, 10.0, 10.0));
+
+		assertEquals(Arrays.<Command<?>>asList(
+			new SetColorCommand(Color.BLUE),
+			new TransformCommand(AffineTransform.getTranslateInstance(100.0, 0.0)),
+			new FillRectangleCommand(0.0, 0.0, 10.0, 10.0)
+		), commands);
+	}
+
+	@Test
+	public void filterKeepsClippingOrderWithTransforms() {
+		MutableCommandSequence stream = new MutableCommandSequence();
+		stream.add(new TranslateCommand(10.0, 0.0));
+		stream.add(new SetClipCommand(new Rectangle2D.Double(0.0, 0.0, 5.0, 5.0)));
+		stream.add(new TranslateCommand(10.0, 0.0));
+		stream.add(new FillRectangleCommand(0.0, 0.0, 10.0, 10.0));
+
+		List<Command<?>> commands = filter(stream, new Rectangle2D.Double(0.0, 0.0, 100.0, 100.0));
+
+		assertEquals(Arrays.<Command<?>>asList(
+			new TransformCommand(AffineTransform.getTranslateInstance(10.0, 0.0)),
+			new SetClipCommand(new Rectangle2D.Double(0.0, 0.0, 5.0, 5.0)),
+			new TransformCommand(AffineTransform.getTranslateInstance(10.0, 0.0)),
+			new FillRectangleCommand(0.0, 0.0, 10.0, 10.0)
+		), commands);
+	}
+
+	@Test
+	public void filterDropsEverythingOutsideRegion() {
+		MutableCommandSequence stream = new MutableCommandSequence();
+		stream.add(new SetStrokeCommand(new BasicStroke(2f)));
+		stream.add(new FillRectangleCommand(0.0, 0.0, 10.0, 10.0));
+
+		List<Command<?>> commands = filter(stream, new Rectangle2D.Double(50.0, 50.0, 10.0, 10.0));
+
+		assertTrue(commands.isEmpty());
+	}
+
+	@Test
+	public void filterDropsCreatedGraphicsWithoutVisibleCommands() {
+		VectorGraphics2D g = new VectorGraphics2D();
+		for (int i = 0; i < 10; i++) {
+			VectorGraphics2D child = (VectorGraphics2D) g.create();
+			child.translate(20*i, 0);
+			child.fillRect(0, 0, 10, 10);
+			child.dispose();
+		}
+		MutableCommandSequence stream = (MutableCommandSequence) g.getCommands();
+
+		List<Command<?>> commands = filter(stream, new Rectangle2D.Double(40.0, 0.0, 5.0, 5.0));
+
+		int fillCount = 0;
+		for (Command<?> command : commands) {
+			if (command instanceof FillRectangleCommand) {
+				fillCount++;
+			}
+		}
+		assertEquals(1, fillCount);
+		// Create and initial state of the graphics object, create, transform,
+		// fill, and dispose of the visible child
+		assertEquals(7, commands.size());
+	}
+}
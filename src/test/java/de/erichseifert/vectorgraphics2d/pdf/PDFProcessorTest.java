@@ -23,16 +23,26 @@ package de.erichseifert.vectorgraphics2d.pdf;
 
 import static de.erichseifert.vectorgraphics2d.TestUtils.Template;
 import static de.erichseifert.vectorgraphics2d.TestUtils.assertTemplateEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.awt.Color;
+import java.awt.geom.Rectangle2D;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.junit.Test;
 
 import de.erichseifert.vectorgraphics2d.Document;
+import de.erichseifert.vectorgraphics2d.intermediate.CommandSink;
 import de.erichseifert.vectorgraphics2d.intermediate.MutableCommandSequence;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.Command;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawLinesCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillMarkersCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillPolygonCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillRectangleCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.SetColorCommand;
 import de.erichseifert.vectorgraphics2d.util.PageSize;
 
 public class PDFProcessorTest {
@@ -132,5 +142,76 @@ public class PDFProcessorTest {
 
 		assertTemplateEquals(expected, actual);
 	}
-}
 
+	@Test public void fillRectangleUsesRectangleOperator() throws IOException {
+		String result = process(new FillRectangleCommand(1, 2, 3, 4));
+
+		assertTrue(result.contains(EOL + "1 2 3 4 re f" + EOL));
+	}
+
+	@Test public void fillPolygonUsesEvenOddRule() throws IOException {
+		String result = process(new FillPolygonCommand(new int[] {0, 2, 1}, new int[] {0, 0, 3}, 3));
+
+		assertTrue(result.contains(EOL + "0 0 m 2 0 l 1 3 l h f*" + EOL));
+	}
+
+	@Test public void drawLinesIsStrokedOnce() throws IOException {
+		String result = process(new DrawLinesCommand(new double[] {0, 0, 1, 2, 3, 4, 5, 6}, 0, 2));
+
+		assertTrue(result.contains(EOL + "0 0 m 1 2 l 3 4 m 5 6 l S" + EOL));
+	}
+
+	@Test public void fillMarkersReferencesSingleFormXObject() throws IOException {
+		Rectangle2D marker = new Rectangle2D.Double(-1.0, -1.0, 2.0, 2.0);
+		String result = process(
+			new FillMarkersCommand(marker, new double[] {1.0, 2.0, 3.0, 4.0}, 0, 2),
+			new FillMarkersCommand(marker, new double[] {5.0, 6.0}, 0, 1)
+		);
+
+		assertTrue(result.contains("/Subtype /Form"));
+		assertTrue(result.indexOf("/Subtype /Form") == result.lastIndexOf("/Subtype /Form"));
+		assertTrue(result.contains(EOL + "q 1 0 0 1 1 2 cm /Frm0 Do Q q 1 0 0 1 3 4 cm /Frm0 Do Q" + EOL));
+		assertTrue(result.contains(EOL + "q 1 0 0 1 5 6 cm /Frm0 Do Q" + EOL));
+	}
+
+	@Test public void sinkWritesContentsBeforeItIsClosed() throws IOException {
+		CommandSink sink = pdfProcessor.getSink(PAGE_SIZE, bytes);
+		for (int i = 0; i < 100; i++) {
+			sink.add(new FillRectangleCommand(i, i, 1, 1));
+		}
+		int written = bytes.size();
+		sink.close();
+
+		String result = bytes.toString("ISO-8859-1");
+		assertTrue(result.startsWith(HEADER + EOL + "4 0 obj" + EOL + "<<" + EOL + "/Length 5 0 R" + EOL));
+		assertTrue(result.substring(0, written).contains(EOL + "99 99 1 1 re f" + EOL));
+	}
+
+	@Test public void sinkWritesSameContentsAsDocument() throws IOException {
+		Command<?>[] commands = {
+			new SetColorCommand(Color.RED),
+			new FillRectangleCommand(1, 2, 3, 4),
+			new SetColorCommand(Color.BLUE),
+			new FillPolygonCommand(new int[] {0, 2, 1}, new int[] {0, 0, 3}, 3)
+		};
+		String document = process(commands);
+		ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+		CommandSink sink = pdfProcessor.getSink(PAGE_SIZE, streamed);
+		for (Command<?> command : commands) {
+			sink.add(command);
+		}
+		sink.close();
+		String result = streamed.toString("ISO-8859-1");
+
+		Matcher documentContents = Pattern.compile(
+				"4 0 obj\n<<\n/Length \\d+\n>>\nstream\n(.*?)\nendstream", Pattern.DOTALL).matcher(document);
+		Matcher streamedContents = Pattern.compile(
+				"4 0 obj\n<<\n/Length 5 0 R\n>>\nstream\n(.*?)\nendstream", Pattern.DOTALL).matcher(result);
+		Matcher length = Pattern.compile("\n5 0 obj\n(\\d+)\nendobj\n").matcher(result);
+		assertTrue(documentContents.find());
+		assertTrue(streamedContents.find());
+		assertTrue(length.find());
+		assertEquals(documentContents.group(1), streamedContents.group(1));
+		assertEquals(streamedContents.group(1).length(), Integer.parseInt(length.group(1)));
+	}
+}
@@ -22,9 +22,14 @@
 package de.erichseifert.vectorgraphics2d.svg;
 
 import static de.erichseifert.vectorgraphics2d.TestUtils.assertXMLEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.awt.Color;
+import java.awt.Font;
 import java.awt.geom.Path2D;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import org.junit.Test;
@@ -32,7 +37,14 @@ import org.junit.Test;
 import de.erichseifert.vectorgraphics2d.Document;
 import de.erichseifert.vectorgraphics2d.intermediate.MutableCommandSequence;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.Command;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawImageCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawLinesCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawMarkersCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawPolylineCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawShapeCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.DrawStyledStringCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillMarkersCommand;
+import de.erichseifert.vectorgraphics2d.intermediate.commands.FillPolygonCommand;
 import de.erichseifert.vectorgraphics2d.intermediate.commands.FillShapeCommand;
 import de.erichseifert.vectorgraphics2d.util.PageSize;
 
@@ -106,4 +118,93 @@ public class SVGProcessorTest {
 			FOOTER;
 		assertXMLEquals(expected, result);
 	}
+
+	@Test
+	public void drawPolyline() throws Exception {
+		String result = process(
+			new DrawPolylineCommand(new int[] {0, 2, 1}, new int[] {0, 0, 3}, 3)
+		);
+		String expected =
+			HEADER + EOL +
+			"  <polyline points=\"0,0 2,0 1,3\" style=\"fill:none;stroke:rgb(255,255,255);stroke-miterlimit:10;stroke-linecap:square;\"/>" + EOL +
+			FOOTER;
+		assertXMLEquals(expected, result);
+	}
+
+	@Test
+	public void fillPolygonEvenOdd() throws Exception {
+		String result = process(
+			new FillPolygonCommand(new int[] {0, 2, 1}, new int[] {0, 0, 3}, 3)
+		);
+		String expected =
+			HEADER + EOL +
+			"  <polygon points=\"0,0 2,0 1,3\" style=\"fill:rgb(255,255,255);fill-rule:evenodd;stroke:none;\"/>" + EOL +
+			FOOTER;
+		assertXMLEquals(expected, result);
+	}
+
+	@Test
+	public void drawLines() throws Exception {
+		String result = process(
+			new DrawLinesCommand(new double[] {0, 0, 1, 2, 3, 4, 5, 6}, 0, 2)
+		);
+		String expected =
+			HEADER + EOL +
+			"  <path d=\"M0,0 L1,2 M3,4 L5,6\" style=\"fill:none;stroke:rgb(255,255,255);stroke-miterlimit:10;stroke-linecap:square;\"/>" + EOL +
+			FOOTER;
+		assertXMLEquals(expected, result);
+	}
+
+	@Test
+	public void markersShareSymbol() throws Exception {
+		Rectangle2D marker = new Rectangle2D.Double(-1.0, -1.0, 2.0, 2.0);
+		String result = process(
+			new DrawMarkersCommand(marker, new double[] {1.0, 2.0, 3.0, 4.0}, 0, 2),
+			new FillMarkersCommand(marker, new double[] {5.0, 6.0}, 0, 1)
+		);
+		String expected =
+			HEADER +
+			"  <defs>" + EOL +
+			"    <symbol id=\"marker0\" overflow=\"visible\">" + EOL +
+			"      <rect height=\"2\" width=\"2\" x=\"-1\" y=\"-1\"/>" + EOL +
+			"    </symbol>" + EOL +
+			"  </defs>" + EOL +
+			"  <g style=\"fill:none;stroke:rgb(255,255,255);stroke-miterlimit:10;stroke-linecap:square;\">" + EOL +
+			"    <use x=\"1\" xlink:href=\"#marker0\" y=\"2\"/>" + EOL +
+			"    <use x=\"3\" xlink:href=\"#marker0\" y=\"4\"/>" + EOL +
+			"  </g>" + EOL +
+			"  <g style=\"fill:rgb(255,255,255);stroke:none;\">" + EOL +
+			"    <use x=\"5\" xlink:href=\"#marker0\" y=\"6\"/>" + EOL +
+			"  </g>" + EOL +
+			FOOTER;
+		assertXMLEquals(expected, result);
+	}
+
+	@Test
+	public void imageRegionsShareImageData() throws Exception {
+		BufferedImage image = new BufferedImage(2, 1, BufferedImage.TYPE_INT_RGB);
+		String result = process(
+			new DrawImageCommand(image, 2, 1, 0, 0, 1, 1, 0.0, 0.0, 1.0, 1.0),
+			new DrawImageCommand(image, 2, 1, 1, 0, 1, 1, 2.0, 0.0, 1.0, 1.0)
+		);
+		assertEquals(1, result.split("<image ", -1).length - 1);
+		assertEquals(2, result.split("<use xlink:href=\"#image0\"/>", -1).length - 1);
+		assertTrue(result.contains(
+			"<svg height=\"1\" preserveAspectRatio=\"none\" viewBox=\"1 0 1 1\" width=\"1\" x=\"2\" y=\"0\">"));
+	}
+
+	@Test
+	public void styledStringIsOneTextElement() throws Exception {
+		Font font = new Font(Font.DIALOG, Font.PLAIN, 12);
+		String result = process(
+			new DrawStyledStringCommand("ab c", 1.0, 2.0, new int[] {1, 2, 4},
+				new Font[] {font, font.deriveFont(Font.BOLD), font},
+				new Color[] {null, null, Color.RED})
+		);
+		String expected =
+			HEADER + EOL +
+			"  <text style=\"fill:rgb(255,255,255);stroke:none;\" x=\"1\" xml:space=\"preserve\" y=\"2\">a<tspan style=\"font-weight:bold;\">b</tspan><tspan style=\"fill:rgb(255,0,0);\"> c</tspan></text>" + EOL +
+			FOOTER;
+		assertXMLEquals(expected, result);
+	}
 }
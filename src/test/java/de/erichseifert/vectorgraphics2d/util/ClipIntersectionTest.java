@@ -0,0 +1,218 @@
+/*
+ * VectorGraphics2D: Vector export for Java(R) Graphics2D
+ *
+ * (C) Copyright 2010-2019 Erich Seifert <dev[at]erichseifert.de>,
+ * Michael Seifert <mseifert[at]error-reports.org>
+ *
+ * This file is part of VectorGraphics2D.
+ *
+ * VectorGraphics2D is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VectorGraphics2D is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with VectorGraphics2D.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erichseifert.vectorgraphics2d.util;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+
+import org.junit.Test;
+
+public class ClipIntersectionTest {
+	private static final double DELTA = 1e-10;
+
+	private static void assertSameArea(Shape expected, Shape actual) {
+		for (double y = -20.25; y < 120.0; y += 2.5) {
+			for (double x = -20.25; x < 120.0; x += 2.5) {
+				assertEquals("Point (" + x + ", " + y + ")", expected.contains(x, y), actual.contains(x, y));
+			}
+		}
+	}
+
+	private static Shape intersectAreas(Shape s1, Shape s2) {
+		Area area = new Area(s1);
+		area.intersect(new Area(s2));
+		return area;
+	}
+
+	@Test
+	public void testRectanglesResultInRectangle() {
+		Shape r1 = new Rectangle2D.Double(0.0, 0.0, 50.0, 40.0);
+		Shape r2 = new Rectangle2D.Double(20.0, 10.0, 50.0, 50.0);
+
+		Shape intersection = ClipIntersection.intersect(r1, r2);
+
+		assertEquals(new Rectangle2D.Double(20.0, 10.0, 30.0, 30.0), intersection);
+	}
+
+	@Test
+	public void testDisjointRectanglesResultInEmptyRectangle() {
+		Shape r1 = new Rectangle2D.Double(0.0, 0.0, 10.0, 10.0);
+		Shape r2 = new Rectangle2D.Double(20.0, 20.0, 10.0, 10.0);
+
+		Shape intersection = ClipIntersection.intersect(r1, r2);
+
+		assertTrue(intersection.getBounds2D().isEmpty());
+	}
+
+	@Test
+	public void testShapeInsideRectangleIsReturnedAsCopy() {
+		Shape rectangle = new Rectangle2D.Double(0.0, 0.0, 100.0, 100.0);
+		Shape ellipse = new Ellipse2D.Double(10.0, 20.0, 30.0, 40.0);
+
+		assertThat(ClipIntersection.intersect(rectangle, ellipse), not(sameInstance(ellipse)));
+		assertEquals(ellipse, ClipIntersection.intersect(rectangle, ellipse));
+		assertEquals(ellipse, ClipIntersection.intersect(ellipse, rectangle));
+	}
+
+	@Test
+	public void testRotatedRectanglesResultInPolygon() {
+		AffineTransform rotation = AffineTransform.getRotateInstance(Math.toRadians(30.0), 50.0, 50.0);
+		Shape r1 = rotation.createTransformedShape(new Rectangle2D.Double(10.0, 10.0, 80.0, 60.0));
+		Shape r2 = new Rectangle2D.Double(30.0, -10.0, 50.0, 130.0);
+
+		Shape intersection = ClipIntersection.intersect(r1, r2);
+
+		assertThat(intersection, instanceOf(Path2D.class));
+		assertSameArea(intersectAreas(r1, r2), intersection);
+	}
+
+	@Test
+	public void testCounterClockwisePolygons() {
+		Path2D triangle = new Path2D.Double();
+		triangle.moveTo(0.0, 0.0);
+		triangle.lineTo(0.0, 100.0);
+		triangle.lineTo(100.0, 0.0);
+		triangle.closePath();
+		Path2D diamond = new Path2D.Double();
+		diamond.moveTo(50.0, 0.0);
+		diamond.lineTo(0.0, 50.0);
+		diamond.lineTo(50.0, 100.0);
+		diamond.lineTo(100.0, 50.0);
+		diamond.closePath();
+
+		Shape intersection = ClipIntersection.intersect(triangle, diamond);
+
+		assertThat(intersection, instanceOf(Path2D.class));
+		assertSameArea(intersectAreas(triangle, diamond), intersection);
+	}
+
+	@Test
+	public void testCurvedShapesAreIntersectedLazily() {
+		Shape e1 = new Ellipse2D.Double(0.0, 0.0, 60.0, 60.0);
+		Shape e2 = new Ellipse2D.Double(30.0, 20.0, 60.0, 60.0);
+
+		Shape intersection = ClipIntersection.intersect(e1, e2);
+
+		assertThat(intersection, instanceOf(ClipIntersection.class));
+		assertEquals(new Rectangle2D.Double(30.0, 20.0, 30.0, 40.0), intersection.getBounds2D());
+		assertSameArea(intersectAreas(e1, e2), intersection);
+	}
+
+	@Test
+	public void testNonConvexPolygonsAreIntersectedLazily() {
+		Path2D arrow = new Path2D.Double();
+		arrow.moveTo(0.0, 0.0);
+		arrow.lineTo(50.0, 25.0);
+		arrow.lineTo(100.0, 0.0);
+		arrow.lineTo(50.0, 100.0);
+		arrow.closePath();
+		Shape rectangle = new Rectangle2D.Double(20.0, 10.0, 60.0, 120.0);
+
+		Shape intersection = ClipIntersection.intersect(arrow, rectangle);
+
+		assertThat(intersection, instanceOf(ClipIntersection.class));
+		assertSameArea(intersectAreas(arrow, rectangle), intersection);
+	}
+
+	@Test
+	public void testSelfIntersectingPolygonsAreIntersectedLazily() {
+		Path2D pentagram = new Path2D.Double(Path2D.WIND_EVEN_ODD);
+		for (int i = 0; i < 5; i++) {
+			double angle = Math.toRadians(-90.0 + 144.0*i);
+			double x = 50.0 + 50.0*Math.cos(angle);
+			double y = 50.0 + 50.0*Math.sin(angle);
+			if (i == 0) {
+				pentagram.moveTo(x, y);
+			} else {
+				pentagram.lineTo(x, y);
+			}
+		}
+		pentagram.closePath();
+		Path2D triangle = new Path2D.Double();
+		triangle.moveTo(-10.0, -10.0);
+		triangle.lineTo(110.0, -10.0);
+		triangle.lineTo(50.0, 110.0);
+		triangle.closePath();
+
+		Shape intersection = ClipIntersection.intersect(pentagram, triangle);
+
+		assertThat(intersection, instanceOf(ClipIntersection.class));
+		assertSameArea(intersectAreas(pentagram, triangle), intersection);
+	}
+
+	@Test
+	public void testIntersectionDoesNotChangeWithShapes() {
+		Path2D arrow = new Path2D.Double();
+		arrow.moveTo(0.0, 0.0);
+		arrow.lineTo(50.0, 25.0);
+		arrow.lineTo(100.0, 0.0);
+		arrow.lineTo(50.0, 100.0);
+		arrow.closePath();
+		Rectangle2D rectangle = new Rectangle2D.Double(20.0, 10.0, 60.0, 120.0);
+		Shape expected = intersectAreas(arrow, rectangle);
+
+		Shape intersection = ClipIntersection.intersect(arrow, rectangle);
+		arrow.lineTo(200.0, 200.0);
+		rectangle.setRect(0.0, 0.0, 1.0, 1.0);
+
+		assertEquals(expected.getBounds2D(), intersection.getBounds2D());
+		assertSameArea(expected, intersection);
+	}
+
+	@Test
+	public void testTransformedIntersectionCoversSameArea() {
+		Shape e1 = new Ellipse2D.Double(0.0, 0.0, 60.0, 60.0);
+		Shape e2 = new Ellipse2D.Double(30.0, 20.0, 60.0, 60.0);
+		ClipIntersection intersection = (ClipIntersection) ClipIntersection.intersect(e1, e2);
+		AffineTransform transform = AffineTransform.getRotateInstance(Math.toRadians(45.0), 40.0, 40.0);
+
+		Shape transformed = intersection.createTransformedShape(transform);
+
+		assertSameArea(transform.createTransformedShape(intersectAreas(e1, e2)), transformed);
+	}
+
+	@Test
+	public void testEquality() {
+		Shape e1 = new Ellipse2D.Double(0.0, 0.0, 60.0, 60.0);
+		Shape e2 = new Ellipse2D.Double(30.0, 20.0, 60.0, 60.0);
+		Shape e3 = new Ellipse2D.Double(30.0, 30.0, 60.0, 60.0);
+
+		Shape intersection = ClipIntersection.intersect(e1, e2);
+
+		assertThat(intersection, is(ClipIntersection.intersect(e1, e2)));
+		assertEquals(ClipIntersection.intersect(e1, e2).hashCode(), intersection.hashCode());
+		assertThat(intersection, not(is(ClipIntersection.intersect(e1, e3))));
+		assertEquals(30.0, intersection.getBounds2D().getX(), DELTA);
+	}
+}
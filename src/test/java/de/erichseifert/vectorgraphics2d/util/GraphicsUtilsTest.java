@@ -226,6 +226,15 @@ public class GraphicsUtilsTest {
 		assertSame(font, GraphicsUtils.getPhysicalFont(font));
 	}
 
+	@Test
+	public void getPhysicalFontReturnsCachedFontForSameLogicalFont() {
+		Font font = new Font(Font.SERIF, Font.BOLD, 11);
+
+		Font physicalFont = GraphicsUtils.getPhysicalFont(font);
+
+		assertSame(physicalFont, GraphicsUtils.getPhysicalFont(new Font(Font.SERIF, Font.BOLD, 11)));
+	}
+
 	private static void assertShapeEquals(Shape expected, Shape actual) {
 		if ((expected instanceof Line2D) && (actual instanceof Line2D)) {
 			assertEquals(((Line2D) expected).getP1(), ((Line2D) actual).getP1());
@@ -31,7 +31,8 @@ import org.junit.runners.Suite;
 	Base64EncodeStreamTest.class,
 	GraphicsUtilsTest.class,
 	FormattingWriterTest.class,
-	PageSizeTest.class
+	PageSizeTest.class,
+	ClipIntersectionTest.class
 })
 public class UtilTests {
 }